@@ -22,12 +22,15 @@ package com.arjuna.ats.arjuna.common;
 
 import java.io.File;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.arjuna.ats.arjuna.logging.tsLogger;
 import com.arjuna.ats.arjuna.objectstore.StateType;
 import com.arjuna.ats.arjuna.utils.Utility;
 import com.arjuna.ats.internal.arjuna.objectstore.HashedStore;
 import com.arjuna.ats.internal.arjuna.objectstore.ShadowNoFileLockStore;
+import com.arjuna.ats.internal.arjuna.objectstore.ShardedStore;
 import com.arjuna.common.internal.util.propertyservice.FullPropertyName;
 import com.arjuna.common.internal.util.propertyservice.PropertyPrefix;
 
@@ -44,6 +47,8 @@ public class ObjectStoreEnvironmentBean implements ObjectStoreEnvironmentBeanMBe
     private volatile boolean objectStoreSync = true;
     private volatile String objectStoreType = ShadowNoFileLockStore.class.getName();
     private volatile int hashedDirectories = HashedStore.DEFAULT_NUMBER_DIRECTORIES;
+    private volatile int shardedDirectories = ShardedStore.DEFAULT_NUMBER_SHARDS;
+    private volatile List<String> shardedStoreDirs = new ArrayList<String>();
     private volatile boolean transactionSync = true;
 
     private volatile boolean scanZeroLengthFiles = false;
@@ -276,7 +281,8 @@ public class ObjectStoreEnvironmentBean implements ObjectStoreEnvironmentBeanMBe
      * Returns the local ObjectStore root directory name. This should be a path element, not a complete path.
      *
      * This property is used by the following object store implementations: ActionStore, CacheStore, HashedActionStore,
-     * HashedStore, LogStore, NullActionStore, ShadowingStore, ShadowNoFileLockStore, TwoPhaseVolatileStore, VolatileStore.
+     * HashedStore, LogStore, NullActionStore, ShadowingStore, ShadowNoFileLockStore, ShardedActionStore,
+     * ShardedStore, TwoPhaseVolatileStore, VolatileStore.
      *
      * Default: "defaultStore"
      * Equivalent deprecated property: com.arjuna.ats.arjuna.objectstore.localOSRoot
@@ -292,7 +298,8 @@ public class ObjectStoreEnvironmentBean implements ObjectStoreEnvironmentBeanMBe
      * Sets the local ObjectStore root directory name. This should be a path element, not a complete path.
      *
      * This property is used by the following object store implementations: ActionStore, CacheStore, HashedActionStore,
-     * HashedStore, LogStore, NullActionStore, ShadowingStore, ShadowNoFileLockStore, TwoPhaseVolatileStore, VolatileStore.
+     * HashedStore, LogStore, NullActionStore, ShadowingStore, ShadowNoFileLockStore, ShardedActionStore,
+     * ShardedStore, TwoPhaseVolatileStore, VolatileStore.
      *
      * @param localOSRoot the directory name.
      */
@@ -305,7 +312,8 @@ public class ObjectStoreEnvironmentBean implements ObjectStoreEnvironmentBeanMBe
      * Returns the ObjectStore directory path.
      *
      * This property is used by the following object store implementations: ActionStore, CacheStore, HashedActionStore,
-     * HashedStore, LogStore, NullActionStore, ShadowingStore, ShadowNoFileLockStore, TwoPhaseVolatileStore, VolatileStore.
+     * HashedStore, LogStore, NullActionStore, ShadowingStore, ShadowNoFileLockStore, ShardedActionStore,
+     * ShardedStore, TwoPhaseVolatileStore, VolatileStore.
      *
      * Default: {user.dir}/ObjectStore
      * Equivalent deprecated property: com.arjuna.ats.arjuna.objectstore.objectStoreDir
@@ -351,7 +359,8 @@ public class ObjectStoreEnvironmentBean implements ObjectStoreEnvironmentBeanMBe
      * Sets the ObjectStore directory path.
      *
      * This property is used by the following object store implementations: ActionStore, CacheStore, HashedActionStore,
-     * HashedStore, LogStore, NullActionStore, ShadowingStore, ShadowNoFileLockStore, TwoPhaseVolatileStore, VolatileStore.
+     * HashedStore, LogStore, NullActionStore, ShadowingStore, ShadowNoFileLockStore, ShardedActionStore,
+     * ShardedStore, TwoPhaseVolatileStore, VolatileStore.
      *
      * @param objectStoreDir the directory path.
      */
@@ -366,7 +375,7 @@ public class ObjectStoreEnvironmentBean implements ObjectStoreEnvironmentBeanMBe
      * See also: isTransactionSync
      *
      * This property is used by the following object store implementations: ActionStore, CacheStore, HashedActionStore,
-     * HashedStore, LogStore, NullActionStore, ShadowingStore, ShadowNoFileLockStore.
+     * HashedStore, LogStore, NullActionStore, ShadowingStore, ShadowNoFileLockStore, ShardedActionStore, ShardedStore.
      *
      * Default: true
      * Equivalent deprecated property: com.arjuna.ats.arjuna.objectstore.objectStoreSync
@@ -383,7 +392,7 @@ public class ObjectStoreEnvironmentBean implements ObjectStoreEnvironmentBeanMBe
      * Caution: Disabling this may be lead to non-ACID transaction behaviour.
      *
      * This property is used by the following object store implementations: ActionStore, CacheStore, HashedActionStore,
-     * HashedStore, LogStore, NullActionStore, ShadowingStore, ShadowNoFileLockStore.
+     * HashedStore, LogStore, NullActionStore, ShadowingStore, ShadowNoFileLockStore, ShardedActionStore, ShardedStore.
      *
      * @param objectStoreSync true to sunc to disk, false to skip synching.
      */
@@ -448,10 +457,83 @@ public class ObjectStoreEnvironmentBean implements ObjectStoreEnvironmentBeanMBe
         this.hashedDirectories = hashedDirectories;
     }
 
+    /**
+     * Returns the number of shards over which the ObjectStore contents will be distributed.
+     * Each shard is a separate directory tree, so states in different shards can be written
+     * without contending on the same directories.
+     *
+     * This property is used by the following object store implementations: ShardedActionStore, ShardedStore.
+     *
+     * Default: 64
+     *
+     * @return the number of shards over which to distribute the store.
+     */
+    public int getShardedDirectories()
+    {
+        if (shardedDirectories <= 0) {
+            tsLogger.i18NLogger.warn_objectstore_ShardedStore_1(Integer.toString(shardedDirectories));
+            return ShardedStore.DEFAULT_NUMBER_SHARDS;
+        }
+        return shardedDirectories;
+    }
+
+    /**
+     * Sets the number of shards over which the ObjectStore will be split.
+     *
+     * This property is used by the following object store implementations: ShardedActionStore, ShardedStore.
+     *
+     * @param shardedDirectories the number of shards.
+     */
+    public void setShardedDirectories(int shardedDirectories)
+    {
+        this.shardedDirectories = shardedDirectories;
+    }
+
+    /**
+     * Returns the directories over which the shards of the ObjectStore will be spread,
+     * e.g. mount points on different devices. Shards are assigned to the directories in turn.
+     * If the list is empty all shards live beneath the object store directory.
+     * The returned list is a copy. May return an empty list, will not return null.
+     *
+     * This property is used by the following object store implementations: ShardedActionStore, ShardedStore.
+     *
+     * Default: empty list.
+     *
+     * @return the list of directories to hold the shards.
+     */
+    public List<String> getShardedStoreDirs()
+    {
+        synchronized(this)
+        {
+            return new ArrayList<String>(shardedStoreDirs);
+        }
+    }
+
+    /**
+     * Sets the directories over which the shards of the ObjectStore will be spread.
+     * The provided list will be copied, not retained.
+     *
+     * This property is used by the following object store implementations: ShardedActionStore, ShardedStore.
+     *
+     * @param shardedStoreDirs the list of directories to hold the shards.
+     */
+    public void setShardedStoreDirs(List<String> shardedStoreDirs)
+    {
+        synchronized(this)
+        {
+            if(shardedStoreDirs == null) {
+                this.shardedStoreDirs = new ArrayList<String>();
+            } else {
+                this.shardedStoreDirs = new ArrayList<String>(shardedStoreDirs);
+            }
+        }
+    }
+
     /**
      * Returns true if transaction log operations should be synched to disk.
      *
-     * This property is used by the following object store implementations: ActionStore, HashedActionStore, LogStore.
+     * This property is used by the following object store implementations: ActionStore, HashedActionStore, LogStore,
+     * ShardedActionStore.
      *
      * Default: true
      * Equivalent deprecated property: com.arjuna.ats.arjuna.objectstore.transactionSync
@@ -467,7 +549,8 @@ public class ObjectStoreEnvironmentBean implements ObjectStoreEnvironmentBeanMBe
      * Sets if transaction log operations should be synched to disk or not.
      * Caution: Disabling this may be lead to non-ACID transaction behaviour.
      *
-     * This property is used by the following object store implementations: ActionStore, HashedActionStore, LogStore.
+     * This property is used by the following object store implementations: ActionStore, HashedActionStore, LogStore,
+     * ShardedActionStore.
      *
      * @param transactionSync true to enable synching, false to disable.
      */
@@ -480,7 +563,7 @@ public class ObjectStoreEnvironmentBean implements ObjectStoreEnvironmentBeanMBe
      * Returns true if zero length files should be returned by a recovery scan.
      *
      * This property is used by the following object store implementations: ActionStore, CacheStore, HashedActionStore,
-     * HashedStore, LogStore, NullActionStore, ShadowingStore, ShadowNoFileLockStore.
+     * HashedStore, LogStore, NullActionStore, ShadowingStore, ShadowNoFileLockStore, ShardedActionStore, ShardedStore.
      *
      * Default: false
      *
@@ -495,7 +578,7 @@ public class ObjectStoreEnvironmentBean implements ObjectStoreEnvironmentBeanMBe
      * Sets if zero length files should be returned by a recovery scan.
      *
      * This property is used by the following object store implementations: ActionStore, CacheStore, HashedActionStore,
-     * HashedStore, LogStore, NullActionStore, ShadowingStore, ShadowNoFileLockStore.
+     * HashedStore, LogStore, NullActionStore, ShadowingStore, ShadowNoFileLockStore, ShardedActionStore, ShardedStore.
      *
      * @param scanZeroLengthFiles true to include zero length files in scan results, false to exclude them.
      */
@@ -509,7 +592,8 @@ public class ObjectStoreEnvironmentBean implements ObjectStoreEnvironmentBeanMBe
      * between VMs?
      *
      * This property is used by the following object store implementations: ActionStore, CacheStore, HashedActionStore,
-     * HashedStore, LogStore, NullActionStore, ShadowingStore, ShadowNoFileLockStore, TwoPhaseVolatileStore, VolatileStore.
+     * HashedStore, LogStore, NullActionStore, ShadowingStore, ShadowNoFileLockStore, ShardedActionStore,
+     * ShardedStore, TwoPhaseVolatileStore, VolatileStore.
      *
      * Default: ObjectStore.OS_UNKNOWN
      * Equivalent deprecated property: com.arjuna.ats.arjuna.objectstore.share
@@ -525,7 +609,8 @@ public class ObjectStoreEnvironmentBean implements ObjectStoreEnvironmentBeanMBe
      * Sets the share mode of the ObjectStore
      *
      * This property is used by the following object store implementations: ActionStore, CacheStore, HashedActionStore,
-     * HashedStore, LogStore, NullActionStore, ShadowingStore, ShadowNoFileLockStore, TwoPhaseVolatileStore, VolatileStore.
+     * HashedStore, LogStore, NullActionStore, ShadowingStore, ShadowNoFileLockStore, ShardedActionStore,
+     * ShardedStore, TwoPhaseVolatileStore, VolatileStore.
      *
      * @param share a valid share mode.
      */
@@ -538,7 +623,7 @@ public class ObjectStoreEnvironmentBean implements ObjectStoreEnvironmentBeanMBe
      * Returns the maximum number of attempts which may be made to create a file path in the store.
      *
      * This property is used by the following object store implementations: ActionStore, CacheStore, HashedActionStore,
-     * HashedStore, LogStore, NullActionStore, ShadowingStore, ShadowNoFileLockStore.
+     * HashedStore, LogStore, NullActionStore, ShadowingStore, ShadowNoFileLockStore, ShardedActionStore, ShardedStore.
      *
      * Default: 100
      * Equivalent deprecated property: com.arjuna.ats.arjuna.objectstore.hierarchyRetry
@@ -559,7 +644,7 @@ public class ObjectStoreEnvironmentBean implements ObjectStoreEnvironmentBeanMBe
      * Sets the maximum number of attempts which may be made to create a direcory tree in the store.
      *
      * This property is used by the following object store implementations: ActionStore, CacheStore, HashedActionStore,
-     * HashedStore, LogStore, NullActionStore, ShadowingStore, ShadowNoFileLockStore.
+     * HashedStore, LogStore, NullActionStore, ShadowingStore, ShadowNoFileLockStore, ShardedActionStore, ShardedStore.
      *
      * @param hierarchyRetry the maximum number of file creation attempts.
      */
@@ -572,7 +657,7 @@ public class ObjectStoreEnvironmentBean implements ObjectStoreEnvironmentBeanMBe
      * Returns the time in milliseconds to wait between file creation retries.
      *
      * This property is used by the following object store implementations: ActionStore, CacheStore, HashedActionStore,
-     * HashedStore, LogStore, NullActionStore, ShadowingStore, ShadowNoFileLockStore.
+     * HashedStore, LogStore, NullActionStore, ShadowingStore, ShadowNoFileLockStore, ShardedActionStore, ShardedStore.
      *
      * Default: 100 milliseconds.
      * Equivalent deprecated property: com.arjuna.ats.arjuna.objectstore.hierarchyTimeout
@@ -593,7 +678,7 @@ public class ObjectStoreEnvironmentBean implements ObjectStoreEnvironmentBeanMBe
      * Sets the time in milliseconds to wait between file creation retries.
      *
      * This property is used by the following object store implementations: ActionStore, CacheStore, HashedActionStore,
-     * HashedStore, LogStore, NullActionStore, ShadowingStore, ShadowNoFileLockStore.
+     * HashedStore, LogStore, NullActionStore, ShadowingStore, ShadowNoFileLockStore, ShardedActionStore, ShardedStore.
      *
      * @param hierarchyTimeout the wait time in milliseconds.
      */
@@ -20,6 +20,8 @@
  */
 package com.arjuna.ats.arjuna.common;
 
+import java.util.List;
+
 import com.arjuna.ats.arjuna.objectstore.jdbc.JDBCAccess;
 
 /**
@@ -51,6 +53,10 @@ public interface ObjectStoreEnvironmentBeanMBean
 
     int getHashedDirectories();
 
+    int getShardedDirectories();
+
+    List<String> getShardedStoreDirs();
+
     boolean isTransactionSync();
 
     int getShare();
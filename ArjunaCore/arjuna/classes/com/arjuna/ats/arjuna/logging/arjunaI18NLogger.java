@@ -1570,6 +1570,19 @@ public interface arjunaI18NLogger {
     @Message(id = 12391, value = "Could not initialize object store '{0}' of type '{1}'", format = MESSAGE_FORMAT)
     public String init_StoreManager_instantiate_class_failure(String name, String type);
 
+    @Message(id = 12392, value = "invalid number of sharded directories: {0}. Will use default.", format = MESSAGE_FORMAT)
+    @LogMessage(level = WARN)
+    public void warn_objectstore_ShardedStore_1(String arg0);
+
+    @Message(id = 12393, value = "ShardedStore could not create shard directory {0}", format = MESSAGE_FORMAT)
+    public String get_objectstore_ShardedStore_2(String arg0);
+
+    @Message(id = 12394, value = "ShardedStore.allObjUids - could not pack Uid.", format = MESSAGE_FORMAT)
+    public String get_objectstore_ShardedStore_3();
+
+    @Message(id = 12395, value = "ShardedStore.allTypes - could not pack type name.", format = MESSAGE_FORMAT)
+    public String get_objectstore_ShardedStore_4();
+
     /*
      * Allocate new messages directly above this notice. - id: use the next id
      * number in numeric sequence. Don't reuse ids. The first two digits of the
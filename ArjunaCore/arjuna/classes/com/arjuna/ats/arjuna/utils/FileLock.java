@@ -35,24 +35,27 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 
 import com.arjuna.ats.arjuna.logging.tsLogger;
 
 /**
- * Sometimes it is necessary to lock a file at the disk level. Since there is no
- * native Java way of locking a file, we have to implement our own.
- * Unfortunately, it appears as though we can only assume that rename is atomic.
- * We base the locking on this then: rename the lock file and update it with the
- * lock owners. How it works: for every file we want to lock we create an _lock
- * file. This file contains information about who is locking the file, and in
- * what mode. (Single writer, multiple readers.) To guarantee atomicity of
- * update, we move (rename) the actual file each time we want to lock it and
- * update the lock file. When this is done, we move (rename) it back. Almost
- * like a two-phase commit protocol! Currently we don't support re-entrant
- * locking.
+ * Sometimes it is necessary to lock a file at the disk level. Locks are single
+ * writer, multiple readers and are not re-entrant: a lock request which
+ * conflicts with the current holders fails immediately rather than blocking.
+ * Within a VM the lock state for each file is kept in memory, in a fixed set of
+ * stripes selected by the hash of the file path, so that threads working on
+ * different object states never contend with each other. If the file is shared
+ * between VMs then the first holder within this VM also records the lock in a
+ * lock file next to it, which other VMs check and update in the same way. The
+ * lock file is only read or written while holding a second marker file, created
+ * atomically, and is removed when the last VM holding the lock unlocks it.
+ * Operating system locks are not used since on POSIX systems closing any stream
+ * on the file, e.g. the one used to read or write the object state, releases
+ * them.
  *
  * @author Mark Little (mark@arjuna.com)
  * @version $Id: FileLock.java 2342 2006-03-30 13:06:17Z $
@@ -71,8 +74,6 @@ public class FileLock {
 
     public FileLock(String name) {
         this(new File(name));
-
-        _theFile.deleteOnExit();
     }
 
     public FileLock(File name) {
@@ -80,18 +81,37 @@ public class FileLock {
     }
 
     public FileLock(File name, long timeout, long retry) {
+        this(name, timeout, retry, false);
+    }
+
+    /**
+     * @param shared whether the file may also be locked by other VMs, in which
+     *               case the lock is recorded in a lock file as well.
+     */
+
+    public FileLock(File name, boolean shared) {
+        this(name, FileLock.defaultTimeout, FileLock.defaultRetry, shared);
+    }
+
+    /**
+     * @param timeout the time in milliseconds to wait between attempts to take
+     *                the lock file.
+     * @param retry   the number of attempts to make to take the lock file.
+     * @param shared  whether the file may also be locked by other VMs.
+     */
+
+    public FileLock(File name, long timeout, long retry, boolean shared) {
         if (tsLogger.logger.isTraceEnabled()) {
-            tsLogger.logger.trace("FileLock ( " + name + ", " + timeout + ", " + retry + " )");
+            tsLogger.logger.trace("FileLock ( " + name + ", " + timeout + ", " + retry + ", " + shared + " )");
         }
 
         _theFile = name;
         _lockFile = new File(name.toString() + "_lock");
         _lockFileLock = new File(name.toString() + "_lock.lock");
+        _key = name.getAbsolutePath();
         _timeout = timeout;
         _retry = retry;
-
-        _lockFile.deleteOnExit();
-        _lockFileLock.deleteOnExit();
+        _shared = shared;
     }
 
     /**
@@ -102,142 +122,100 @@ public class FileLock {
         return lock(lmode, false);
     }
 
-    public synchronized boolean lock(int lmode, boolean create) {
+    public boolean lock(int lmode, boolean create) {
         if (tsLogger.logger.isTraceEnabled()) {
-            tsLogger.logger.trace("FileLock.lock called for " + _lockFile);
+            tsLogger.logger.trace("FileLock.lock called for " + _theFile + " " + FileLock.modeString(lmode));
         }
 
-        boolean created = false;
+        Stripe stripe = FileLock.stripeFor(_key);
+        LockState state;
 
-        if (create && !_theFile.exists()) {
-            createFile();
-
-            created = true;
-        }
+        synchronized (stripe) {
+            if (create && !_theFile.exists())
+                createFile();
 
-        /*
-         * If the lock file exists, and the mode is exclusive, then we can immediately
-         * return false. Currently we do not implement re-entrant locking, which
-         * requires some owner id.
-         */
-
-        if (!created && _lockFile.exists() && (lmode == FileLock.F_WRLCK))
-            return false;
+            /*
+             * Wait for any other thread which is still recording the lock in the lock
+             * file so that we know whether it ended up holding it.
+             */
 
-        int number = 0;
+            while (((state = stripe.locks.get(_key)) != null) && state.pending) {
+                try {
+                    stripe.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
 
-        if (lockFile()) // have we moved the file (if it exists)?
-        {
-            try {
-                DataInputStream ifile = new DataInputStream(new FileInputStream(_lockFile));
-                int value = ifile.readInt();
+                    return false;
+                }
+            }
 
+            if (state != null) {
                 /*
-                 * Already exclusively locked.
+                 * Already exclusively locked, or we want an exclusive lock and there are
+                 * readers. Currently we do not implement re-entrant locking, which requires
+                 * some owner id.
                  */
 
-                if (value == FileLock.F_WRLCK) {
-                    ifile.close();
-                    unlockFile();
-
+                if ((lmode == FileLock.F_WRLCK) || (state.mode == FileLock.F_WRLCK))
                     return false;
-                } else
-                    number = ifile.readInt();
 
-                ifile.close();
-            } catch (FileNotFoundException e) {
-            } catch (IOException e) {
-                /*
-                 * Something went wrong. Abandon.
-                 */
-
-                unlockFile();
+                state.holders++;
 
-                return false;
+                return true;
             }
 
-            try {
-                DataOutputStream ofile = new DataOutputStream(new FileOutputStream(_lockFile));
+            state = new LockState(lmode);
 
-                number++;
+            stripe.locks.put(_key, state);
 
-                ofile.writeInt(lmode);
-                ofile.writeInt(number);
+            if (!_shared)
+                return true;
 
-                ofile.close();
+            state.pending = true;
+        }
 
-                unlockFile();
+        /*
+         * Retrying the lock file can take up to retry * timeout so do it without
+         * holding the stripe, which is shared with unrelated files.
+         */
 
-                return true;
-            } catch (IOException e) {
-                /*
-                 * Something went wrong. Abandon. Lock file is ok since we haven't touched it.
-                 */
+        boolean locked = lockShared(lmode);
 
-                unlockFile();
+        synchronized (stripe) {
+            state.pending = false;
 
-                return false;
-            }
+            if (!locked)
+                stripe.locks.remove(_key);
+
+            stripe.notifyAll();
         }
 
-        return false;
+        return locked;
     }
 
-    public synchronized boolean unlock() {
+    public boolean unlock() {
         if (tsLogger.logger.isTraceEnabled()) {
-            tsLogger.logger.trace("FileLock.unlock called " + _lockFile);
+            tsLogger.logger.trace("FileLock.unlock called " + _theFile);
         }
 
-        if (!_lockFile.exists())
-            return false;
+        Stripe stripe = FileLock.stripeFor(_key);
 
-        if (lockFile()) {
-            int number = 0, mode = 0;
-
-            try {
-                DataInputStream ifile = new DataInputStream(new FileInputStream(_lockFile));
-
-                mode = ifile.readInt();
-                number = ifile.readInt();
-                ifile.close();
-
-                number--;
-
-                if (number == 0) {
-                    _lockFile.delete();
-
-                    unlockFile();
-
-                    return true;
-                }
-            } catch (FileNotFoundException e) {
-                unlockFile();
+        synchronized (stripe) {
+            LockState state = stripe.locks.get(_key);
 
+            if ((state == null) || state.pending)
                 return false;
-            } catch (IOException e) {
-                unlockFile();
 
-                return false;
-            }
+            state.holders--;
 
-            try {
-                DataOutputStream ofile = new DataOutputStream(new FileOutputStream(_lockFile));
-
-                ofile.writeInt(mode);
-                ofile.writeInt(number);
-                ofile.close();
-
-                unlockFile();
-
-                return true;
-            } catch (IOException e) {
-                unlockFile();
+            if (state.holders == 0) {
+                stripe.locks.remove(_key);
 
-                return false;
+                return !_shared || unlockShared();
             }
-        }
 
-        return false;
+            return true;
+        }
     }
 
     public static String modeString(int mode) {
@@ -253,44 +231,134 @@ public class FileLock {
 
     private final boolean createFile() {
         if (tsLogger.logger.isTraceEnabled()) {
-            tsLogger.logger.trace("FileLock.createFile " + _lockFile);
+            tsLogger.logger.trace("FileLock.createFile " + _theFile);
         }
 
-        byte[] b = new byte[1];
+        try {
+            return _theFile.createNewFile();
+        } catch (IOException e) {
+
+            tsLogger.i18NLogger.warn_utils_FileLock_4(_theFile.getName());
+
+            return false;
+        }
+    }
+
+    /**
+     * Record the lock in the lock file shared with other VMs. Only the first holder
+     * of the file within this VM does this, so the lock file counts VMs rather
+     * than holders.
+     */
+
+    private final boolean lockShared(int lmode) {
+        if (!lockFile())
+            return false;
 
         try {
-            if (!_theFile.exists()) {
-                _theFile.createNewFile();
+            int mode = lmode;
+            int number = 0;
 
-                return true;
-            } else
+            if (_lockFile.exists()) {
+                DataInputStream ifile = new DataInputStream(new FileInputStream(_lockFile));
+
+                try {
+                    mode = ifile.readInt();
+                    number = ifile.readInt();
+                } finally {
+                    ifile.close();
+                }
+            }
+
+            /*
+             * Already exclusively locked, or we want an exclusive lock and there are
+             * readers in other VMs.
+             */
+
+            if ((number > 0) && ((mode == FileLock.F_WRLCK) || (lmode == FileLock.F_WRLCK)))
                 return false;
+
+            writeLockFile(lmode, number + 1);
+
+            return true;
         } catch (IOException e) {
+            /*
+             * Something went wrong. Abandon.
+             */
 
-            tsLogger.i18NLogger.warn_utils_FileLock_4(_lockFile.getName());
+            return false;
+        } finally {
+            unlockFile();
+        }
+    }
+
+    private final boolean unlockShared() {
+        if (!lockFile())
+            return false;
+
+        try {
+            DataInputStream ifile = new DataInputStream(new FileInputStream(_lockFile));
+            int mode;
+            int number;
+
+            try {
+                mode = ifile.readInt();
+                number = ifile.readInt();
+            } finally {
+                ifile.close();
+            }
+
+            number--;
+
+            if (number > 0)
+                writeLockFile(mode, number);
+            else
+                _lockFile.delete();
 
+            return true;
+        } catch (IOException e) {
             return false;
+        } finally {
+            unlockFile();
+        }
+    }
+
+    private final void writeLockFile(int mode, int number) throws IOException {
+        DataOutputStream ofile = new DataOutputStream(new FileOutputStream(_lockFile));
+
+        try {
+            ofile.writeInt(mode);
+            ofile.writeInt(number);
+        } finally {
+            ofile.close();
         }
+
+        _lockFile.deleteOnExit();
     }
 
+    /**
+     * Take the marker file which guards the lock file against the other VMs.
+     */
+
     private final boolean lockFile() {
         if (tsLogger.logger.isTraceEnabled()) {
             tsLogger.logger.trace("FileLock.lockFile called " + _lockFile);
         }
 
-        for (int i = 0; i < _retry; i++) {
+        for (long i = 0; i < _retry; i++) {
             try {
-                if (_lockFileLock.createNewFile()) {
+                if (_lockFileLock.createNewFile())
                     return true;
-                } else {
-                    try {
-                        Thread.sleep(_timeout);
-                    } catch (InterruptedException e) {
-                    }
-                }
             } catch (IOException ex) {
                 // already created, so locked!
             }
+
+            try {
+                Thread.sleep(_timeout);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                break;
+            }
         }
 
         return false;
@@ -300,17 +368,65 @@ public class FileLock {
         if (tsLogger.logger.isTraceEnabled()) {
             tsLogger.logger.trace("FileLock.unlockFile called for " + _lockFile);
         }
+
         return _lockFileLock.delete();
     }
 
-    private File _theFile;
+    private static Stripe stripeFor(String key) {
+        int h = key.hashCode();
+
+        h ^= (h >>> 16);
+
+        return FileLock.stripes[h & (FileLock.stripes.length - 1)];
+    }
+
+    /**
+     * The lock state of every locked file which hashes to this stripe. Guarded by
+     * the stripe's monitor, which is also waited on for pending locks.
+     */
+
+    private static final class Stripe {
+        final Map<String, LockState> locks = new HashMap<String, LockState>();
+    }
+
+    private static final class LockState {
+        LockState(int mode) {
+            this.mode = mode;
+        }
+
+        final int mode;
+
+        int holders = 1;
+
+        /*
+         * Set while the first holder records the lock in the lock file outside the
+         * stripe's monitor.
+         */
+
+        boolean pending;
+    }
+
+    private static final int STRIPE_COUNT = 64; // must be a power of two
+
+    private static final Stripe[] stripes = new Stripe[STRIPE_COUNT];
+
+    static {
+        for (int i = 0; i < STRIPE_COUNT; i++)
+            stripes[i] = new Stripe();
+    }
+
+    private final File _theFile;
+
+    private final File _lockFile;
+
+    private final File _lockFileLock;
 
-    private File _lockFile;
+    private final String _key;
 
-    private File _lockFileLock;
+    private final long _timeout;
 
-    private long _timeout;
+    private final long _retry;
 
-    private long _retry;
+    private final boolean _shared;
 
 }
@@ -65,23 +65,23 @@ public abstract class FileLockingStore extends FileSystemStore {
      * Lock files as we would do on a Unix system.
      */
 
-    protected synchronized boolean lock(File fd, int lmode, boolean create) {
+    protected boolean lock(File fd, int lmode, boolean create) {
         if (tsLogger.logger.isTraceEnabled()) {
             tsLogger.logger
                     .trace("FileLockingStore.lock(" + fd + ", " + FileLock.modeString(lmode) + ", " + create + ")");
         }
 
-        FileLock fileLock = new FileLock(fd);
+        FileLock fileLock = new FileLock(fd, isShared());
 
         return fileLock.lock(lmode, create);
     }
 
-    protected synchronized boolean unlock(File fd) {
+    protected boolean unlock(File fd) {
         if (tsLogger.logger.isTraceEnabled()) {
             tsLogger.logger.trace("FileLockingStore.unlock(" + fd + ")");
         }
 
-        FileLock fileLock = new FileLock(fd);
+        FileLock fileLock = new FileLock(fd, isShared());
 
         return fileLock.unlock();
     }
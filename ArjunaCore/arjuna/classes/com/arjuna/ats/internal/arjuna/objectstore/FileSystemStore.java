@@ -40,7 +40,7 @@ import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
-import java.util.Hashtable;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.arjuna.ats.arjuna.common.ObjectStoreEnvironmentBean;
 import com.arjuna.ats.arjuna.common.Uid;
@@ -346,23 +346,26 @@ public abstract class FileSystemStore extends ObjectStore {
      * Are synchronous write enabled?
      */
 
-    protected final synchronized boolean synchronousWrites() {
+    protected final boolean synchronousWrites() {
         return doSync && syncWrites;
     }
 
     /**
-     * Lock the file in the object store.
+     * Lock the file in the object store. Only the lock state of the file itself is
+     * touched, so threads locking different states do not contend. If the store is
+     * shared between VMs then the file is also locked at the operating system
+     * level.
      */
 
-    protected synchronized boolean lock(final File fd, final int lmode, final boolean create) {
+    protected boolean lock(final File fd, final int lmode, final boolean create) {
         if (System.getSecurityManager() == null) {
-            FileLock fileLock = new FileLock(fd);
+            FileLock fileLock = new FileLock(fd, isShared());
             return fileLock.lock(lmode, create);
         } else {
             return AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
                 @Override
                 public Boolean run() {
-                    FileLock fileLock = new FileLock(fd);
+                    FileLock fileLock = new FileLock(fd, isShared());
                     return fileLock.lock(lmode, create);
                 }
             });
@@ -373,21 +376,29 @@ public abstract class FileSystemStore extends ObjectStore {
      * Unlock the file in the object store.
      */
 
-    protected synchronized boolean unlock(final File fd) {
+    protected boolean unlock(final File fd) {
         if (System.getSecurityManager() == null) {
-            FileLock fileLock = new FileLock(fd);
+            FileLock fileLock = new FileLock(fd, isShared());
             return fileLock.unlock();
         } else {
             return AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
                 @Override
                 public Boolean run() {
-                    FileLock fileLock = new FileLock(fd);
+                    FileLock fileLock = new FileLock(fd, isShared());
                     return fileLock.unlock();
                 }
             });
         }
     }
 
+    /**
+     * @return true if the states in this store may also be accessed by other VMs.
+     */
+
+    protected final boolean isShared() {
+        return super.shareStatus == StateType.OS_SHARED;
+    }
+
     /**
      * Unlock and close the file. Note that if the unlock fails we set the return
      * value to false to indicate an error but rely on the close to really do the
@@ -472,26 +483,18 @@ public abstract class FileSystemStore extends ObjectStore {
      * Renaming on Unix works if the file to rename to already exists. However, on
      * Windows if the file exists then rename fails! So, we need to delete the file
      * to rename to before we can rename. But, we must ensure that we don't get into
-     * any race conditions, so we exclusively lock the file to be deleted first.
-     * Failure scenarios:
-     *
-     * (i) if we crash after deleting, but before we have had a chance to rename the
-     * file, then the lock file will exist and prevent anyone from deleting the
-     * shadow.
-     *
-     * (ii) if we crash after renaming and before the lock file is removed then
-     * subsequent lock attempts will fail, and the sys admin will have to resolve.
-     * But consistency will be maintained!
-     *
-     * When JDK 1.4 supports appears we will use the file-locking facility it
-     * provides.
+     * any race conditions, so renames to the same file are serialised, using a
+     * monitor picked from a fixed set of stripes by the name of the file. Renames
+     * of different states never contend. If we crash after deleting, but before we
+     * have had a chance to rename the file, then the shadow remains and crash
+     * recovery will deal with it.
      *
      * We have to use locks at deletion, but an implementation such as
      * ShadowNoFileLockStore can still get away with no locking elsewhere to improve
      * performance.
      */
 
-    protected final synchronized boolean renameFromTo(final File from, final File to) {
+    protected final boolean renameFromTo(final File from, final File to) {
         if (System.getSecurityManager() == null) {
             return renameFromToInternal(from, to);
         } else {
@@ -536,14 +539,11 @@ public abstract class FileSystemStore extends ObjectStore {
              * Let let crash recovery deal with this!
              */
 
-            // if (fl.lock(FileLock.F_WRLCK))
-            {
+            synchronized (renameStripe(to)) {
                 to.delete();
 
                 boolean res = from.renameTo(to);
 
-                // fl.unlock();
-
                 return true;
             }
             /*
@@ -706,10 +706,11 @@ public abstract class FileSystemStore extends ObjectStore {
      * directory structure may not have actually been created - it may still be in
      * the process of being created. So, we have to err on the side of caution and
      * try to create the directory a few times. (This can happen across processes
-     * too.)
+     * too.) Since a failed mkdirs is followed by a check to see if the directory now
+     * exists there is no need to serialise callers within the same VM.
      */
 
-    protected final synchronized boolean createHierarchy(String path) throws ObjectStoreException {
+    protected final boolean createHierarchy(String path) throws ObjectStoreException {
         if (tsLogger.logger.isTraceEnabled()) {
             tsLogger.logger.trace("FileSystemStore.createHierarchy(" + path + ")");
         }
@@ -738,8 +739,8 @@ public abstract class FileSystemStore extends ObjectStore {
                     return true;
                 } else {
                     /*
-                     * Assume problem is due to concurrent processes, since we're synchronized
-                     * within the same VM.
+                     * Assume problem is due to concurrent threads or processes creating the
+                     * same hierarchy.
                      */
 
                     if (!f.mkdirs()) {
@@ -817,6 +818,14 @@ public abstract class FileSystemStore extends ObjectStore {
         }
     }
 
+    private static Object renameStripe(File to) {
+        int h = to.getPath().hashCode();
+
+        h ^= (h >>> 16);
+
+        return FileSystemStore.renameLocks[h & (FileSystemStore.renameLocks.length - 1)];
+    }
+
     private final boolean present(String id, String[] list) {
         for (int i = 0; i < list.length; i++) {
             if (list[i].equals(id))
@@ -839,7 +848,7 @@ public abstract class FileSystemStore extends ObjectStore {
 
     // global values (some of which may be reset on a per instance basis).
 
-    private static final Hashtable fileCache = new Hashtable();
+    private static final ConcurrentHashMap<String, String> fileCache = new ConcurrentHashMap<String, String>();
     private static final int createRetry = arjPropertyManager.getObjectStoreEnvironmentBean().getHierarchyRetry();
     private static final int createTimeout = arjPropertyManager.getObjectStoreEnvironmentBean().getHierarchyTimeout();
 
@@ -847,4 +856,11 @@ public abstract class FileSystemStore extends ObjectStore {
 
     private static final boolean isWindows = Utility.isWindows();
 
+    private static final Object[] renameLocks = new Object[64]; // must be a power of two
+
+    static {
+        for (int i = 0; i < renameLocks.length; i++)
+            renameLocks[i] = new Object();
+    }
+
 }
@@ -0,0 +1,282 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2006, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ *
+ * (C) 2005-2006,
+ * @author JBoss Inc.
+ */
+
+package com.arjuna.ats.internal.arjuna.objectstore;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.arjuna.ats.arjuna.common.ObjectStoreEnvironmentBean;
+import com.arjuna.ats.arjuna.common.Uid;
+import com.arjuna.ats.arjuna.exceptions.ObjectStoreException;
+import com.arjuna.ats.arjuna.logging.tsLogger;
+import com.arjuna.ats.arjuna.objectstore.StateStatus;
+import com.arjuna.ats.arjuna.objectstore.StateType;
+import com.arjuna.ats.arjuna.state.InputObjectState;
+import com.arjuna.ats.arjuna.state.OutputObjectState;
+import com.arjuna.ats.internal.arjuna.common.UidHelper;
+
+/**
+ * A file system store which partitions object states into a fixed number of
+ * shards by the hash of their Uid. Each shard is a self contained directory
+ * tree, created when the store is created, which holds the type hierarchy for
+ * the states that hash to it. States in different shards never share a
+ * directory, so creating, renaming and removing them does not contend on the
+ * same directory in the file system. By default every shard lives beneath the
+ * normal location of the store, but the shards can instead be spread over a
+ * list of directories (typically on different devices) to spread the I/O. The
+ * assignment of a Uid to a shard depends upon the number of shards and the
+ * list of directories, so neither may be changed while the store holds states
+ * which have not been recovered.
+ *
+ * @see ObjectStoreEnvironmentBean#getShardedDirectories()
+ * @see ObjectStoreEnvironmentBean#getShardedStoreDirs()
+ */
+
+public class ShardedStore extends ShadowNoFileLockStore {
+    /**
+     * Given a type name initialise <code>state</code> to contains all of the Uids
+     * of objects of that type
+     */
+
+    public boolean allObjUids(String tName, InputObjectState state, int match) throws ObjectStoreException {
+        if (tsLogger.logger.isTraceEnabled()) {
+            tsLogger.logger.trace("ShardedStore.allObjUids(" + tName + ", " + state + ", " + match + ")");
+        }
+
+        String type = typeDirectory(tName);
+        OutputObjectState store = new OutputObjectState();
+
+        for (int i = 0; i < shards.length; i++) {
+            File dir = new File(shards[i] + type);
+            String[] entry = dir.list();
+
+            if (entry == null)
+                continue;
+
+            for (int j = 0; j < entry.length; j++) {
+                try {
+                    Uid aUid = new Uid(entry[j], true);
+
+                    if (!aUid.valid() || (aUid.equals(Uid.nullUid()))) {
+                        String revealed = revealedId(entry[j]);
+
+                        // don't want to give the same id twice.
+
+                        if (present(revealed, entry))
+                            aUid = null;
+                        else
+                            aUid = new Uid(revealed);
+                    }
+
+                    if ((aUid != null) && (aUid.valid()) && (aUid.notEquals(Uid.nullUid()))
+                            && ((match == StateStatus.OS_UNKNOWN) || (isType(aUid, tName, match)))) {
+                        File f = new File(dir, entry[j]);
+
+                        if (!f.isDirectory() && (scanZeroLengthFiles || f.length() > 0)) {
+                            UidHelper.packInto(aUid, store);
+                        }
+                    }
+                } catch (NumberFormatException e) {
+                    /*
+                     * Not a number at start of file.
+                     */
+                } catch (IOException e) {
+                    throw new ObjectStoreException(tsLogger.i18NLogger.get_objectstore_ShardedStore_3(), e);
+                }
+            }
+        }
+
+        /* terminate list */
+
+        try {
+            UidHelper.packInto(Uid.nullUid(), store);
+        } catch (IOException e) {
+            throw new ObjectStoreException(tsLogger.i18NLogger.get_objectstore_ShardedStore_3(), e);
+        }
+
+        state.setBuffer(store.buffer());
+
+        return true;
+    }
+
+    /**
+     * The type hierarchy is the union of the hierarchies held in each shard.
+     */
+
+    public boolean allTypes(InputObjectState foundTypes) throws ObjectStoreException {
+        if (tsLogger.logger.isTraceEnabled()) {
+            tsLogger.logger.trace("ShardedStore.allTypes(" + foundTypes + ")");
+        }
+
+        Set<String> types = new LinkedHashSet<String>();
+
+        for (int i = 0; i < shards.length; i++)
+            collectTypes(new File(shards[i]), null, types);
+
+        OutputObjectState store = new OutputObjectState();
+
+        try {
+            for (String type : types)
+                store.packString(type);
+
+            store.packString("");
+        } catch (IOException e) {
+            throw new ObjectStoreException(tsLogger.i18NLogger.get_objectstore_ShardedStore_4(), e);
+        }
+
+        foundTypes.setBuffer(store.buffer());
+
+        return true;
+    }
+
+    public ShardedStore(ObjectStoreEnvironmentBean objectStoreEnvironmentBean) throws ObjectStoreException {
+        super(objectStoreEnvironmentBean);
+
+        int numberOfShards = objectStoreEnvironmentBean.getShardedDirectories();
+        List<String> shardDirs = objectStoreEnvironmentBean.getShardedStoreDirs();
+        String storeName = locateStore(getStoreName());
+        String relativeName = getClass().getSimpleName() + storeName.substring(storeDir().length());
+
+        shards = new String[numberOfShards];
+
+        for (int i = 0; i < numberOfShards; i++) {
+            String base;
+
+            if (shardDirs.isEmpty()) {
+                base = storeName;
+            } else {
+                base = shardDirs.get(i % shardDirs.size());
+
+                if (!base.endsWith(File.separator))
+                    base = base + File.separator;
+
+                base = base + relativeName;
+            }
+
+            shards[i] = base + SHARD_SEPARATOR + i + SHARD_SEPARATOR + File.separator;
+
+            if (!createHierarchy(shards[i]))
+                throw new ObjectStoreException(tsLogger.i18NLogger.get_objectstore_ShardedStore_2(shards[i]));
+        }
+    }
+
+    /**
+     * @return the file name for the state of the object identified by the Uid and
+     *         TypeName.
+     */
+
+    protected String genPathName(Uid objUid, String tName, int otype) throws ObjectStoreException {
+        if (tsLogger.logger.isTraceEnabled()) {
+            tsLogger.logger.trace(
+                    "ShardedStore.genPathName(" + objUid + ", " + tName + ", " + StateType.stateTypeString(otype) + ")");
+        }
+
+        String fname = shards[shardFor(objUid)] + typeDirectory(tName) + objUid.fileStringForm();
+
+        // mark the shadow copy distinctly
+        if (otype == StateType.OS_SHADOW)
+            fname = fname + SHADOWCHAR;
+
+        return fname;
+    }
+
+    /**
+     * @return the shard which holds the states of the object identified by the Uid.
+     */
+
+    protected final int shardFor(Uid objUid) {
+        return (objUid.hashCode() & 0x7fffffff) % shards.length;
+    }
+
+    /**
+     * @return the type name as a path relative to the root of a shard. The result
+     *         is either empty or ends in a separator.
+     */
+
+    private final String typeDirectory(String tName) {
+        if ((tName == null) || (tName.length() == 0))
+            return "";
+
+        String cPtr = tName;
+
+        /*
+         * Convert Unix separators to 'other', i.e., Windows!
+         */
+
+        if (FileSystemStore.rewriteSeparator && (cPtr.indexOf(FileSystemStore.unixSeparator) != -1)) {
+            cPtr = cPtr.replace(FileSystemStore.unixSeparator, File.separatorChar);
+        }
+
+        /*
+         * The shard root always ends in '/' so we can remove any at the start of the
+         * type name.
+         */
+
+        if (cPtr.charAt(0) == File.separatorChar)
+            cPtr = cPtr.substring(1);
+
+        if ((cPtr.length() > 0) && (cPtr.charAt(cPtr.length() - 1) != File.separatorChar))
+            cPtr = cPtr + File.separator;
+
+        return cPtr;
+    }
+
+    private final void collectTypes(File dir, String root, Set<String> types) {
+        String[] entry = dir.list();
+
+        if (entry == null)
+            return;
+
+        for (int i = 0; i < entry.length; i++) {
+            if (!supressEntry(entry[i])) {
+                File tmpFile = new File(dir, entry[i]);
+
+                if (tmpFile.isDirectory()) {
+                    String type = (root == null) ? entry[i] : root + File.separator + entry[i];
+
+                    types.add(type);
+
+                    collectTypes(tmpFile, type, types);
+                }
+            }
+        }
+    }
+
+    private final boolean present(String id, String[] list) {
+        for (int i = 0; i < list.length; i++) {
+            if (list[i].equals(id))
+                return true;
+        }
+
+        return false;
+    }
+
+    public static final int DEFAULT_NUMBER_SHARDS = 64;
+
+    private static final String SHARD_SEPARATOR = "#";
+
+    private final String[] shards;
+
+}
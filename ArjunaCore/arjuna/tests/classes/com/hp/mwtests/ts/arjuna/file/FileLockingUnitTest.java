@@ -32,13 +32,18 @@ package com.hp.mwtests.ts.arjuna.file;
  */
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
@@ -136,4 +141,257 @@ public class FileLockingUnitTest {
         assertEquals(FileLock.modeString(-1), "Unknown");
     }
 
+    @Test
+    public void testSharedLock() throws Exception {
+        File theFile = createFile();
+
+        FileLock writer = new FileLock(theFile, true);
+        FileLock other = new FileLock(theFile, true);
+
+        assertFalse(sharedLocked(theFile));
+
+        assertTrue(writer.lock(FileLock.F_WRLCK));
+        assertTrue(sharedLocked(theFile));
+        assertFalse(other.lock(FileLock.F_RDLCK));
+        assertFalse(other.lock(FileLock.F_WRLCK));
+
+        assertTrue(writer.unlock());
+        assertFalse(sharedLocked(theFile));
+        assertFalse(writer.unlock());
+
+        /*
+         * The lock file is kept until the last reader unlocks.
+         */
+
+        assertTrue(writer.lock(FileLock.F_RDLCK));
+        assertTrue(other.lock(FileLock.F_RDLCK));
+        assertFalse(other.lock(FileLock.F_WRLCK));
+
+        assertTrue(writer.unlock());
+        assertTrue(sharedLocked(theFile));
+        assertTrue(other.unlock());
+        assertFalse(sharedLocked(theFile));
+    }
+
+    @Test
+    public void testSharedLockAfterStreamClosed() throws Exception {
+        File theFile = createFile();
+
+        FileLock fileLock = new FileLock(theFile, true);
+
+        assertTrue(fileLock.lock(FileLock.F_WRLCK));
+
+        /*
+         * Closing a stream on the file would drop an operating system lock but must
+         * not release the lock for other VMs.
+         */
+
+        FileInputStream ifile = new FileInputStream(theFile);
+
+        ifile.read();
+        ifile.close();
+
+        assertTrue(sharedLocked(theFile));
+        assertFalse(new FileLock(theFile, true).lock(FileLock.F_WRLCK));
+        assertFalse(new FileLock(theFile, true).lock(FileLock.F_RDLCK));
+
+        assertTrue(fileLock.unlock());
+        assertFalse(sharedLocked(theFile));
+        assertTrue(fileLock.lock(FileLock.F_WRLCK));
+        assertTrue(fileLock.unlock());
+    }
+
+    @Test
+    public void testConcurrentLockUnlock() throws Exception {
+        testConcurrentLockUnlock(false);
+    }
+
+    @Test
+    public void testConcurrentSharedLockUnlock() throws Exception {
+        testConcurrentLockUnlock(true);
+    }
+
+    /*
+     * Threads lock and unlock files spread across the lock stripes, checking that
+     * a writer is never granted a file which another thread holds.
+     */
+
+    private void testConcurrentLockUnlock(final boolean shared) throws Exception {
+        final File[] files = new File[16];
+        final AtomicInteger[] writers = new AtomicInteger[files.length];
+        final AtomicInteger[] readers = new AtomicInteger[files.length];
+        final AtomicInteger failures = new AtomicInteger();
+
+        for (int i = 0; i < files.length; i++) {
+            files[i] = createFile();
+            writers[i] = new AtomicInteger();
+            readers[i] = new AtomicInteger();
+        }
+
+        Thread[] threads = new Thread[8];
+
+        for (int i = 0; i < threads.length; i++) {
+            final long seed = i;
+
+            threads[i] = new Thread() {
+                public void run() {
+                    Random random = new Random(seed);
+
+                    for (int j = 0; j < 2000; j++) {
+                        int index = random.nextInt(files.length);
+                        int lmode = (random.nextInt(4) == 0) ? FileLock.F_WRLCK : FileLock.F_RDLCK;
+                        FileLock fileLock = new FileLock(files[index], shared);
+
+                        if (!fileLock.lock(lmode))
+                            continue;
+
+                        if (lmode == FileLock.F_WRLCK) {
+                            if ((writers[index].incrementAndGet() != 1) || (readers[index].get() != 0))
+                                failures.incrementAndGet();
+
+                            writers[index].decrementAndGet();
+                        } else {
+                            readers[index].incrementAndGet();
+
+                            if (writers[index].get() != 0)
+                                failures.incrementAndGet();
+
+                            readers[index].decrementAndGet();
+                        }
+
+                        if (!fileLock.unlock())
+                            failures.incrementAndGet();
+                    }
+                }
+            };
+
+            threads[i].start();
+        }
+
+        for (Thread thread : threads)
+            thread.join();
+
+        assertEquals(0, failures.get());
+
+        /*
+         * Every lock must have been released.
+         */
+
+        for (File theFile : files) {
+            FileLock fileLock = new FileLock(theFile, shared);
+
+            assertTrue(fileLock.lock(FileLock.F_WRLCK));
+            assertTrue(fileLock.unlock());
+            assertFalse(sharedLocked(theFile));
+        }
+    }
+
+    private static File createFile() throws IOException {
+        File theFile = File.createTempFile("FileLockingUnitTest", null);
+        theFile.deleteOnExit();
+
+        DataOutputStream ofile = new DataOutputStream(new FileOutputStream(theFile));
+
+        ofile.writeInt(0);
+
+        ofile.close();
+
+        return theFile;
+    }
+
+    /*
+     * Locks recorded in the lock file by another VM exclude this one.
+     */
+
+    @Test
+    public void testSharedLockHeldByOtherVM() throws Exception {
+        File theFile = createFile();
+        FileLock fileLock = new FileLock(theFile, true);
+
+        writeLockFile(theFile, FileLock.F_WRLCK, 1);
+
+        assertFalse(fileLock.lock(FileLock.F_RDLCK));
+        assertFalse(fileLock.lock(FileLock.F_WRLCK));
+
+        writeLockFile(theFile, FileLock.F_RDLCK, 1);
+
+        assertFalse(fileLock.lock(FileLock.F_WRLCK));
+        assertTrue(fileLock.lock(FileLock.F_RDLCK));
+        assertEquals(2, readLockFile(theFile)[1]);
+
+        /*
+         * Further readers within this VM are not recorded again.
+         */
+
+        assertTrue(new FileLock(theFile, true).lock(FileLock.F_RDLCK));
+        assertEquals(2, readLockFile(theFile)[1]);
+
+        assertTrue(fileLock.unlock());
+        assertTrue(fileLock.unlock());
+        assertEquals(FileLock.F_RDLCK, readLockFile(theFile)[0]);
+        assertEquals(1, readLockFile(theFile)[1]);
+
+        new File(theFile + "_lock").delete();
+
+        assertTrue(fileLock.lock(FileLock.F_WRLCK));
+        assertEquals(FileLock.F_WRLCK, readLockFile(theFile)[0]);
+        assertTrue(fileLock.unlock());
+        assertFalse(sharedLocked(theFile));
+    }
+
+    /*
+     * Another VM updating the lock file holds the marker file, and the lock is not
+     * granted while it does.
+     */
+
+    @Test
+    public void testSharedLockWhileOtherVMUpdates() throws Exception {
+        File theFile = createFile();
+        File marker = new File(theFile + "_lock.lock");
+        FileLock fileLock = new FileLock(theFile, 1, 3, true);
+
+        assertTrue(marker.createNewFile());
+
+        try {
+            assertFalse(fileLock.lock(FileLock.F_RDLCK));
+            assertFalse(sharedLocked(theFile));
+        } finally {
+            marker.delete();
+        }
+
+        assertTrue(fileLock.lock(FileLock.F_RDLCK));
+        assertFalse(marker.exists());
+        assertTrue(fileLock.unlock());
+    }
+
+    private static void writeLockFile(File theFile, int mode, int number) throws IOException {
+        File lockFile = new File(theFile + "_lock");
+        lockFile.deleteOnExit();
+
+        DataOutputStream ofile = new DataOutputStream(new FileOutputStream(lockFile));
+
+        ofile.writeInt(mode);
+        ofile.writeInt(number);
+
+        ofile.close();
+    }
+
+    private static int[] readLockFile(File theFile) throws IOException {
+        DataInputStream ifile = new DataInputStream(new FileInputStream(theFile + "_lock"));
+
+        try {
+            return new int[] { ifile.readInt(), ifile.readInt() };
+        } finally {
+            ifile.close();
+        }
+    }
+
+    /*
+     * Whether the lock is recorded for other VMs.
+     */
+
+    private static boolean sharedLocked(File theFile) {
+        return new File(theFile + "_lock").exists();
+    }
+
 }
@@ -64,6 +64,7 @@ import com.arjuna.ats.internal.arjuna.objectstore.HashedStore;
 import com.arjuna.ats.internal.arjuna.objectstore.NullActionStore;
 import com.arjuna.ats.internal.arjuna.objectstore.ShadowNoFileLockStore;
 import com.arjuna.ats.internal.arjuna.objectstore.ShadowingStore;
+import com.arjuna.ats.internal.arjuna.objectstore.ShardedStore;
 import com.arjuna.ats.internal.arjuna.objectstore.TwoPhaseVolatileStore;
 import com.arjuna.ats.internal.arjuna.objectstore.VolatileStore;
 
@@ -240,6 +241,83 @@ public class ObjectStoreTest {
         }
     }
 
+    @Test
+    public void testShardedStore() throws Exception {
+        File root = new File(System.getProperty("java.io.tmpdir"), "ShardedStoreTest-" + new Uid().fileStringForm());
+        List<String> dirs = new ArrayList<String>();
+
+        dirs.add(new File(root, "a").getPath());
+        dirs.add(new File(root, "b").getPath());
+
+        ObjectStoreEnvironmentBean objectStoreEnvironmentBean = new ObjectStoreEnvironmentBean();
+        objectStoreEnvironmentBean.setLocalOSRoot("tmp");
+        objectStoreEnvironmentBean.setShardedDirectories(4);
+        objectStoreEnvironmentBean.setShardedStoreDirs(dirs);
+
+        ShardedStore as = new ShardedStore(objectStoreEnvironmentBean);
+
+        // shards are created up front and assigned to the directories in turn
+        for (String dir : dirs) {
+            String[] shards = new File(dir, "ShardedStore" + File.separator + "tmp").list();
+
+            assertTrue(shards != null);
+            assertEquals(2, shards.length);
+        }
+
+        final OutputObjectState buff = new OutputObjectState();
+        final String tn = "/StateManager/junit";
+        List<Uid> uids = new ArrayList<Uid>();
+
+        for (int i = 0; i < 20; i++) {
+            Uid u = new Uid();
+
+            assertTrue(as.write_uncommitted(u, tn, buff));
+            assertEquals(StateStatus.OS_UNCOMMITTED, as.currentState(u, tn));
+            assertTrue(as.commit_state(u, tn));
+            assertEquals(StateStatus.OS_COMMITTED, as.currentState(u, tn));
+            assertTrue(as.read_committed(u, tn) != null);
+
+            uids.add(u);
+        }
+
+        InputObjectState ios = new InputObjectState();
+
+        assertTrue(as.allObjUids(tn, ios, StateStatus.OS_UNKNOWN));
+
+        List<Uid> found = new ArrayList<Uid>();
+        Uid id = UidHelper.unpackFrom(ios);
+
+        while (id.notEquals(Uid.nullUid())) {
+            found.add(id);
+
+            id = UidHelper.unpackFrom(ios);
+        }
+
+        assertEquals(uids.size(), found.size());
+        assertTrue(found.containsAll(uids));
+
+        InputObjectState types = new InputObjectState();
+        List<String> typeNames = new ArrayList<String>();
+
+        assertTrue(as.allTypes(types));
+
+        String type = types.unpackString();
+
+        while (type.length() > 0) {
+            typeNames.add(type);
+
+            type = types.unpackString();
+        }
+
+        assertEquals(2, typeNames.size());
+        assertTrue(typeNames.contains("StateManager" + File.separator + "junit"));
+
+        for (Uid u : uids) {
+            assertTrue(as.remove_committed(u, tn));
+            assertEquals(StateStatus.OS_UNKNOWN, as.currentState(u, tn));
+        }
+    }
+
     // @Test
     public void testCacheStore() throws Exception {
         ObjectStoreEnvironmentBean objectStoreEnvironmentBean = new ObjectStoreEnvironmentBean();
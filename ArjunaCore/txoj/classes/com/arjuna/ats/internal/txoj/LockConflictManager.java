@@ -31,102 +31,155 @@
 
 package com.arjuna.ats.internal.txoj;
 
-import java.util.Calendar;
-import java.util.Date;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
-import com.arjuna.ats.txoj.LockManager;
+import com.arjuna.ats.txoj.Lock;
+import com.arjuna.ats.txoj.LockMode;
 
 /**
  * An instance of this class is used to determine what to do in the event of a
- * lock conflict for a given object. If the timeout and retry values are >=0
- * then we use them to sleep the thread which tried to get the lock. If the
- * retry value is -100 (LockManager.waitTotalTimeout) then the thread will block
- * for up to the total timeout and be signaled either when the timeout occurs,
- * or when the lock is actually released.
+ * lock conflict for a given object. Threads which cannot acquire a lock are
+ * queued (in FIFO order) on the object's mutex and block until either their
+ * timeout expires or a lock is released, at which point the thread at the head
+ * of the queue is woken so that it can try again. If the head of the queue is
+ * waiting for a READ lock then all of the READ waiters immediately behind it
+ * are woken as well, since they can be granted together.
+ *
+ * The retry value is no longer used to decide whether to sleep or block: if
+ * the retry value is -100 (LockManager.waitTotalTimeout) or >= 0 then the
+ * thread will block for up to the timeout and be signaled either when the
+ * timeout occurs, or when the lock is actually released.
  */
 
 public class LockConflictManager
 {
     public LockConflictManager (ReentrantLock instance)
     {
-        _lock = new Object();
         _instance = instance;
+        _waiters = new ArrayDeque<Waiter>();
     }
 
     /**
-     * Wait for the specified timeout (in milliseconds) and retry. We may either sleep the thread,
-     * or block it on a mutex. Returns the time taken to wait.
+     * Wait for the specified timeout (in milliseconds) and retry. Returns the time taken to wait.
      */
 
-    /*
-     * Sometimes we must sleep when holding the LockManager mutex. In those situations
-     * we really want to release the mutex, sleep, and then re-acquire it
-     * so that other threads can make progress.
+    public int wait (int retry, int waitTime)
+    {
+        return wait(null, waitTime, false);
+    }
+
+    /**
+     * Wait for up to the specified timeout (in milliseconds) for a conflicting
+     * lock to be released. The mutex on the LockManager instance is released
+     * for the duration of the wait and re-acquired before returning. Returns the
+     * time taken to wait.
      *
-     * This routine *must* only be called after having acquired the mutex!
+     * @param toSet the lock that the thread is trying to acquire, or <code>null</code>
+     * if the thread should be treated as an exclusive waiter.
+     * @param waitTime the maximum time to wait in milliseconds.
+     * @param retrying <code>true</code> if the thread has already waited (and been
+     * woken) during this lock request, in which case it keeps its place at the head
+     * of the queue rather than going to the back.
      */
 
-    public int wait (int retry, int waitTime)
+    public int wait (Lock toSet, int waitTime, boolean retrying)
     {
+        long start = System.nanoTime();
+        boolean held = _instance.isHeldByCurrentThread();
+
         /*
-         * Release the mutex on the LockManager instance.
+         * We can only wait on the mutex if we own it. Condition.await releases
+         * all holds on the mutex (it is reentrant) and restores them afterwards.
          */
 
-        boolean lock = false;
+        if (!held)
+            _instance.lock();
 
-        if (_instance.isHeldByCurrentThread())
+        Waiter waiter = new Waiter(((toSet == null) || (toSet.getLockMode() != LockMode.READ)), _instance.newCondition());
+
+        try
         {
-            _instance.unlock();
-            lock = true;
-        }
+            if (retrying)
+                _waiters.addFirst(waiter);
+            else
+                _waiters.addLast(waiter);
 
-        Date d1 = Calendar.getInstance().getTime();
+            long remaining = TimeUnit.MILLISECONDS.toNanos(waitTime);
 
-        if (retry == LockManager.waitTotalTimeout)
-        {
-            try
-            {
-                Thread.sleep(waitTime);
-            }
-            catch (final Throwable ex)
-            {
-            }
+            while (!waiter.signalled && (remaining > 0))
+                remaining = waiter.condition.awaitNanos(remaining);
         }
-        else
+        catch (InterruptedException e)
         {
-            synchronized (_lock)
-            {
-                try
-                {
-                    _lock.wait(waitTime);
-                }
-                catch (InterruptedException e)
-                {
-                }
-            }
         }
+        finally
+        {
+            _waiters.remove(waiter);
 
-        Date d2 = Calendar.getInstance().getTime();
-
-        if (lock)
-            _instance.lock();
+            if (!held)
+                _instance.unlock();
+        }
 
-        return (int) (d2.getTime() - d1.getTime());
+        return (int) TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
     }
 
     /**
-     * Signal that the lock has been released.
+     * Signal that the lock has been released. The longest waiting thread is
+     * handed the opportunity to acquire the lock, along with any READ waiters
+     * queued directly behind it.
      */
 
     public void signal ()
     {
-        synchronized (_lock)
+        _instance.lock();
+
+        try
+        {
+            Iterator<Waiter> iter = _waiters.iterator();
+            boolean woken = false;
+
+            while (iter.hasNext())
+            {
+                Waiter waiter = iter.next();
+
+                if (waiter.signalled)
+                    continue;
+
+                if (woken && waiter.exclusive)
+                    break;
+
+                waiter.signalled = true;
+                waiter.condition.signal();
+
+                if (waiter.exclusive)
+                    break;
+
+                woken = true;
+            }
+        }
+        finally
+        {
+            _instance.unlock();
+        }
+    }
+
+    private static final class Waiter
+    {
+        Waiter (boolean exclusive, Condition condition)
         {
-            _lock.notifyAll();
+            this.exclusive = exclusive;
+            this.condition = condition;
         }
+
+        final boolean exclusive;
+        final Condition condition;
+        boolean signalled;
     }
 
-    private Object _lock;
     private ReentrantLock _instance;
+    private ArrayDeque<Waiter> _waiters;  // guarded by _instance
 }
@@ -0,0 +1,166 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2006, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ *
+ * (C) 2005-2006,
+ * @author JBoss Inc.
+ */
+
+package com.arjuna.ats.internal.txoj.lockstore;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.arjuna.ats.arjuna.common.Uid;
+import com.arjuna.ats.arjuna.state.InputObjectState;
+import com.arjuna.ats.arjuna.state.OutputObjectState;
+import com.arjuna.ats.internal.txoj.LockList;
+import com.arjuna.ats.txoj.exceptions.LockStoreException;
+import com.arjuna.ats.txoj.lockstore.LockStore;
+import com.arjuna.ats.txoj.logging.txojLogger;
+
+/**
+ * A lock store for multiple threads within a single JVM. Rather than packing
+ * the locks into an OutputObjectState each time they change, the LockManager
+ * works directly on a live LockList held here, keyed by object Uid. Each
+ * object has its own mutex so that unrelated objects never contend, and
+ * nothing is ever serialised or written to disk.
+ *
+ * If locks must be shared between processes then BasicPersistentLockStore
+ * should be used instead.
+ *
+ * The state based operations are also supported (by keeping the state in
+ * memory) for lock managers which do their own packing.
+ */
+
+public class InMemoryLockStore extends LockStore
+{
+    public InMemoryLockStore()
+    {
+        if (txojLogger.logger.isTraceEnabled()) {
+            txojLogger.logger.trace("InMemoryLockStore.InMemoryLockStore()");
+        }
+    }
+
+    /**
+     * Get exclusive access to the locks for the given object, waiting for any
+     * other thread which currently has access to them. The mutex is shared by
+     * every LockManager instance for the object, so failing instead of waiting
+     * would turn ordinary contention between instances into refused locks.
+     *
+     * @return the live lock list.
+     */
+
+    public LockList acquire (Uid u)
+    {
+        for (;;)
+        {
+            LockTable table = lockTables.get(u);
+
+            if (table == null)
+            {
+                LockTable newTable = new LockTable();
+
+                table = lockTables.putIfAbsent(u, newTable);
+
+                if (table == null)
+                    table = newTable;
+            }
+
+            table.mutex.lock();
+
+            /*
+             * The table may have been discarded (because it became empty)
+             * between finding it and locking it.
+             */
+
+            if (lockTables.get(u) == table)
+                return table.locks;
+
+            table.mutex.unlock();
+        }
+    }
+
+    /**
+     * Give up access to the locks for the given object, which must have been
+     * obtained via acquire.
+     *
+     * @param locks the (possibly new) lock list to associate with the object.
+     */
+
+    public void release (Uid u, LockList locks)
+    {
+        LockTable table = lockTables.get(u);
+
+        if ((table == null) || !table.mutex.isHeldByCurrentThread())
+            return;
+
+        if (locks != null)
+            table.locks = locks;
+
+        if ((table.locks.entryCount() == 0) && (table.mutex.getHoldCount() == 1))
+            lockTables.remove(u, table);
+
+        table.mutex.unlock();
+    }
+
+    public InputObjectState read_state (Uid u, String tName)
+            throws LockStoreException
+    {
+        if (txojLogger.logger.isTraceEnabled()) {
+            txojLogger.logger.trace("InMemoryLockStore.read_state(" + u + ", " + tName + ")");
+        }
+
+        OutputObjectState state = states.get(u);
+
+        return ((state == null) ? null : new InputObjectState(state));
+    }
+
+    public boolean remove_state (Uid u, String tName)
+    {
+        if (txojLogger.logger.isTraceEnabled()) {
+            txojLogger.logger.trace("InMemoryLockStore.remove_state(" + u + ", " + tName + ")");
+        }
+
+        states.remove(u);
+
+        return true;
+    }
+
+    public boolean write_committed (Uid u, String tName, OutputObjectState state)
+    {
+        if (txojLogger.logger.isTraceEnabled()) {
+            txojLogger.logger.trace("InMemoryLockStore.write_committed(" + u + ", " + tName + ", "
+                    + state + ")");
+        }
+
+        if (state.size() <= 0)
+            return false;
+
+        states.put(u, state);
+
+        return true;
+    }
+
+    private static final class LockTable
+    {
+        final ReentrantLock mutex = new ReentrantLock();
+        LockList locks = new LockList();
+    }
+
+    private static final ConcurrentHashMap<Uid, LockTable> lockTables = new ConcurrentHashMap<Uid, LockTable>();
+    private static final ConcurrentHashMap<Uid, OutputObjectState> states = new ConcurrentHashMap<Uid, OutputObjectState>();
+}
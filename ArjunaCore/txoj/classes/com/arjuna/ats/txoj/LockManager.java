@@ -58,6 +58,7 @@ import com.arjuna.ats.internal.txoj.abstractrecords.CadaverLockRecord;
 import com.arjuna.ats.internal.txoj.abstractrecords.LockRecord;
 import com.arjuna.ats.internal.txoj.lockstore.BasicLockStore;
 import com.arjuna.ats.internal.txoj.lockstore.BasicPersistentLockStore;
+import com.arjuna.ats.internal.txoj.lockstore.InMemoryLockStore;
 import com.arjuna.ats.txoj.common.txojPropertyManager;
 import com.arjuna.ats.txoj.exceptions.LockStoreException;
 import com.arjuna.ats.txoj.lockstore.LockStore;
@@ -250,6 +251,14 @@ public class LockManager extends StateManager
                     }
 
                     conflictManager.wait(1, LockManager.DOZE_TIME);
+
+                    /*
+                     * We do not acquire a lock here, so if a release woke us
+                     * rather than a conflicting lock request then pass the
+                     * wakeup on so that it is not lost.
+                     */
+
+                    conflictManager.signal();
                 }
 
             }
@@ -363,6 +372,7 @@ public class LockManager extends StateManager
             int conflict = ConflictType.CONFLICT;
             LockRecord newLockR = null;
             boolean modifyRequired = false;
+            boolean waited = false;
             BasicAction currAct = null;
 
             if (toSet == null)
@@ -518,7 +528,8 @@ public class LockManager extends StateManager
                     {
                         if (sleepTime > 0)
                         {
-                            sleepTime -= conflictManager.wait(retry, sleepTime);
+                            sleepTime -= conflictManager.wait(toSet, sleepTime, waited);
+                            waited = true;
                         }
                         else
                             retry = 0;
@@ -528,6 +539,14 @@ public class LockManager extends StateManager
                         retry--;
                 }
             }
+
+            /*
+             * If we were woken to retry but are giving up then pass the
+             * wakeup on to the next waiter so that it is not lost.
+             */
+
+            if (waited && (returnStatus != LockResult.GRANTED))
+                conflictManager.signal();
         }
         finally
         {
@@ -629,7 +648,7 @@ public class LockManager extends StateManager
         stateLoaded = false;
         hasBeenLocked = false;
         objectLocked = false;
-        conflictManager = new LockConflictManager(mutex);
+        conflictManager = new LockConflictManager(getMutex());
     }
 
     /*
@@ -663,7 +682,7 @@ public class LockManager extends StateManager
         stateLoaded = false;
         hasBeenLocked = false;
         objectLocked = false;
-        conflictManager = new LockConflictManager(mutex);
+        conflictManager = new LockConflictManager(getMutex());
     }
 
     /**
@@ -927,7 +946,11 @@ public class LockManager extends StateManager
              * cached lock list. Otherwise, do nothing.
              */
 
-            if (super.objectModel != ObjectModel.SINGLE)
+            if (liveState)
+            {
+                releaseLiveState();
+            }
+            else if (super.objectModel != ObjectModel.SINGLE)
             {
                 /* clear out the existing list */
 
@@ -989,6 +1012,8 @@ public class LockManager extends StateManager
                     {
                         if (lockStoreType.equals(BasicLockStore.class.getName())) {
                             lockStore = new BasicLockStore();
+                        } else if (lockStoreType.equals(InMemoryLockStore.class.getName())) {
+                            lockStore = new InMemoryLockStore();
                         } else {
                             ObjectStoreEnvironmentBean objectStoreEnvironmentBean = new ObjectStoreEnvironmentBean();
                             objectStoreEnvironmentBean.setLocalOSRoot(systemKey);
@@ -1060,6 +1085,22 @@ public class LockManager extends StateManager
                 return false; /* init failed */
             }
 
+            /*
+             * An in-memory lock store gives us the live lock list, so there
+             * is nothing to unpack. Its per-object mutex replaces ours and is
+             * shared with every other instance of this object, so we wait for
+             * it rather than give up.
+             */
+
+            if (lockStore instanceof InMemoryLockStore)
+            {
+                locksHeld = ((InMemoryLockStore) lockStore).acquire(get_uid());
+                liveState = true;
+                stateLoaded = true;
+
+                return true;
+            }
+
             if ((mutex == null) || (!mutex.tryLock()))
             {
                 return false;
@@ -1231,6 +1272,12 @@ public class LockManager extends StateManager
 
             return true;
         }
+        else if (liveState)
+        {
+            releaseLiveState();
+
+            return true;
+        }
         else
         {
             boolean unloadOk = false;
@@ -1321,6 +1368,20 @@ public class LockManager extends StateManager
         }
     }
 
+    /*
+     * Hand the live lock list back to the in-memory lock store and detach
+     * from it, so that nothing touches it without holding its mutex.
+     */
+
+    private final void releaseLiveState ()
+    {
+        ((InMemoryLockStore) lockStore).release(get_uid(), locksHeld);
+
+        locksHeld = new LockList();
+        liveState = false;
+        stateLoaded = false;
+    }
+
     protected String lockStoreType = txojPropertyManager.getTxojEnvironmentBean().getLockStoreType();
 
     protected String systemKey; /* used in accessing system resources */
@@ -1342,6 +1403,8 @@ public class LockManager extends StateManager
 
     protected boolean objectLocked;/* Semaphore grabbed */
 
+    private boolean liveState; /* locksHeld belongs to an InMemoryLockStore */
+
     protected ReentrantLock mutex = new ReentrantLock();  /* Controls access to the lock store */
 
     protected LockConflictManager conflictManager;
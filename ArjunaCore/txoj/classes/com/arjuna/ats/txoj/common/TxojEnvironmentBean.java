@@ -84,6 +84,9 @@ public class TxojEnvironmentBean implements TxojEnvironmentBeanMBean
     /**
      * Sets the name of the lock store implementation.
      *
+     * InMemoryLockStore may be set to share live lock lists between objects
+     * within the VM when locks never need to be seen by other processes.
+     *
      * @param lockStoreType the name of the lock store implementation.
      */
     public void setLockStoreType(String lockStoreType)
@@ -31,13 +31,18 @@
 
 package com.arjuna.ats.txoj;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.junit.Test;
 
+import com.arjuna.ats.arjuna.AtomicAction;
+import com.arjuna.ats.arjuna.common.Uid;
 import com.arjuna.ats.internal.txoj.LockConflictManager;
+import com.hp.mwtests.ts.txoj.common.resources.AtomicObject;
 
 public class LockConflictUnitTest
 {
@@ -56,4 +61,121 @@ public class LockConflictUnitTest
 
         manager.signal();
     }
+
+    @Test
+    public void testHandoff () throws Exception
+    {
+        final ReentrantLock lock = new ReentrantLock();
+        final LockConflictManager manager = new LockConflictManager(lock);
+        final int[] waited = new int[1];
+
+        Thread waiter = new Thread()
+        {
+            public void run ()
+            {
+                waited[0] = manager.wait(new Lock(LockMode.WRITE), 60000, false);
+            }
+        };
+
+        waiter.start();
+
+        /*
+         * Keep signalling until the waiter has been queued and woken.
+         */
+
+        while (waiter.isAlive())
+        {
+            manager.signal();
+
+            waiter.join(100);
+        }
+
+        assertTrue(waited[0] < 60000);
+    }
+
+    @Test
+    public void testPropagatePassesOnWakeup () throws Exception
+    {
+        final FlakyObject obj = new FlakyObject();
+        final int[] result = { LockResult.REFUSED };
+        AtomicAction holder = new AtomicAction();
+
+        holder.begin();
+
+        assertEquals(LockResult.GRANTED, obj.setlock(new Lock(LockMode.WRITE), 0));
+
+        /*
+         * The propagate cannot load the lock state so it dozes, and is queued
+         * ahead of the setlock which conflicts with the lock held above.
+         */
+
+        obj.failLoad = true;
+
+        Thread propagator = new Thread()
+        {
+            public void run ()
+            {
+                obj.propagate(new Uid(), new Uid());
+            }
+        };
+
+        propagator.start();
+        waitForBlocked(propagator);
+
+        Thread waiter = new Thread()
+        {
+            public void run ()
+            {
+                AtomicAction A = new AtomicAction();
+
+                A.begin();
+
+                result[0] = obj.setlock(new Lock(LockMode.WRITE), LockManager.waitTotalTimeout, 60000);
+
+                A.abort();
+            }
+        };
+
+        waiter.start();
+        waitForBlocked(waiter);
+
+        /*
+         * The release wakes the propagate, which must hand the wakeup on to
+         * the setlock rather than leave it waiting out its timeout.
+         */
+
+        holder.commit();
+
+        waiter.join(10000);
+
+        assertFalse(waiter.isAlive());
+        assertEquals(LockResult.GRANTED, result[0]);
+
+        propagator.join(10000);
+
+        assertFalse(propagator.isAlive());
+    }
+
+    private static void waitForBlocked (Thread thread) throws InterruptedException
+    {
+        while (thread.getState() != Thread.State.TIMED_WAITING)
+            Thread.sleep(10);
+    }
+
+    private static class FlakyObject extends AtomicObject
+    {
+        protected boolean loadState ()
+        {
+            if (failLoad)
+            {
+                failLoad = false;
+
+                return false;
+            }
+
+            return super.loadState();
+        }
+
+        volatile boolean failLoad;
+    }
 }
@@ -32,10 +32,15 @@
 package com.hp.mwtests.ts.txoj.concurrencycontrol;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintWriter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 
@@ -43,9 +48,14 @@ import com.arjuna.ats.arjuna.AtomicAction;
 import com.arjuna.ats.arjuna.ObjectModel;
 import com.arjuna.ats.arjuna.ObjectType;
 import com.arjuna.ats.arjuna.common.Uid;
+import com.arjuna.ats.internal.txoj.LockList;
+import com.arjuna.ats.internal.txoj.lockstore.BasicLockStore;
 import com.arjuna.ats.internal.txoj.lockstore.BasicPersistentLockStore;
+import com.arjuna.ats.internal.txoj.lockstore.InMemoryLockStore;
 import com.arjuna.ats.txoj.LockResult;
+import com.arjuna.ats.txoj.common.TxojEnvironmentBean;
 import com.arjuna.ats.txoj.common.txojPropertyManager;
+import com.hp.mwtests.ts.txoj.common.exceptions.TestException;
 import com.hp.mwtests.ts.txoj.common.resources.AtomicObjectLockStore;
 
 public class LockStoreUnitTest
@@ -65,6 +75,97 @@ public class LockStoreUnitTest
         assertTrue(obj.getLockStore().getClass().getName().equals(BasicPersistentLockStore.class.getName()));
     }
 
+    @Test
+    public void testDefaultLockStore () throws Throwable
+    {
+        // the in-memory store does not share locks between processes so it is never the default
+
+        assertEquals(BasicLockStore.class.getName(), new TxojEnvironmentBean().getLockStoreType());
+    }
+
+    @Test
+    public void testInMemory () throws Throwable
+    {
+        txojPropertyManager.getTxojEnvironmentBean().setLockStoreType(InMemoryLockStore.class.getName());
+
+        AtomicObjectLockStore obj = new AtomicObjectLockStore(ObjectModel.MULTIPLE);
+
+        obj.set(0);
+        obj.incr(1);
+
+        assertEquals(obj.get(), 1);
+
+        assertTrue(obj.getLockStore() instanceof InMemoryLockStore);
+
+        /*
+         * All of the locks should have been released when the actions ended.
+         */
+
+        InMemoryLockStore store = (InMemoryLockStore) obj.getLockStore();
+        LockList locks = store.acquire(obj.get_uid());
+
+        assertNotNull(locks);
+        assertEquals(locks.entryCount(), 0);
+
+        store.release(obj.get_uid(), null);
+    }
+
+    /*
+     * Two instances of the same object share one lock list in the store, so
+     * their threads contend for the same mutex. None of the (compatible) read
+     * locks should be refused because of that contention.
+     */
+
+    @Test
+    public void testInMemoryContention () throws Throwable
+    {
+        txojPropertyManager.getTxojEnvironmentBean().setLockStoreType(InMemoryLockStore.class.getName());
+
+        AtomicObjectLockStore original = new AtomicObjectLockStore(ObjectModel.MULTIPLE);
+
+        original.set(1);
+
+        final AtomicObjectLockStore[] instances = {
+                new AtomicObjectLockStore(original.get_uid(), ObjectModel.MULTIPLE),
+                new AtomicObjectLockStore(original.get_uid(), ObjectModel.MULTIPLE) };
+
+        ExecutorService executor = Executors.newFixedThreadPool(instances.length);
+        Future<?>[] results = new Future<?>[instances.length];
+
+        try
+        {
+            for (int i = 0; i < instances.length; i++)
+            {
+                final AtomicObjectLockStore obj = instances[i];
+
+                results[i] = executor.submit(new java.util.concurrent.Callable<Void>()
+                {
+                    public Void call () throws TestException
+                    {
+                        for (int j = 0; j < 200; j++)
+                            assertEquals(1, obj.get());
+
+                        return null;
+                    }
+                });
+            }
+
+            for (Future<?> result : results)
+                result.get(60, TimeUnit.SECONDS);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        InMemoryLockStore store = (InMemoryLockStore) instances[0].getLockStore();
+        LockList locks = store.acquire(original.get_uid());
+
+        assertEquals(locks.entryCount(), 0);
+
+        store.release(original.get_uid(), null);
+    }
+
     /*
      * This is not meant to be driven by the normal unit test process.
      *
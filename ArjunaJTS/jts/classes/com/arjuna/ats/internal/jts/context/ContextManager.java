@@ -31,9 +31,12 @@
 
 package com.arjuna.ats.internal.jts.context;
 
+import java.util.Deque;
 import java.util.EmptyStackException;
-import java.util.Hashtable;
+import java.util.Iterator;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
 
 import org.omg.CORBA.Any;
 import org.omg.CORBA.BAD_OPERATION;
@@ -68,6 +71,13 @@ import com.arjuna.ats.jts.logging.jtsLogger;
  * This class is responsible for managing the thread-to-transaction
  * context mappings.
  *
+ * Each thread keeps its context hierarchy in thread local storage so the
+ * common case, where a thread manipulates its own context, does not need
+ * to build a thread id or take any shared lock. Hierarchies are also
+ * registered by thread id while they are non-empty so that the ORB
+ * interceptors can find and clean up the context of a thread other than
+ * the one they are running on.
+ *
  * @author Mark Little (mark@arjuna.com)
  * @version $Id: ContextManager.java 2342 2006-03-30 13:06:17Z  $
  * @since JTS 1.0.
@@ -106,23 +116,9 @@ public class ContextManager
 
     public ControlWrapper current (String threadId) throws SystemException
     {
-	Object arg = otsCurrent.get(threadId);
-	ControlWrapper wrapper = null;
+	ContextStack hier = find(threadId);
 
-	if (arg != null)
-	{
-	    try
-	    {
-		Stack hier = (Stack) arg;
-
-		return (ControlWrapper) hier.peek();
-	    }
-	    catch (EmptyStackException e)
-	    {
-	    }
-	}
-
-	return null;
+	return (hier == null ? null : hier.actions.peek());
     }
 
     /**
@@ -138,22 +134,7 @@ public class ContextManager
         jtsLogger.logger.trace("ContextManager::current ()");
     }
 
-	Object arg = otsCurrent.get(ThreadUtil.getThreadId());
-	ControlWrapper wrapper = null;
-
-	if (arg != null)
-	{
-	    try
-	    {
-		Stack hier = (Stack) arg;
-
-		wrapper = (ControlWrapper) hier.peek();
-	    }
-	    catch (EmptyStackException e)
-	    {
-		e.printStackTrace();
-	    }
-	}
+	ControlWrapper wrapper = _otsCurrent.get().actions.peek();
 
 	/*
 	 * If we do not have a context currently, then check to see if
@@ -188,41 +169,35 @@ public class ContextManager
     }
 
     public final ControlWrapper popAction (String threadId)
+    {
+	return popAction(find(threadId));
+    }
+
+    private final ControlWrapper popAction (ContextStack sl)
     {
 	if (jtsLogger.logger.isTraceEnabled()) {
         jtsLogger.logger.trace("ContextManager::popAction ()");
     }
 
 	ControlWrapper action = null;
-	Object arg = threadId == null ? null : otsCurrent.get(threadId);
 
-	if (arg != null)
+	if (sl != null)
 	{
-	    Stack sl = (Stack) arg;
-
-	    try
-	    {
-		/*
-		 * When we pushed the action we did the check for whether
-		 * it was local to save time now.
-		 */
+	    /*
+	     * When we pushed the action we did the check for whether
+	     * it was local to save time now.
+	     */
 
-		action = (ControlWrapper) sl.pop();
-	    }
-	    catch (EmptyStackException e)
-	    {
-	    }
+	    action = sl.actions.pollFirst();
 
 	    /*
-	     * If size now zero we can delete from thread
-	     * specific data.
+	     * If size now zero we can delete from the thread id
+	     * registry.
 	     */
 
-	    if (sl.size() == 0)
+	    if ((action != null) && sl.actions.isEmpty())
 	    {
-		sl = null;
-
-		otsCurrent.remove(threadId);
+		_registered.remove(sl.threadId, sl);
 
 		disassociateContext(OTSManager.getLocalSlotId());
 	    }
@@ -254,7 +229,7 @@ public class ContextManager
 
 		try
 		{
-		    ThreadActionData.popAction(threadId);
+		    ThreadActionData.popAction(sl.threadId);
 		}
 		catch (EmptyStackException e)
 		{
@@ -267,7 +242,7 @@ public class ContextManager
 
     public final ControlWrapper popAction ()
     {
-        return popAction(ThreadUtil.getThreadId());
+        return popAction(_otsCurrent.get());
     }
 
     public final void purgeActions (String threadId)
@@ -283,20 +258,89 @@ public class ContextManager
 	 * are!
 	 */
 
-	ControlWrapper ptr = popAction(threadId);
+	purgeActions(find(threadId));
+    }
+
+    public final void purgeActions ()
+    {
+        purgeActions(_otsCurrent.get());
+    }
+
+    private final void purgeActions (ContextStack hier)
+    {
+	ControlWrapper ptr = popAction(hier);
 
 	while (ptr != null)
 	{
-	    ptr = null;
+	    ptr = popAction(hier);
+	}
+    }
+
+    /**
+     * Get the context hierarchy of the invoking thread so that it can be
+     * propagated to another thread with {@link #resumeHierarchy}.
+     *
+     * @return the hierarchy, with the top-level transaction first, or an
+     * empty array if the thread has no context.
+     */
+
+    public final ControlWrapper[] getHierarchy ()
+    {
+	Deque<ControlWrapper> actions = _otsCurrent.get().actions;
+	ControlWrapper[] hier = new ControlWrapper[actions.size()];
+	Iterator<ControlWrapper> iter = actions.descendingIterator();
+	int i = 0;
+
+	while (iter.hasNext() && i < hier.length)
+	    hier[i++] = iter.next();
+
+	if (i < hier.length)
+	{
+	    // the hierarchy shrank while we were copying it
+
+	    ControlWrapper[] copy = new ControlWrapper[i];
 
-	    ptr = popAction(threadId);
+	    System.arraycopy(hier, 0, copy, 0, i);
 
-	} while (ptr != null);
+	    hier = copy;
+	}
+
+	return hier;
     }
 
-    public final void purgeActions ()
+    /**
+     * Associate a context hierarchy obtained from {@link #getHierarchy} with
+     * the invoking thread. Any context the thread already has is left
+     * in place beneath the new hierarchy.
+     *
+     * @param hier the hierarchy, with the top-level transaction first.
+     */
+
+    public final void resumeHierarchy (ControlWrapper[] hier)
+    {
+	if (hier != null)
+	{
+	    for (ControlWrapper action : hier)
+		pushAction(action);
+	}
+    }
+
+    /**
+     * Called by the ORB interceptors when a thread has finished handling a
+     * request so that any context that is still associated with it is
+     * released. The thread need not be the one that invokes this method.
+     *
+     * @param threadId the id of the thread.
+     */
+
+    public final void threadCompleted (String threadId)
     {
-        purgeActions(ThreadUtil.getThreadId(Thread.currentThread()));
+	if (jtsLogger.logger.isTraceEnabled()) {
+        jtsLogger.logger.trace("ContextManager::threadCompleted ( "+threadId+" )");
+    }
+
+	if (threadId != null)
+	    purgeActions(find(threadId));
     }
 
     /**
@@ -520,15 +564,8 @@ public class ContextManager
         jtsLogger.logger.trace("ContextManager::pushAction ()");
     }
 
-	final String threadId = ThreadUtil.getThreadId() ;
-	Stack sl = (Stack) otsCurrent.get(threadId);
-	boolean isNew = false;
-
-	if (sl == null)
-	{
-	    isNew = true;
-	    sl = new Stack();
-	}
+	final ContextStack sl = _otsCurrent.get();
+	boolean isNew = sl.actions.isEmpty();
 
 	// Check here that action is local and not a proxy.
 
@@ -542,16 +579,21 @@ public class ContextManager
 	    action.determineLocality();
 
 	/*
-	 * Doesn't need to be synchronized since only this thread
-	 * can play with its own stack!
+	 * Doesn't need to be synchronized since the interceptors only
+	 * remove entries and the deque is thread safe.
 	 */
 
-	sl.push(action);
+	sl.actions.push(action);
 
-	if (isNew)
-	    otsCurrent.put(threadId, sl);
+	/*
+	 * An interceptor may have emptied the hierarchy (and so removed it
+	 * from the registry) since we looked.
+	 */
 
-	associateContext();
+	if (isNew || _registered.get(sl.threadId) != sl)
+	    _registered.put(sl.threadId, sl);
+
+	associateContext(sl.threadId);
 
 	if (action.isLocal())
 	{
@@ -612,7 +654,7 @@ public class ContextManager
 
 		    org.omg.CORBA.Any threadData = ORBManager.getORB().orb().create_any();
 
-		    threadData.insert_string(ThreadUtil.getThreadId());
+		    threadData.insert_string(_otsCurrent.get().threadId);
 
 		    _piCurrent.set_slot(slotId, threadData);
 
@@ -730,7 +772,7 @@ public class ContextManager
 	    return null;
     }
 
-    private final void associateContext () throws SystemException
+    private final void associateContext (String threadId) throws SystemException
     {
 	if (_piCurrent != null)
 	{
@@ -742,7 +784,7 @@ public class ContextManager
 		{
 		    org.omg.CORBA.Any localDataAny = ORBManager.getORB().orb().create_any();
 
-		    localDataAny.insert_string(ThreadUtil.getThreadId());
+		    localDataAny.insert_string(threadId);
 
 		    _piCurrent.set_slot(slotId, localDataAny);
 		}
@@ -790,7 +832,49 @@ public class ContextManager
 			return null;		
 	}
 
-    private Hashtable otsCurrent = new Hashtable();
+    /*
+     * Find the hierarchy for the given thread, avoiding the registry if it
+     * is the invoking thread.
+     */
+
+    private final ContextStack find (String threadId)
+    {
+	if (threadId == null)
+	    return null;
+
+	ContextStack local = _otsCurrent.get();
+
+	if (threadId.equals(local.threadId))
+	    return local;
+
+	return _registered.get(threadId);
+    }
+
+    /*
+     * The context hierarchy of a single thread. The current action is at
+     * the front of the deque.
+     */
+
+    private static final class ContextStack
+    {
+	ContextStack (String threadId)
+	{
+	    this.threadId = threadId;
+	}
+
+	final String threadId;
+	final Deque<ControlWrapper> actions = new ConcurrentLinkedDeque<ControlWrapper>();
+    }
+
+    private final ThreadLocal<ContextStack> _otsCurrent = new ThreadLocal<ContextStack>()
+    {
+	protected ContextStack initialValue ()
+	{
+	    return new ContextStack(ThreadUtil.getThreadId());
+	}
+    };
+
+    private final ConcurrentHashMap<String, ContextStack> _registered = new ConcurrentHashMap<String, ContextStack>();
 
     private org.omg.PortableInterceptor.Current _piCurrent = null;
 
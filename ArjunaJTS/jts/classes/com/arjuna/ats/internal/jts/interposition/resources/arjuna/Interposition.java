@@ -31,8 +31,8 @@
 
 package com.arjuna.ats.internal.jts.interposition.resources.arjuna;
 
-import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.omg.CORBA.CompletionStatus;
 import org.omg.CORBA.SystemException;
@@ -57,7 +57,11 @@ public class Interposition
 
     public Interposition ()
     {
-        _head = new LinkedList(); // not synchronized as the methods that access it all are synchronized.
+        _head = new ConcurrentHashMap<Uid, ServerTopLevelAction>();
+        _locks = new Object[LOCK_STRIPES];
+
+        for (int i = 0; i < _locks.length; i++)
+            _locks[i] = new Object();
     }
 
 public static ControlImple create (PropagationContext context) throws SystemException
@@ -82,9 +86,12 @@ public static boolean destroy (Uid act)
      *
      * Because of the way garbage collection works in the ORB we have to
      * run an explicit garbage collection phase for finished hierarchies.
+     *
+     * Only the hierarchy being imported is locked, so contexts for
+     * different top-level transactions can be imported in parallel.
      */
 
-public synchronized ControlImple setupHierarchy (PropagationContext context) throws SystemException
+public ControlImple setupHierarchy (PropagationContext context) throws SystemException
     {
 	ControlImple controlPtr = null;
 	Uid theUid = null;
@@ -95,46 +102,59 @@ public synchronized ControlImple setupHierarchy (PropagationContext context) thr
 	else
 	    theUid = Utility.otidToUid(context.parents[context.parents.length-1].otid);
 
-	proxyAction = present(theUid);
-
-	if (proxyAction == null)
+	synchronized (hierarchyLock(theUid))
 	{
-	    /*
-	     * Create a new proxyAction element and return the
-	     * "current" transaction.
-	     */
+	    proxyAction = present(theUid);
 
-	    controlPtr = createHierarchy(context, theUid);
-	}
-	else
-	{
-	    /*
-	     * Check hierarchy of existing element.
-	     */
+	    if (proxyAction == null)
+	    {
+		/*
+		 * Create a new proxyAction element and return the
+		 * "current" transaction.
+		 */
+
+		controlPtr = createHierarchy(context, theUid);
+	    }
+	    else
+	    {
+		/*
+		 * Check hierarchy of existing element.
+		 */
 
-	    controlPtr = checkHierarchy(proxyAction, context);
-	    proxyAction = null;
+		controlPtr = checkHierarchy(proxyAction, context);
+		proxyAction = null;
+	    }
 	}
 
 	return controlPtr;
     }
 
-    protected final synchronized ServerTopLevelAction present (Uid actUid)
+    protected final ServerTopLevelAction present (Uid actUid)
     {
-        if(_head == null) {
-            return null;
-        }
+        return _head.get(actUid);
+    }
 
-        for(ServerTopLevelAction action : _head) {
-            if(actUid.equals(action.get_uid())) {
-                return action;
-            }
-        }
+    /**
+     * Record a newly imported top-level transaction. Callers must hold the
+     * {@link #hierarchyLock} for its Uid.
+     */
+
+    protected final void addHierarchy (ServerTopLevelAction action)
+    {
+        _head.put(action.get_uid(), action);
+    }
+
+    /**
+     * @return the monitor guarding the imported hierarchy of the given
+     * top-level transaction.
+     */
 
-        return null;
+    protected final Object hierarchyLock (Uid theUid)
+    {
+        return _locks[(theUid.hashCode() & 0x7fffffff) % _locks.length];
     }
 
-protected synchronized ControlImple createHierarchy (PropagationContext ctx, Uid tlUid) throws SystemException
+protected ControlImple createHierarchy (PropagationContext ctx, Uid tlUid) throws SystemException
     {
 	/*
 	 * Start at the parent and work our way down to "current". The current
@@ -194,7 +214,7 @@ protected synchronized ControlImple createHierarchy (PropagationContext ctx, Uid
 
 	ServerTopLevelAction newElement = (ServerTopLevelAction)action;
 
-	_head.add(newElement);
+	addHierarchy(newElement);
 
 	if (depth > 0) // current is a nested transaction
 	{
@@ -299,7 +319,7 @@ protected synchronized ControlImple createHierarchy (PropagationContext ctx, Uid
      * same way as we did for creating a completely new hierarchy.
      */
 
-protected synchronized ControlImple checkHierarchy (ServerTopLevelAction hier,
+protected ControlImple checkHierarchy (ServerTopLevelAction hier,
 						   PropagationContext context) throws SystemException
     {
 	ServerControl control = null;
@@ -480,13 +500,17 @@ protected synchronized ControlImple checkHierarchy (ServerTopLevelAction hier,
 	return control;
     }
 
-    protected final synchronized boolean removeHierarchy (Uid theUid)
+    protected final boolean removeHierarchy (Uid theUid)
     {
-        ServerTopLevelAction action = present(theUid);
+        ServerTopLevelAction action;
+
+        synchronized (hierarchyLock(theUid))
+        {
+            action = _head.remove(theUid);
+        }
 
         if (action != null)
         {
-            _head.remove(action);
             return true;
         }
         else
@@ -619,7 +643,11 @@ protected final void compareHierarchies (PropagationContext ctx, ServerTopLevelA
         return hier;
     }
 
-protected List<ServerTopLevelAction> _head;
+protected ConcurrentHashMap<Uid, ServerTopLevelAction> _head;
+
+private Object[] _locks;
+
+private static final int LOCK_STRIPES = 64;
 
 private static Interposition __list = new Interposition();
 
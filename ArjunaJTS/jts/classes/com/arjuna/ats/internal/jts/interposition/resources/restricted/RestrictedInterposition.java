@@ -71,7 +71,7 @@ public class RestrictedInterposition extends Interposition
      * finished hierarchies.
      */
 
-    public synchronized ControlImple setupHierarchy (PropagationContext context)
+    public ControlImple setupHierarchy (PropagationContext context)
             throws SystemException
     {
         ControlImple controlPtr = null;
@@ -84,30 +84,33 @@ public class RestrictedInterposition extends Interposition
             theUid = Utility
                     .otidToUid(context.parents[context.parents.length - 1].otid);
 
-        proxyAction = super.present(theUid);
-
-        if (proxyAction == null)
+        synchronized (hierarchyLock(theUid))
         {
-            /*
-             * Create a new proxyAction element and return the "current"
-             * transaction.
-             */
+            proxyAction = super.present(theUid);
 
-            controlPtr = createHierarchy(context, theUid);
-        }
-        else
-        {
-            /*
-             * Check hierarchy of existing element.
-             */
+            if (proxyAction == null)
+            {
+                /*
+                 * Create a new proxyAction element and return the "current"
+                 * transaction.
+                 */
 
-            controlPtr = checkHierarchy(proxyAction, context);
+                controlPtr = createHierarchy(context, theUid);
+            }
+            else
+            {
+                /*
+                 * Check hierarchy of existing element.
+                 */
+
+                controlPtr = checkHierarchy(proxyAction, context);
+            }
         }
 
         return controlPtr;
     }
 
-    protected synchronized ControlImple createHierarchy (
+    protected ControlImple createHierarchy (
             PropagationContext ctx, Uid tlUid) throws SystemException
     {
         /*
@@ -166,7 +169,7 @@ public class RestrictedInterposition extends Interposition
 
         ServerTopLevelAction newElement = tlAction;
 
-        super._head.add(newElement);
+        super.addHierarchy(newElement);
 
         if (depth > 0) // current is a nested transaction
         {
@@ -259,7 +262,7 @@ public class RestrictedInterposition extends Interposition
      * actions.
      */
 
-    protected synchronized ControlImple checkHierarchy (
+    protected ControlImple checkHierarchy (
             ServerTopLevelAction hier, PropagationContext context)
             throws SystemException
     {
@@ -77,10 +77,13 @@ import com.arjuna.ArjunaOTS.UidCoordinator;
 import com.arjuna.ats.arjuna.common.Uid;
 import com.arjuna.ats.arjuna.coordinator.AbstractRecord;
 import com.arjuna.ats.arjuna.coordinator.ActionStatus;
+import com.arjuna.ats.arjuna.coordinator.ActionType;
 import com.arjuna.ats.arjuna.coordinator.AddOutcome;
 import com.arjuna.ats.arjuna.coordinator.BasicAction;
 import com.arjuna.ats.arjuna.coordinator.CheckedAction;
+import com.arjuna.ats.arjuna.coordinator.RecordList;
 import com.arjuna.ats.arjuna.coordinator.TransactionReaper;
+import com.arjuna.ats.arjuna.coordinator.TwoPhaseOutcome;
 import com.arjuna.ats.arjuna.coordinator.TxControl;
 import com.arjuna.ats.internal.jts.ControlWrapper;
 import com.arjuna.ats.internal.jts.ORBManager;
@@ -89,6 +92,7 @@ import com.arjuna.ats.internal.jts.coordinator.CheckedActions;
 import com.arjuna.ats.internal.jts.orbspecific.ControlImple;
 import com.arjuna.ats.internal.jts.orbspecific.TransactionFactoryImple;
 import com.arjuna.ats.internal.jts.recovery.RecoveryCreator;
+import com.arjuna.ats.internal.jts.resources.AsyncPhase2Record;
 import com.arjuna.ats.internal.jts.resources.ExtendedResourceRecord;
 import com.arjuna.ats.internal.jts.resources.ResourceRecord;
 import com.arjuna.ats.internal.jts.resources.SynchronizationRecord;
@@ -1413,6 +1417,54 @@ public class ArjunaTransactionImple extends
 		 */
 	}
 
+	/*
+	 * If asynchronous phase 2 is enabled then once the first resource has
+	 * committed (and so the outcome can no longer change) send commit to all
+	 * of the remaining resources at once. BasicAction still processes the
+	 * records in order but only has to wait for replies that have not yet
+	 * arrived.
+	 */
+
+	protected int doCommit (boolean reportHeuristics, AbstractRecord record)
+	{
+		int outcome = super.doCommit(reportHeuristics, record);
+
+		if (_asyncPhase2 && (typeOfAction() == ActionType.TOP_LEVEL) && (record instanceof AsyncPhase2Record)
+				&& ((outcome == TwoPhaseOutcome.FINISH_OK) || (outcome == TwoPhaseOutcome.HEURISTIC_COMMIT)))
+		{
+			RecordList remaining = preparedList;
+			AbstractRecord r = (remaining == null) ? null : remaining.peekFront();
+
+			while (r != null)
+			{
+				if (r instanceof AsyncPhase2Record)
+					((AsyncPhase2Record) r).commitAsync();
+
+				r = remaining.peekNext(r);
+			}
+		}
+
+		return outcome;
+	}
+
+	protected int doAbort (RecordList list_toprocess, boolean reportHeuristics)
+	{
+		if (_asyncPhase2 && (typeOfAction() == ActionType.TOP_LEVEL) && (list_toprocess != null))
+		{
+			AbstractRecord r = list_toprocess.peekFront();
+
+			while (r != null)
+			{
+				if (r instanceof AsyncPhase2Record)
+					((AsyncPhase2Record) r).rollbackAsync();
+
+				r = list_toprocess.peekNext(r);
+			}
+		}
+
+		return super.doAbort(list_toprocess, reportHeuristics);
+	}
+
 	protected void doBeforeCompletion () throws SystemException
 	{
 	    if (jtsLogger.logger.isTraceEnabled()) {
@@ -2268,6 +2320,8 @@ public class ArjunaTransactionImple extends
 
 	static final boolean _propagateRemainingTimeout = jtsPropertyManager.getJTSEnvironmentBean().isTimeoutPropagation();  // OTS 1.2 onwards supported this.
 
+	static final boolean _asyncPhase2 = jtsPropertyManager.getJTSEnvironmentBean().isAsyncPhase2();
+
 	private static final boolean XA_COMPLIANT = true; // if we ever want to disable this then add an mbean option.
 
     public java.util.Map<Uid, String> getSynchronizations()
@@ -0,0 +1,45 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2006, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags.
+ * See the copyright.txt in the distribution for a full listing
+ * of individual contributors.
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ *
+ * (C) 2005-2006,
+ * @author JBoss Inc.
+ */
+
+package com.arjuna.ats.internal.jts.resources;
+
+/**
+ * A record for a remote resource whose second phase can be started before
+ * the coordinator asks for the outcome. This lets the coordinator issue
+ * commit (or rollback) to several remote resources at once; the outcome of
+ * each is then collected when topLevelCommit (or topLevelAbort) is called
+ * in the usual order.
+ */
+
+public interface AsyncPhase2Record
+{
+    /**
+     * Send commit to the resource without waiting for the reply.
+     */
+
+    public void commitAsync ();
+
+    /**
+     * Send rollback to the resource without waiting for the reply.
+     */
+
+    public void rollbackAsync ();
+}
@@ -41,6 +41,7 @@ package com.arjuna.ats.internal.jts.resources;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.concurrent.Callable;
 
 import org.omg.CORBA.BAD_PARAM;
 import org.omg.CORBA.INVALID_TRANSACTION;
@@ -86,7 +87,7 @@ import com.arjuna.ats.jts.logging.jtsLogger;
  */
 
 public class ExtendedResourceRecord extends
-		com.arjuna.ats.arjuna.coordinator.AbstractRecord
+		com.arjuna.ats.arjuna.coordinator.AbstractRecord implements AsyncPhase2Record
 {
 
 	private boolean lastRecord;
@@ -431,7 +432,40 @@ public class ExtendedResourceRecord extends
 		return o;
 	}
 
+	public void rollbackAsync ()
+	{
+		_pendingOutcome.submit(new Callable<Integer>()
+		{
+			public Integer call ()
+			{
+				return rollback();
+			}
+		});
+	}
+
+	public void commitAsync ()
+	{
+		// the last resource is committed during prepare so there is nothing to send
+		if (!lastRecord)
+		{
+			_pendingOutcome.submit(new Callable<Integer>()
+			{
+				public Integer call ()
+				{
+					return commit();
+				}
+			});
+		}
+	}
+
 	public int topLevelAbort ()
+	{
+		Integer outcome = _pendingOutcome.await();
+
+		return (outcome != null) ? outcome : rollback();
+	}
+
+	private final int rollback ()
 	{
 		if (jtsLogger.logger.isTraceEnabled())
 		{
@@ -487,6 +521,13 @@ public class ExtendedResourceRecord extends
 	}
 
 	public int topLevelCommit ()
+	{
+		Integer outcome = _pendingOutcome.await();
+
+		return (outcome != null) ? outcome : commit();
+	}
+
+	private final int commit ()
 	{
 		if (jtsLogger.logger.isTraceEnabled())
 		{
@@ -1211,5 +1252,6 @@ public class ExtendedResourceRecord extends
 	private boolean _rolledback;
 	private boolean _endpointFailed;
 	private boolean _restored;
+	private final PendingOutcome _pendingOutcome = new PendingOutcome();
 
 }
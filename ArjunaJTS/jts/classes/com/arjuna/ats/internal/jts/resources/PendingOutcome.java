@@ -0,0 +1,83 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2006, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags.
+ * See the copyright.txt in the distribution for a full listing
+ * of individual contributors.
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ *
+ * (C) 2005-2006,
+ * @author JBoss Inc.
+ */
+
+package com.arjuna.ats.internal.jts.resources;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.arjuna.ats.arjuna.coordinator.TwoPhaseCommitThreadPool;
+import com.arjuna.ats.jts.logging.jtsLogger;
+
+/**
+ * The outcome of a second phase invocation that is running on the two
+ * phase commit thread pool.
+ */
+
+class PendingOutcome
+{
+    /**
+     * Start the work unless some is already outstanding.
+     */
+
+    final void submit (Callable<Integer> work)
+    {
+	if (_outcome == null)
+	    _outcome = TwoPhaseCommitThreadPool.submitJob(work);
+    }
+
+    /**
+     * Wait for outstanding work to finish.
+     *
+     * @return the outcome, or <code>null</code> if there was no outstanding
+     * work or it did not complete, in which case the caller should do the
+     * work itself.
+     */
+
+    final Integer await ()
+    {
+	Future<Integer> outcome = _outcome;
+
+	if (outcome == null)
+	    return null;
+
+	_outcome = null;
+
+	try
+	{
+	    return outcome.get();
+	}
+	catch (InterruptedException e)
+	{
+	    Thread.currentThread().interrupt();
+	}
+	catch (ExecutionException e)
+	{
+	    if (jtsLogger.logger.isTraceEnabled())
+		jtsLogger.logger.trace("PendingOutcome::await() - asynchronous invocation failed", e.getCause());
+	}
+
+	return null;
+    }
+
+    private volatile Future<Integer> _outcome;
+}
@@ -39,6 +39,7 @@ package com.arjuna.ats.internal.jts.resources;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.concurrent.Callable;
 
 import org.omg.CORBA.BAD_PARAM;
 import org.omg.CORBA.CompletionStatus;
@@ -110,7 +111,7 @@ import com.arjuna.ats.jts.logging.jtsLogger;
  * @since JTS 1.0.
  */
 
-public class ResourceRecord extends com.arjuna.ats.arjuna.coordinator.AbstractRecord
+public class ResourceRecord extends com.arjuna.ats.arjuna.coordinator.AbstractRecord implements AsyncPhase2Record
 {
     
     /**
@@ -377,7 +378,36 @@ public class ResourceRecord extends com.arjuna.ats.arjuna.coordinator.AbstractRe
 	return o;
     }
 
+    public void rollbackAsync ()
+    {
+	_pendingOutcome.submit(new Callable<Integer>()
+	{
+	    public Integer call ()
+	    {
+		return rollback();
+	    }
+	});
+    }
+
+    public void commitAsync ()
+    {
+	_pendingOutcome.submit(new Callable<Integer>()
+	{
+	    public Integer call ()
+	    {
+		return commit();
+	    }
+	});
+    }
+
     public int topLevelAbort ()
+    {
+	Integer outcome = _pendingOutcome.await();
+
+	return (outcome != null) ? outcome : rollback();
+    }
+
+    private final int rollback ()
     {
 	if (jtsLogger.logger.isTraceEnabled())
 	{
@@ -432,6 +462,13 @@ public class ResourceRecord extends com.arjuna.ats.arjuna.coordinator.AbstractRe
     }
 
     public int topLevelCommit ()
+    {
+	Integer outcome = _pendingOutcome.await();
+
+	return (outcome != null) ? outcome : commit();
+    }
+
+    private final int commit ()
     {
 	if (jtsLogger.logger.isTraceEnabled())
 	{
@@ -847,5 +884,6 @@ public class ResourceRecord extends com.arjuna.ats.arjuna.coordinator.AbstractRe
     private boolean     _propagateRecord;
     private boolean     _committed;
     private boolean     _rolledback;
+    private final PendingOutcome _pendingOutcome = new PendingOutcome();
     
 }
@@ -55,6 +55,7 @@ public class JTSEnvironmentBean implements JTSEnvironmentBeanMBean
     @FullPropertyName(name = "com.arjuna.ats.jts.recovery.commitTransactionRetryLimit")
     private volatile int commitedTransactionRetryLimit = 3;
     private volatile int transactionServiceId = 0xDEADBEEF;
+    private volatile boolean asyncPhase2 = false;
 
 
     /**
@@ -424,4 +425,28 @@ public class JTSEnvironmentBean implements JTSEnvironmentBeanMBean
     public void setTransactionServiceId(int transactionServiceId) {
         this.transactionServiceId = transactionServiceId;
     }
+
+    /**
+     * Returns if the second phase of a top-level transaction is sent to all remote resources
+     * concurrently rather than to each resource in turn. The first resource is always committed
+     * on its own so that a heuristic rollback from it can still roll back the others.
+     *
+     * Default: false
+     *
+     * @return true for concurrent phase 2 invocations, false for sequential.
+     */
+    public boolean isAsyncPhase2()
+    {
+        return asyncPhase2;
+    }
+
+    /**
+     * Sets if the second phase of a top-level transaction is sent to all remote resources concurrently.
+     *
+     * @param asyncPhase2 true for concurrent phase 2 invocations, false for sequential.
+     */
+    public void setAsyncPhase2(boolean asyncPhase2)
+    {
+        this.asyncPhase2 = asyncPhase2;
+    }
 }
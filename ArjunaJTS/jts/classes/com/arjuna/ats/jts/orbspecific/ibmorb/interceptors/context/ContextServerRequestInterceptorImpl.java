@@ -322,7 +322,7 @@ private void suspendContext (ServerRequestInfo request_info) throws SystemExcept
 		{
 		    ControlWrapper ctx = OTSImpleManager.current().contextManager().popAction(threadId);
 
-		    OTSImpleManager.current().contextManager().purgeActions(threadId);
+		    OTSImpleManager.current().contextManager().threadCompleted(threadId);
 		    
 		    if (ctx != null)
 		    {
@@ -316,7 +316,7 @@ private void suspendContext (ServerRequestInfo request_info) throws SystemExcept
 
 		    //		    OTSImpleManager.systemCurrent().contextManager().purgeActions(threadId);
 
-		    OTSImpleManager.current().contextManager().purgeActions(threadId);
+		    OTSImpleManager.current().contextManager().threadCompleted(threadId);
 		}
 	    }
 	    catch (BAD_OPERATION bex)
@@ -351,7 +351,7 @@ private void suspendContext (ServerRequestInfo request_info) throws SystemExcept
 		{
 		    ControlWrapper ctx = OTSImpleManager.current().contextManager().popAction(threadId);
 
-		    OTSImpleManager.current().contextManager().purgeActions(threadId);
+		    OTSImpleManager.current().contextManager().threadCompleted(threadId);
 		}
 	    }
 	    catch (BAD_OPERATION bex)
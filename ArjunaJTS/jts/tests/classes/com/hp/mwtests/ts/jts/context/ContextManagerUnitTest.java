@@ -32,11 +32,15 @@
 package com.hp.mwtests.ts.jts.context;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 import org.junit.Test;
 import org.omg.CosTransactions.Control;
 
 import com.arjuna.ArjunaOTS.ActionControl;
+import com.arjuna.ats.arjuna.utils.ThreadUtil;
+import com.arjuna.ats.internal.jts.ControlWrapper;
 import com.arjuna.ats.internal.jts.OTSImpleManager;
 import com.arjuna.ats.internal.jts.context.ContextManager;
 import com.arjuna.ats.internal.jts.context.ContextPropagationManager;
@@ -92,4 +96,57 @@ public class ContextManagerUnitTest extends TestBase
         
         OTSImpleManager.current().suspend();
     }
+
+    @Test
+    public void testPropagateHierarchy () throws Exception
+    {
+        final ContextManager manager = new ContextManager();
+
+        OTSImpleManager.current().begin();
+
+        final ControlWrapper tx = OTSImpleManager.current().getControlWrapper();
+
+        manager.pushAction(tx);
+
+        final ControlWrapper[] hier = manager.getHierarchy();
+        final ControlWrapper[] seen = new ControlWrapper[1];
+        final String[] threadId = new String[1];
+
+        assertEquals(1, hier.length);
+
+        Thread worker = new Thread()
+        {
+            public void run ()
+            {
+                manager.resumeHierarchy(hier);
+
+                threadId[0] = ThreadUtil.getThreadId();
+
+                try
+                {
+                    seen[0] = manager.current(threadId[0]);
+                }
+                catch (Exception e)
+                {
+                }
+            }
+        };
+
+        worker.start();
+        worker.join();
+
+        assertSame(tx, seen[0]);
+
+        // the worker has gone so clean up its context on its behalf
+
+        assertSame(tx, manager.current(threadId[0]));
+
+        manager.threadCompleted(threadId[0]);
+
+        assertNull(manager.current(threadId[0]));
+
+        assertSame(tx, manager.popAction());
+
+        OTSImpleManager.current().rollback();
+    }
 }
@@ -0,0 +1,150 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2006, Red Hat Middleware LLC, and individual contributors 
+ * as indicated by the @author tags. 
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors. 
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A 
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A 
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, 
+ * MA  02110-1301, USA.
+ * 
+ * (C) 2005-2006,
+ * @author JBoss Inc.
+ */
+
+package com.hp.mwtests.ts.jts.interposition;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.omg.CosTransactions.Control;
+import org.omg.CosTransactions.PropagationContext;
+
+import com.arjuna.ats.arjuna.common.Uid;
+import com.arjuna.ats.internal.jts.OTSImpleManager;
+import com.arjuna.ats.internal.jts.interposition.resources.arjuna.Interposition;
+import com.arjuna.ats.internal.jts.orbspecific.ControlImple;
+import com.arjuna.ats.jts.utils.Utility;
+import com.hp.mwtests.ts.jts.resources.TestBase;
+
+public class ConcurrentInterpositionUnitTest extends TestBase
+{
+    @Test
+    public void testHierarchyLockForAnyUid () throws Exception
+    {
+        TestInterposition interposition = new TestInterposition();
+
+        // an invalid Uid has a negative hash code
+        assertNotNull(interposition.lockFor(new Uid("not a uid", true)));
+        assertNotNull(interposition.lockFor(new Uid(new long[] {0x80000000L, 0L}, 0, 0, 0)));
+        assertNotNull(interposition.lockFor(new Uid()));
+    }
+
+    @Test
+    public void testConcurrentInterposition () throws Exception
+    {
+        final TestInterposition interposition = new TestInterposition();
+        final PropagationContext[] contexts = new PropagationContext[TRANSACTIONS];
+        Control[] controls = new Control[TRANSACTIONS];
+
+        for (int i = 0; i < TRANSACTIONS; i++)
+        {
+            OTSImpleManager.current().begin();
+
+            contexts[i] = OTSImpleManager.current().get_control().get_coordinator().get_txcontext();
+            controls[i] = OTSImpleManager.current().suspend();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<ControlImple>> results = new ArrayList<Future<ControlImple>>();
+
+        try
+        {
+            /*
+             * Every transaction is imported by several threads at once, so threads
+             * contend both on the same Uid and on different ones.
+             */
+
+            for (int i = 0; i < THREADS * TRANSACTIONS; i++)
+            {
+                final PropagationContext ctx = contexts[i % TRANSACTIONS];
+
+                results.add(executor.submit(new Callable<ControlImple>()
+                {
+                    public ControlImple call () throws Exception
+                    {
+                        start.await();
+
+                        return interposition.setupHierarchy(ctx);
+                    }
+                }));
+            }
+
+            start.countDown();
+
+            for (Future<ControlImple> result : results)
+                assertNotNull(result.get());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        // one imported hierarchy per transaction, however many threads imported it
+
+        assertEquals(TRANSACTIONS, interposition.hierarchies());
+
+        for (int i = 0; i < TRANSACTIONS; i++)
+        {
+            Uid theUid = Utility.otidToUid(contexts[i].current.otid);
+
+            assertTrue(interposition.imported(theUid));
+
+            for (int j = i; j < results.size(); j += TRANSACTIONS)
+                assertEquals(theUid, results.get(j).get().get_uid());
+
+            OTSImpleManager.current().resume(controls[i]);
+            OTSImpleManager.current().rollback();
+        }
+    }
+
+    private static class TestInterposition extends Interposition
+    {
+        Object lockFor (Uid theUid)
+        {
+            return hierarchyLock(theUid);
+        }
+
+        boolean imported (Uid theUid)
+        {
+            return present(theUid) != null;
+        }
+
+        int hierarchies ()
+        {
+            return _head.size();
+        }
+    }
+
+    private static final int TRANSACTIONS = 4;
+
+    private static final int THREADS = 8;
+}
@@ -0,0 +1,279 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2006, Red Hat Middleware LLC, and individual contributors 
+ * as indicated by the @author tags. 
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors. 
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A 
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A 
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, 
+ * MA  02110-1301, USA.
+ * 
+ * (C) 2005-2006,
+ * @author JBoss Inc.
+ */
+
+package com.hp.mwtests.ts.jts.participants;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.omg.CORBA.SystemException;
+import org.omg.CORBA.TRANSIENT;
+import org.omg.CosTransactions.HeuristicCommit;
+import org.omg.CosTransactions.HeuristicHazard;
+import org.omg.CosTransactions.HeuristicMixed;
+import org.omg.CosTransactions.HeuristicRollback;
+import org.omg.CosTransactions.NotPrepared;
+import org.omg.CosTransactions.Resource;
+import org.omg.CosTransactions.ResourceHelper;
+import org.omg.CosTransactions.Vote;
+
+import com.arjuna.ats.arjuna.common.Uid;
+import com.arjuna.ats.arjuna.coordinator.TwoPhaseOutcome;
+import com.arjuna.ats.internal.jts.ORBManager;
+import com.arjuna.ats.internal.jts.OTSImpleManager;
+import com.arjuna.ats.internal.jts.resources.ResourceRecord;
+import com.arjuna.ats.jts.common.jtsPropertyManager;
+import com.hp.mwtests.ts.jts.orbspecific.resources.heuristic;
+import com.hp.mwtests.ts.jts.resources.TestBase;
+import com.hp.mwtests.ts.jts.utils.ResourceTrace;
+
+/**
+ * Drive the second phase of remote resources through the asynchronous path
+ * (commitAsync/rollbackAsync followed by topLevelCommit/topLevelAbort).
+ */
+
+public class AsyncPhase2UnitTest extends TestBase
+{
+    private static final long WAIT_TIME = 10000;
+
+    /*
+     * The setting is read once, when the coordinator class is loaded, and
+     * each test class runs in a VM of its own.
+     */
+
+    public void beforeSetupClass ()
+    {
+        jtsPropertyManager.getJTSEnvironmentBean().setAsyncPhase2(true);
+    }
+
+    @Test
+    public void testCommitAsync () throws Exception
+    {
+        Rendezvous rendezvous = new Rendezvous(3, false);
+        SlowResource[] resources = new SlowResource[3];
+        ResourceRecord[] records = new ResourceRecord[resources.length];
+
+        for (int i = 0; i < resources.length; i++)
+        {
+            resources[i] = new SlowResource(rendezvous, false);
+            records[i] = new ResourceRecord(false, resources[i].getReference(), new Uid());
+
+            assertEquals(TwoPhaseOutcome.PREPARE_OK, records[i].topLevelPrepare());
+        }
+
+        for (ResourceRecord record : records)
+            record.commitAsync();
+
+        for (ResourceRecord record : records)
+            assertEquals(TwoPhaseOutcome.FINISH_OK, record.topLevelCommit());
+
+        for (SlowResource resource : resources)
+            assertEquals(1, resource.commits.get());
+
+        // every commit was running before any of them returned
+        assertFalse(rendezvous.missed.get());
+    }
+
+    @Test
+    public void testRollbackAsync () throws Exception
+    {
+        SlowResource resource = new SlowResource(new Rendezvous(1, false), false);
+        ResourceRecord record = new ResourceRecord(false, resource.getReference(), new Uid());
+
+        assertEquals(TwoPhaseOutcome.PREPARE_OK, record.topLevelPrepare());
+
+        record.rollbackAsync();
+
+        assertEquals(TwoPhaseOutcome.FINISH_OK, record.topLevelAbort());
+        assertEquals(1, resource.rollbacks.get());
+        assertEquals(0, resource.commits.get());
+    }
+
+    @Test
+    public void testHeuristicOutcome () throws Exception
+    {
+        heuristic resource = new heuristic(false);
+        ResourceRecord record = new ResourceRecord(false, resource.getReference(), new Uid());
+
+        assertEquals(TwoPhaseOutcome.PREPARE_OK, record.topLevelPrepare());
+
+        record.commitAsync();
+
+        // the heuristic is reported by the asynchronous commit without invoking the resource again
+        assertEquals(TwoPhaseOutcome.HEURISTIC_ROLLBACK, record.topLevelCommit());
+        assertEquals(ResourceTrace.ResourceTracePrepareCommitHeurisiticRollback, resource.getTrace().getTrace());
+    }
+
+    @Test
+    public void testFailedCommit () throws Exception
+    {
+        SlowResource resource = new SlowResource(new Rendezvous(1, false), true);
+        ResourceRecord record = new ResourceRecord(false, resource.getReference(), new Uid());
+
+        assertEquals(TwoPhaseOutcome.PREPARE_OK, record.topLevelPrepare());
+
+        record.commitAsync();
+
+        assertEquals(TwoPhaseOutcome.FINISH_ERROR, record.topLevelCommit());
+        assertEquals(1, resource.commits.get());
+    }
+
+    @Test
+    public void testNothingOutstanding () throws Exception
+    {
+        SlowResource resource = new SlowResource(new Rendezvous(1, false), false);
+        ResourceRecord record = new ResourceRecord(false, resource.getReference(), new Uid());
+
+        assertEquals(TwoPhaseOutcome.PREPARE_OK, record.topLevelPrepare());
+
+        // without commitAsync the commit is made in the calling thread
+        assertEquals(TwoPhaseOutcome.FINISH_OK, record.topLevelCommit());
+        assertEquals(1, resource.commits.get());
+    }
+
+    @Test
+    public void testTransaction () throws Exception
+    {
+        SlowResource[] resources = new SlowResource[4];
+
+        // the first resource is committed on its own, the remainder together
+        Rendezvous rendezvous = new Rendezvous(resources.length - 1, true);
+
+        OTSImpleManager.current().begin();
+
+        for (int i = 0; i < resources.length; i++)
+        {
+            resources[i] = new SlowResource(rendezvous, false);
+
+            OTSImpleManager.current().get_control().get_coordinator().register_resource(resources[i].getReference());
+        }
+
+        OTSImpleManager.current().commit(true);
+
+        for (SlowResource resource : resources)
+            assertEquals(1, resource.commits.get());
+
+        assertFalse(rendezvous.missed.get());
+    }
+
+    /*
+     * Commits wait here until the expected number of them are running at the
+     * same time. A commit which gives up waiting shows that they were made one
+     * after the other.
+     */
+
+    private static class Rendezvous
+    {
+        public Rendezvous (int parties, boolean skipFirst)
+        {
+            _arrived = new CountDownLatch(parties);
+            _skipFirst = skipFirst;
+        }
+
+        void arrive ()
+        {
+            if (_skipFirst && (_calls.getAndIncrement() == 0))
+                return;
+
+            _arrived.countDown();
+
+            try
+            {
+                if (!_arrived.await(WAIT_TIME, TimeUnit.MILLISECONDS))
+                    missed.set(true);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        final AtomicBoolean missed = new AtomicBoolean();
+
+        private final CountDownLatch _arrived;
+
+        private final AtomicInteger _calls = new AtomicInteger();
+
+        private final boolean _skipFirst;
+    }
+
+    private static class SlowResource extends org.omg.CosTransactions.ResourcePOA
+    {
+        public SlowResource (Rendezvous rendezvous, boolean fail)
+        {
+            ORBManager.getPOA().objectIsReady(this);
+
+            _rendezvous = rendezvous;
+            _fail = fail;
+            _ref = ResourceHelper.narrow(ORBManager.getPOA().corbaReference(this));
+        }
+
+        public Resource getReference ()
+        {
+            return _ref;
+        }
+
+        public Vote prepare () throws SystemException
+        {
+            return Vote.VoteCommit;
+        }
+
+        public void rollback () throws SystemException, HeuristicCommit, HeuristicMixed, HeuristicHazard
+        {
+            rollbacks.incrementAndGet();
+        }
+
+        public void commit () throws SystemException, NotPrepared, HeuristicRollback, HeuristicMixed, HeuristicHazard
+        {
+            commits.incrementAndGet();
+
+            _rendezvous.arrive();
+
+            if (_fail)
+                throw new TRANSIENT();
+        }
+
+        public void forget () throws SystemException
+        {
+        }
+
+        public void commit_one_phase () throws SystemException, HeuristicHazard
+        {
+            commits.incrementAndGet();
+        }
+
+        final AtomicInteger commits = new AtomicInteger();
+
+        final AtomicInteger rollbacks = new AtomicInteger();
+
+        private final Rendezvous _rendezvous;
+
+        private final boolean _fail;
+
+        private final Resource _ref;
+    }
+}
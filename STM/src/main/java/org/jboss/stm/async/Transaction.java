@@ -22,16 +22,28 @@
 
 package org.jboss.stm.async;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
+import org.jboss.stm.LockException;
+import org.jboss.stm.TransactionException;
 import org.jboss.stm.internal.async.TransactionExecutorAbort;
 import org.jboss.stm.internal.async.TransactionExecutorBegin;
 import org.jboss.stm.internal.async.TransactionExecutorCommit;
+import org.jboss.stm.internal.async.TransactionExecutorWork;
 
 import com.arjuna.ats.arjuna.AtomicAction;
 import com.arjuna.ats.arjuna.common.Uid;
+import com.arjuna.ats.arjuna.coordinator.ActionStatus;
 
 /**
  * This is a user-level transaction class. Unlike AtomicAction which it uses, this
@@ -45,6 +57,14 @@ import com.arjuna.ats.arjuna.common.Uid;
  * 
  * Note, we deliberately don't derive from AtomicAction so that developers must make
  * a conscious choice between a synchronous or asynchronous transaction.
+ * 
+ * Every operation runs on the Executor given when the transaction is created.
+ * begin, commit and abort return a Future to block on, and beginAsync, commitAsync
+ * and abortAsync return a CompletionStage to chain further work onto. No operation
+ * relies on running on the same thread as any other, so any Executor can be used,
+ * e.g., a pool of virtual threads or one that hands the work to a Vert.x worker.
+ * The calling thread is never associated with the transaction: use execute to run
+ * work within its scope.
  *
  * @author Mark Little (mark@arjuna.com)
  * @version $Id$
@@ -62,8 +82,18 @@ public class Transaction
      */
 
     public Transaction ()
+    {
+        this(DEFAULT_EXECUTOR);
+    }
+
+    /**
+     * Create a new transaction whose operations will run on the given Executor.
+     */
+
+    public Transaction (Executor executor)
     {
         _theTransaction = new AtomicAction();
+        _executor = executor;
     }
 
     /**
@@ -72,8 +102,14 @@ public class Transaction
      */
 
     public Transaction (Uid objUid)
+    {
+        this(objUid, DEFAULT_EXECUTOR);
+    }
+
+    public Transaction (Uid objUid, Executor executor)
     {
         _theTransaction = new AtomicAction(objUid);
+        _executor = executor;
     }
 
     /**
@@ -105,7 +141,29 @@ public class Transaction
 
     public Future<Integer> begin (int timeout)
     {
-        return _threadPool.submit(new TransactionExecutorBegin(timeout, _theTransaction));
+        return submit(new TransactionExecutorBegin(timeout, _theTransaction));
+    }
+
+    /**
+     * As begin but the outcome can be chained onto.
+     *
+     * @see #begin()
+     */
+
+    public CompletionStage<Integer> beginAsync ()
+    {
+        return beginAsync(AtomicAction.NO_TIMEOUT);
+    }
+
+    /**
+     * As begin but the outcome can be chained onto.
+     *
+     * @see #begin(int)
+     */
+
+    public CompletionStage<Integer> beginAsync (int timeout)
+    {
+        return submit(new TransactionExecutorBegin(timeout, _theTransaction));
     }
 
     /**
@@ -132,7 +190,29 @@ public class Transaction
 
     public Future<Integer> commit (boolean report_heuristics)
     {
-        return _threadPool.submit(new TransactionExecutorCommit(report_heuristics, _theTransaction));
+        return submit(new TransactionExecutorCommit(report_heuristics, _theTransaction));
+    }
+
+    /**
+     * As commit but the outcome can be chained onto.
+     *
+     * @see #commit()
+     */
+
+    public CompletionStage<Integer> commitAsync ()
+    {
+        return commitAsync(true);
+    }
+
+    /**
+     * As commit but the outcome can be chained onto.
+     *
+     * @see #commit(boolean)
+     */
+
+    public CompletionStage<Integer> commitAsync (boolean report_heuristics)
+    {
+        return submit(new TransactionExecutorCommit(report_heuristics, _theTransaction));
     }
 
     /**
@@ -146,7 +226,31 @@ public class Transaction
 
     public Future<Integer> abort ()
     {
-        return _threadPool.submit(new TransactionExecutorAbort(_theTransaction));
+        return submit(new TransactionExecutorAbort(_theTransaction));
+    }
+
+    /**
+     * As abort but the outcome can be chained onto.
+     *
+     * @see #abort()
+     */
+
+    public CompletionStage<Integer> abortAsync ()
+    {
+        return submit(new TransactionExecutorAbort(_theTransaction));
+    }
+
+    /**
+     * Run the work within the scope of this transaction, e.g., invoke methods on
+     * Container managed objects. The transaction must have begun. The work can be
+     * split across as many calls as required and may run on different threads.
+     *
+     * @return the result of the work.
+     */
+
+    public <V> CompletableFuture<V> execute (Callable<V> work)
+    {
+        return submit(new TransactionExecutorWork<V>(work, _theTransaction));
     }
 
     /*
@@ -217,11 +321,175 @@ public class Transaction
         return AtomicAction.resume(act._theTransaction);
     }
 
+    /**
+     * Run the work as a single top-level transaction using the default Executor.
+     *
+     * @see #atomically(Callable, Executor, int)
+     */
+
+    public static <V> CompletableFuture<V> atomically (Callable<V> work)
+    {
+        return atomically(work, DEFAULT_EXECUTOR, DEFAULT_RETRIES);
+    }
+
+    /**
+     * Begin a new top-level transaction, run the work within it and commit.
+     * If the work cannot get a lock, or the transaction rolls back when it is
+     * committed, e.g., because an optimistic object was updated by another
+     * transaction in the meantime, then the whole thing is tried again with a
+     * new transaction, up to the number of retries given. The work must
+     * therefore be safe to re-run. Any other commit outcome, e.g., a heuristic,
+     * is not retried and the result completes with a TransactionException
+     * carrying that status.
+     * 
+     * If the work throws any other exception the transaction is rolled back and
+     * the result completes with that exception.
+     *
+     * @return the result of the work from the transaction that committed. If no
+     * attempt commits then the result completes with a TransactionException.
+     */
+
+    public static <V> CompletableFuture<V> atomically (Callable<V> work, Executor executor, int retries)
+    {
+        CompletableFuture<V> result = new CompletableFuture<V>();
+
+        attempt(work, executor, retries, result);
+
+        return result;
+    }
+
+    private static <V> void attempt (final Callable<V> work, final Executor executor, final int retries, final CompletableFuture<V> result)
+    {
+        final Transaction tx = new Transaction(executor);
+
+        tx.beginAsync().thenCompose(new Function<Integer, CompletionStage<V>>()
+        {
+            public CompletionStage<V> apply (Integer status)
+            {
+                if (status.intValue() != ActionStatus.RUNNING)
+                    throw new TransactionException("Failed to begin transaction!", status.intValue());
+
+                return tx.execute(work);
+            }
+        }).whenComplete(new BiConsumer<V, Throwable>()
+        {
+            public void accept (final V value, Throwable failure)
+            {
+                if (failure == null)
+                {
+                    tx.commitAsync().whenComplete(new BiConsumer<Integer, Throwable>()
+                    {
+                        public void accept (Integer status, Throwable ex)
+                        {
+                            if (ex != null)
+                                result.completeExceptionally(ex);
+                            else
+                            {
+                                TransactionException failed = new TransactionException("Failed to commit transaction!", status.intValue());
+
+                                /*
+                                 * Only a transaction which rolled back can safely be tried
+                                 * again. Any other outcome, e.g., a heuristic, may have
+                                 * left some of the work in place.
+                                 */
+
+                                switch (status.intValue())
+                                {
+                                case ActionStatus.COMMITTED:
+                                    result.complete(value);
+                                    break;
+                                case ActionStatus.ABORTED:
+                                    retry(work, executor, retries, result, failed);
+                                    break;
+                                default:
+                                    result.completeExceptionally(failed);
+                                    break;
+                                }
+                            }
+                        }
+                    });
+                }
+                else
+                {
+                    final Throwable cause = (((failure instanceof CompletionException) && (failure.getCause() != null)) ? failure.getCause() : failure);
+
+                    tx.abortAsync().whenComplete(new BiConsumer<Integer, Throwable>()
+                    {
+                        public void accept (Integer status, Throwable ex)
+                        {
+                            if (cause instanceof LockException)
+                                retry(work, executor, retries, result, cause);
+                            else
+                                result.completeExceptionally(cause);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    private static <V> void retry (Callable<V> work, Executor executor, int retries, CompletableFuture<V> result, Throwable failure)
+    {
+        if (retries > 0)
+            attempt(work, executor, retries - 1, result);
+        else
+            result.completeExceptionally(failure);
+    }
+
+    private <V> CompletableFuture<V> submit (final Callable<V> task)
+    {
+        final CompletableFuture<V> result = new CompletableFuture<V>();
+
+        try
+        {
+            _executor.execute(new Runnable()
+            {
+                public void run ()
+                {
+                    try
+                    {
+                        result.complete(task.call());
+                    }
+                    catch (final Throwable ex)
+                    {
+                        result.completeExceptionally(ex);
+                    }
+                }
+            });
+        }
+        catch (final Throwable ex)
+        {
+            result.completeExceptionally(ex);  // e.g., executor has been shutdown
+        }
+
+        return result;
+    }
+
     private Transaction (AtomicAction act)
     {
         _theTransaction = act;
+        _executor = DEFAULT_EXECUTOR;
     }
     
     private AtomicAction _theTransaction;
-    private final ExecutorService _threadPool = Executors.newFixedThreadPool(1);
+    private final Executor _executor;
+
+    /*
+     * Operations don't depend on thread association, so all transactions which
+     * aren't given their own Executor can share a pool.
+     */
+
+    private static final ExecutorService DEFAULT_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory()
+    {
+        public Thread newThread (Runnable r)
+        {
+            Thread t = new Thread(r, "STM async transaction");
+
+            t.setDaemon(true);
+
+            return t;
+        }
+    });
+
+    private static final int DEFAULT_RETRIES = 10;
 }
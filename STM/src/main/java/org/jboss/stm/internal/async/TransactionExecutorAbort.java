@@ -44,7 +44,20 @@ public class TransactionExecutorAbort implements Callable<Integer>
     @Override
     public Integer call () throws Exception
     {
-        return new Integer(_theTransaction.abort());
+        /*
+         * Termination may not happen on the thread which began the transaction.
+         */
+        
+        AtomicAction.resume(_theTransaction);
+        
+        try
+        {
+            return new Integer(_theTransaction.abort());
+        }
+        finally
+        {
+            AtomicAction.suspend();
+        }
     }
     
     private AtomicAction _theTransaction;
@@ -45,7 +45,19 @@ public class TransactionExecutorBegin implements Callable<Integer>
     @Override
     public Integer call () throws Exception
     {
-        return new Integer(_theTransaction.begin(_timeout));
+        /*
+         * The caller's executor may run later tasks for other transactions on
+         * this thread, so don't leave it associated with the transaction.
+         */
+        
+        try
+        {
+            return new Integer(_theTransaction.begin(_timeout));
+        }
+        finally
+        {
+            AtomicAction.suspend();
+        }
     }
     
     private int _timeout;
@@ -45,7 +45,20 @@ public class TransactionExecutorCommit implements Callable<Integer>
     @Override
     public Integer call () throws Exception
     {
-        return new Integer(_theTransaction.commit(_heuristics));
+        /*
+         * Termination may not happen on the thread which began the transaction.
+         */
+        
+        AtomicAction.resume(_theTransaction);
+        
+        try
+        {
+            return new Integer(_theTransaction.commit(_heuristics));
+        }
+        finally
+        {
+            AtomicAction.suspend();
+        }
     }
     
     private boolean _heuristics;
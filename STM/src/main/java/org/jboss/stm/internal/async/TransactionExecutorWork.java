@@ -0,0 +1,59 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2006, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.stm.internal.async;
+
+import java.util.concurrent.Callable;
+
+import com.arjuna.ats.arjuna.AtomicAction;
+
+/*
+ * Run some application work within the scope of the transaction, on whatever
+ * thread the executor gives us.
+ */
+
+public class TransactionExecutorWork<V> implements Callable<V>
+{
+    public TransactionExecutorWork (Callable<V> work, AtomicAction tx)
+    {
+        _work = work;
+        _theTransaction = tx;
+    }
+
+    @Override
+    public V call () throws Exception
+    {
+        AtomicAction.resume(_theTransaction);
+        
+        try
+        {
+            return _work.call();
+        }
+        finally
+        {
+            AtomicAction.suspend();
+        }
+    }
+    
+    private Callable<V> _work;
+    private AtomicAction _theTransaction;
+}
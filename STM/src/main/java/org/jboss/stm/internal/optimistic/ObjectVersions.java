@@ -0,0 +1,205 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2006, Red Hat Middleware LLC, and individual contributors 
+ * as indicated by the @author tags. 
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors. 
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A 
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A 
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, 
+ * MA  02110-1301, USA.
+ * 
+ * (C) 2005-2006,
+ * @author JBoss Inc.
+ */
+
+package org.jboss.stm.internal.optimistic;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.arjuna.ats.arjuna.common.Uid;
+
+/*
+ * Version stamps for optimistically controlled objects in this address space. The
+ * stamps are keyed by the value of the object's Uid, so every instance of the same
+ * object in this JVM shares one, whichever container it came from. Persistent
+ * objects may also be shared with other JVMs, which is why their state on disk is
+ * still checked as well.
+ * 
+ * Every committed update to an object gives it a new (even) version. While a
+ * transaction that has updated the object is between prepare and commit the
+ * version is odd, so any transaction which reads the state during that window
+ * cannot validate (it may have seen the old state).
+ * 
+ * A transaction acquires the stamp and remembers the version it saw when it locked
+ * the object. At prepare a reader only has to check that the version is still the
+ * same, and a writer atomically moves it from that version to the next (odd) one,
+ * so two conflicting writers can never both prepare.
+ * 
+ * A stamp is evicted as soon as the last transaction using it has finished, or the
+ * object is destroyed. Versions are taken from a single clock and never reused, so
+ * a stamp which is evicted and recreated can never match one seen before.
+ */
+
+final class ObjectVersions
+{
+    static final class Stamp
+    {
+        Stamp (Uid u)
+        {
+            _uid = u;
+            _version = nextVersion();
+        }
+
+        /**
+         * @return the version of the object now.
+         */
+
+        synchronized long current ()
+        {
+            return _version;
+        }
+
+        /**
+         * @return <code>true</code> if nothing has updated the object since the
+         * given version was seen.
+         */
+
+        synchronized boolean isCurrent (long seen)
+        {
+            return ((seen & 1) == 0) && (_version == seen);
+        }
+
+        /**
+         * Reserve the right to update the object, provided nothing has updated it
+         * since the given version was seen.
+         */
+
+        synchronized boolean reserve (long seen)
+        {
+            if (((seen & 1) != 0) || (_version != seen))
+                return false;
+
+            _version = seen + 1;
+
+            return true;
+        }
+
+        /**
+         * The reserved update has completed (or been abandoned).
+         */
+
+        synchronized void release ()
+        {
+            _version = nextVersion();
+        }
+
+        /**
+         * The object has been updated without being validated first. Any reservation
+         * made by another transaction is left in place.
+         */
+
+        synchronized void advance ()
+        {
+            _version = nextVersion() | (_version & 1);
+        }
+
+        /**
+         * A transaction has finished with the stamp.
+         */
+
+        void done ()
+        {
+            synchronized (this)
+            {
+                if ((--_users > 0) || _evicted)
+                    return;
+
+                _evicted = true;
+            }
+
+            _versions.remove(_uid, this);
+        }
+
+        private final Uid _uid;
+        private long _version;
+        private int _users = 0;
+        private boolean _evicted = false;
+    }
+
+    /**
+     * Acquire the stamp for an object a transaction is about to use. The caller
+     * must call done on it once the transaction has finished with the object.
+     */
+
+    static Stamp acquire (Uid u)
+    {
+        for (;;)
+        {
+            Stamp stamp = _versions.get(u);
+
+            if (stamp == null)
+            {
+                Stamp newStamp = new Stamp(u);
+
+                stamp = _versions.putIfAbsent(u, newStamp);
+
+                if (stamp == null)
+                    stamp = newStamp;
+            }
+
+            synchronized (stamp)
+            {
+                if (!stamp._evicted)
+                {
+                    stamp._users++;
+
+                    return stamp;
+                }
+            }
+        }
+    }
+
+    /**
+     * The object has been destroyed. Transactions which are still using its stamp
+     * can carry on, but nobody else will get it.
+     */
+
+    static void forget (Uid u)
+    {
+        Stamp stamp = _versions.remove(u);
+
+        if (stamp != null)
+        {
+            synchronized (stamp)
+            {
+                stamp._evicted = true;
+            }
+        }
+    }
+
+    /**
+     * @return the number of objects which currently have a stamp.
+     */
+
+    static int size ()
+    {
+        return _versions.size();
+    }
+
+    private static long nextVersion ()
+    {
+        return _clock.addAndGet(2);
+    }
+
+    private static final AtomicLong _clock = new AtomicLong();
+
+    private static final ConcurrentHashMap<Uid, Stamp> _versions = new ConcurrentHashMap<Uid, Stamp>();
+}
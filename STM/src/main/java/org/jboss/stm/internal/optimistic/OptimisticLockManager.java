@@ -82,6 +82,7 @@ public class OptimisticLockManager extends LockManager
         int returnStatus = LockResult.REFUSED;
         LockRecord newLockR = null;
         boolean modifyRequired = false;
+        boolean waited = false;
         BasicAction currAct = null;
 
         if (toSet == null)
@@ -150,6 +151,14 @@ public class OptimisticLockManager extends LockManager
         
                             modifyRequired = toSet.modifiesObject();
         
+                            /*
+                             * Note the version before the state is loaded, so that
+                             * any update which overtakes the load will be detected.
+                             */
+                            
+                            ObjectVersions.Stamp stamp = ObjectVersions.acquire(get_uid());
+                            long version = stamp.current();
+                            
                             /* trigger object load from store */
     
                             if (super.activate())
@@ -164,7 +173,7 @@ public class OptimisticLockManager extends LockManager
                                     {
                                         /* add new lock record to action list */
         
-                                        newLockR = new OptimisticLockRecord(this, (modifyRequired ? false : true), currAct, true);
+                                        newLockR = new OptimisticLockRecord(this, (modifyRequired ? false : true), currAct, true, stamp, version);
     
                                         if ((lrStatus = currAct.add(newLockR)) != AddOutcome.AR_ADDED)
                                         {
@@ -199,6 +208,11 @@ public class OptimisticLockManager extends LockManager
     
                                 returnStatus = LockResult.REFUSED;
                             }
+                            
+                            /* only a lock record keeps hold of the stamp */
+                            
+                            if (newLockR == null)
+                                stamp.done();
                         }
                         
                         /*
@@ -260,7 +274,8 @@ public class OptimisticLockManager extends LockManager
                 {
                     if (sleepTime > 0)
                     {
-                        sleepTime -= conflictManager.wait(retry, sleepTime);
+                        sleepTime -= conflictManager.wait(toSet, sleepTime, waited);
+                        waited = true;
                     }
                     else
                         retry = 0;
@@ -432,6 +447,20 @@ public class OptimisticLockManager extends LockManager
         }
     }
     
+    /**
+     * Once the object has been destroyed there is no need to remember its version.
+     */
+
+    public boolean destroy ()
+    {
+        boolean result = super.destroy();
+
+        if (result)
+            ObjectVersions.forget(get_uid());
+
+        return result;
+    }
+    
     /**
      * Overload StateManager.type()
      */
@@ -44,78 +44,101 @@ import com.arjuna.ats.arjuna.exceptions.ObjectStoreException;
 import com.arjuna.ats.internal.txoj.abstractrecords.LockRecord;
 
 /*
- * Optimistic cc in operation. Grab a copy of the current state so we can check against
- * the state again when we commit.
+ * Optimistic cc in operation. Remember the version of the object when it was locked,
+ * and for a persistent object grab a copy of its state too, so we can check against
+ * them again when we commit.
  * 
- * During commit we check the current state on disk against what we had initially. If they
- * are not identical then we force the transaction to abort.
+ * During prepare we check that the object has not been updated since then. If it has
+ * then we force the transaction to abort. Updates reserve the next version at prepare
+ * and complete it once the new state is in place, which is why these records are
+ * processed after the system records. The version stamps only cover this JVM.
  * 
- * Note, this can mean that multiple transactions may have committed during the interim but as
- * long as they keep the state the same then we are ok.
+ * Persistent objects may be shared with other JVMs, so for them we also check the
+ * current state on disk against what we had initially. Note, this can mean that
+ * multiple transactions may have committed during the interim but as long as they
+ * keep the state the same then we are ok.
  */
 
 class OptimisticLockRecord extends LockRecord
 {
     public OptimisticLockRecord (OptimisticLockManager lm, BasicAction currAct, boolean check)
     {
-        super(lm, currAct);
-
-        try
-        {
-            _state = lm.getStore().read_committed(lm.get_uid(), lm.type());
-        }
-        catch (final ObjectStoreException ex)
-        {
-            _state = null;
-        }
-        
-	_status = lm.status();
-	_check = check;
+        this(lm, false, currAct, check, ObjectVersions.acquire(lm.get_uid()));
     }
-    
+
     public OptimisticLockRecord (OptimisticLockManager lm, boolean rdOnly, BasicAction currAct, boolean check)
+    {
+        this(lm, rdOnly, currAct, check, ObjectVersions.acquire(lm.get_uid()));
+    }
+
+    private OptimisticLockRecord (OptimisticLockManager lm, boolean rdOnly, BasicAction currAct, boolean check, ObjectVersions.Stamp stamp)
+    {
+        this(lm, rdOnly, currAct, check, stamp, stamp.current());
+    }
+
+    /*
+     * The stamp should be acquired and the version noted before the object state
+     * is activated. The record takes over the stamp.
+     */
+
+    OptimisticLockRecord (OptimisticLockManager lm, boolean rdOnly, BasicAction currAct, boolean check, ObjectVersions.Stamp stamp, long version)
     {
         super(lm, rdOnly, currAct);
-	
-        try
-        {
-            _state = lm.getStore().read_committed(lm.get_uid(), lm.type());
-        }
-        catch (final ObjectStoreException ex)
-        {
-            _state = null;
-        }
-        
+
+	_objectUid = lm.get_uid();
+	_stamp = stamp;
+	_version = version;
 	_status = lm.status();
 	_check = check;
+
+	if (lm.objectType() != ObjectType.RECOVERABLE)
+	{
+	    try
+	    {
+	        _state = lm.getStore().read_committed(lm.get_uid(), lm.type());
+	    }
+	    catch (final ObjectStoreException ex)
+	    {
+	        _state = null;
+	    }
+
+	    _persistent = true;
+	}
     }
 
     public int typeIs ()
     {
-        return RecordType.USER_DEF_FIRST0;
+        return RecordType.USER_DEF_LAST0;
     }
-    
-    public int nestedAbort ()
+
+    public int topLevelAbort ()
     {
         if (txojLogger.logger.isTraceEnabled())
         {
-            txojLogger.logger.trace("OptimisticLockRecord::nestedAbort() for "+order());
+            txojLogger.logger.trace("OptimisticLockRecord::topLevelAbort() for "+order());
         }
-        
-	/*
-	 * Optimistic cc means we just throw away the state.
-	 */
 
-	_state = null;
-	
-	return super.nestedAbort();
+        finished(false);
+
+        return super.topLevelAbort();
+    }
+
+    /*
+     * The lock has gone, so the parent never sees this record.
+     */
+
+    public int nestedAbort ()
+    {
+        finished(false);
+
+        return super.nestedAbort();
     }
 
     public int topLevelPrepare ()
     {
         if (txojLogger.logger.isTraceEnabled())
         {
-            txojLogger.logger.trace("OptimisticLockRecord::nestedPrepare() for "+order());
+            txojLogger.logger.trace("OptimisticLockRecord::topLevelPrepare() for "+order());
         }
         
 	if (value() == null)
@@ -131,16 +154,39 @@ class OptimisticLockRecord extends LockRecord
 	}
     }
     
-    public int topLevelCommit ()
-    {       
-        boolean stateOK = checkState();
-        
-        if (!stateOK)
+    /*
+     * On its own the record can still fail validation, in which case it has to
+     * roll back (and release the lock) rather than report a commit failure.
+     */
+
+    public int topLevelOnePhaseCommit ()
+    {
+        int res = topLevelPrepare();
+
+        switch (res)
         {
-            txojLogger.i18NLogger.warn_OptimisticLockRecord_2((LockManager) value());
+        case TwoPhaseOutcome.PREPARE_OK:
+            return topLevelCommit();
+        case TwoPhaseOutcome.PREPARE_READONLY:
+            return TwoPhaseOutcome.FINISH_OK;
+        default:
+            topLevelAbort();
+            
+            return TwoPhaseOutcome.ONE_PHASE_ERROR;
         }
+    }
+
+    public int topLevelCommit ()
+    {
+        /*
+         * Validation happened during prepare and any update was reserved then, so
+         * there is nothing left to check. Now the new state is in place readers can
+         * pick up the new version.
+         */
+
+        finished(true);
 
-        if ((super.topLevelCommit() == TwoPhaseOutcome.FINISH_OK) && stateOK)
+        if (super.topLevelCommit() == TwoPhaseOutcome.FINISH_OK)
             return TwoPhaseOutcome.FINISH_OK;
         else
             return TwoPhaseOutcome.FINISH_ERROR;
@@ -166,121 +212,137 @@ class OptimisticLockRecord extends LockRecord
         if ((_status == ObjectStatus.ACTIVE_NEW) || (!_check))
             return true;
 
+        if (_stamp == null)
+            return false;
+
+        if (isReadOnly())
+        {
+            if (!_stamp.isCurrent(_version))
+                return false;
+        }
+        else
+        {
+            _reserved = _stamp.reserve(_version);
+
+            if (!_reserved)
+                return false;
+        }
+
+        return (!_persistent || checkPersistentState());
+    }
+
+    /*
+     * Complete any update and hand back the stamp. Called once the record is done
+     * with, whatever the outcome.
+     */
+
+    private void finished (boolean committed)
+    {
+        if (_stamp != null)
+        {
+            if (_reserved)
+                _stamp.release();
+            else
+            {
+                if (committed && !isReadOnly())
+                    _stamp.advance();
+            }
+
+            _stamp.done();
+            _stamp = null;
+        }
+
+        _reserved = false;
+        _state = null;
+    }
+
+    /*
+     * Compare the state on disk with the copy we took when the object was locked.
+     * The state could also have been changed by another JVM, so the disk is the
+     * only thing we can check against.
+     */
+
+    private boolean checkPersistentState ()
+    {
         if (_state == null)
             return false;
-        
-        /*
-         * If the object is recoverable then we can just check the local state.
-         * If the object is persistent then we have to check the state on disk.
-         */
-        
-        OutputObjectState tempState = new OutputObjectState();
+
         OptimisticLockManager man = (OptimisticLockManager) value();
-        int objectType = man.objectType();
-        
+
         synchronized (man)
         {
-            /*
-             * If we check the state now, it's possible that some other transactions may be
-             * doing the same concurrently. We need to lock the object at this point. Or
-             * suffer heuristic by checking during commit - though this still leaves a window
-             * of vulnerability.
-             */
-            
-            /*
-             * Assume initially that this will only work if the objects are all in the same
-             * address space, since sharing across spaces will impose performance overhead
-             * anyway. In that case, we can maintain a list of all objects that are being
-             * managed optimistically and check them directly as well as lock them.
-             * 
-             * Problem is that it's the state that needs to be checked and there may be
-             * multiple instances of the state active in memory at the same time. So would
-             * need to keep each instance per Uid.
-             */
-            
-            /*
-             * Could even make this specific to STM and in which case we have even more control.
-             */
-    
-            if (objectType == ObjectType.RECOVERABLE)
+            try
             {
-                if (man.save_state(tempState, objectType))
+                InputObjectState s = man.getStore().read_committed(man.get_uid(), man.type());
+
+                if (s == null)
+                    return false;
+
+                if (s.length() != _state.length())
+                    return false;
+
+                for (int i = 0; i < s.length(); i++)
                 {
-                    boolean identical = true;
-                    
-                    if (tempState.length() == _state.length())
-                    {
-                        for (int i = 0; (i < tempState.length()) && identical; i++)
-                        {   
-                            if (tempState.buffer()[i] != _state.buffer()[i])
-                                identical = false;
-                        }
-                        
-                        if (identical)
-                            return true;
-                    }
+                    if (s.buffer()[i] != _state.buffer()[i])
+                        return false;
                 }
+
+                return true;
             }
-            
-            if (objectType == ObjectType.ANDPERSISTENT)
+            catch (final ObjectStoreException ex)
             {
-                /*
-                 * Don't need the state - could just check the time of the file update if we are using
-                 * a file based object store.
-                 */
-                
-                try
-                {
-                    InputObjectState s = man.getStore().read_committed(man.get_uid(), man.type());
-
-                    if (s != null)
-                    {
-                        boolean identical = true;
-
-                        if (s.length() == _state.length())
-                        {
-                            for (int i = 0; (i < s.length()) && identical; i++)
-                            {
-                                if (s.buffer()[i] != _state.buffer()[i])
-                                    identical = false;
-                            }
-                            
-                            if (identical)
-                                return true;
-                        }
-                    }
-                    else
-                    {
-                        return false;
-                    }
-                }
-                catch (final Exception ex)
-                {
-                    ex.printStackTrace();
-                }
+                return false;
             }
         }
-        
-        return false;
     }
 
     public boolean shouldReplace (AbstractRecord ar)
     {
-        if (!super.shouldReplace(ar))
+        boolean replace = super.shouldReplace(ar);
+
+        if (!replace)
         {
             if ((order().equals(ar.order())) && typeIs() == ar.typeIs())
             {
                 if (!((OptimisticLockRecord) ar)._check && _check)
-                    return true;
+                    replace = true;
             }
-            
-            return false;
         }
-        else
-            return true;
+
+        if (replace)
+            takeOver((OptimisticLockRecord) ar);
+
+        return replace;
+    }
+
+    /*
+     * We are replacing an earlier record for the same object in the same transaction,
+     * so validate against whatever that one saw first and hand back our own stamp.
+     */
+
+    private void takeOver (OptimisticLockRecord ar)
+    {
+        if ((ar._stamp == null) || ar._reserved)
+            return;
+
+        if (_stamp != null)
+            _stamp.done();
+
+        _stamp = ar._stamp;
+        _version = ar._version;
+        _state = ar._state;
+        _status = ar._status;
+
+        ar._stamp = null;
+        ar._state = null;
     }
     
-    private InputObjectState _state = new InputObjectState();
+    private Uid _objectUid = Uid.nullUid();
+    private ObjectVersions.Stamp _stamp = null;
+    private boolean _persistent = false;
+    private InputObjectState _state = null;
+    private long _version = 0;
+    private boolean _reserved = false;
     private int _status = ObjectStatus.ACTIVE_NEW;
     private boolean _check = true;
     private Uid _myUid = new Uid();
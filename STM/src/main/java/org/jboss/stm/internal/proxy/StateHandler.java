@@ -0,0 +1,740 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2009, JBoss Inc., and others contributors as indicated 
+ * by the @authors tag. All rights reserved. 
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors. 
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A 
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A 
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, 
+ * MA  02110-1301, USA.
+ * 
+ * (C) 2009,
+ * @author mark.little@jboss.com
+ */
+
+package org.jboss.stm.internal.proxy;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+
+import org.jboss.stm.annotations.NotState;
+import org.jboss.stm.annotations.RestoreState;
+import org.jboss.stm.annotations.SaveState;
+import org.jboss.stm.annotations.Transactional;
+import org.jboss.stm.internal.RecoverableContainer;
+
+import com.arjuna.ats.arjuna.common.Uid;
+import com.arjuna.ats.arjuna.state.InputObjectState;
+import com.arjuna.ats.arjuna.state.OutputObjectState;
+import com.arjuna.ats.internal.arjuna.common.UidHelper;
+import com.arjuna.ats.txoj.logging.txojLogger;
+
+/**
+ * Saves and restores the state fields of a transactional class. The fields
+ * are found once per class and turned into typed method handles, so that
+ * each save or restore is a straight run through the fields without any
+ * reflection, accessibility toggling or boxing of primitive values. The
+ * format of the state is the same as it has always been.
+ */
+
+final class StateHandler
+{
+    /**
+     * @return the handler for pessimistic instances of the class. Final and
+     * transient fields are not state.
+     */
+
+    static StateHandler pessimistic (Class<?> theClass)
+    {
+        return PESSIMISTIC.get(theClass);
+    }
+
+    /**
+     * @return the handler for optimistic instances of the class. Final fields
+     * are state too, since the state is also used to check for conflicts.
+     */
+
+    static StateHandler optimistic (Class<?> theClass)
+    {
+        return OPTIMISTIC.get(theClass);
+    }
+
+    /**
+     * Check that the state of instances of the class can be saved and restored,
+     * either by the handler or by @SaveState and @RestoreState methods.
+     *
+     * @throws IllegalArgumentException if the class has a state field which
+     * can never be saved, e.g., an array of an unsupported type.
+     */
+
+    void check (Class<?> theClass)
+    {
+        if ((_unsupported != null) && !hasSaveRestore(theClass))
+            throw new IllegalArgumentException(_unsupported);
+    }
+
+    boolean pack (Object obj, OutputObjectState os, RecoverableContainer<?> container)
+    {
+        if (!_supported)
+            return false;
+
+        try
+        {
+            for (FieldState f : _fields)
+            {
+                if (!f.pack(obj, os, container))
+                    return false;
+            }
+        }
+        catch (final Throwable ex)
+        {
+            txojLogger.logger.warn(ex);
+
+            return false;
+        }
+
+        return true;
+    }
+
+    boolean unpack (Object obj, InputObjectState os, RecoverableContainer<?> container)
+    {
+        if (!_supported)
+            return false;
+
+        try
+        {
+            for (FieldState f : _fields)
+            {
+                if (!f.unpack(obj, os, container))
+                    return false;
+            }
+        }
+        catch (final Throwable ex)
+        {
+            txojLogger.logger.warn(ex);
+
+            return false;
+        }
+
+        return true;
+    }
+
+    private StateHandler (Class<?> theClass, boolean includeFinals)
+    {
+        ArrayList<FieldState> fields = new ArrayList<FieldState>();
+        boolean supported = true;
+        String unsupported = null;
+
+        for (Field afield : theClass.getDeclaredFields()) // get all fields including private
+        {
+            int modifiers = afield.getModifiers();
+
+            // ignore if flagged with @NotState
+
+            if (afield.isAnnotationPresent(NotState.class) || THIS_NAME.equals(afield.getName()))
+                continue;
+
+            /*
+             * Stay away from transients! Finals cannot be restored for pessimistic
+             * instances anyway.
+             */
+
+            if (Modifier.isTransient(modifiers) || (!includeFinals && Modifier.isFinal(modifiers)))
+                continue;
+
+            FieldState state = null;
+
+            try
+            {
+                state = create(afield);
+            }
+            catch (final IllegalAccessException ex)
+            {
+                txojLogger.logger.warn(ex);
+            }
+            catch (final IllegalArgumentException ex)
+            {
+                unsupported = ex.getMessage();
+            }
+
+            if (state == null)
+            {
+                supported = false;
+
+                break;
+            }
+
+            fields.add(state);
+        }
+
+        _fields = fields.toArray(new FieldState[fields.size()]);
+        _supported = supported;
+        _unsupported = unsupported;
+    }
+
+    private static boolean hasSaveRestore (Class<?> theClass)
+    {
+        for (Class<?> c = theClass; (c != null) && (c != Object.class); c = c.getSuperclass())
+        {
+            for (Method mt : c.getDeclaredMethods())
+            {
+                if (mt.isAnnotationPresent(SaveState.class) || mt.isAnnotationPresent(RestoreState.class))
+                    return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static FieldState create (Field afield) throws IllegalAccessException
+    {
+        Class<?> type = afield.getType();
+
+        afield.setAccessible(true);
+
+        MethodHandle getter = LOOKUP.unreflectGetter(afield);
+        MethodHandle setter = null;
+
+        try
+        {
+            setter = LOOKUP.unreflectSetter(afield);
+        }
+        catch (final IllegalAccessException ex)
+        {
+            // e.g., static final, so it can be saved but never restored
+        }
+
+        if (Modifier.isStatic(afield.getModifiers()))
+        {
+            getter = MethodHandles.dropArguments(getter, 0, Object.class);
+
+            if (setter != null)
+                setter = MethodHandles.dropArguments(setter, 0, Object.class);
+        }
+
+        if (type.isArray())
+        {
+            Class<?> component = type.getComponentType();
+            int kind = kindOf(component);
+
+            if (kind == UNSUPPORTED)
+                throw new IllegalArgumentException("Array type "+type.getCanonicalName()+" of state field "+afield+" not supported!");
+
+            return new ArrayState(getter.asType(OBJECT_GETTER), kind, component.isPrimitive());
+        }
+
+        if (type.isPrimitive())
+        {
+            return new PrimitiveState(getter.asType(MethodType.methodType(type, Object.class)),
+                    ((setter == null) ? null : setter.asType(MethodType.methodType(void.class, Object.class, type))), kindOf(type));
+        }
+
+        int kind = kindOf(type);
+
+        if (kind != UNSUPPORTED)
+            return new ObjectState(getter.asType(OBJECT_GETTER), objectSetter(setter), kind);
+
+        if (type.isAnnotationPresent(Transactional.class))
+            return new TransactionalState(getter.asType(OBJECT_GETTER), objectSetter(setter));
+
+        return null;
+    }
+
+    private static MethodHandle objectSetter (MethodHandle setter)
+    {
+        return ((setter == null) ? null : setter.asType(OBJECT_SETTER));
+    }
+
+    private static int kindOf (Class<?> type)
+    {
+        if ((type == Boolean.TYPE) || (type == Boolean.class))
+            return BOOLEAN;
+        else if ((type == Byte.TYPE) || (type == Byte.class))
+            return BYTE;
+        else if ((type == Short.TYPE) || (type == Short.class))
+            return SHORT;
+        else if ((type == Integer.TYPE) || (type == Integer.class))
+            return INT;
+        else if ((type == Long.TYPE) || (type == Long.class))
+            return LONG;
+        else if ((type == Float.TYPE) || (type == Float.class))
+            return FLOAT;
+        else if ((type == Double.TYPE) || (type == Double.class))
+            return DOUBLE;
+        else if ((type == Character.TYPE) || (type == Character.class))
+            return CHAR;
+        else if (type == String.class)
+            return STRING;
+        else
+            return UNSUPPORTED;
+    }
+
+    /*
+     * Boxed values. A null value causes the pack to fail, as it always has.
+     */
+
+    private static void packValue (int kind, Object value, OutputObjectState os) throws Exception
+    {
+        switch (kind)
+        {
+        case BOOLEAN:
+            os.packBoolean(((Boolean) value).booleanValue());
+            break;
+        case BYTE:
+            os.packByte(((Byte) value).byteValue());
+            break;
+        case SHORT:
+            os.packShort(((Short) value).shortValue());
+            break;
+        case INT:
+            os.packInt(((Integer) value).intValue());
+            break;
+        case LONG:
+            os.packLong(((Long) value).longValue());
+            break;
+        case FLOAT:
+            os.packFloat(((Float) value).floatValue());
+            break;
+        case DOUBLE:
+            os.packDouble(((Double) value).doubleValue());
+            break;
+        case CHAR:
+            os.packChar(((Character) value).charValue());
+            break;
+        default:
+            os.packString((String) value);
+            break;
+        }
+    }
+
+    private static Object unpackValue (int kind, InputObjectState os) throws Exception
+    {
+        switch (kind)
+        {
+        case BOOLEAN:
+            return Boolean.valueOf(os.unpackBoolean());
+        case BYTE:
+            return Byte.valueOf(os.unpackByte());
+        case SHORT:
+            return Short.valueOf(os.unpackShort());
+        case INT:
+            return Integer.valueOf(os.unpackInt());
+        case LONG:
+            return Long.valueOf(os.unpackLong());
+        case FLOAT:
+            return Float.valueOf(os.unpackFloat());
+        case DOUBLE:
+            return Double.valueOf(os.unpackDouble());
+        case CHAR:
+            return Character.valueOf(os.unpackChar());
+        default:
+            return os.unpackString();
+        }
+    }
+
+    private abstract static class FieldState
+    {
+        abstract boolean pack (Object obj, OutputObjectState os, RecoverableContainer<?> container) throws Throwable;
+
+        abstract boolean unpack (Object obj, InputObjectState os, RecoverableContainer<?> container) throws Throwable;
+    }
+
+    /*
+     * The handles are typed exactly, e.g., (Object)int, so invokeExact never boxes.
+     */
+
+    private static final class PrimitiveState extends FieldState
+    {
+        PrimitiveState (MethodHandle getter, MethodHandle setter, int kind)
+        {
+            _getter = getter;
+            _setter = setter;
+            _kind = kind;
+        }
+
+        boolean pack (Object obj, OutputObjectState os, RecoverableContainer<?> container) throws Throwable
+        {
+            switch (_kind)
+            {
+            case BOOLEAN:
+                os.packBoolean((boolean) _getter.invokeExact(obj));
+                break;
+            case BYTE:
+                os.packByte((byte) _getter.invokeExact(obj));
+                break;
+            case SHORT:
+                os.packShort((short) _getter.invokeExact(obj));
+                break;
+            case INT:
+                os.packInt((int) _getter.invokeExact(obj));
+                break;
+            case LONG:
+                os.packLong((long) _getter.invokeExact(obj));
+                break;
+            case FLOAT:
+                os.packFloat((float) _getter.invokeExact(obj));
+                break;
+            case DOUBLE:
+                os.packDouble((double) _getter.invokeExact(obj));
+                break;
+            case CHAR:
+                os.packChar((char) _getter.invokeExact(obj));
+                break;
+            default:
+                return false;
+            }
+
+            return true;
+        }
+
+        boolean unpack (Object obj, InputObjectState os, RecoverableContainer<?> container) throws Throwable
+        {
+            if (_setter == null)
+                return false;
+
+            switch (_kind)
+            {
+            case BOOLEAN:
+                _setter.invokeExact(obj, os.unpackBoolean());
+                break;
+            case BYTE:
+                _setter.invokeExact(obj, os.unpackByte());
+                break;
+            case SHORT:
+                _setter.invokeExact(obj, os.unpackShort());
+                break;
+            case INT:
+                _setter.invokeExact(obj, os.unpackInt());
+                break;
+            case LONG:
+                _setter.invokeExact(obj, os.unpackLong());
+                break;
+            case FLOAT:
+                _setter.invokeExact(obj, os.unpackFloat());
+                break;
+            case DOUBLE:
+                _setter.invokeExact(obj, os.unpackDouble());
+                break;
+            case CHAR:
+                _setter.invokeExact(obj, os.unpackChar());
+                break;
+            default:
+                return false;
+            }
+
+            return true;
+        }
+
+        private final MethodHandle _getter;
+        private final MethodHandle _setter;
+        private final int _kind;
+    }
+
+    private static final class ObjectState extends FieldState
+    {
+        ObjectState (MethodHandle getter, MethodHandle setter, int kind)
+        {
+            _getter = getter;
+            _setter = setter;
+            _kind = kind;
+        }
+
+        boolean pack (Object obj, OutputObjectState os, RecoverableContainer<?> container) throws Throwable
+        {
+            packValue(_kind, (Object) _getter.invokeExact(obj), os);
+
+            return true;
+        }
+
+        boolean unpack (Object obj, InputObjectState os, RecoverableContainer<?> container) throws Throwable
+        {
+            if (_setter == null)
+                return false;
+
+            _setter.invokeExact(obj, unpackValue(_kind, os));
+
+            return true;
+        }
+
+        private final MethodHandle _getter;
+        private final MethodHandle _setter;
+        private final int _kind;
+    }
+
+    /*
+     * This only works if this type and the types we're packing share the same container.
+     */
+
+    private static final class TransactionalState extends FieldState
+    {
+        TransactionalState (MethodHandle getter, MethodHandle setter)
+        {
+            _getter = getter;
+            _setter = setter;
+        }
+
+        @SuppressWarnings("unchecked")
+        boolean pack (Object obj, OutputObjectState os, RecoverableContainer<?> container) throws Throwable
+        {
+            Object ptr = (Object) _getter.invokeExact(obj);
+
+            if (ptr == null)
+            {
+                os.packBoolean(false);
+            }
+            else
+            {
+                os.packBoolean(true);
+                UidHelper.packInto(((RecoverableContainer<Object>) container).getUidForHandle(ptr), os);
+            }
+
+            return true;
+        }
+
+        boolean unpack (Object obj, InputObjectState os, RecoverableContainer<?> container) throws Throwable
+        {
+            if (_setter == null)
+                return false;
+
+            Object ptr = null;
+
+            if (os.unpackBoolean())
+            {
+                Uid u = UidHelper.unpackFrom(os);
+
+                ptr = container.getHandle(u);
+            }
+
+            _setter.invokeExact(obj, ptr);
+
+            return true;
+        }
+
+        private final MethodHandle _getter;
+        private final MethodHandle _setter;
+    }
+
+    /*
+     * Arrays are saved and restored in place, element by element. Elements of
+     * object arrays are preceded by a flag to say whether or not they are null.
+     */
+
+    private static final class ArrayState extends FieldState
+    {
+        ArrayState (MethodHandle getter, int kind, boolean primitive)
+        {
+            _getter = getter;
+            _kind = kind;
+            _primitive = primitive;
+        }
+
+        boolean pack (Object obj, OutputObjectState os, RecoverableContainer<?> container) throws Throwable
+        {
+            Object array = (Object) _getter.invokeExact(obj);
+
+            if (!_primitive)
+            {
+                final Object[] objs = (Object[]) array;
+
+                for (int i = 0; i < objs.length; i++)
+                {
+                    if (objs[i] == null)
+                        os.packBoolean(false);
+                    else
+                    {
+                        os.packBoolean(true);
+                        packValue(_kind, objs[i], os);
+                    }
+                }
+
+                return true;
+            }
+
+            switch (_kind)
+            {
+            case BOOLEAN:
+                for (boolean b : (boolean[]) array)
+                    os.packBoolean(b);
+                break;
+            case BYTE:
+                for (byte b : (byte[]) array)
+                    os.packByte(b);
+                break;
+            case SHORT:
+                for (short s : (short[]) array)
+                    os.packShort(s);
+                break;
+            case INT:
+                for (int i : (int[]) array)
+                    os.packInt(i);
+                break;
+            case LONG:
+                for (long l : (long[]) array)
+                    os.packLong(l);
+                break;
+            case FLOAT:
+                for (float f : (float[]) array)
+                    os.packFloat(f);
+                break;
+            case DOUBLE:
+                for (double d : (double[]) array)
+                    os.packDouble(d);
+                break;
+            case CHAR:
+                for (char c : (char[]) array)
+                    os.packChar(c);
+                break;
+            default:
+                return false;
+            }
+
+            return true;
+        }
+
+        boolean unpack (Object obj, InputObjectState os, RecoverableContainer<?> container) throws Throwable
+        {
+            Object array = (Object) _getter.invokeExact(obj);
+
+            if (!_primitive)
+            {
+                final Object[] objs = (Object[]) array;
+
+                for (int i = 0; i < objs.length; i++)
+                {
+                    if (os.unpackBoolean())
+                        objs[i] = unpackValue(_kind, os);
+                    else
+                        objs[i] = null;
+                }
+
+                return true;
+            }
+
+            switch (_kind)
+            {
+            case BOOLEAN:
+            {
+                final boolean[] objs = (boolean[]) array;
+
+                for (int i = 0; i < objs.length; i++)
+                    objs[i] = os.unpackBoolean();
+            }
+                break;
+            case BYTE:
+            {
+                final byte[] objs = (byte[]) array;
+
+                for (int i = 0; i < objs.length; i++)
+                    objs[i] = os.unpackByte();
+            }
+                break;
+            case SHORT:
+            {
+                final short[] objs = (short[]) array;
+
+                for (int i = 0; i < objs.length; i++)
+                    objs[i] = os.unpackShort();
+            }
+                break;
+            case INT:
+            {
+                final int[] objs = (int[]) array;
+
+                for (int i = 0; i < objs.length; i++)
+                    objs[i] = os.unpackInt();
+            }
+                break;
+            case LONG:
+            {
+                final long[] objs = (long[]) array;
+
+                for (int i = 0; i < objs.length; i++)
+                    objs[i] = os.unpackLong();
+            }
+                break;
+            case FLOAT:
+            {
+                final float[] objs = (float[]) array;
+
+                for (int i = 0; i < objs.length; i++)
+                    objs[i] = os.unpackFloat();
+            }
+                break;
+            case DOUBLE:
+            {
+                final double[] objs = (double[]) array;
+
+                for (int i = 0; i < objs.length; i++)
+                    objs[i] = os.unpackDouble();
+            }
+                break;
+            case CHAR:
+            {
+                final char[] objs = (char[]) array;
+
+                for (int i = 0; i < objs.length; i++)
+                    objs[i] = os.unpackChar();
+            }
+                break;
+            default:
+                return false;
+            }
+
+            return true;
+        }
+
+        private final MethodHandle _getter;
+        private final int _kind;
+        private final boolean _primitive;
+    }
+
+    private final FieldState[] _fields;
+    private final boolean _supported;
+    private final String _unsupported;
+
+    private static final int UNSUPPORTED = -1;
+    private static final int BOOLEAN = 0;
+    private static final int BYTE = 1;
+    private static final int SHORT = 2;
+    private static final int INT = 3;
+    private static final int LONG = 4;
+    private static final int FLOAT = 5;
+    private static final int DOUBLE = 6;
+    private static final int CHAR = 7;
+    private static final int STRING = 8;
+
+    private static final MethodType OBJECT_GETTER = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType OBJECT_SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final String THIS_NAME = "this$0";  // stop us trying to pack this!
+
+    private static final ClassValue<StateHandler> PESSIMISTIC = new ClassValue<StateHandler>()
+    {
+        protected StateHandler computeValue (Class<?> type)
+        {
+            return new StateHandler(type, false);
+        }
+    };
+
+    private static final ClassValue<StateHandler> OPTIMISTIC = new ClassValue<StateHandler>()
+    {
+        protected StateHandler computeValue (Class<?> type)
+        {
+            return new StateHandler(type, true);
+        }
+    };
+}
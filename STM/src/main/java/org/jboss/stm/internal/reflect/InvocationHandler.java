@@ -24,7 +24,8 @@ package org.jboss.stm.internal.reflect;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import com.arjuna.ats.txoj.logging.txojLogger;
 import org.jboss.stm.LockException;
@@ -75,7 +76,7 @@ public class InvocationHandler<T> implements java.lang.reflect.InvocationHandler
     @SuppressWarnings("unused")
     private static final String SETTER_NAME = "SET";
     
-    class LockInformation
+    static class LockInformation
     {
         public LockInformation (int lockType)
         {
@@ -87,70 +88,271 @@ public class InvocationHandler<T> implements java.lang.reflect.InvocationHandler
             _lockType = lockType;
             _timeout = timeout;
             _retry = retry;
+            _lockFree = false;
+            _transactionFree = false;
+        }
+        
+        public LockInformation (boolean lockFree, boolean transactionFree)
+        {
+            _lockType = -1;
+            _timeout = 0;
+            _retry = 0;
+            _lockFree = lockFree;
+            _transactionFree = transactionFree;
         }
         
         public String toString ()
         {
+            if (_lockFree)
+                return "Lock < LockFree >";
+            
+            if (_transactionFree)
+                return "Lock < TransactionFree >";
+            
             return "Lock < "+LockMode.stringForm(_lockType)+", "+_timeout+", "+_retry+" >";
         }
         
-        public int _lockType;
-        public int _timeout;
-        public int _retry;
+        public final int _lockType;
+        public final int _timeout;
+        public final int _retry;
+        public final boolean _lockFree;
+        public final boolean _transactionFree;
     }
     
     /*
-     * Not all possible LockManager options are available. We only support those that we need
-     * at any given moment in STM.
+     * Used for methods which cannot be found in the implementation class.
      */
     
-    public InvocationHandler (RecoverableContainer<T> c, T obj)
-    {
-        this(c, obj, null);
-    }
+    private static final LockInformation UNKNOWN_METHOD = new LockInformation(false, false);
     
-    public InvocationHandler (RecoverableContainer<T> cont, T obj, Uid u)
+    /*
+     * Everything we need to know about a transactional class in order to invoke
+     * its methods. This is worked out once per class and then shared by all of
+     * the proxies for instances of that class.
+     */
+    
+    static final class ClassPlan
     {
-        _container = cont;
-        _theObject = obj;
-               
-        /*
-         * Do we need to use the optimistic LockManager instance?
-         */
-        
-        Class<?> c = obj.getClass();
-        
-        while (c != null)
+        ClassPlan (Class<?> theClass)
         {
+            _methods = theClass.getDeclaredMethods();
+            
             /*
-             * Default is pessimistic.
+             * Do we need to use the optimistic LockManager instance?
              */
             
-            if (c.getAnnotation(Optimistic.class) != null)
+            Class<?> c = theClass;
+            
+            while (c != null)
             {
-                _optimistic = true;
+                /*
+                 * Default is pessimistic.
+                 */
                 
-                break;
+                if (c.getAnnotation(Optimistic.class) != null)
+                {
+                    _optimistic = true;
+                    
+                    break;
+                }
+    
+                c = c.getSuperclass();
             }
-
-            c = c.getSuperclass();
-        }
+            
+            if (!_optimistic)
+            {
+                Class<?>[] interfaces = theClass.getInterfaces();
         
-        if (!_optimistic)
-        {
-            Class<?>[] interfaces = obj.getClass().getInterfaces();
-    
-            for (Class<?> i : interfaces)
+                for (Class<?> i : interfaces)
+                {
+                    if (i.getAnnotation(Optimistic.class) != null)
+                    {
+                        _optimistic = true;
+                        
+                        break;
+                    }
+                }
+            }
+            
+            /*
+             * Do we need to create (sub-) transactions when each method
+             * is called?
+             */       
+            
+            c = theClass;
+            
+            // yeah ok, should use isAnnotationPresent ...
+            
+            while (c != null)
             {
-                if (i.getAnnotation(Optimistic.class) != null)
+                if (c.getAnnotation(Nested.class) != null)
                 {
-                    _optimistic = true;
+                    _nestedTransactions = true;
+                    
+                    break;
+                }
+                
+                if (c.getAnnotation(NestedTopLevel.class) != null)
+                {
+                    _nestedTopLevel = true;
                     
                     break;
                 }
+    
+                c = c.getSuperclass();
+            }
+            
+            if (!_nestedTransactions || !_nestedTopLevel)
+            {
+                Class<?>[] interfaces = theClass.getInterfaces();
+        
+                for (Class<?> i : interfaces)
+                {
+                    if (i.getAnnotation(Nested.class) != null)
+                    {
+                        _nestedTransactions = true;
+                        
+                        break;
+                    }
+                    
+                    if (i.getAnnotation(NestedTopLevel.class) != null)
+                    {
+                        _nestedTopLevel = true;
+                        
+                        break;
+                    }
+                }
             }
         }
-
+        
+        /**
+         * @return the locking requirements for the method, which are worked out
+         * the first time the method is called on any instance of the class.
+         */
+        
+        LockInformation lockInformation (Method method)
+        {
+            LockInformation info = _cachedMethods.get(method);
+            
+            if (info == null)
+            {
+                info = createLockInformation(method);
+                
+                LockInformation existing = _cachedMethods.putIfAbsent(method, info);
+                
+                if (existing != null)
+                    info = existing;
+            }
+            
+            return info;
+        }
+        
+        private LockInformation createLockInformation (Method method)
+        {
+            Method theMethod = null;
+            
+            /*
+             * Look for the corresponding method in the original object and
+             * check the annotations applied there.
+             */
+            
+            for (Method mt : _methods)
+            {
+                if (mt.getName().equals(method.getName()))
+                {
+                    if (mt.getReturnType().equals(method.getReturnType()))
+                    {
+                        if (Arrays.equals(mt.getParameterTypes(), method.getParameterTypes()))
+                            theMethod = mt;
+                    }
+                }
+            }
+            
+            /*
+             * Should we catch common methods, like equals, and call Object... automatically?
+             */
+            
+            if (theMethod == null)
+                return UNKNOWN_METHOD;
+            
+            /*
+             * What about other lock types?
+             */
+            
+            int lockType = -1;
+            
+            if (theMethod.isAnnotationPresent(ReadLock.class))
+                lockType = LockMode.READ;
+            else
+            {
+                if (theMethod.isAnnotationPresent(WriteLock.class))
+                    lockType = LockMode.WRITE;
+                else
+                {
+                    if (theMethod.isAnnotationPresent(TransactionFree.class))
+                        return new LockInformation(false, true);
+                    else
+                    {
+                        if (theMethod.isAnnotationPresent(LockFree.class))
+                            return new LockInformation(true, false);
+                    }
+                }
+            }
+            
+            int timeout = LockManager.defaultSleepTime;
+            int retry = LockManager.defaultRetry;
+            
+            if (theMethod.isAnnotationPresent(Timeout.class))
+                timeout = theMethod.getAnnotation(Timeout.class).period();
+            
+            if (theMethod.isAnnotationPresent(Retry.class))
+                retry = theMethod.getAnnotation(Retry.class).count();
+            
+            if (lockType == -1) // default to WRITE
+                lockType = LockMode.WRITE;
+            
+            return new LockInformation(lockType, timeout, retry);
+        }
+        
+        final boolean isOptimistic ()
+        {
+            return _optimistic;
+        }
+        
+        private final Method[] _methods;
+        private final ConcurrentHashMap<Method, LockInformation> _cachedMethods = new ConcurrentHashMap<Method, LockInformation>();
+        private boolean _optimistic = false;
+        private boolean _nestedTransactions = false;  // todo change default?
+        private boolean _nestedTopLevel = false;
+    }
+    
+    private static final ClassValue<ClassPlan> PLANS = new ClassValue<ClassPlan>()
+    {
+        protected ClassPlan computeValue (Class<?> type)
+        {
+            return new ClassPlan(type);
+        }
+    };
+    
+    /*
+     * Not all possible LockManager options are available. We only support those that we need
+     * at any given moment in STM.
+     */
+    
+    public InvocationHandler (RecoverableContainer<T> c, T obj)
+    {
+        this(c, obj, null);
+    }
+    
+    public InvocationHandler (RecoverableContainer<T> cont, T obj, Uid u)
+    {
+        _container = cont;
+        _theObject = obj;
+        _plan = PLANS.get(obj.getClass());
+        _optimistic = _plan.isOptimistic();
+        
+        LockManagerProxy.checkState(obj.getClass(), _optimistic);
+               
         if (_optimistic)
         {
             if (!initialiseStore())
@@ -211,58 +413,6 @@ public class InvocationHandler<T> implements java.lang.reflect.InvocationHandler
 
             action.commit();
         }
-        
-        _methods = obj.getClass().getDeclaredMethods();
-        
-        /*
-         * Do we need to create (sub-) transactions when each method
-         * is called?
-         */       
-        
-        c = obj.getClass();
-        
-        // yeah ok, should use isAnnotationPresent ...
-        
-        while (c != null)
-        {
-            if (c.getAnnotation(Nested.class) != null)
-            {
-                _nestedTransactions = true;
-                
-                break;
-            }
-            
-            if (c.getAnnotation(NestedTopLevel.class) != null)
-            {
-                _nestedTopLevel = true;
-                
-                break;
-            }
-
-            c = c.getSuperclass();
-        }
-        
-        if (!_nestedTransactions || !_nestedTopLevel)
-        {
-            Class<?>[] interfaces = obj.getClass().getInterfaces();
-    
-            for (Class<?> i : interfaces)
-            {
-                if (i.getAnnotation(Nested.class) != null)
-                {
-                    _nestedTransactions = true;
-                    
-                    break;
-                }
-                
-                if (i.getAnnotation(NestedTopLevel.class) != null)
-                {
-                    _nestedTopLevel = true;
-                    
-                    break;
-                }
-            }
-        }
     }
     
     public Uid get_uid ()
@@ -287,174 +437,149 @@ public class InvocationHandler<T> implements java.lang.reflect.InvocationHandler
         if (_txObject == null)
             throw new LockException("Transactional object is null!");
         
-        AtomicAction currentTx = null;
+        LockInformation cachedLock = _plan.lockInformation(method);
         
-        synchronized (_txObject)
+        /*
+         * LockFree and TransactionFree methods take no locks, so there is no need
+         * to serialise them with other callers or to create (nested) transactions.
+         */
+        
+        if (cachedLock._lockFree)
+            return invokeMethod(method, args);
+        
+        if (cachedLock._transactionFree)
         {
-            synchronized (_theObject)
+            // if TransactionFree then suspend any transactions and don't do locking
+            
+            AtomicAction currentTx = AtomicAction.suspend();
+            
+            try
             {
-                AtomicAction act = null;
-                
-                /*
-                 * We could maybe be a bit more intelligent here and not create any
-                 * nested transaction if TransactionFree is set, but there's very little
-                 * overhead in creating the transaction and not using it.
-                 */
-                
-                if (_nestedTransactions)
-                {
-                    act = new AtomicAction();
-                
-                    act.begin();
-                }
-                else
-                {
-                    if (_nestedTopLevel)
-                    {
-                        act = new TopLevelAction();
-                        
-                        act.begin();
-                    }
-                }
-                
-                try
-                {
-                    LockInformation cachedLock = _cachedMethods.get(method);
+                return invokeMethod(method, args);
+            }
+            finally
+            {
+                if (currentTx != null)
+                    AtomicAction.resume(currentTx);
+            }
+        }
         
-                    
-                    // todo allow null transaction context - not an issue for now with STM though!
-                    
-                    if (BasicAction.Current() != null)
-                    {
-                        Method theMethod = null;
+        /*
+         * Pessimistic read locks are shared, so readers only exclude writers
+         * and can run concurrently with each other. Everything else is
+         * serialised on the monitors as before.
+         */
         
-                        /*
-                         * Look for the corresponding method in the original object and
-                         * check the annotations applied there.
-                         * 
-                         * Check to see if we've cached this before.
-                         */
+        if (!_optimistic && (cachedLock._lockType == LockMode.READ))
+        {
+            _invocationLock.readLock().lock();
+            
+            try
+            {
+                return invokeLocked(method, args, cachedLock);
+            }
+            finally
+            {
+                _invocationLock.readLock().unlock();
+            }
+        }
         
-                        int lockType = -1;
-                        boolean lockFree = false;
-                        boolean transactionFree = false;
+        /*
+         * A read section cannot be upgraded, so waiting for the write lock
+         * here would never return.
+         */
         
-                        if (cachedLock == null)
-                        {
-                            for (Method mt : _methods)
-                            {
-                                if (mt.getName().equals(method.getName()))
-                                {
-                                    if (mt.getReturnType().equals(method.getReturnType()))
-                                    {
-                                        if (Arrays.equals(mt.getParameterTypes(), method.getParameterTypes()))
-                                            theMethod = mt;
-                                    }
-                                }
-                            }
+        if (_invocationLock.getReadHoldCount() > 0)
+            throw new LockException(Thread.currentThread()+" cannot call "+method.getName()+" from within a read locked method");
         
-                            /*
-                             * Should we catch common methods, like equals, and call Object... automatically?
-                             */
+        _invocationLock.writeLock().lock();
         
-                            if (theMethod == null)
-                                throw new LockException("Could not locate method "+method);
+        try
+        {
+            synchronized (_txObject)
+            {
+                synchronized (_theObject)
+                {
+                    return invokeLocked(method, args, cachedLock);
+                }
+            }
+        }
+        finally
+        {
+            _invocationLock.writeLock().unlock();
+        }
+    }
+    
+    private Object invokeLocked (java.lang.reflect.Method method, Object[] args, LockInformation cachedLock) throws Throwable
+    {
+        AtomicAction act = null;
         
-                            /*
-                             * What about other lock types?
-                             */
-                            
-                            if (theMethod.isAnnotationPresent(ReadLock.class))
-                                lockType = LockMode.READ;
-                            else
-                            {
-                                if (theMethod.isAnnotationPresent(WriteLock.class))
-                                    lockType = LockMode.WRITE;
-                                else
-                                {
-                                    if (theMethod.isAnnotationPresent(TransactionFree.class))
-                                        transactionFree = true;
-                                    else
-                                    {
-                                        if (theMethod.isAnnotationPresent(LockFree.class))
-                                            lockFree = true;
-                                    }
-                                }
-                            }
-
-                            // if TransactionFree then suspend any transactions and don't do locking
-
-                            if (!lockFree && !transactionFree)
-                            {
-                                int timeout = LockManager.defaultSleepTime;
-                                int retry = LockManager.defaultRetry;
-            
-                                if (theMethod.isAnnotationPresent(Timeout.class))
-                                    timeout = theMethod.getAnnotation(Timeout.class).period();
-            
-                                if (theMethod.isAnnotationPresent(Retry.class))
-                                    retry = theMethod.getAnnotation(Retry.class).count();
-            
-                                if (lockType == -1) // default to WRITE
-                                    lockType = LockMode.WRITE;    
-
-                                cachedLock = new LockInformation(lockType, timeout, retry);
-                                _cachedMethods.put(method, cachedLock);
-                            }
-                            else
-                            {
-                                if (transactionFree)
-                                    currentTx = AtomicAction.suspend();
-                            }
-                        }          
+        if (_plan._nestedTransactions)
+        {
+            act = new AtomicAction();
         
-                        // TODO type specific concurrency control (define Lock class in annotation?)
-
-                        if (!lockFree && !transactionFree)
-                        {
-                            int result = _txObject.setlock((_optimistic ? new OptimisticLock(cachedLock._lockType) : new Lock(cachedLock._lockType)), cachedLock._retry, cachedLock._timeout);
-
-                            if (result != GRANTED)
-                            {
-                                throw new LockException(Thread.currentThread()+" could not set "+LockMode.stringForm(cachedLock._lockType)+" lock. Got: "+LockResult.stringForm(result));
-                            }
-                        }
-                    }
-
-                    try {
-                        return method.invoke(_theObject, args);
-                    } catch (InvocationTargetException e) {
-                        if (txojLogger.logger.isTraceEnabled()) {
-                            Throwable ae = e.getCause() != null ? e.getCause() : e;
-                            txojLogger.logger.tracef("STM InvocationHandler::invoke application method %s threw exception %s",
-                                    method.getName(), ae.getMessage());
-                        }
-
-                        throw e.getCause() != null ? e.getCause() : e;
-                    }
+            act.begin();
+        }
+        else
+        {
+            if (_plan._nestedTopLevel)
+            {
+                act = new TopLevelAction();
+                
+                act.begin();
+            }
+        }
+        
+        try
+        {
+            // todo allow null transaction context - not an issue for now with STM though!
+            
+            if (BasicAction.Current() != null)
+            {
+                if (cachedLock == UNKNOWN_METHOD)
+                    throw new LockException("Could not locate method "+method);
+                
+                // TODO type specific concurrency control (define Lock class in annotation?)
+                
+                int result = _txObject.setlock((_optimistic ? new OptimisticLock(cachedLock._lockType) : new Lock(cachedLock._lockType)), cachedLock._retry, cachedLock._timeout);
+                
+                if (result != GRANTED)
+                {
+                    throw new LockException(Thread.currentThread()+" could not set "+LockMode.stringForm(cachedLock._lockType)+" lock. Got: "+LockResult.stringForm(result));
                 }
-                finally
+            }
+            
+            return invokeMethod(method, args);
+        }
+        finally
+        {
+            if (act != null)
+            {
+                int status = act.commit();
+                
+                if ((status != ActionStatus.COMMITTED) && (status != ActionStatus.COMMITTING))
                 {
-                    if (act != null)
-                    {
-                        int status = act.commit();
-                        
-                        if ((status != ActionStatus.COMMITTED) && (status != ActionStatus.COMMITTING))
-                        {
-                            if (currentTx != null)
-                                AtomicAction.resume(currentTx);
-                            
-                            throw new TransactionException("Failed to commit container transaction!", status);
-                        }
-                    }
-                    
-                    if (currentTx != null)
-                        AtomicAction.resume(currentTx);
+                    throw new TransactionException("Failed to commit container transaction!", status);
                 }
             }
         }
     }
     
+    private Object invokeMethod (java.lang.reflect.Method method, Object[] args) throws Throwable
+    {
+        try {
+            return method.invoke(_theObject, args);
+        } catch (InvocationTargetException e) {
+            if (txojLogger.logger.isTraceEnabled()) {
+                Throwable ae = e.getCause() != null ? e.getCause() : e;
+                txojLogger.logger.tracef("STM InvocationHandler::invoke application method %s threw exception %s",
+                        method.getName(), ae.getMessage());
+            }
+
+            throw e.getCause() != null ? e.getCause() : e;
+        }
+    }
+    
     /**
      * It might be useful to get the Container for the object at some points.
      * 
@@ -510,11 +635,9 @@ public class InvocationHandler<T> implements java.lang.reflect.InvocationHandler
     private RecoverableContainer<T> _container;  // could be a persistent container, but not an issue for this class
     private T _theObject;
     private LockManager _txObject;
-    private Method[] _methods;
-    private HashMap<Method, InvocationHandler<T>.LockInformation> _cachedMethods = new HashMap<Method, InvocationHandler<T>.LockInformation>();
-    private boolean _nestedTransactions = false;  // todo change default?
-    private boolean _nestedTopLevel = false;
+    private ClassPlan _plan;
     private boolean _optimistic = false;
+    private final ReentrantReadWriteLock _invocationLock = new ReentrantReadWriteLock();
     
     private static StoreManager _storeManager = null;
 }
@@ -0,0 +1,93 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2009, JBoss Inc., and others contributors as indicated 
+ * by the @authors tag. All rights reserved. 
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors. 
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A 
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A 
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, 
+ * MA  02110-1301, USA.
+ * 
+ * (C) 2009,
+ * @author mark.little@jboss.com
+ */
+
+package org.jboss.stm.internal.types;
+
+import org.jboss.stm.internal.RecoverableContainer;
+import org.jboss.stm.types.AtomicIntArray;
+
+/*
+ * Element i lives in stripe (i % stripes) at position (i / stripes), so that
+ * neighbouring elements, which tend to be used together, don't contend for the
+ * same lock.
+ */
+
+public class AtomicIntArrayImpl implements AtomicIntArray
+{
+    public static final int DEFAULT_STRIPES = 64;
+    
+    public AtomicIntArrayImpl (int length, int stripes, RecoverableContainer<IntArrayStripe> container)
+    {
+        if ((length < 0) || (stripes < 1))
+            throw new IllegalArgumentException();
+        
+        _length = length;
+        _stripes = new IntArrayStripe[Math.max(1, Math.min(length, stripes))];
+        
+        for (int i = 0; i < _stripes.length; i++)
+        {
+            int size = (_length / _stripes.length) + ((i < (_length % _stripes.length)) ? 1 : 0);
+            
+            _stripes[i] = container.enlist(new IntArrayStripeImpl(size));
+        }
+    }
+    
+    public int length ()
+    {
+        return _length;
+    }
+    
+    public int get (int index)
+    {
+        return stripeFor(index).get(index / _stripes.length);
+    }
+
+    public void set (int index, int val)
+    {
+        stripeFor(index).set(index / _stripes.length, val);
+    }
+
+    public int increment (int index)
+    {
+        return add(index, 1);
+    }
+
+    public int decrement (int index)
+    {
+        return add(index, -1);
+    }
+
+    public int add (int index, int val)
+    {
+        return stripeFor(index).add(index / _stripes.length, val);
+    }
+    
+    private IntArrayStripe stripeFor (int index)
+    {
+        if ((index < 0) || (index >= _length))
+            throw new ArrayIndexOutOfBoundsException(index);
+        
+        return _stripes[index % _stripes.length];
+    }
+
+    private final int _length;
+    private final IntArrayStripe[] _stripes;
+}
@@ -0,0 +1,131 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2009, JBoss Inc., and others contributors as indicated 
+ * by the @authors tag. All rights reserved. 
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors. 
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A 
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A 
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, 
+ * MA  02110-1301, USA.
+ * 
+ * (C) 2009,
+ * @author mark.little@jboss.com
+ */
+
+package org.jboss.stm.internal.types;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.jboss.stm.internal.RecoverableContainer;
+import org.jboss.stm.types.AtomicMap;
+
+public class AtomicMapImpl<K, V> implements AtomicMap<K, V>
+{
+    public static final int DEFAULT_STRIPES = 16;
+    
+    public AtomicMapImpl (int stripes, RecoverableContainer<MapStripe<K, V>> container)
+    {
+        this(stripes, container, false);
+    }
+    
+    public int size ()
+    {
+        int size = 0;
+        
+        for (MapStripe<K, V> stripe : _stripes)
+            size += stripe.size();
+        
+        return size;
+    }
+
+    public boolean isEmpty ()
+    {
+        for (MapStripe<K, V> stripe : _stripes)
+        {
+            if (stripe.size() != 0)
+                return false;
+        }
+        
+        return true;
+    }
+
+    public void clear ()
+    {
+        for (MapStripe<K, V> stripe : _stripes)
+            stripe.clear();
+    }
+
+    public boolean containsKey (K key)
+    {
+        return stripeFor(key).containsKey(key);
+    }
+
+    public V get (K key)
+    {
+        return stripeFor(key).get(key);
+    }
+
+    public V put (K key, V value)
+    {
+        if ((key instanceof byte[]) || !MapStripeImpl.isPackable(key) || !MapStripeImpl.isPackable(value))
+            throw new IllegalArgumentException();
+        
+        return stripeFor(key).put(key, value);
+    }
+
+    public V remove (K key)
+    {
+        return stripeFor(key).remove(key);
+    }
+
+    public Set<K> keySet ()
+    {
+        Set<K> keys = new HashSet<K>();
+        
+        for (MapStripe<K, V> stripe : _stripes)
+            keys.addAll(stripe.keys());
+        
+        return keys;
+    }
+    
+    @SuppressWarnings("unchecked")
+    protected AtomicMapImpl (int stripes, RecoverableContainer<MapStripe<K, V>> container, boolean sorted)
+    {
+        if (stripes < 1)
+            throw new IllegalArgumentException();
+        
+        /*
+         * Round up to a power of two so we can mask rather than divide.
+         */
+        
+        int size = 1;
+        
+        while (size < stripes)
+            size <<= 1;
+        
+        _stripes = new MapStripe[size];
+        
+        for (int i = 0; i < size; i++)
+            _stripes[i] = container.enlist(new MapStripeImpl<K, V>(sorted));
+    }
+    
+    protected final MapStripe<K, V> stripeFor (K key)
+    {
+        if (key == null)
+            throw new NullPointerException();
+        
+        int h = key.hashCode();
+        
+        return _stripes[(h ^ (h >>> 16)) & (_stripes.length - 1)];
+    }
+
+    protected final MapStripe<K, V>[] _stripes;
+}
@@ -0,0 +1,81 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2009, JBoss Inc., and others contributors as indicated 
+ * by the @authors tag. All rights reserved. 
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors. 
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A 
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A 
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, 
+ * MA  02110-1301, USA.
+ * 
+ * (C) 2009,
+ * @author mark.little@jboss.com
+ */
+
+package org.jboss.stm.internal.types;
+
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.jboss.stm.internal.RecoverableContainer;
+import org.jboss.stm.types.AtomicSortedMap;
+
+/*
+ * Keys are still striped by hash, so the ordered operations merge the answers
+ * from every stripe.
+ */
+
+public class AtomicSortedMapImpl<K extends Comparable<? super K>, V> extends AtomicMapImpl<K, V> implements AtomicSortedMap<K, V>
+{
+    public AtomicSortedMapImpl (int stripes, RecoverableContainer<MapStripe<K, V>> container)
+    {
+        super(stripes, container, true);
+    }
+
+    public K firstKey ()
+    {
+        K first = null;
+        
+        for (MapStripe<K, V> stripe : _stripes)
+        {
+            K key = stripe.firstKey();
+            
+            if ((key != null) && ((first == null) || (key.compareTo(first) < 0)))
+                first = key;
+        }
+        
+        return first;
+    }
+
+    public K lastKey ()
+    {
+        K last = null;
+        
+        for (MapStripe<K, V> stripe : _stripes)
+        {
+            K key = stripe.lastKey();
+            
+            if ((key != null) && ((last == null) || (key.compareTo(last) > 0)))
+                last = key;
+        }
+        
+        return last;
+    }
+
+    public SortedSet<K> keySet ()
+    {
+        SortedSet<K> keys = new TreeSet<K>();
+        
+        for (MapStripe<K, V> stripe : _stripes)
+            keys.addAll(stripe.keys());
+        
+        return keys;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2009, JBoss Inc., and others contributors as indicated 
+ * by the @authors tag. All rights reserved. 
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors. 
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A 
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A 
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, 
+ * MA  02110-1301, USA.
+ * 
+ * (C) 2009,
+ * @author mark.little@jboss.com
+ */
+
+package org.jboss.stm.internal.types;
+
+import java.io.IOException;
+
+import org.jboss.stm.annotations.ReadLock;
+import org.jboss.stm.annotations.RestoreState;
+import org.jboss.stm.annotations.SaveState;
+import org.jboss.stm.annotations.Transactional;
+import org.jboss.stm.annotations.WriteLock;
+
+import com.arjuna.ats.arjuna.state.InputObjectState;
+import com.arjuna.ats.arjuna.state.OutputObjectState;
+
+@Transactional
+public class IntArrayStripeImpl implements IntArrayStripe
+{
+    public IntArrayStripeImpl (int size)
+    {
+        _values = new int[size];
+    }
+    
+    @ReadLock
+    public int get (int index)
+    {
+        return _values[index];
+    }
+
+    @WriteLock
+    public void set (int index, int val)
+    {
+        _values[index] = val;
+    }
+
+    @WriteLock
+    public int add (int index, int val)
+    {
+        _values[index] += val;
+        
+        return _values[index];
+    }
+    
+    @SaveState
+    public void save_state (OutputObjectState os) throws IOException
+    {
+        os.packInt(_values.length);
+        
+        for (int i = 0; i < _values.length; i++)
+            os.packInt(_values[i]);
+    }
+    
+    @RestoreState
+    public void restore_state (InputObjectState os) throws IOException
+    {
+        int size = os.unpackInt();
+        
+        if (_values.length != size)
+            _values = new int[size];
+        
+        for (int i = 0; i < size; i++)
+            _values[i] = os.unpackInt();
+    }
+    
+    private int[] _values;
+}
@@ -0,0 +1,67 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2009, JBoss Inc., and others contributors as indicated 
+ * by the @authors tag. All rights reserved. 
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors. 
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A 
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A 
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, 
+ * MA  02110-1301, USA.
+ * 
+ * (C) 2009,
+ * @author mark.little@jboss.com
+ */
+
+package org.jboss.stm.internal.types;
+
+import java.util.List;
+
+import org.jboss.stm.annotations.ReadLock;
+import org.jboss.stm.annotations.Transactional;
+import org.jboss.stm.annotations.WriteLock;
+
+/**
+ * One stripe of an AtomicMap or AtomicSortedMap.
+ */
+
+@Transactional
+public interface MapStripe<K, V>
+{
+    @ReadLock
+    public int size ();
+    
+    @WriteLock
+    public void clear ();
+    
+    @ReadLock
+    public boolean containsKey (K key);
+    
+    @ReadLock
+    public V get (K key);
+    
+    @WriteLock
+    public V put (K key, V value);
+    
+    @WriteLock
+    public V remove (K key);
+    
+    @ReadLock
+    public List<K> keys ();
+    
+    /*
+     * Only for sorted stripes.
+     */
+    
+    @ReadLock
+    public K firstKey ();
+    
+    @ReadLock
+    public K lastKey ();
+}
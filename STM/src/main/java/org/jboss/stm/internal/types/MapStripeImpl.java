@@ -0,0 +1,262 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2009, JBoss Inc., and others contributors as indicated 
+ * by the @authors tag. All rights reserved. 
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors. 
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A 
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A 
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, 
+ * MA  02110-1301, USA.
+ * 
+ * (C) 2009,
+ * @author mark.little@jboss.com
+ */
+
+package org.jboss.stm.internal.types;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jboss.stm.annotations.ReadLock;
+import org.jboss.stm.annotations.RestoreState;
+import org.jboss.stm.annotations.SaveState;
+import org.jboss.stm.annotations.Transactional;
+import org.jboss.stm.annotations.WriteLock;
+
+import com.arjuna.ats.arjuna.state.InputObjectState;
+import com.arjuna.ats.arjuna.state.OutputObjectState;
+
+/*
+ * Keys and values are saved by value and only the types the object state can
+ * pack directly are supported. Nothing is ever deserialized from the state.
+ */
+
+@Transactional
+public class MapStripeImpl<K, V> implements MapStripe<K, V>
+{
+    public MapStripeImpl (boolean sorted)
+    {
+        _sorted = sorted;
+        _map = newMap();
+    }
+    
+    @ReadLock
+    public int size ()
+    {
+        return _map.size();
+    }
+
+    @WriteLock
+    public void clear ()
+    {
+        _map.clear();
+    }
+
+    @ReadLock
+    public boolean containsKey (K key)
+    {
+        return _map.containsKey(key);
+    }
+
+    @ReadLock
+    public V get (K key)
+    {
+        return _map.get(key);
+    }
+
+    @WriteLock
+    public V put (K key, V value)
+    {
+        return _map.put(key, value);
+    }
+
+    @WriteLock
+    public V remove (K key)
+    {
+        return _map.remove(key);
+    }
+
+    @ReadLock
+    public List<K> keys ()
+    {
+        return new ArrayList<K>(_map.keySet());
+    }
+
+    @ReadLock
+    public K firstKey ()
+    {
+        return (_map.isEmpty() ? null : ((TreeMap<K, V>) _map).firstKey());
+    }
+
+    @ReadLock
+    public K lastKey ()
+    {
+        return (_map.isEmpty() ? null : ((TreeMap<K, V>) _map).lastKey());
+    }
+    
+    @SaveState
+    public void save_state (OutputObjectState os) throws IOException
+    {
+        os.packInt(_map.size());
+        
+        for (Map.Entry<K, V> entry : _map.entrySet())
+        {
+            packObject(os, entry.getKey());
+            packObject(os, entry.getValue());
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    @RestoreState
+    public void restore_state (InputObjectState os) throws IOException
+    {
+        int size = os.unpackInt();
+        
+        _map = newMap();
+        
+        for (int i = 0; i < size; i++)
+        {
+            K key = (K) unpackObject(os);
+            
+            _map.put(key, (V) unpackObject(os));
+        }
+    }
+    
+    private Map<K, V> newMap ()
+    {
+        if (_sorted)
+            return new TreeMap<K, V>();
+        else
+            return new HashMap<K, V>();
+    }
+    
+    /*
+     * Whether the instance is one of the types packed by value.
+     */
+    
+    static boolean isPackable (Object inst)
+    {
+        return (inst == null) || (inst instanceof String) || (inst instanceof Integer) || (inst instanceof Long)
+                || (inst instanceof Short) || (inst instanceof Byte) || (inst instanceof Character)
+                || (inst instanceof Boolean) || (inst instanceof Double) || (inst instanceof Float)
+                || (inst instanceof byte[]);
+    }
+    
+    private static void packObject (OutputObjectState os, Object inst) throws IOException
+    {
+        if (inst == null)
+            os.packByte(NULL);
+        else if (inst instanceof String)
+        {
+            os.packByte(STRING);
+            os.packString((String) inst);
+        }
+        else if (inst instanceof Integer)
+        {
+            os.packByte(INTEGER);
+            os.packInt(((Integer) inst).intValue());
+        }
+        else if (inst instanceof Long)
+        {
+            os.packByte(LONG);
+            os.packLong(((Long) inst).longValue());
+        }
+        else if (inst instanceof Short)
+        {
+            os.packByte(SHORT);
+            os.packShort(((Short) inst).shortValue());
+        }
+        else if (inst instanceof Byte)
+        {
+            os.packByte(BYTE);
+            os.packByte(((Byte) inst).byteValue());
+        }
+        else if (inst instanceof Character)
+        {
+            os.packByte(CHARACTER);
+            os.packChar(((Character) inst).charValue());
+        }
+        else if (inst instanceof Boolean)
+        {
+            os.packByte(BOOLEAN);
+            os.packBoolean(((Boolean) inst).booleanValue());
+        }
+        else if (inst instanceof Double)
+        {
+            os.packByte(DOUBLE);
+            os.packDouble(((Double) inst).doubleValue());
+        }
+        else if (inst instanceof Float)
+        {
+            os.packByte(FLOAT);
+            os.packFloat(((Float) inst).floatValue());
+        }
+        else if (inst instanceof byte[])
+        {
+            os.packByte(BYTES);
+            os.packBytes((byte[]) inst);
+        }
+        else
+            throw new NotSerializableException(inst.getClass().getName());
+    }
+    
+    private static Object unpackObject (InputObjectState os) throws IOException
+    {
+        byte type = os.unpackByte();
+        
+        switch (type)
+        {
+        case NULL:
+            return null;
+        case STRING:
+            return os.unpackString();
+        case INTEGER:
+            return os.unpackInt();
+        case LONG:
+            return os.unpackLong();
+        case SHORT:
+            return os.unpackShort();
+        case BYTE:
+            return os.unpackByte();
+        case CHARACTER:
+            return os.unpackChar();
+        case BOOLEAN:
+            return os.unpackBoolean();
+        case DOUBLE:
+            return os.unpackDouble();
+        case FLOAT:
+            return os.unpackFloat();
+        case BYTES:
+            return os.unpackBytes();
+        default:
+            throw new IOException("Unknown type "+type);
+        }
+    }
+    
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INTEGER = 2;
+    private static final byte LONG = 3;
+    private static final byte BOOLEAN = 4;
+    private static final byte DOUBLE = 5;
+    private static final byte SHORT = 6;
+    private static final byte BYTE = 7;
+    private static final byte CHARACTER = 8;
+    private static final byte FLOAT = 9;
+    private static final byte BYTES = 10;
+    
+    private final boolean _sorted;
+    private Map<K, V> _map;
+}
@@ -23,6 +23,10 @@ package org.jboss.stm.types;
 
 import org.jboss.stm.internal.RecoverableContainer;
 import org.jboss.stm.internal.types.AtomicArrayImpl;
+import org.jboss.stm.internal.types.AtomicIntArrayImpl;
+import org.jboss.stm.internal.types.AtomicLongArrayImpl;
+import org.jboss.stm.internal.types.IntArrayStripe;
+import org.jboss.stm.internal.types.LongArrayStripe;
 
 // TODO maybe pull all of this into a separate jar
 
@@ -43,8 +47,35 @@ public class ArrayFactory<E>
     {
         return _afContainer.enlist(new AtomicArrayImpl<E>(size));
     }
+    
+    /*
+     * Primitive arrays aren't transactional objects themselves, but are split
+     * into a number of transactional stripes.
+     */
+    
+    public AtomicLongArray createLongArray (int length)
+    {
+        return createLongArray(length, AtomicLongArrayImpl.DEFAULT_STRIPES);
+    }
+    
+    public AtomicLongArray createLongArray (int length, int stripes)
+    {
+        return new AtomicLongArrayImpl(length, stripes, _alContainer);
+    }
+    
+    public AtomicIntArray createIntArray (int length)
+    {
+        return createIntArray(length, AtomicIntArrayImpl.DEFAULT_STRIPES);
+    }
+    
+    public AtomicIntArray createIntArray (int length, int stripes)
+    {
+        return new AtomicIntArrayImpl(length, stripes, _aiContainer);
+    }
 
     private RecoverableContainer<AtomicArray<E>> _afContainer = new RecoverableContainer<AtomicArray<E>>();
+    private RecoverableContainer<LongArrayStripe> _alContainer = new RecoverableContainer<LongArrayStripe>();
+    private RecoverableContainer<IntArrayStripe> _aiContainer = new RecoverableContainer<IntArrayStripe>();
     
     @SuppressWarnings("unchecked")
     private static final ArrayFactory _theFactory = new ArrayFactory();
@@ -0,0 +1,58 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2009, JBoss Inc., and others contributors as indicated 
+ * by the @authors tag. All rights reserved. 
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors. 
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A 
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A 
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, 
+ * MA  02110-1301, USA.
+ * 
+ * (C) 2009,
+ * @author mark.little@jboss.com
+ */
+
+package org.jboss.stm.types;
+
+/**
+ * A fixed length array of longs, held without boxing.
+ * 
+ * The array is not a single transactional object. The elements are spread
+ * over a number of stripes and each stripe is a transactional object, so a
+ * transaction only locks the stripes holding the elements it uses. Calls made
+ * outside of a transaction run in a transaction of their own.
+ */
+
+public interface AtomicLongArray
+{
+    public int length ();
+    
+    public long get (int index);
+    
+    public void set (int index, long val);
+    
+    /**
+     * @return the new value.
+     */
+    
+    public long increment (int index);
+    
+    /**
+     * @return the new value.
+     */
+    
+    public long decrement (int index);
+    
+    /**
+     * @return the new value.
+     */
+    
+    public long add (int index, long val);
+}
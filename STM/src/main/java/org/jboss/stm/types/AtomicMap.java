@@ -0,0 +1,69 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2009, JBoss Inc., and others contributors as indicated 
+ * by the @authors tag. All rights reserved. 
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors. 
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A 
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A 
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, 
+ * MA  02110-1301, USA.
+ * 
+ * (C) 2009,
+ * @author mark.little@jboss.com
+ */
+
+package org.jboss.stm.types;
+
+import java.util.Set;
+
+/**
+ * A transactional hash map.
+ * 
+ * The map is not a single transactional object. Entries are spread over a
+ * number of stripes by the hash of their key and each stripe is a transactional
+ * object, so a transaction only locks the stripes holding the keys it uses.
+ * Operations on the whole map, e.g., size, lock every stripe. Calls made outside
+ * of a transaction run in a transaction of their own, one per stripe.
+ * 
+ * Null keys are not supported. Keys and values are packed into the object
+ * state by value, so they must be Strings, boxed primitives or (values only)
+ * byte arrays. Anything else is refused by put with an IllegalArgumentException.
+ */
+
+public interface AtomicMap<K, V>
+{
+    public int size ();
+    
+    public boolean isEmpty ();
+    
+    public void clear ();
+    
+    public boolean containsKey (K key);
+    
+    public V get (K key);
+    
+    /**
+     * @return the previous value for the key, or <code>null</code>.
+     */
+    
+    public V put (K key, V value);
+    
+    /**
+     * @return the value for the key, or <code>null</code>.
+     */
+    
+    public V remove (K key);
+    
+    /**
+     * @return a copy of the keys.
+     */
+    
+    public Set<K> keySet ();
+}
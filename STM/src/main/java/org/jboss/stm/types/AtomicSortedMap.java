@@ -0,0 +1,53 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2009, JBoss Inc., and others contributors as indicated 
+ * by the @authors tag. All rights reserved. 
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors. 
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A 
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A 
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, 
+ * MA  02110-1301, USA.
+ * 
+ * (C) 2009,
+ * @author mark.little@jboss.com
+ */
+
+package org.jboss.stm.types;
+
+import java.util.SortedSet;
+
+/**
+ * A transactional map ordered by the natural ordering of its keys.
+ * 
+ * Keys are striped by hash in the same way as AtomicMap, so single key
+ * operations only lock one stripe. Ordered operations consult (and lock) every
+ * stripe.
+ */
+
+public interface AtomicSortedMap<K extends Comparable<? super K>, V> extends AtomicMap<K, V>
+{
+    /**
+     * @return the lowest key, or <code>null</code> if the map is empty.
+     */
+    
+    public K firstKey ();
+    
+    /**
+     * @return the highest key, or <code>null</code> if the map is empty.
+     */
+    
+    public K lastKey ();
+    
+    /**
+     * @return a copy of the keys, in ascending order.
+     */
+    
+    public SortedSet<K> keySet ();
+}
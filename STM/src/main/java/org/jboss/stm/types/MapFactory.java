@@ -0,0 +1,66 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2009, JBoss Inc., and others contributors as indicated 
+ * by the @authors tag. All rights reserved. 
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors. 
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A 
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A 
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, 
+ * MA  02110-1301, USA.
+ * 
+ * (C) 2009,
+ * @author mark.little@jboss.com
+ */
+
+package org.jboss.stm.types;
+
+import org.jboss.stm.internal.RecoverableContainer;
+import org.jboss.stm.internal.types.AtomicMapImpl;
+import org.jboss.stm.internal.types.AtomicSortedMapImpl;
+import org.jboss.stm.internal.types.MapStripe;
+
+public class MapFactory
+{
+    public static MapFactory instance ()
+    {
+        return _theFactory;
+    }
+    
+    public <K, V> AtomicMap<K, V> createMap ()
+    {
+        return createMap(AtomicMapImpl.DEFAULT_STRIPES);
+    }
+    
+    @SuppressWarnings("unchecked")
+    public <K, V> AtomicMap<K, V> createMap (int stripes)
+    {
+        return new AtomicMapImpl<K, V>(stripes, _amContainer);
+    }
+    
+    public <K extends Comparable<? super K>, V> AtomicSortedMap<K, V> createSortedMap ()
+    {
+        return createSortedMap(AtomicMapImpl.DEFAULT_STRIPES);
+    }
+    
+    @SuppressWarnings("unchecked")
+    public <K extends Comparable<? super K>, V> AtomicSortedMap<K, V> createSortedMap (int stripes)
+    {
+        return new AtomicSortedMapImpl<K, V>(stripes, _amContainer);
+    }
+
+    private MapFactory ()
+    {
+    }
+    
+    @SuppressWarnings("rawtypes")
+    private RecoverableContainer _amContainer = new RecoverableContainer<MapStripe>();
+    
+    private static final MapFactory _theFactory = new MapFactory();
+}
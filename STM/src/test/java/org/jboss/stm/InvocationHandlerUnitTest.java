@@ -29,6 +29,10 @@ import org.jboss.stm.annotations.State;
 import org.jboss.stm.annotations.WriteLock;
 import org.jboss.stm.internal.PersistentContainer;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import com.arjuna.ats.arjuna.AtomicAction;
 
 import junit.framework.TestCase;
@@ -51,6 +55,8 @@ public class InvocationHandlerUnitTest extends TestCase
         public boolean writeValue ();
 
         public void notTransactionalWork ();
+
+        public boolean awaitReaders () throws InterruptedException;
     }
 
     public class SampleLockable implements Sample
@@ -80,12 +86,22 @@ public class InvocationHandlerUnitTest extends TestCase
         {
         }
 
+        @ReadLock
+        public boolean awaitReaders () throws InterruptedException
+        {
+            _readers.countDown();
+            
+            return _readers.await(10, TimeUnit.SECONDS);
+        }
+
         @State
         private int _isState;
 
         @SuppressWarnings(value =
         { "unused" })
         private int _isNotState;
+        
+        private final CountDownLatch _readers = new CountDownLatch(2);
     }
 
     @SuppressWarnings(value={"unused"})
@@ -142,4 +158,182 @@ public class InvocationHandlerUnitTest extends TestCase
         
         assertEquals(proxy.readValue(), 0);
     }
+    
+    public void testConcurrentReaders () throws Throwable
+    {
+        PersistentContainer<Sample> theContainer = new PersistentContainer<Sample>();
+        SampleLockable tester = new SampleLockable();
+        final Sample proxy = theContainer.enlist(tester);
+        final int[] values = new int[4];
+        Thread[] readers = new Thread[values.length];
+        
+        assertNotNull(proxy);
+        
+        for (int i = 0; i < readers.length; i++)
+        {
+            final int index = i;
+            
+            readers[i] = new Thread()
+            {
+                public void run ()
+                {
+                    AtomicAction act = new AtomicAction();
+                    
+                    act.begin();
+                    
+                    values[index] = proxy.readValue() + 1;
+                    
+                    proxy.notTransactionalWork();
+                    
+                    act.commit();
+                }
+            };
+            
+            readers[i].start();
+        }
+        
+        for (Thread reader : readers)
+            reader.join();
+        
+        for (int value : values)
+            assertEquals(value, 1);
+    }
+    
+    public void testConcurrentReadersAndWriter () throws Throwable
+    {
+        PersistentContainer<Sample> theContainer = new PersistentContainer<Sample>();
+        SampleLockable tester = new SampleLockable();
+        final Sample proxy = theContainer.enlist(tester);
+        final AtomicInteger committedWrites = new AtomicInteger();
+        final Throwable[] failure = new Throwable[1];
+        Thread[] threads = new Thread[4];
+        
+        assertNotNull(proxy);
+        
+        threads[0] = new Thread()
+        {
+            public void run ()
+            {
+                for (int i = 0; i < 20; i++)
+                {
+                    AtomicAction act = new AtomicAction();
+                    
+                    act.begin();
+                    
+                    try
+                    {
+                        proxy.writeValue();
+                        
+                        act.commit();
+                        
+                        committedWrites.incrementAndGet();
+                    }
+                    catch (LockException ex)
+                    {
+                        act.abort();
+                    }
+                }
+            }
+        };
+        
+        for (int i = 1; i < threads.length; i++)
+        {
+            threads[i] = new Thread()
+            {
+                public void run ()
+                {
+                    int last = 0;
+                    
+                    for (int j = 0; j < 20; j++)
+                    {
+                        AtomicAction act = new AtomicAction();
+                        
+                        act.begin();
+                        
+                        try
+                        {
+                            int first = proxy.readValue();
+                            
+                            /*
+                             * The read lock keeps the writer out until we finish, so we
+                             * always see the same committed value.
+                             */
+                            
+                            if ((first < last) || (proxy.readValue() != first))
+                                failure[0] = new AssertionError("Read "+first+" after "+last);
+                            
+                            last = first;
+                            
+                            act.commit();
+                        }
+                        catch (LockException ex)
+                        {
+                            act.abort();
+                        }
+                    }
+                }
+            };
+        }
+        
+        for (Thread thread : threads)
+            thread.start();
+        
+        for (Thread thread : threads)
+            thread.join();
+        
+        if (failure[0] != null)
+            throw failure[0];
+        
+        assertEquals(proxy.readValue(), committedWrites.get());
+    }
+    
+    public void testReadersRunConcurrently () throws Throwable
+    {
+        PersistentContainer<Sample> theContainer = new PersistentContainer<Sample>();
+        SampleLockable tester = new SampleLockable();
+        final Sample proxy = theContainer.enlist(tester);
+        final boolean[] together = new boolean[2];
+        Thread[] threads = new Thread[2];
+        
+        assertNotNull(proxy);
+        
+        for (int i = 0; i < threads.length; i++)
+        {
+            final int reader = i;
+            
+            threads[i] = new Thread()
+            {
+                public void run ()
+                {
+                    AtomicAction act = new AtomicAction();
+                    
+                    act.begin();
+                    
+                    try
+                    {
+                        /*
+                         * Each reader waits inside the method for the other, which
+                         * only arrives if the proxy lets them in at the same time.
+                         */
+                        
+                        together[reader] = proxy.awaitReaders();
+                    }
+                    catch (InterruptedException ex)
+                    {
+                    }
+                    
+                    act.commit();
+                }
+            };
+        }
+        
+        for (Thread thread : threads)
+            thread.start();
+        
+        for (Thread thread : threads)
+            thread.join();
+        
+        assertTrue(together[0]);
+        assertTrue(together[1]);
+    }
 }
@@ -22,6 +22,8 @@
 
 package org.jboss.stm;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import junit.framework.TestCase;
 
 import org.jboss.stm.annotations.Optimistic;
@@ -31,6 +33,7 @@ import org.jboss.stm.annotations.WriteLock;
 
 import com.arjuna.ats.arjuna.AtomicAction;
 import com.arjuna.ats.arjuna.coordinator.ActionStatus;
+import com.arjuna.ats.arjuna.coordinator.TwoPhaseOutcome;
 
 /*
  * Provided by Tom Jenkinson.
@@ -109,4 +112,218 @@ public class OptimisticLockUnitTest extends TestCase
         c.commit();
         System.out.println("done");
     }
+
+    public void testReadConflict() throws Exception
+    {
+        Container<Atomic> theContainer1 = new Container<Atomic>();
+        Container<Atomic> theContainer2 = new Container<Atomic>();
+
+        final Atomic obj1 = theContainer1.create(new ExampleSTM());
+        
+        AtomicAction act = new AtomicAction();
+        
+        act.begin();
+        
+        obj1.set(10);
+        
+        act.commit();
+        
+        final Atomic obj2 = theContainer2.clone(new ExampleSTM(), obj1);
+
+        AtomicAction a = new AtomicAction();
+        a.begin();
+        assertEquals(obj1.get(), 10);
+        AtomicAction.suspend();
+
+        AtomicAction b = new AtomicAction();
+        b.begin();
+        obj2.set(20);
+        b.commit();
+
+        /*
+         * What a has read is now stale, so it must not be allowed to commit.
+         */
+        
+        AtomicAction.resume(a);
+        assertEquals(a.commit(), ActionStatus.ABORTED);
+
+        AtomicAction c = new AtomicAction();
+        c.begin();
+        assertEquals(obj1.get(), 20);
+        assertEquals(c.commit(), ActionStatus.COMMITTED);
+    }
+
+    /*
+     * Persistent objects may be shared with other JVMs, so the conflict has to be
+     * found by looking at the state on disk rather than anything held in memory.
+     */
+
+    public void testPersistentConflict() throws Exception
+    {
+        Container<Atomic> theContainer1 = new Container<Atomic>(Container.TYPE.PERSISTENT, Container.MODEL.SHARED);
+        Container<Atomic> theContainer2 = new Container<Atomic>(Container.TYPE.PERSISTENT, Container.MODEL.SHARED);
+
+        final Atomic obj1 = theContainer1.create(new ExampleSTM());
+        
+        AtomicAction act = new AtomicAction();
+        
+        act.begin();
+        
+        obj1.set(10);
+        
+        act.commit();
+        
+        final Atomic obj2 = theContainer2.clone(new ExampleSTM(), obj1);
+
+        AtomicAction a = new AtomicAction();
+        a.begin();
+        obj1.set(1234);
+        AtomicAction.suspend();
+
+        AtomicAction b = new AtomicAction();
+        b.begin();
+        obj2.set(12345);
+        assertEquals(b.commit(), ActionStatus.COMMITTED);
+
+        AtomicAction.resume(a);
+        assertEquals(a.commit(), ActionStatus.ABORTED);
+
+        AtomicAction c = new AtomicAction();
+        c.begin();
+        assertEquals(obj2.get(), 12345);
+        assertEquals(c.commit(), ActionStatus.COMMITTED);
+    }
+
+    /*
+     * Two writers, each with its own instance of the object, keep adding one to it.
+     * Every update that commits must be counted, however the transactions overlap.
+     */
+
+    public void testConcurrentWriters() throws Exception
+    {
+        Container<Atomic> theContainer = new Container<Atomic>();
+
+        final Atomic obj = theContainer.create(new ExampleSTM());
+        
+        AtomicAction act = new AtomicAction();
+        
+        act.begin();
+        
+        obj.set(0);
+        
+        act.commit();
+        
+        final AtomicInteger committed = new AtomicInteger();
+        Thread[] writers = new Thread[2];
+
+        for (int i = 0; i < writers.length; i++)
+        {
+            final Atomic instance = new Container<Atomic>().clone(new ExampleSTM(), obj);
+
+            writers[i] = new Thread()
+            {
+                public void run()
+                {
+                    for (int j = 0; j < 500; j++)
+                    {
+                        AtomicAction a = new AtomicAction();
+                        a.begin();
+                        instance.set(instance.get() + 1);
+
+                        if (a.commit() == ActionStatus.COMMITTED)
+                            committed.incrementAndGet();
+                    }
+                }
+            };
+        }
+
+        for (Thread writer : writers)
+            writer.start();
+
+        for (Thread writer : writers)
+            writer.join();
+
+        AtomicAction c = new AtomicAction();
+        c.begin();
+        assertEquals(obj.get(), committed.get());
+        assertEquals(c.commit(), ActionStatus.COMMITTED);
+    }
+
+    /*
+     * Both writers read the same state and are validated before either of them
+     * commits, so only one of them may be allowed to prepare or an update is lost.
+     */
+
+    public void testOverlappingPrepare() throws Exception
+    {
+        Container<Atomic> theContainer1 = new Container<Atomic>();
+        Container<Atomic> theContainer2 = new Container<Atomic>();
+
+        final Atomic obj1 = theContainer1.create(new ExampleSTM());
+        
+        AtomicAction act = new AtomicAction();
+        
+        act.begin();
+        
+        obj1.set(10);
+        
+        act.commit();
+        
+        final Atomic obj2 = theContainer2.clone(new ExampleSTM(), obj1);
+
+        TwoPhaseAction a = new TwoPhaseAction();
+        a.begin();
+        obj1.set(obj1.get() + 1);
+        AtomicAction.suspend();
+
+        TwoPhaseAction b = new TwoPhaseAction();
+        b.begin();
+        obj2.set(obj2.get() + 1);
+        AtomicAction.suspend();
+
+        int first = a.prepare();
+        int second = b.prepare();
+
+        assertEquals(first, TwoPhaseOutcome.PREPARE_OK);
+        assertEquals(second, TwoPhaseOutcome.PREPARE_NOTOK);
+
+        a.complete(true);
+        b.complete(false);
+
+        AtomicAction c = new AtomicAction();
+        c.begin();
+        assertEquals(obj1.get(), 11);
+        obj1.set(20);
+        assertEquals(c.commit(), ActionStatus.COMMITTED);
+
+        /*
+         * The failed writer must not have left the object reserved.
+         */
+
+        AtomicAction d = new AtomicAction();
+        d.begin();
+        assertEquals(obj2.get(), 20);
+        obj2.set(30);
+        assertEquals(d.commit(), ActionStatus.COMMITTED);
+    }
+
+    /*
+     * Lets both transactions get through prepare before either of them commits.
+     */
+
+    private static class TwoPhaseAction extends AtomicAction
+    {
+        public int prepare()
+        {
+            return prepare(true);
+        }
+
+        public void complete(boolean commit)
+        {
+            if (commit)
+                phase2Commit(true);
+            else
+                phase2Abort(true);
+        }
+    }
 }
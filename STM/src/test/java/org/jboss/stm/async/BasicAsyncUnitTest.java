@@ -23,7 +23,19 @@
 package org.jboss.stm.async;
 
 import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.jboss.stm.Container;
+import org.jboss.stm.TransactionException;
+import org.jboss.stm.annotations.Optimistic;
 
 import org.jboss.stm.annotations.State;
 import org.jboss.stm.annotations.Transactional;
@@ -34,8 +46,11 @@ import org.jboss.stm.internal.RecoverableContainer;
 import com.arjuna.ats.arjuna.AtomicAction;
 import com.arjuna.ats.arjuna.ObjectType;
 import com.arjuna.ats.arjuna.common.Uid;
+import com.arjuna.ats.arjuna.coordinator.AbstractRecord;
 import com.arjuna.ats.arjuna.coordinator.ActionStatus;
 import com.arjuna.ats.arjuna.coordinator.BasicAction;
+import com.arjuna.ats.arjuna.coordinator.RecordType;
+import com.arjuna.ats.arjuna.coordinator.TwoPhaseOutcome;
 import com.arjuna.ats.arjuna.state.InputObjectState;
 import com.arjuna.ats.arjuna.state.OutputObjectState;
 import com.arjuna.ats.txoj.Lock;
@@ -51,6 +66,123 @@ import junit.framework.TestCase;
 
 public class BasicAsyncUnitTest extends TestCase
 {
+    @Transactional
+    @Optimistic
+    public interface Counter
+    {
+        public int get ();
+        
+        public void increment ();
+    }
+    
+    public class CounterImple implements Counter
+    {
+        @ReadLock
+        public int get ()
+        {
+            return _value;
+        }
+        
+        @WriteLock
+        public void increment ()
+        {
+            _value++;
+        }
+        
+        @State
+        private int _value;
+    }
+    
+    /*
+     * A participant which gives a fixed outcome, so that the transaction can
+     * be made to roll back or end heuristically when it is committed.
+     */
+    
+    public class OutcomeRecord extends AbstractRecord
+    {
+        public OutcomeRecord (int prepareOutcome, int commitOutcome)
+        {
+            super(new Uid());
+            
+            _prepareOutcome = prepareOutcome;
+            _commitOutcome = commitOutcome;
+        }
+        
+        public int typeIs ()
+        {
+            return RecordType.USER_DEF_FIRST0;
+        }
+        
+        public Object value ()
+        {
+            return null;
+        }
+        
+        public void setValue (Object o)
+        {
+        }
+        
+        public int nestedAbort ()
+        {
+            return TwoPhaseOutcome.FINISH_OK;
+        }
+        
+        public int nestedCommit ()
+        {
+            return TwoPhaseOutcome.FINISH_OK;
+        }
+        
+        public int nestedPrepare ()
+        {
+            return TwoPhaseOutcome.PREPARE_OK;
+        }
+        
+        public int topLevelAbort ()
+        {
+            return TwoPhaseOutcome.FINISH_OK;
+        }
+        
+        public int topLevelCommit ()
+        {
+            return _commitOutcome;
+        }
+        
+        public int topLevelPrepare ()
+        {
+            return _prepareOutcome;
+        }
+        
+        public void merge (AbstractRecord a)
+        {
+        }
+        
+        public void alter (AbstractRecord a)
+        {
+        }
+        
+        public boolean shouldAdd (AbstractRecord a)
+        {
+            return false;
+        }
+        
+        public boolean shouldAlter (AbstractRecord a)
+        {
+            return false;
+        }
+        
+        public boolean shouldMerge (AbstractRecord a)
+        {
+            return false;
+        }
+        
+        public boolean shouldReplace (AbstractRecord a)
+        {
+            return false;
+        }
+        
+        private final int _prepareOutcome;
+        private final int _commitOutcome;
+    }
     
     public void testBeginCommit () throws Exception
     {
@@ -99,4 +231,187 @@ public class BasicAsyncUnitTest extends TestCase
         
         assertTrue(abortResult.get().intValue() == ActionStatus.ABORTED);
     }
+    
+    public void testChainedBeginCommit () throws Exception
+    {
+        final Transaction tx = new Transaction();
+        
+        int status = tx.beginAsync().thenCompose(new Function<Integer, CompletionStage<Integer>>()
+        {
+            public CompletionStage<Integer> apply (Integer begun)
+            {
+                assertEquals(begun.intValue(), ActionStatus.RUNNING);
+                
+                return tx.commitAsync();
+            }
+        }).toCompletableFuture().get().intValue();
+        
+        assertEquals(status, ActionStatus.COMMITTED);
+    }
+    
+    public void testChainedBeginAbort () throws Exception
+    {
+        final Transaction tx = new Transaction();
+        
+        int status = tx.beginAsync().thenCompose(new Function<Integer, CompletionStage<Integer>>()
+        {
+            public CompletionStage<Integer> apply (Integer begun)
+            {
+                return tx.abortAsync();
+            }
+        }).toCompletableFuture().get().intValue();
+        
+        assertEquals(status, ActionStatus.ABORTED);
+    }
+    
+    public void testExecutor () throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        
+        try
+        {
+            Container<Counter> theContainer = new Container<Counter>();
+            final Counter counter = theContainer.create(new CounterImple());
+            final Transaction tx = new Transaction(executor);
+            
+            assertEquals(tx.begin().get().intValue(), ActionStatus.RUNNING);
+            
+            /*
+             * Each piece of work may run on a different thread.
+             */
+            
+            for (int i = 0; i < 5; i++)
+            {
+                tx.execute(new Callable<Void>()
+                {
+                    public Void call () throws Exception
+                    {
+                        counter.increment();
+                        
+                        return null;
+                    }
+                }).get();
+            }
+            
+            assertEquals(tx.commit().get().intValue(), ActionStatus.COMMITTED);
+            
+            AtomicAction A = new AtomicAction();
+            
+            A.begin();
+            
+            assertEquals(counter.get(), 5);
+            
+            A.commit();
+        }
+        finally
+        {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+    
+    public void testAtomically () throws Exception
+    {
+        Container<Counter> theContainer = new Container<Counter>();
+        final Counter counter = theContainer.create(new CounterImple());
+        
+        int value = Transaction.atomically(new Callable<Integer>()
+        {
+            public Integer call () throws Exception
+            {
+                counter.increment();
+                
+                return counter.get();
+            }
+        }).get().intValue();
+        
+        assertEquals(value, 1);
+        
+        try
+        {
+            Transaction.atomically(new Callable<Integer>()
+            {
+                public Integer call () throws Exception
+                {
+                    counter.increment();
+                    
+                    throw new IOException();
+                }
+            }).get();
+            
+            fail();
+        }
+        catch (final ExecutionException ex)
+        {
+            assertTrue(ex.getCause() instanceof IOException);
+        }
+        
+        AtomicAction A = new AtomicAction();
+        
+        A.begin();
+        
+        assertEquals(counter.get(), 1);
+        
+        A.commit();
+    }
+    
+    public void testAtomicallyRetriesRollback () throws Exception
+    {
+        final AtomicInteger attempts = new AtomicInteger();
+        
+        int value = Transaction.atomically(new Callable<Integer>()
+        {
+            public Integer call () throws Exception
+            {
+                /*
+                 * The first attempt is rolled back when it is committed.
+                 */
+                
+                if (attempts.incrementAndGet() == 1)
+                {
+                    BasicAction.Current().add(new OutcomeRecord(TwoPhaseOutcome.PREPARE_OK, TwoPhaseOutcome.FINISH_OK));
+                    BasicAction.Current().add(new OutcomeRecord(TwoPhaseOutcome.PREPARE_NOTOK, TwoPhaseOutcome.FINISH_OK));
+                }
+                
+                return attempts.get();
+            }
+        }).get().intValue();
+        
+        assertEquals(value, 2);
+        assertEquals(attempts.get(), 2);
+    }
+    
+    public void testAtomicallyHeuristic () throws Exception
+    {
+        final AtomicInteger attempts = new AtomicInteger();
+        
+        try
+        {
+            Transaction.atomically(new Callable<Integer>()
+            {
+                public Integer call () throws Exception
+                {
+                    attempts.incrementAndGet();
+                    
+                    BasicAction.Current().add(new OutcomeRecord(TwoPhaseOutcome.PREPARE_OK, TwoPhaseOutcome.FINISH_OK));
+                    BasicAction.Current().add(new OutcomeRecord(TwoPhaseOutcome.PREPARE_OK, TwoPhaseOutcome.HEURISTIC_MIXED));
+                    
+                    return attempts.get();
+                }
+            }).get();
+            
+            fail();
+        }
+        catch (final ExecutionException ex)
+        {
+            /*
+             * Some of the work may have been committed, so it must not be run again.
+             */
+            
+            assertTrue(ex.getCause() instanceof TransactionException);
+            assertEquals(((TransactionException) ex.getCause()).getStatus(), ActionStatus.H_MIXED);
+        }
+        
+        assertEquals(attempts.get(), 1);
+    }
 }
@@ -0,0 +1,148 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2006, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.stm.internal.optimistic;
+
+import com.arjuna.ats.arjuna.common.Uid;
+
+import junit.framework.TestCase;
+
+public class ObjectVersionsUnitTest extends TestCase
+{
+    public void testReadValidation ()
+    {
+        Uid u = new Uid();
+        ObjectVersions.Stamp stamp = ObjectVersions.acquire(u);
+        long seen = stamp.current();
+
+        assertTrue(stamp.isCurrent(seen));
+
+        stamp.advance();
+
+        assertFalse(stamp.isCurrent(seen));
+
+        stamp.done();
+    }
+
+    public void testConflictingWriters ()
+    {
+        Uid u = new Uid();
+        ObjectVersions.Stamp first = ObjectVersions.acquire(u);
+        ObjectVersions.Stamp second = ObjectVersions.acquire(u);
+        long seen = first.current();
+
+        assertSame(first, second);
+        assertEquals(seen, second.current());
+
+        assertTrue(first.reserve(seen));
+        assertFalse(second.reserve(seen));
+
+        /*
+         * Nobody can validate while the update is in progress.
+         */
+
+        assertFalse(second.isCurrent(second.current()));
+
+        first.release();
+
+        assertFalse(second.reserve(seen));
+        assertTrue(second.isCurrent(second.current()));
+
+        first.done();
+        second.done();
+    }
+
+    public void testEviction ()
+    {
+        Uid u = new Uid();
+        int size = ObjectVersions.size();
+        ObjectVersions.Stamp first = ObjectVersions.acquire(u);
+        ObjectVersions.Stamp second = ObjectVersions.acquire(new Uid(u));
+        long seen = first.current();
+
+        assertSame(first, second);
+        assertEquals(size + 1, ObjectVersions.size());
+
+        first.done();
+
+        assertEquals(size + 1, ObjectVersions.size());
+        assertSame(second, ObjectVersions.acquire(u));
+
+        second.done();
+        second.done();
+
+        /*
+         * Once nobody is using it the stamp goes, and versions are never reused so
+         * a new one cannot be mistaken for the old.
+         */
+
+        assertEquals(size, ObjectVersions.size());
+
+        ObjectVersions.Stamp third = ObjectVersions.acquire(u);
+
+        assertNotSame(first, third);
+        assertFalse(third.isCurrent(seen));
+        assertFalse(third.reserve(seen));
+
+        third.done();
+
+        assertEquals(size, ObjectVersions.size());
+    }
+
+    public void testForget ()
+    {
+        Uid u = new Uid();
+        ObjectVersions.Stamp stamp = ObjectVersions.acquire(u);
+        long seen = stamp.current();
+
+        ObjectVersions.forget(u);
+
+        /*
+         * A transaction which used the object before it was forgotten cannot
+         * validate against a new stamp.
+         */
+
+        ObjectVersions.Stamp next = ObjectVersions.acquire(u);
+
+        assertNotSame(stamp, next);
+        assertFalse(next.isCurrent(seen));
+        assertFalse(next.reserve(seen));
+
+        stamp.done();
+        next.done();
+    }
+
+    public void testEqualUids ()
+    {
+        Uid u = new Uid();
+        ObjectVersions.Stamp stamp = ObjectVersions.acquire(u);
+        long seen = stamp.current();
+        ObjectVersions.Stamp other = ObjectVersions.acquire(new Uid(u));
+
+        other.advance();
+
+        assertFalse(stamp.isCurrent(seen));
+
+        stamp.done();
+        other.done();
+    }
+}
@@ -0,0 +1,380 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2006, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.stm.internal.proxy;
+
+import java.io.IOException;
+
+import org.jboss.stm.annotations.RestoreState;
+import org.jboss.stm.annotations.SaveState;
+import org.jboss.stm.annotations.Transactional;
+import org.jboss.stm.annotations.WriteLock;
+import org.jboss.stm.internal.RecoverableContainer;
+
+import com.arjuna.ats.arjuna.AtomicAction;
+import com.arjuna.ats.arjuna.ObjectType;
+import com.arjuna.ats.arjuna.state.InputObjectState;
+import com.arjuna.ats.arjuna.state.OutputObjectState;
+import com.arjuna.ats.txoj.Lock;
+import com.arjuna.ats.txoj.LockMode;
+import com.arjuna.ats.txoj.LockResult;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for saving and restoring state through the per-class handlers.
+ */
+
+public class StateHandlerUnitTest extends TestCase
+{
+    @Transactional
+    public interface Atomic
+    {
+        public void set (int value) throws Exception;
+    }
+    
+    public class AllTypes implements Atomic
+    {
+        @WriteLock
+        public void set (int value)
+        {
+            _int = value;
+        }
+        
+        public boolean _boolean = true;
+        public byte _byte = 1;
+        public short _short = 2;
+        public int _int = 3;
+        public long _long = 4L;
+        public float _float = 5.0f;
+        public double _double = 6.0;
+        public char _char = 'a';
+        
+        public Boolean _booleanObject = Boolean.TRUE;
+        public Integer _integerObject = Integer.valueOf(7);
+        public Long _longObject = Long.valueOf(8L);
+        public Character _characterObject = Character.valueOf('b');
+        public String _string = "Hello World";
+        
+        public boolean[] _booleans = { true, false };
+        public byte[] _bytes = { 1, 2, 3 };
+        public int[] _ints = { 4, 5, 6 };
+        public long[] _longs = { 7L, 8L };
+        public double[] _doubles = { 9.0, 10.0 };
+        public char[] _chars = { 'c', 'd' };
+        public Integer[] _integers = { Integer.valueOf(11), null, Integer.valueOf(12) };
+        public String[] _strings = { "one", null, "three" };
+        
+        public transient int _transient = 13;
+    }
+    
+    public class FinalTypes implements Atomic
+    {
+        @WriteLock
+        public void set (int value)
+        {
+            _ints[0] = value;
+        }
+        
+        public final int _final = 1;
+        public final int[] _ints = { 2, 3 };
+        public final Double[] _doubles = { Double.valueOf(4.0), null };
+    }
+    
+    public class UnsupportedArray implements Atomic
+    {
+        @WriteLock
+        public void set (int value)
+        {
+            _int = value;
+        }
+        
+        public int _int = 1;
+        public Object[] _objects = { "one", "two" };
+    }
+    
+    public class MultiArray implements Atomic
+    {
+        @WriteLock
+        public void set (int value)
+        {
+            _ints[0][0] = value;
+        }
+        
+        public int[][] _ints = new int[2][2];
+    }
+    
+    public class CustomState implements Atomic
+    {
+        @WriteLock
+        public void set (int value)
+        {
+            _int = value;
+        }
+        
+        @SaveState
+        public void save_state (OutputObjectState os) throws IOException
+        {
+            os.packInt(_int);
+        }
+        
+        @RestoreState
+        public void restore_state (InputObjectState os) throws IOException
+        {
+            _int = os.unpackInt();
+        }
+        
+        public int _int = 1;
+        public Object[] _objects = { "one", "two" };
+    }
+    
+    public class NullState implements Atomic
+    {
+        @WriteLock
+        public void set (int value)
+        {
+        }
+        
+        public Integer _integerObject = null;
+    }
+    
+    public void testPessimisticSaveRestore () throws Exception
+    {
+        AllTypes sample = new AllTypes();
+        StateHandler handler = StateHandler.pessimistic(AllTypes.class);
+        OutputObjectState os = new OutputObjectState();
+        
+        handler.check(AllTypes.class);
+        
+        assertTrue(handler.pack(sample, os, null));
+        
+        scribble(sample);
+        
+        assertTrue(handler.unpack(sample, new InputObjectState(os), null));
+        
+        checkRestored(sample);
+        
+        assertEquals(-1, sample._transient);
+    }
+    
+    public void testOptimisticSaveRestore () throws Exception
+    {
+        AllTypes sample = new AllTypes();
+        StateHandler handler = StateHandler.optimistic(AllTypes.class);
+        OutputObjectState os = new OutputObjectState();
+        
+        handler.check(AllTypes.class);
+        
+        assertTrue(handler.pack(sample, os, null));
+        
+        scribble(sample);
+        
+        assertTrue(handler.unpack(sample, new InputObjectState(os), null));
+        
+        checkRestored(sample);
+    }
+    
+    public void testOptimisticFinalArrays () throws Exception
+    {
+        FinalTypes sample = new FinalTypes();
+        OutputObjectState os = new OutputObjectState();
+        
+        assertTrue(StateHandler.optimistic(FinalTypes.class).pack(sample, os, null));
+        
+        sample._ints[0] = -1;
+        sample._ints[1] = -1;
+        sample._doubles[0] = null;
+        sample._doubles[1] = Double.valueOf(-1.0);
+        
+        assertTrue(StateHandler.optimistic(FinalTypes.class).unpack(sample, new InputObjectState(os), null));
+        
+        assertEquals(1, sample._final);
+        assertEquals(2, sample._ints[0]);
+        assertEquals(3, sample._ints[1]);
+        assertEquals(Double.valueOf(4.0), sample._doubles[0]);
+        assertNull(sample._doubles[1]);
+    }
+    
+    public void testOptimisticProxyAbort () throws Exception
+    {
+        FinalTypes sample = new FinalTypes();
+        OptimisticLockManagerProxy<FinalTypes> proxy = new OptimisticLockManagerProxy<FinalTypes>(sample, ObjectType.RECOVERABLE);
+        OutputObjectState os = new OutputObjectState();
+        
+        assertTrue(proxy.save_state(os, ObjectType.RECOVERABLE));
+        
+        sample._ints[0] = -1;
+        sample._doubles[1] = Double.valueOf(-1.0);
+        
+        assertTrue(proxy.restore_state(new InputObjectState(os), ObjectType.RECOVERABLE));
+        
+        assertEquals(2, sample._ints[0]);
+        assertNull(sample._doubles[1]);
+    }
+    
+    public void testPessimisticProxyAbort () throws Exception
+    {
+        AllTypes sample = new AllTypes();
+        LockManagerProxy<AllTypes> proxy = new LockManagerProxy<AllTypes>(sample);
+        
+        AtomicAction A = new AtomicAction();
+        
+        A.begin();
+        
+        assertEquals(LockResult.GRANTED, proxy.setlock(new Lock(LockMode.WRITE)));
+        
+        scribble(sample);
+        
+        A.abort();
+        
+        checkRestored(sample);
+    }
+    
+    public void testNullBoxedValue () throws Exception
+    {
+        OutputObjectState os = new OutputObjectState();
+        
+        // null boxed values have never been saved
+        
+        assertFalse(StateHandler.pessimistic(NullState.class).pack(new NullState(), os, null));
+    }
+    
+    public void testUnsupportedArray () throws Exception
+    {
+        try
+        {
+            StateHandler.pessimistic(UnsupportedArray.class).check(UnsupportedArray.class);
+            
+            fail();
+        }
+        catch (final IllegalArgumentException ex)
+        {
+        }
+        
+        try
+        {
+            LockManagerProxy.checkState(MultiArray.class, true);
+            
+            fail();
+        }
+        catch (final IllegalArgumentException ex)
+        {
+        }
+        
+        assertFalse(StateHandler.pessimistic(UnsupportedArray.class).pack(new UnsupportedArray(), new OutputObjectState(), null));
+    }
+    
+    public void testUnsupportedArrayEnlist () throws Exception
+    {
+        RecoverableContainer<Atomic> theContainer = new RecoverableContainer<Atomic>();
+        
+        try
+        {
+            theContainer.enlist(new UnsupportedArray());
+            
+            fail();
+        }
+        catch (final IllegalArgumentException ex)
+        {
+        }
+        
+        try
+        {
+            theContainer.enlist(new MultiArray());
+            
+            fail();
+        }
+        catch (final IllegalArgumentException ex)
+        {
+        }
+    }
+    
+    public void testUnsupportedArrayWithSaveRestore () throws Exception
+    {
+        RecoverableContainer<Atomic> theContainer = new RecoverableContainer<Atomic>();
+        CustomState sample = new CustomState();
+        Atomic obj = theContainer.enlist(sample);
+        
+        AtomicAction A = new AtomicAction();
+        
+        A.begin();
+        
+        obj.set(2);
+        
+        A.abort();
+        
+        assertEquals(1, sample._int);
+    }
+    
+    private static void scribble (AllTypes sample)
+    {
+        sample._boolean = false;
+        sample._byte = -1;
+        sample._short = -1;
+        sample._int = -1;
+        sample._long = -1L;
+        sample._float = -1.0f;
+        sample._double = -1.0;
+        sample._char = 'z';
+        sample._booleanObject = Boolean.FALSE;
+        sample._integerObject = null;
+        sample._longObject = Long.valueOf(-1L);
+        sample._characterObject = null;
+        sample._string = null;
+        sample._booleans[0] = false;
+        sample._bytes[1] = -1;
+        sample._ints[2] = -1;
+        sample._longs[0] = -1L;
+        sample._doubles[1] = -1.0;
+        sample._chars[0] = 'z';
+        sample._integers[0] = null;
+        sample._integers[1] = Integer.valueOf(-1);
+        sample._strings[1] = "two";
+        sample._transient = -1;
+    }
+    
+    private static void checkRestored (AllTypes sample)
+    {
+        assertTrue(sample._boolean);
+        assertEquals(1, sample._byte);
+        assertEquals(2, sample._short);
+        assertEquals(3, sample._int);
+        assertEquals(4L, sample._long);
+        assertEquals(5.0f, sample._float, 0.0f);
+        assertEquals(6.0, sample._double, 0.0);
+        assertEquals('a', sample._char);
+        assertEquals(Boolean.TRUE, sample._booleanObject);
+        assertEquals(Integer.valueOf(7), sample._integerObject);
+        assertEquals(Long.valueOf(8L), sample._longObject);
+        assertEquals(Character.valueOf('b'), sample._characterObject);
+        assertEquals("Hello World", sample._string);
+        assertTrue(sample._booleans[0]);
+        assertEquals(2, sample._bytes[1]);
+        assertEquals(6, sample._ints[2]);
+        assertEquals(7L, sample._longs[0]);
+        assertEquals(10.0, sample._doubles[1], 0.0);
+        assertEquals('c', sample._chars[0]);
+        assertEquals(Integer.valueOf(11), sample._integers[0]);
+        assertNull(sample._integers[1]);
+        assertNull(sample._strings[1]);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2006, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.stm.types;
+
+import java.util.Set;
+
+import com.arjuna.ats.arjuna.AtomicAction;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the AtomicMap and AtomicSortedMap classes.
+ */
+
+public class AtomicMapUnitTest extends TestCase
+{   
+    public void test ()
+    {
+        AtomicMap<String, Integer> m1 = MapFactory.instance().createMap();
+        
+        assertTrue(m1.isEmpty());
+        
+        for (int i = 0; i < 100; i++)
+            assertNull(m1.put("key"+i, i));
+        
+        assertEquals(m1.size(), 100);
+        assertEquals(m1.get("key10"), Integer.valueOf(10));
+        assertEquals(m1.put("key10", 11), Integer.valueOf(10));
+        assertEquals(m1.remove("key10"), Integer.valueOf(11));
+        assertFalse(m1.containsKey("key10"));
+        
+        Set<String> keys = m1.keySet();
+        
+        assertEquals(keys.size(), 99);
+        assertTrue(keys.contains("key99"));
+        
+        m1.clear();
+        
+        assertTrue(m1.isEmpty());
+    }
+    
+    public void testTransaction ()
+    {
+        AtomicAction act = new AtomicAction();
+        AtomicMap<String, String> m1 = MapFactory.instance().createMap(4);
+        
+        m1.put("a", "b");
+        
+        act.begin();
+        
+        m1.put("a", "c");
+        m1.put("d", "e");
+        
+        assertEquals(m1.get("a"), "c");
+        
+        act.abort();
+        
+        assertEquals(m1.get("a"), "b");
+        assertFalse(m1.containsKey("d"));
+        assertEquals(m1.size(), 1);
+    }
+    
+    public void testSorted ()
+    {
+        AtomicSortedMap<Long, String> m1 = MapFactory.instance().createSortedMap();
+        AtomicAction act = new AtomicAction();
+        
+        assertNull(m1.firstKey());
+        
+        act.begin();
+        
+        for (long i = 10; i > 0; i--)
+            m1.put(i, "value"+i);
+        
+        act.commit();
+        
+        assertEquals(m1.firstKey(), Long.valueOf(1));
+        assertEquals(m1.lastKey(), Long.valueOf(10));
+        assertEquals(m1.keySet().first(), Long.valueOf(1));
+        assertEquals(m1.get(5L), "value5");
+    }
+    
+    public void testPackedTypes ()
+    {
+        AtomicMap<Object, Object> m1 = MapFactory.instance().createMap(2);
+        Object[] values = { "a", 1, 2L, (short) 3, (byte) 4, 'c', true, 5.0, 6.0f };
+        AtomicAction act = new AtomicAction();
+        
+        act.begin();
+        
+        for (int i = 0; i < values.length; i++)
+            m1.put(values[i], values[(i + 1) % values.length]);
+        
+        m1.put("bytes", new byte[] { 7, 8 });
+        
+        act.commit();
+        
+        /*
+         * Rolling back a change restores every stripe from its saved state.
+         */
+        
+        act = new AtomicAction();
+        
+        act.begin();
+        
+        for (int i = 0; i < values.length; i++)
+            m1.remove(values[i]);
+        
+        m1.put("bytes", null);
+        
+        act.abort();
+        
+        for (int i = 0; i < values.length; i++)
+            assertEquals(m1.get(values[i]), values[(i + 1) % values.length]);
+        
+        assertTrue(java.util.Arrays.equals((byte[]) m1.get("bytes"), new byte[] { 7, 8 }));
+    }
+    
+    public void testUnpackableTypes ()
+    {
+        AtomicMap<Object, Object> m1 = MapFactory.instance().createMap(2);
+        
+        try
+        {
+            m1.put("key", new java.util.Date());
+            
+            fail();
+        }
+        catch (final IllegalArgumentException ex)
+        {
+        }
+        
+        try
+        {
+            m1.put(new byte[] { 1 }, "value");
+            
+            fail();
+        }
+        catch (final IllegalArgumentException ex)
+        {
+        }
+        
+        assertTrue(m1.isEmpty());
+    }
+}
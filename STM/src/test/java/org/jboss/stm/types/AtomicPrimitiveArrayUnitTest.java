@@ -0,0 +1,93 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2006, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.stm.types;
+
+import com.arjuna.ats.arjuna.AtomicAction;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the AtomicLongArray and AtomicIntArray classes.
+ */
+
+public class AtomicPrimitiveArrayUnitTest extends TestCase
+{   
+    public void test ()
+    {
+        AtomicLongArray a1 = ArrayFactory.instance().createLongArray(1000);
+        
+        assertEquals(a1.length(), 1000);
+        
+        for (int i = 0; i < a1.length(); i++)
+            a1.set(i, i);
+        
+        for (int j = 0; j < a1.length(); j++)
+            assertEquals(a1.get(j), j);
+        
+        assertEquals(a1.increment(999), 1000);
+        assertEquals(a1.add(0, 10), 10);
+        
+        try
+        {
+            a1.get(1000);
+            
+            fail();
+        }
+        catch (final ArrayIndexOutOfBoundsException ex)
+        {
+        }
+    }
+    
+    public void testTransaction ()
+    {
+        AtomicAction act = new AtomicAction();
+        AtomicIntArray a1 = ArrayFactory.instance().createIntArray(10, 3);
+        
+        assertEquals(a1.length(), 10);
+        
+        act.begin();
+        
+        a1.set(0, 1);
+        a1.increment(1);
+        a1.increment(9);
+        
+        assertEquals(a1.get(0), 1);
+        assertEquals(a1.get(1), 1);
+        
+        act.abort();
+        
+        assertEquals(a1.get(0), 0);
+        assertEquals(a1.get(1), 0);
+        assertEquals(a1.get(9), 0);
+        
+        act = new AtomicAction();
+        
+        act.begin();
+        
+        a1.decrement(5);
+        
+        act.commit();
+        
+        assertEquals(a1.get(5), -1);
+    }
+}
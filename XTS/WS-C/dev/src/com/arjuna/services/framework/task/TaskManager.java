@@ -20,69 +20,132 @@
  */
 package com.arjuna.services.framework.task ;
 
-import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import com.arjuna.webservices.logging.WSCLogger;
 
 /**
- * This class manages the client side of the task manager
+ * This class manages the client side of the task manager.
+ *
+ * Tasks are held in a bounded, non blocking queue and are picked up by a pool
+ * of worker threads which grows on demand up to the maximum worker count and
+ * shrinks back to the minimum worker count once workers have been idle for the
+ * keep alive period.  When the queue is full the task is executed by the
+ * calling thread, slowing down the producer rather than dropping the message.
  * 
  * @author kevin
  */
 public class TaskManager
 {
-    /**
-     * The singleton.
-     */
-    private static final TaskManager MANAGER = new TaskManager() ;
-
     /**
      * The default maximum worker count.
      */
-    private static final int DEFAULT_MAXIMUM_THREAD_COUNT = 10 ;
+    private static final int DEFAULT_MAXIMUM_THREAD_COUNT = Math.max(10, 4 * Runtime.getRuntime().availableProcessors()) ;
 
     /**
      * The default minimum worker count.
      */
     private static final int DEFAULT_MINIMUM_THREAD_COUNT = 0 ;
 
+    /**
+     * The default queue capacity.
+     */
+    private static final int DEFAULT_QUEUE_CAPACITY = 4096 ;
+
+    /**
+     * The default period, in milliseconds, an idle worker above the minimum count waits before exiting.
+     */
+    private static final long DEFAULT_KEEP_ALIVE = 60000 ;
+
+    /**
+     * The singleton.
+     */
+    private static final TaskManager MANAGER = new TaskManager() ;
+
     /**
      * The minimum worker pool count.
      */
-    private int minimumWorkerCount = DEFAULT_MINIMUM_THREAD_COUNT ;
+    private volatile int minimumWorkerCount = DEFAULT_MINIMUM_THREAD_COUNT ;
 
     /**
      * The maximum worker pool count.
      */
-    private int maximumWorkerCount = DEFAULT_MAXIMUM_THREAD_COUNT ;
+    private volatile int maximumWorkerCount = DEFAULT_MAXIMUM_THREAD_COUNT ;
+
+    /**
+     * The maximum number of queued tasks.
+     */
+    private volatile int queueCapacity = DEFAULT_QUEUE_CAPACITY ;
+
+    /**
+     * The keep alive period for idle workers.
+     */
+    private volatile long keepAlive = DEFAULT_KEEP_ALIVE ;
+
+    /**
+     * The factory used to create the worker threads.
+     */
+    private volatile ThreadFactory threadFactory = new WorkerThreadFactory() ;
 
     /**
      * The set of already allocated workers.
      */
-    private Set workerPool = new HashSet() ;
+    private final Set<Thread> workerPool = ConcurrentHashMap.newKeySet() ;
+
+    /**
+     * The number of workers, including those reserved but not yet started.
+     */
+    private final AtomicInteger workerCount = new AtomicInteger() ;
+
+    /**
+     * The number of workers waiting for a task.
+     */
+    private final AtomicInteger waitingCount = new AtomicInteger() ;
 
     /**
-     * The current list of tasks.
+     * The current queue of tasks.
      */
-    private LinkedList taskList = new LinkedList() ;
+    private final Queue<QueuedTask> taskList = new ConcurrentLinkedQueue<QueuedTask>() ;
 
     /**
-     * The counter used for naming the threads.
+     * The number of tasks in the queue, used to bound the queue.
      */
-    private int taskCount ;
+    private final AtomicInteger queueDepth = new AtomicInteger() ;
 
     /**
-     * The number of worker waiting.
+     * The permits signalling queued tasks to the workers.
      */
-    private int waitingCount ;
+    private final Semaphore available = new Semaphore(0) ;
+
+    /**
+     * The number of tasks executed.
+     */
+    private final LongAdder completedCount = new LongAdder() ;
+
+    /**
+     * The number of tasks executed by the caller because the queue was full.
+     */
+    private final LongAdder rejectedCount = new LongAdder() ;
+
+    /**
+     * The accumulated time, in nanoseconds, tasks spent in the queue.
+     */
+    private final LongAdder queueTime = new LongAdder() ;
 
     /**
      * A flag indicating that shutdown is in progress.
      */
-    private boolean shutdown ;
+    private final AtomicBoolean shutdown = new AtomicBoolean() ;
 
     /**
      * Get the singleton controlling the tasks.
@@ -102,63 +165,56 @@ public class TaskManager
     }
 
     /**
-     * Queue the task for execution.
+     * Queue the task for execution.  If the queue is full the task is executed
+     * by the calling thread before this method returns.
      * 
      * @param task The task to be executed.
-     * @return true if the task was queued, false otherwise.
+     * @return true if the task was queued or executed, false otherwise.
      * 
      */
     public boolean queueTask(final Task task)
     {
         final boolean debugEnabled = WSCLogger.logger.isTraceEnabled() ;
-        synchronized(workerPool)
+        if (shutdown.get())
         {
-            if (shutdown)
+            if (debugEnabled)
             {
-                if (debugEnabled)
-                {
-                    WSCLogger.logger.tracef("Shutdown in progress, ignoring task '%s'", task) ;
-                }
-                return false ;
+                WSCLogger.logger.tracef("Shutdown in progress, ignoring task '%s'", task) ;
             }
+            return false ;
         }
 
-        final boolean notify ;
-        synchronized(taskList)
+        if (!reserveQueueSlot())
         {
-            taskList.addLast(task) ;
-            notify = (waitingCount > 0) ;
-            if (notify)
+            if (debugEnabled)
             {
-                if (debugEnabled)
-                {
-                    WSCLogger.logger.tracef("queueTask: notifying waiting workers (%s) for task '%s'",
-                            new Integer(waitingCount), task) ;
-                }
-                taskList.notify() ;
+                WSCLogger.logger.tracef("queueTask: queue full, executing task '%s' in caller", task) ;
             }
+            rejectedCount.increment() ;
+            execute(task) ;
+            return true ;
         }
 
-        final boolean create ;
-        synchronized(workerPool)
-        {
-            create = ((workerPool.size() < minimumWorkerCount) ||
-                    ((workerPool.size() < maximumWorkerCount) && !notify)) ;
-        }
+        taskList.offer(new QueuedTask(task)) ;
+        available.release() ;
 
-        if (create)
+        if ((waitingCount.get() == 0) || (workerCount.get() < minimumWorkerCount))
         {
-            if (debugEnabled)
+            if (reserveWorker())
             {
-                WSCLogger.logger.tracef("queueTask: creating worker for task '%s'", task) ;
+                if (debugEnabled)
+                {
+                    WSCLogger.logger.tracef("queueTask: creating worker for task '%s'", task) ;
+                }
+                createWorker() ;
+                return true ;
             }
-            createWorker() ;
         }
-        else if (debugEnabled)
+
+        if (debugEnabled)
         {
             WSCLogger.logger.tracef("queueTask: queueing task '%s' for execution", task) ;
         }
-        
         return true ;
     }
 
@@ -171,9 +227,9 @@ public class TaskManager
     public void setMinimumWorkerCount(final int minimumWorkerCount)
     {
         final boolean debugEnabled = WSCLogger.logger.isTraceEnabled() ;
-        synchronized(workerPool)
+        synchronized(this)
         {
-            if (shutdown)
+            if (shutdown.get())
             {
                 if (debugEnabled)
                 {
@@ -190,19 +246,14 @@ public class TaskManager
 
             if (debugEnabled)
             {
-                WSCLogger.logger.tracev("setMinimumWorkerCount: {0}") ;
+                WSCLogger.logger.tracev("setMinimumWorkerCount: {0}",
+                        new Object[] {new Integer(this.minimumWorkerCount)}) ;
             }
         }
 
-        while(true)
+        while(workerCount.get() < this.minimumWorkerCount)
         {
-            final boolean create ;
-            synchronized(workerPool)
-            {
-                create = (workerPool.size() < this.minimumWorkerCount) ;
-            }
-
-            if (create)
+            if (reserveWorker())
             {
                 createWorker() ;
             }
@@ -220,10 +271,7 @@ public class TaskManager
      */
     public int getMinimumWorkerCount()
     {
-        synchronized(workerPool)
-        {
-            return minimumWorkerCount ;
-        }
+        return minimumWorkerCount ;
     }
 
     /**
@@ -234,9 +282,9 @@ public class TaskManager
     public void setMaximumWorkerCount(final int maximumWorkerCount)
     {
         final boolean debugEnabled = WSCLogger.logger.isTraceEnabled() ;
-        synchronized(workerPool)
+        synchronized(this)
         {
-            if (shutdown)
+            if (shutdown.get())
             {
                 if (debugEnabled)
                 {
@@ -257,18 +305,16 @@ public class TaskManager
                         new Object[] {new Integer(this.maximumWorkerCount)}) ;
             }
 
-            synchronized(taskList)
+            final int excessCount = workerCount.get() - this.maximumWorkerCount ;
+            if (excessCount > 0)
             {
-                if ((workerPool.size() > this.maximumWorkerCount)
-                        && (waitingCount > 0))
+                if (debugEnabled)
                 {
-                    if (debugEnabled)
-                    {
-                        WSCLogger.logger.tracev("setMaximumWorkerCount: reducing pool size from {0} to {1}",
-                                new Object[] {new Integer(workerPool.size()), new Integer(this.maximumWorkerCount)}) ;
-                    }
-                    taskList.notify() ;
+                    WSCLogger.logger.tracev("setMaximumWorkerCount: reducing pool size from {0} to {1}",
+                            new Object[] {new Integer(workerCount.get()), new Integer(this.maximumWorkerCount)}) ;
                 }
+                // wake idle workers so that they notice the reduction
+                available.release(Math.min(excessCount, waitingCount.get())) ;
             }
         }
     }
@@ -280,10 +326,7 @@ public class TaskManager
      */
     public int getMaximumWorkerCount()
     {
-        synchronized(workerPool)
-        {
-            return maximumWorkerCount ;
-        }
+        return maximumWorkerCount ;
     }
 
     /**
@@ -293,10 +336,112 @@ public class TaskManager
      */
     public int getWorkerCount()
     {
-        synchronized(workerPool)
-        {
-            return workerPool.size() ;
-        }
+        return workerCount.get() ;
+    }
+
+    /**
+     * Set the maximum number of tasks which can be queued before tasks are
+     * executed by the calling thread.
+     *
+     * @param queueCapacity The queue capacity, a value less than one selects the default.
+     */
+    public void setQueueCapacity(final int queueCapacity)
+    {
+        this.queueCapacity = (queueCapacity < 1 ? DEFAULT_QUEUE_CAPACITY : queueCapacity) ;
+    }
+
+    /**
+     * Get the maximum number of tasks which can be queued.
+     *
+     * @return The queue capacity.
+     */
+    public int getQueueCapacity()
+    {
+        return queueCapacity ;
+    }
+
+    /**
+     * Set the period an idle worker above the minimum worker count waits for a
+     * task before exiting.
+     *
+     * @param keepAlive The keep alive period in milliseconds, a negative value selects the default.
+     */
+    public void setKeepAlive(final long keepAlive)
+    {
+        this.keepAlive = (keepAlive < 0 ? DEFAULT_KEEP_ALIVE : keepAlive) ;
+    }
+
+    /**
+     * Get the period an idle worker waits for a task before exiting.
+     *
+     * @return The keep alive period in milliseconds.
+     */
+    public long getKeepAlive()
+    {
+        return keepAlive ;
+    }
+
+    /**
+     * Set the factory used to create worker threads, for example to run the
+     * workers on a different type of thread.  The default factory creates
+     * daemon threads.  Only affects workers created after this call.
+     *
+     * @param threadFactory The thread factory, null selects the default.
+     */
+    public void setThreadFactory(final ThreadFactory threadFactory)
+    {
+        this.threadFactory = (threadFactory == null ? new WorkerThreadFactory() : threadFactory) ;
+    }
+
+    /**
+     * Get the factory used to create worker threads.
+     *
+     * @return The thread factory.
+     */
+    public ThreadFactory getThreadFactory()
+    {
+        return threadFactory ;
+    }
+
+    /**
+     * Get the number of tasks currently waiting in the queue.
+     *
+     * @return The queue depth.
+     */
+    public int getQueueDepth()
+    {
+        return queueDepth.get() ;
+    }
+
+    /**
+     * Get the number of tasks which have been executed by the workers.
+     *
+     * @return The completed task count.
+     */
+    public long getCompletedTaskCount()
+    {
+        return completedCount.sum() ;
+    }
+
+    /**
+     * Get the number of tasks which were executed by the calling thread because the queue was full.
+     *
+     * @return The rejected task count.
+     */
+    public long getRejectedTaskCount()
+    {
+        return rejectedCount.sum() ;
+    }
+
+    /**
+     * Get the average time tasks executed by the workers spent in the queue.
+     *
+     * @return The average queue time in microseconds.
+     */
+    public long getAverageQueueTime()
+    {
+        final long completed = completedCount.sum() ;
+        return (completed == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(queueTime.sum() / completed)) ;
     }
 
     /**
@@ -307,9 +452,9 @@ public class TaskManager
     {
         final boolean debugEnabled = WSCLogger.logger.isTraceEnabled() ;
 
-        synchronized(workerPool)
+        synchronized(this)
         {
-            if (shutdown)
+            if (shutdown.get())
             {
                 if (debugEnabled)
                 {
@@ -319,25 +464,17 @@ public class TaskManager
             else
             {
                 setMaximumWorkerCount(0) ;
-                shutdown = true ;
+                shutdown.set(true) ;
             }
         }
 
+        // wake the waiting workers so that they notice the reduction
+        available.release(workerCount.get()) ;
+
         while(true)
         {
-            final Thread waitThread ;
-            synchronized(workerPool)
-            {
-                final Iterator workerPoolIter = workerPool.iterator() ;
-                if (workerPoolIter.hasNext())
-                {
-                    waitThread = (Thread) workerPoolIter.next() ;
-                }
-                else
-                {
-                    waitThread = null ;
-                }
-            }
+            final Iterator<Thread> workerPoolIter = workerPool.iterator() ;
+            final Thread waitThread = (workerPoolIter.hasNext() ? workerPoolIter.next() : null) ;
 
             if (waitThread == null)
             {
@@ -355,12 +492,14 @@ public class TaskManager
             }
         }
 
-        synchronized(workerPool)
+        synchronized(this)
         {
-            if (shutdown)
+            if (shutdown.get())
             {
                 taskList.clear() ;
-                shutdown = false ;
+                queueDepth.set(0) ;
+                available.drainPermits() ;
+                shutdown.set(false) ;
             }
         }
     }
@@ -377,103 +516,202 @@ public class TaskManager
 
         while(true)
         {
-            final boolean remove ;
-            synchronized(workerPool)
+            if (releaseWorker(maximumWorkerCount))
             {
-                final int excessCount = workerPool.size() - maximumWorkerCount ;
-                if (excessCount > 0)
-                {
-                    if (debugEnabled)
-                    {
-                        WSCLogger.logger.tracev("getTask: releasing thread") ;
-                    }
-                    synchronized(taskList)
-                    {
-                        if ((excessCount > 1) && (waitingCount > 0))
-                        {
-                            if (debugEnabled)
-                            {
-                                WSCLogger.logger.tracev("getTask: notifying waiting thread about excess count {0}",
-                                        new Object[] {new Integer(excessCount)}) ;
-                            }
-                            taskList.notify() ;
-                        }
-                    }
-                    remove = true ;
-                }
-                else
+                if (debugEnabled)
                 {
-                    remove = false ;
+                    WSCLogger.logger.tracev("getTask: releasing thread") ;
                 }
+                return null ;
             }
 
-            if (remove)
+            final boolean acquired ;
+            waitingCount.incrementAndGet() ;
+            try
+            {
+                acquired = available.tryAcquire(keepAlive, TimeUnit.MILLISECONDS) ;
+            }
+            catch (final InterruptedException ie)
             {
-                final Thread currentThread = Thread.currentThread() ;
-                synchronized(workerPool)
+                if (debugEnabled)
                 {
-                    workerPool.remove(currentThread) ;
+                    WSCLogger.logger.tracev("getTask: interrupted") ;
                 }
-                return null ;
+                continue ;
+            }
+            finally
+            {
+                waitingCount.decrementAndGet() ;
             }
 
-            synchronized(taskList)
+            if (acquired)
             {
-                final int numTasks = taskList.size() ;
-                if (numTasks > 0)
+                // a task is always queued before its permit is released, so there are never
+                // fewer permits than queued tasks and the poll only misses when this was a
+                // wake up for a shrinking pool
+                final QueuedTask queuedTask = taskList.poll() ;
+                if (queuedTask != null)
                 {
-                    final Task task = (Task) taskList.removeFirst() ;
-                    if ((numTasks > 1) && (waitingCount > 0))
-                    {
-                        taskList.notify() ;
-                    }
+                    queueDepth.decrementAndGet() ;
+                    queueTime.add(System.nanoTime() - queuedTask.queued) ;
                     if (debugEnabled)
                     {
-                        WSCLogger.logger.tracev("getTask: returning task {0}", task) ;
+                        WSCLogger.logger.tracev("getTask: returning task {0}", queuedTask.task) ;
                     }
-                    return task ;
+                    return queuedTask.task ;
                 }
-                waitingCount++ ;
+            }
+            // checking the queue depth after leaving the waiting count closes the race with queueTask
+            else if ((queueDepth.get() == 0) && releaseWorker(minimumWorkerCount))
+            {
                 if (debugEnabled)
                 {
-                    WSCLogger.logger.tracev("getTask: waiting for task for {0} number of times", waitingCount) ;
-                }
-                try
-                {
-                    taskList.wait() ;
-                }
-                catch (final InterruptedException ie)
-                {
-                    if (debugEnabled)
-                    {
-                        WSCLogger.logger.tracev("getTask: interrupted") ;
-                    }
-                }
-                finally
-                {
-                    waitingCount-- ;
+                    WSCLogger.logger.tracev("getTask: releasing idle thread") ;
                 }
+                return null ;
             }
         }
     }
 
     /**
-     * Create and register a task worker.
+     * Record the completion of a task by a worker.
+     */
+    void taskCompleted()
+    {
+        completedCount.increment() ;
+    }
+
+    /**
+     * Execute a task, logging any failure.
+     *
+     * @param task The task to execute.
+     */
+    static void execute(final Task task)
+    {
+        try
+        {
+            task.executeTask() ;
+        }
+        catch (final Throwable th)
+        {
+            WSCLogger.i18NLogger.error_services_framework_task_TaskWorker_run_1(th);
+        }
+    }
+
+    /**
+     * Reserve a slot in the task queue.
+     *
+     * @return true if a slot was reserved, false if the queue is full.
+     */
+    private boolean reserveQueueSlot()
+    {
+        while(true)
+        {
+            final int depth = queueDepth.get() ;
+            if (depth >= queueCapacity)
+            {
+                return false ;
+            }
+            if (queueDepth.compareAndSet(depth, depth + 1))
+            {
+                return true ;
+            }
+        }
+    }
+
+    /**
+     * Reserve a new worker if the pool is below its maximum size.
+     *
+     * @return true if a worker was reserved, false otherwise.
+     */
+    private boolean reserveWorker()
+    {
+        while(true)
+        {
+            final int count = workerCount.get() ;
+            if (count >= maximumWorkerCount)
+            {
+                return false ;
+            }
+            if (workerCount.compareAndSet(count, count + 1))
+            {
+                return true ;
+            }
+        }
+    }
+
+    /**
+     * Release the current worker if the pool is above the specified size.
+     *
+     * @param limit The pool size to retain.
+     * @return true if the current worker has been released, false otherwise.
+     */
+    private boolean releaseWorker(final int limit)
+    {
+        while(true)
+        {
+            final int count = workerCount.get() ;
+            if (count <= limit)
+            {
+                return false ;
+            }
+            if (workerCount.compareAndSet(count, count - 1))
+            {
+                workerPool.remove(Thread.currentThread()) ;
+                return true ;
+            }
+        }
+    }
+
+    /**
+     * Create and register a previously reserved task worker.
      */
     private void createWorker()
     {
         final TaskWorker taskWorker = new TaskWorker(this) ;
-        final String name ;
-        synchronized(workerPool)
+        final Thread thread ;
+        try
         {
-            name = "TaskWorker-" + ++taskCount ;
+            thread = threadFactory.newThread(taskWorker) ;
         }
-        final Thread thread = new Thread(taskWorker, name) ;
-        thread.setDaemon(true) ;
-        synchronized(workerPool)
+        catch (final RuntimeException re)
         {
-            workerPool.add(thread) ;
+            workerCount.decrementAndGet() ;
+            throw re ;
         }
+        workerPool.add(thread) ;
         thread.start() ;
     }
+
+    /**
+     * A queued task and the time it was queued.
+     */
+    private static final class QueuedTask
+    {
+        final Task task ;
+        final long queued = System.nanoTime() ;
+
+        QueuedTask(final Task task)
+        {
+            this.task = task ;
+        }
+    }
+
+    /**
+     * The default factory, creating daemon threads.
+     */
+    private static final class WorkerThreadFactory implements ThreadFactory
+    {
+        /**
+         * The counter used for naming the threads.
+         */
+        private final AtomicInteger taskCount = new AtomicInteger() ;
+
+        public Thread newThread(final Runnable runnable)
+        {
+            final Thread thread = new Thread(runnable, "TaskWorker-" + taskCount.incrementAndGet()) ;
+            thread.setDaemon(true) ;
+            return thread ;
+        }
+    }
 }
@@ -20,8 +20,6 @@
  */
 package com.arjuna.services.framework.task ;
 
-import com.arjuna.webservices.logging.WSCLogger;
-
 /**
  * Class responsible for executing tasks.
  * 
@@ -58,14 +56,8 @@ public class TaskWorker implements Runnable
                 break ;
             }
 
-            try
-            {
-                task.executeTask() ;
-            }
-            catch (final Throwable th)
-            {
-                WSCLogger.i18NLogger.error_services_framework_task_TaskWorker_run_1(th);
-            }
+            TaskManager.execute(task) ;
+            taskManager.taskCompleted() ;
         }
     }
 }
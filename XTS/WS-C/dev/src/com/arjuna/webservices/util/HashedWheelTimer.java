@@ -0,0 +1,210 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2006, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. 
+ * See the copyright.txt in the distribution for a full listing 
+ * of individual contributors.
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ * 
+ * (C) 2005-2006,
+ * @author JBoss Inc.
+ */
+package com.arjuna.webservices.util;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * A hashed wheel timer. Scheduling and cancelling a task take constant time however
+ * many tasks are outstanding, at the cost of tasks only running to the nearest tick.
+ * This suits the transport timeouts, where there can be a great many outstanding
+ * and almost all of them are cancelled before they go off.
+ *
+ * Tasks are handed to an executor when they expire so that a slow task, such as
+ * one resending a message, does not hold up the wheel.
+ */
+public class HashedWheelTimer
+{
+    /**
+     * The length of a tick in milliseconds.
+     */
+    private final long tickDuration ;
+    /**
+     * The wheel, only touched by the worker thread.
+     */
+    private final ArrayDeque<Entry>[] wheel ;
+    /**
+     * The mask for the index in to the wheel.
+     */
+    private final int mask ;
+    /**
+     * Newly scheduled tasks waiting for the worker to place them on the wheel.
+     */
+    private final ConcurrentLinkedQueue<Entry> pending = new ConcurrentLinkedQueue<Entry>() ;
+    /**
+     * The executor running expired tasks.
+     */
+    private final Executor executor ;
+    /**
+     * The time the wheel started, in nanoseconds.
+     */
+    private final long startTime ;
+
+    /**
+     * Construct the timer and start its worker thread.
+     * @param name The name of the worker thread.
+     * @param tickDuration The length of a tick in milliseconds.
+     * @param ticksPerWheel The number of ticks in the wheel, rounded up to a power of two.
+     * @param executor The executor which will run expired tasks.
+     */
+    @SuppressWarnings("unchecked")
+    public HashedWheelTimer(final String name, final long tickDuration, final int ticksPerWheel, final Executor executor)
+    {
+        if (tickDuration <= 0 || ticksPerWheel <= 0)
+        {
+            throw new IllegalArgumentException() ;
+        }
+        int size = 1 ;
+        while (size < ticksPerWheel)
+        {
+            size <<= 1 ;
+        }
+        this.tickDuration = tickDuration ;
+        this.wheel = new ArrayDeque[size] ;
+        for (int i = 0 ; i < size ; i++)
+        {
+            wheel[i] = new ArrayDeque<Entry>() ;
+        }
+        this.mask = size - 1 ;
+        this.executor = executor ;
+        this.startTime = System.nanoTime() ;
+
+        final Thread worker = new Thread(new Worker(), name) ;
+        worker.setDaemon(true) ;
+        worker.start() ;
+    }
+
+    /**
+     * Schedule a task to run once after a delay.
+     * @param task The task.
+     * @param delay The delay in milliseconds.
+     */
+    public void schedule(final TransportTimerTask task, final long delay)
+    {
+        final long deadline = elapsed() + Math.max(delay, 0) ;
+        pending.add(new Entry(task, deadline)) ;
+    }
+
+    /**
+     * The time since the wheel started.
+     * @return The time in milliseconds.
+     */
+    private long elapsed()
+    {
+        return (System.nanoTime() - startTime) / 1000000L ;
+    }
+
+    /**
+     * A scheduled task.
+     */
+    private static final class Entry
+    {
+        private final TransportTimerTask task ;
+        private final long deadline ;
+        private long remainingRounds ;
+
+        private Entry(final TransportTimerTask task, final long deadline)
+        {
+            this.task = task ;
+            this.deadline = deadline ;
+        }
+    }
+
+    /**
+     * Advances the wheel a tick at a time, running the tasks which expire.
+     */
+    private final class Worker implements Runnable
+    {
+        private long tick ;
+
+        public void run()
+        {
+            while (true)
+            {
+                waitForNextTick() ;
+                transferPending() ;
+                expire(wheel[(int) (tick & mask)]) ;
+                tick++ ;
+            }
+        }
+
+        private void waitForNextTick()
+        {
+            final long deadline = (tick + 1) * tickDuration ;
+            long remaining ;
+            while ((remaining = deadline - elapsed()) > 0)
+            {
+                try
+                {
+                    Thread.sleep(remaining) ;
+                }
+                catch (final InterruptedException ie) {} // ignore
+            }
+        }
+
+        private void transferPending()
+        {
+            Entry entry ;
+            while ((entry = pending.poll()) != null)
+            {
+                if (entry.task.isCancelled())
+                {
+                    continue ;
+                }
+                final long calculated = entry.deadline / tickDuration ;
+                entry.remainingRounds = (calculated - tick) / wheel.length ;
+                // anything already late goes in the current tick
+                final long ticks = Math.max(calculated, tick) ;
+                wheel[(int) (ticks & mask)].add(entry) ;
+            }
+        }
+
+        private void expire(final ArrayDeque<Entry> bucket)
+        {
+            final Iterator<Entry> iter = bucket.iterator() ;
+            while (iter.hasNext())
+            {
+                final Entry entry = iter.next() ;
+                if (entry.task.isCancelled())
+                {
+                    iter.remove() ;
+                }
+                else if (entry.remainingRounds <= 0)
+                {
+                    iter.remove() ;
+                    try
+                    {
+                        executor.execute(entry.task) ;
+                    }
+                    catch (final Throwable th) {} // ignore, the executor is shutting down
+                }
+                else
+                {
+                    entry.remainingRounds-- ;
+                }
+            }
+        }
+    }
+
+}
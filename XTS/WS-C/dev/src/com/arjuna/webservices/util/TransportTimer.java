@@ -24,6 +24,11 @@ import org.jboss.jbossts.xts.environment.WSCEnvironmentBean;
 import org.jboss.jbossts.xts.environment.XTSPropertyManager;
 
 import java.util.Timer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Utility class providing access to a timer and associated properties.
@@ -35,6 +40,36 @@ public class TransportTimer
      * Daemon timer.
      */
     private static final Timer TIMER = new Timer(true) ;
+
+    /**
+     * The length of a tick of the timer wheel in milliseconds.
+     */
+    private static final long TICK = 100 ;
+
+    /**
+     * The number of ticks in the timer wheel.
+     */
+    private static final int WHEEL_SIZE = 512 ;
+
+    /**
+     * Daemon threads running the tasks from the timer wheel.
+     */
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+        Math.max(2, Runtime.getRuntime().availableProcessors()), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger() ;
+
+            public Thread newThread(final Runnable runnable)
+            {
+                final Thread thread = new Thread(runnable, "TransportTimer-" + count.incrementAndGet()) ;
+                thread.setDaemon(true) ;
+                return thread ;
+            }
+        }) ;
+
+    /**
+     * Timer wheel for the resend and timeout tasks of the protocol engines.
+     */
+    private static final HashedWheelTimer WHEEL = new HashedWheelTimer("TransportTimer", TICK, WHEEL_SIZE, EXECUTOR) ;
     
     /**
      * The transport timeout.
@@ -51,14 +86,36 @@ public class TransportTimer
     private static long MAX_PERIOD = 300000 ;
 
     /**
-     * Get the transport timer.
+     * Get the transport timer. Tasks which are cancelled or rescheduled often
+     * should use {@link #schedule(TransportTimerTask, long)} instead.
      * @return The transport timer.
      */
     public static Timer getTimer()
     {
         return TIMER ;
     }
-    
+
+    /**
+     * Schedule a task on the timer wheel. The task runs on a pooled thread, to
+     * the nearest tick, unless it is cancelled first.
+     * @param task The task.
+     * @param delay The delay in milliseconds.
+     */
+    public static void schedule(final TransportTimerTask task, final long delay)
+    {
+        WHEEL.schedule(task, delay) ;
+    }
+
+    /**
+     * Get the executor which runs the tasks from the timer wheel, for work which follows on
+     * from a transport timeout or response.
+     * @return The executor.
+     */
+    public static Executor getExecutor()
+    {
+        return EXECUTOR ;
+    }
+
     /**
      * Set the transport timeout.
      * @param timeout The transport timeout in milliseconds.
@@ -0,0 +1,54 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2006, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. 
+ * See the copyright.txt in the distribution for a full listing 
+ * of individual contributors.
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ * 
+ * (C) 2005-2006,
+ * @author JBoss Inc.
+ */
+package com.arjuna.webservices.util;
+
+import java.util.TimerTask;
+
+/**
+ * A timer task which can be scheduled on the transport timer wheel.
+ * Cancelling the task stops it from running if it has not yet started.
+ */
+public abstract class TransportTimerTask extends TimerTask
+{
+    /**
+     * Flag indicating the task has been cancelled.
+     */
+    private volatile boolean cancelled ;
+
+    /**
+     * Cancel the task.
+     * @return true if the task was stopped from running by a java.util.Timer, false otherwise.
+     */
+    public boolean cancel()
+    {
+        cancelled = true ;
+        return super.cancel() ;
+    }
+
+    /**
+     * Has the task been cancelled?
+     * @return true if cancelled, false otherwise.
+     */
+    public boolean isCancelled()
+    {
+        return cancelled ;
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.arjuna.webservices11.util;
+
+import com.arjuna.webservices11.wsaddr.EndpointHelper;
+import com.arjuna.webservices11.wsaddr.NativeEndpointReference;
+import org.w3c.dom.Element;
+
+import javax.xml.ws.BindingProvider;
+import javax.xml.ws.EndpointReference;
+import javax.xml.ws.Service;
+import javax.xml.ws.soap.AddressingFeature;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the JAX-WS ports used by the protocol clients so that a port is created once for an endpoint rather than
+ * once for every message sent to it. Creating a port builds a new proxy along with its addressing handlers and
+ * request context, which costs far more than the message itself.
+ *
+ * Ports are pooled by their interface and by the address and reference parameters of the endpoint they were
+ * created for, and are shared by all threads. The request context of a port carries the addressing properties of
+ * the message being sent, so a port is only ever held by one caller at a time. The protocol clients make one call
+ * on each port they get, so the port handed out goes back to its pool as soon as that call returns and may not be
+ * used again. Before it is handed out again its request context is put back the way it was when the port was
+ * created, so nothing from the last message goes out with the next one. Reusing the port also reuses its
+ * transport, which lets the HTTP connection be kept alive between messages.
+ *
+ * At most {@link #MAX_ENDPOINTS} endpoints are kept, dropping the least recently used, each with at most
+ * {@link #MAX_IDLE_PORTS} idle ports.
+ */
+public class PortCache {
+
+    /**
+     * The most endpoints ports will be kept for.
+     */
+    public static final int MAX_ENDPOINTS = 64;
+
+    /**
+     * The most idle ports kept for each endpoint.
+     */
+    public static final int MAX_IDLE_PORTS = 8;
+
+    private static final PortCache INSTANCE = new PortCache();
+
+    private final Map<Key, Pool> pools = new LinkedHashMap<Key, Pool>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Pool> eldest) {
+            return size() > MAX_ENDPOINTS;
+        }
+    };
+
+    PortCache() {
+
+    }
+
+    public static PortCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get a port for an endpoint, with WS-Addressing enabled and required.
+     */
+    public <T> T getPort(final Service service, final EndpointReference endpointReference,
+            final Class<T> serviceEndpointInterface) {
+
+        return getPort(getEndpoint(endpointReference), serviceEndpointInterface, new PortFactory<T>() {
+            @Override
+            public T createPort() {
+                return PrivilegedServiceHelper.getInstance().getPort(service, endpointReference,
+                        serviceEndpointInterface, new AddressingFeature(true, true));
+            }
+        });
+    }
+
+    /**
+     * Get a port with no endpoint, the address is supplied with each message. WS-Addressing is enabled and
+     * required.
+     */
+    public <T> T getPort(final Service service, final Class<T> serviceEndpointInterface) {
+        return getPort(null, serviceEndpointInterface, new PortFactory<T>() {
+            @Override
+            public T createPort() {
+                return PrivilegedServiceHelper.getInstance().getPort(service, serviceEndpointInterface,
+                        new AddressingFeature(true, true));
+            }
+        });
+    }
+
+    /**
+     * Take an idle port from the pool for an endpoint, or create one if there are none, and hand it out wrapped so
+     * that it goes back to the pool once the caller's call on it returns.
+     *
+     * @param endpoint the address and reference parameters of the endpoint, or null if there is none.
+     */
+    <T> T getPort(final String endpoint, final Class<T> serviceEndpointInterface, final PortFactory<T> factory) {
+        final Key key = new Key(serviceEndpointInterface, endpoint);
+        Pool pool;
+
+        synchronized (pools) {
+            pool = pools.get(key);
+
+            if (pool == null) {
+                pool = new Pool();
+                pools.put(key, pool);
+            }
+        }
+
+        CachedPort cachedPort = pool.take();
+
+        if (cachedPort == null) {
+            cachedPort = new CachedPort(factory.createPort());
+        } else {
+            cachedPort.reset();
+        }
+
+        return serviceEndpointInterface.cast(Proxy.newProxyInstance(serviceEndpointInterface.getClassLoader(),
+                new Class<?>[] { serviceEndpointInterface, BindingProvider.class },
+                new PooledPortHandler(pool, cachedPort)));
+    }
+
+    /**
+     * The identity of an endpoint is its address and reference parameters. Endpoint references do not define
+     * equality, so they are read into their native form to get at these.
+     */
+    private static String getEndpoint(final EndpointReference endpointReference) {
+        final NativeEndpointReference nativeReference = EndpointHelper.transform(NativeEndpointReference.class,
+                endpointReference);
+        final StringBuilder endpoint = new StringBuilder(nativeReference.getAddress());
+        final List<Element> referenceParameters = nativeReference.getReferenceParameters();
+
+        if (referenceParameters != null) {
+            for (Element referenceParameter : referenceParameters) {
+                endpoint.append(" {").append(referenceParameter.getNamespaceURI()).append('}')
+                        .append(referenceParameter.getLocalName()).append('=')
+                        .append(referenceParameter.getTextContent());
+            }
+        }
+
+        return endpoint.toString();
+    }
+
+    interface PortFactory<T> {
+
+        T createPort();
+    }
+
+    private static final class Key {
+
+        private final Class<?> serviceEndpointInterface;
+
+        private final String endpoint;
+
+        private Key(final Class<?> serviceEndpointInterface, final String endpoint) {
+            this.serviceEndpointInterface = serviceEndpointInterface;
+            this.endpoint = endpoint;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return serviceEndpointInterface == other.serviceEndpointInterface
+                    && (endpoint == null ? other.endpoint == null : endpoint.equals(other.endpoint));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * serviceEndpointInterface.hashCode() + (endpoint == null ? 0 : endpoint.hashCode());
+        }
+    }
+
+    /**
+     * The idle ports of one endpoint.
+     */
+    private static final class Pool {
+
+        private final Deque<CachedPort> idle = new ArrayDeque<CachedPort>();
+
+        private synchronized CachedPort take() {
+            return idle.pollFirst();
+        }
+
+        private synchronized void release(final CachedPort cachedPort) {
+            if (idle.size() < MAX_IDLE_PORTS) {
+                idle.addFirst(cachedPort);
+            }
+        }
+    }
+
+    private static final class CachedPort {
+
+        private final Object port;
+
+        private final Map<String, Object> requestContext;
+
+        private CachedPort(final Object port) {
+            this.port = port;
+            this.requestContext = new HashMap<String, Object>(((BindingProvider) port).getRequestContext());
+        }
+
+        private void reset() {
+            final Map<String, Object> current = ((BindingProvider) port).getRequestContext();
+            current.clear();
+            current.putAll(requestContext);
+        }
+    }
+
+    /**
+     * Passes calls on to a pooled port, giving the port back to its pool once a call on the service endpoint
+     * interface returns. Calls to configure the port, e.g. through its request context, are allowed before that.
+     */
+    private static final class PooledPortHandler implements InvocationHandler {
+
+        private final Pool pool;
+
+        private CachedPort cachedPort;
+
+        private PooledPortHandler(final Pool pool, final CachedPort cachedPort) {
+            this.pool = pool;
+            this.cachedPort = cachedPort;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            final CachedPort current;
+            final boolean release = !method.getDeclaringClass().isAssignableFrom(BindingProvider.class);
+
+            synchronized (this) {
+                if (cachedPort == null) {
+                    throw new IllegalStateException("The port has already been used and returned to its pool");
+                }
+                current = cachedPort;
+                if (release) {
+                    cachedPort = null;
+                }
+            }
+
+            try {
+                return method.invoke(current.port, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            } finally {
+                if (release) {
+                    pool.release(current);
+                }
+            }
+        }
+    }
+
+}
@@ -1,8 +1,8 @@
 package com.arjuna.webservices11.wscoor.client;
 
 import com.arjuna.webservices.logging.WSCLogger;
+import com.arjuna.webservices11.util.PortCache;
 import com.arjuna.webservices11.util.PrivilegedServiceFactory;
-import com.arjuna.webservices11.util.PrivilegedServiceHelper;
 import com.arjuna.webservices11.util.PrivilegedServiceRegistryFactory;
 import com.arjuna.webservices11.wsaddr.AddressingHelper;
 import com.arjuna.webservices11.wscoor.CoordinationConstants;
@@ -13,7 +13,6 @@ import org.oasis_open.docs.ws_tx.wscoor._2006._06.RegistrationPortType;
 import org.oasis_open.docs.ws_tx.wscoor._2006._06.RegistrationService;
 
 import javax.xml.ws.BindingProvider;
-import javax.xml.ws.soap.AddressingFeature;
 import javax.xml.ws.wsaddressing.W3CEndpointReference;
 import java.util.Map;
 import org.jboss.jbossts.xts.environment.WSCEnvironmentBean;
@@ -66,8 +65,7 @@ public class WSCOORClient
     public static ActivationPortType getActivationPort(MAP map, String action)
     {
         final ActivationService service = getActivationService();
-        final ActivationPortType port = PrivilegedServiceHelper.getInstance().getPort(service, ActivationPortType.class,
-                new AddressingFeature(true, true));
+        final ActivationPortType port = PortCache.getInstance().getPort(service, ActivationPortType.class);
         BindingProvider bindingProvider = (BindingProvider)port;
         String to = map.getTo();
         /*
@@ -88,8 +86,8 @@ public class WSCOORClient
     public static RegistrationPortType getRegistrationPort(final W3CEndpointReference endpointReference, String action, String messageID)
     {
         final RegistrationService service = getRegistrationService();
-        final RegistrationPortType port = PrivilegedServiceHelper.getInstance().getPort(service, endpointReference,
-                RegistrationPortType.class, new AddressingFeature(true, true));
+        final RegistrationPortType port = PortCache.getInstance().getPort(service, endpointReference,
+                RegistrationPortType.class);
         BindingProvider bindingProvider = (BindingProvider)port;
         /*
          * we no longer have to add the JaxWS WSAddressingClientHandler because we can specify the WSAddressing feature
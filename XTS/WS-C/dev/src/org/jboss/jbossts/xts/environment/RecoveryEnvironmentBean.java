@@ -25,6 +25,11 @@ public class RecoveryEnvironmentBean
     @ConcatenationPrefix(prefix="org.jboss.jbossts.xts.recovery.participantRecoveryModule")
     private volatile List<String> participantRecoveryModules = new ArrayList<String>();
 
+    /**
+     * the number of threads used to replay logged coordinators in parallel during recovery
+     */
+    private volatile int coordinatorRecoveryThreads = 8;
+
     /**
      * Returns the list of XTS coordinator recovery modules to be installed at startup and removed at shutdown.
      *
@@ -60,4 +65,23 @@ public class RecoveryEnvironmentBean
     public void setParticipantRecoveryModules(List<String> participantRecoveryModules) {
         this.participantRecoveryModules = participantRecoveryModules;
     }
+
+    /**
+     * Returns the number of threads used to replay logged coordinators in parallel during recovery.
+     *
+     * @return the number of coordinator recovery threads.
+     */
+    public int getCoordinatorRecoveryThreads() {
+        return coordinatorRecoveryThreads;
+    }
+
+    /**
+     * Sets the number of threads used to replay logged coordinators in parallel during recovery.
+     * A value of 1 or less replays coordinators serially in the recovery manager thread.
+     *
+     * @param coordinatorRecoveryThreads the number of coordinator recovery threads.
+     */
+    public void setCoordinatorRecoveryThreads(int coordinatorRecoveryThreads) {
+        this.coordinatorRecoveryThreads = coordinatorRecoveryThreads;
+    }
 }
@@ -1,6 +1,7 @@
 package org.jboss.jbossts.xts.environment;
 
 import com.arjuna.common.internal.util.propertyservice.ConcatenationPrefix;
+import com.arjuna.common.internal.util.propertyservice.FullPropertyName;
 import com.arjuna.common.internal.util.propertyservice.PropertyPrefix;
 
 import java.util.ArrayList;
@@ -20,6 +21,13 @@ public class XTSEnvironmentBean
     @ConcatenationPrefix(prefix="org.jboss.jbossts.xts.initialisation.xtsInitialisation")
     private volatile List<String> xtsInitialisations = new ArrayList<String>();
 
+    /**
+     * the number of tasks the XTS task manager will queue before running further tasks in the calling thread.
+     * a value less than one selects the task manager default.
+     */
+    @FullPropertyName(name="org.jboss.jbossts.xts.taskManager.queueCapacity")
+    private volatile int taskManagerQueueCapacity = 0;
+
     /**
      * Returns the list of XTS recovery modules to be installed at startup and removed at shutdown.
      *
@@ -37,4 +45,23 @@ public class XTSEnvironmentBean
     public void setXtsInitialisations(List<String> xtsInitialisations) {
         this.xtsInitialisations = xtsInitialisations;
     }
+
+    /**
+     * Returns the number of tasks the XTS task manager will queue before running further tasks in the calling thread.
+     *
+     * @return the task manager queue capacity.
+     */
+    public int getTaskManagerQueueCapacity() {
+        return taskManagerQueueCapacity;
+    }
+
+    /**
+     * Sets the number of tasks the XTS task manager will queue before running further tasks in the calling thread.
+     * A value less than one selects the task manager default.
+     *
+     * @param taskManagerQueueCapacity the task manager queue capacity.
+     */
+    public void setTaskManagerQueueCapacity(int taskManagerQueueCapacity) {
+        this.taskManagerQueueCapacity = taskManagerQueueCapacity;
+    }
 }
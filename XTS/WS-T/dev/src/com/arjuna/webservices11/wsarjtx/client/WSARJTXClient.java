@@ -1,14 +1,13 @@
 package com.arjuna.webservices11.wsarjtx.client;
 
 import com.arjuna.schemas.ws._2005._10.wsarjtx.*;
+import com.arjuna.webservices11.util.PortCache;
 import com.arjuna.webservices11.util.PrivilegedServiceFactory;
-import com.arjuna.webservices11.util.PrivilegedServiceHelper;
 import com.arjuna.webservices11.wsarj.InstanceIdentifier;
 import com.arjuna.webservices11.wsaddr.AddressingHelper;
 import org.jboss.ws.api.addressing.MAP;
 
 import javax.xml.ws.BindingProvider;
-import javax.xml.ws.soap.AddressingFeature;
 import javax.xml.ws.wsaddressing.W3CEndpointReference;
 import java.util.Map;
 import org.w3c.dom.Element;
@@ -82,8 +81,8 @@ public class WSARJTXClient
                                                                                 MAP map)
     {
         final TerminationCoordinatorService service = getTerminationCoordinatorService();
-        final TerminationCoordinatorPortType port = PrivilegedServiceHelper.getInstance().getPort(service,
-                endpointReference, TerminationCoordinatorPortType.class, new AddressingFeature(true, true));
+        final TerminationCoordinatorPortType port = PortCache.getInstance().getPort(service,
+                endpointReference, TerminationCoordinatorPortType.class);
         BindingProvider bindingProvider = (BindingProvider)port;
         /*
          * we no longer have to add the JaxWS WSAddressingClientHandler because we can specify the WSAddressing feature
@@ -107,8 +106,8 @@ public class WSARJTXClient
                                                                                MAP map)
     {
         final TerminationParticipantService service = getTerminationParticipantService();
-        final TerminationParticipantPortType port = PrivilegedServiceHelper.getInstance().getPort(service,
-                endpointReference, TerminationParticipantPortType.class, new AddressingFeature(true, true));
+        final TerminationParticipantPortType port = PortCache.getInstance().getPort(service,
+                endpointReference, TerminationParticipantPortType.class);
         BindingProvider bindingProvider = (BindingProvider)port;
         /*
          * we no longer have to add the JaxWS WSAddressingClientHandler because we can specify the WSAddressing feature
@@ -129,8 +128,8 @@ public class WSARJTXClient
                                                                                MAP map)
     {
         final TerminationParticipantService service = getTerminationParticipantService();
-        final TerminationParticipantPortType port = PrivilegedServiceHelper.getInstance().getPort(service,
-                TerminationParticipantPortType.class, new AddressingFeature(true, true));
+        final TerminationParticipantPortType port = PortCache.getInstance().getPort(service,
+                TerminationParticipantPortType.class);
         BindingProvider bindingProvider = (BindingProvider)port;
         /*
          * we no longer have to add the JaxWS WSAddressingClientHandler because we can specify the WSAddressing feature
@@ -150,8 +149,8 @@ public class WSARJTXClient
                                                                                   MAP map)
     {
         final TerminationCoordinatorRPCService service = getTerminationCoordinatorRPCService();
-        final TerminationCoordinatorRPCPortType port = PrivilegedServiceHelper.getInstance().getPort(service,
-                endpointReference, TerminationCoordinatorRPCPortType.class, new AddressingFeature(true, true));
+        final TerminationCoordinatorRPCPortType port = PortCache.getInstance().getPort(service,
+                endpointReference, TerminationCoordinatorRPCPortType.class);
         BindingProvider bindingProvider = (BindingProvider)port;
         /*
          * we no longer have to add the JaxWS WSAddressingClientHandler because we can specify the WSAddressing feature
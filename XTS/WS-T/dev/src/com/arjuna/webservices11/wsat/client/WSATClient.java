@@ -1,14 +1,13 @@
 package com.arjuna.webservices11.wsat.client;
 
+import com.arjuna.webservices11.util.PortCache;
 import com.arjuna.webservices11.util.PrivilegedServiceFactory;
-import com.arjuna.webservices11.util.PrivilegedServiceHelper;
 import com.arjuna.webservices11.wsaddr.AddressingHelper;
 import org.jboss.ws.api.addressing.MAP;
 import org.oasis_open.docs.ws_tx.wsat._2006._06.*;
 
 import javax.xml.ws.wsaddressing.W3CEndpointReference;
 import javax.xml.ws.BindingProvider;
-import javax.xml.ws.soap.AddressingFeature;
 import java.util.Map;
 
 /**
@@ -116,8 +115,8 @@ public class WSATClient
                                                          MAP map)
     {
         final CoordinatorService service = getCoordinatorService();
-        final CoordinatorPortType port = PrivilegedServiceHelper.getInstance().getPort(service, endpointReference,
-                CoordinatorPortType.class, new AddressingFeature(true, true));
+        final CoordinatorPortType port = PortCache.getInstance().getPort(service, endpointReference,
+                CoordinatorPortType.class);
         BindingProvider bindingProvider = (BindingProvider)port;
 
         configureEndpointPort(bindingProvider, action, map);
@@ -130,8 +129,8 @@ public class WSATClient
                                                          MAP map)
     {
         final ParticipantService service = getParticipantService();
-        final ParticipantPortType port = PrivilegedServiceHelper.getInstance().getPort(service, endpointReference,
-                ParticipantPortType.class, new AddressingFeature(true, true));
+        final ParticipantPortType port = PortCache.getInstance().getPort(service, endpointReference,
+                ParticipantPortType.class);
         BindingProvider bindingProvider = (BindingProvider)port;
 
         configureEndpointPort(bindingProvider, action, map);
@@ -144,8 +143,8 @@ public class WSATClient
                                                                              MAP map)
     {
         final CompletionCoordinatorService service = getCompletionCoordinatorService();
-        final CompletionCoordinatorPortType port = PrivilegedServiceHelper.getInstance().getPort(service,
-                endpointReference, CompletionCoordinatorPortType.class, new AddressingFeature(true, true));
+        final CompletionCoordinatorPortType port = PortCache.getInstance().getPort(service,
+                endpointReference, CompletionCoordinatorPortType.class);
         BindingProvider bindingProvider = (BindingProvider)port;
 
         configureEndpointPort(bindingProvider, action, map);
@@ -158,8 +157,8 @@ public class WSATClient
                                                                          MAP map)
     {
         final CompletionInitiatorService service = getCompletionInitiatorService();
-        final CompletionInitiatorPortType port = PrivilegedServiceHelper.getInstance().getPort(service, endpointReference,
-                        CompletionInitiatorPortType.class, new AddressingFeature(true, true));
+        final CompletionInitiatorPortType port = PortCache.getInstance().getPort(service, endpointReference,
+                        CompletionInitiatorPortType.class);
         BindingProvider bindingProvider = (BindingProvider)port;
 
         configureEndpointPort(bindingProvider, action, map);
@@ -172,8 +171,8 @@ public class WSATClient
                                                                              MAP map)
     {
         final CompletionCoordinatorRPCService service = getCompletionCoordinatorRPCService();
-        final CompletionCoordinatorRPCPortType port = PrivilegedServiceHelper.getInstance().getPort(service,
-                endpointReference, CompletionCoordinatorRPCPortType.class, new AddressingFeature(true, true));
+        final CompletionCoordinatorRPCPortType port = PortCache.getInstance().getPort(service,
+                endpointReference, CompletionCoordinatorRPCPortType.class);
         BindingProvider bindingProvider = (BindingProvider)port;
 
         configureEndpointPort(bindingProvider, action, map);
@@ -187,8 +186,8 @@ public class WSATClient
                                                          MAP map)
     {
         final CoordinatorService service = getCoordinatorService();
-        final CoordinatorPortType port = PrivilegedServiceHelper.getInstance().getPort(service,
-                CoordinatorPortType.class, new AddressingFeature(true, true));
+        final CoordinatorPortType port = PortCache.getInstance().getPort(service,
+                CoordinatorPortType.class);
         BindingProvider bindingProvider = (BindingProvider)port;
 
         configurePort(bindingProvider, action, map);
@@ -200,8 +199,8 @@ public class WSATClient
                                                          MAP map)
     {
         final ParticipantService service = getParticipantService();
-        final ParticipantPortType port = PrivilegedServiceHelper.getInstance().getPort(service,
-                ParticipantPortType.class, new AddressingFeature(true, true));
+        final ParticipantPortType port = PortCache.getInstance().getPort(service,
+                ParticipantPortType.class);
         BindingProvider bindingProvider = (BindingProvider)port;
 
         configurePort(bindingProvider, action, map);
@@ -213,8 +212,8 @@ public class WSATClient
                                                                              MAP map)
     {
         final CompletionCoordinatorService service = getCompletionCoordinatorService();
-        final CompletionCoordinatorPortType port = PrivilegedServiceHelper.getInstance().getPort(service,
-                CompletionCoordinatorPortType.class, new AddressingFeature(true, true));
+        final CompletionCoordinatorPortType port = PortCache.getInstance().getPort(service,
+                CompletionCoordinatorPortType.class);
         BindingProvider bindingProvider = (BindingProvider)port;
 
         configurePort(bindingProvider, action, map);
@@ -226,8 +225,8 @@ public class WSATClient
                                                                          MAP map)
     {
         final CompletionInitiatorService service = getCompletionInitiatorService();
-        final CompletionInitiatorPortType port = PrivilegedServiceHelper.getInstance().getPort(service,
-                CompletionInitiatorPortType.class, new AddressingFeature(true, true));
+        final CompletionInitiatorPortType port = PortCache.getInstance().getPort(service,
+                CompletionInitiatorPortType.class);
         BindingProvider bindingProvider = (BindingProvider)port;
 
         configurePort(bindingProvider, action, map);
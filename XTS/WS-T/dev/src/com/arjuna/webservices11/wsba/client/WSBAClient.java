@@ -1,13 +1,12 @@
 package com.arjuna.webservices11.wsba.client;
 
+import com.arjuna.webservices11.util.PortCache;
 import com.arjuna.webservices11.util.PrivilegedServiceFactory;
-import com.arjuna.webservices11.util.PrivilegedServiceHelper;
 import com.arjuna.webservices11.wsaddr.AddressingHelper;
 import org.jboss.ws.api.addressing.MAP;
 import org.oasis_open.docs.ws_tx.wsba._2006._06.*;
 
 import javax.xml.ws.BindingProvider;
-import javax.xml.ws.soap.AddressingFeature;
 import javax.xml.ws.wsaddressing.W3CEndpointReference;
 import java.util.Map;
 
@@ -102,9 +101,8 @@ public class WSBAClient
         final BusinessAgreementWithParticipantCompletionCoordinatorService service =
                 getParticipantCompletionCoordinatorService();
         final BusinessAgreementWithParticipantCompletionCoordinatorPortType port =
-                PrivilegedServiceHelper.getInstance().getPort(service, endpointReference,
-                        BusinessAgreementWithParticipantCompletionCoordinatorPortType.class,
-                        new AddressingFeature(true, true));
+                PortCache.getInstance().getPort(service, endpointReference,
+                        BusinessAgreementWithParticipantCompletionCoordinatorPortType.class);
         BindingProvider bindingProvider = (BindingProvider)port;
 
         configureEndpointPort(bindingProvider, action, map);
@@ -119,9 +117,8 @@ public class WSBAClient
         final BusinessAgreementWithParticipantCompletionParticipantService service =
                 getParticipantCompletionParticipantService();
         final BusinessAgreementWithParticipantCompletionParticipantPortType port =
-                PrivilegedServiceHelper.getInstance().getPort(service, endpointReference,
-                        BusinessAgreementWithParticipantCompletionParticipantPortType.class,
-                        new AddressingFeature(true, true));
+                PortCache.getInstance().getPort(service, endpointReference,
+                        BusinessAgreementWithParticipantCompletionParticipantPortType.class);
         BindingProvider bindingProvider = (BindingProvider)port;
 
         configureEndpointPort(bindingProvider, action, map);
@@ -136,9 +133,8 @@ public class WSBAClient
         final BusinessAgreementWithCoordinatorCompletionCoordinatorService service =
                 getCoordinatorCompletionCoordinatorService();
         final BusinessAgreementWithCoordinatorCompletionCoordinatorPortType port =
-                PrivilegedServiceHelper.getInstance().getPort(service, endpointReference,
-                        BusinessAgreementWithCoordinatorCompletionCoordinatorPortType.class,
-                        new AddressingFeature(true, true));
+                PortCache.getInstance().getPort(service, endpointReference,
+                        BusinessAgreementWithCoordinatorCompletionCoordinatorPortType.class);
         BindingProvider bindingProvider = (BindingProvider)port;
 
         configureEndpointPort(bindingProvider, action, map);
@@ -153,9 +149,8 @@ public class WSBAClient
         final BusinessAgreementWithCoordinatorCompletionParticipantService service =
                 getCoordinatorCompletionParticipantService();
         final BusinessAgreementWithCoordinatorCompletionParticipantPortType port =
-                PrivilegedServiceHelper.getInstance().getPort(service, endpointReference,
-                        BusinessAgreementWithCoordinatorCompletionParticipantPortType.class,
-                        new AddressingFeature(true, true));
+                PortCache.getInstance().getPort(service, endpointReference,
+                        BusinessAgreementWithCoordinatorCompletionParticipantPortType.class);
         BindingProvider bindingProvider = (BindingProvider)port;
 
         configureEndpointPort(bindingProvider, action, map);
@@ -172,9 +167,8 @@ public class WSBAClient
         final BusinessAgreementWithParticipantCompletionCoordinatorService service =
                 getParticipantCompletionCoordinatorService();
         final BusinessAgreementWithParticipantCompletionCoordinatorPortType port =
-                PrivilegedServiceHelper.getInstance().getPort(service,
-                        BusinessAgreementWithParticipantCompletionCoordinatorPortType.class,
-                        new AddressingFeature(true, true));
+                PortCache.getInstance().getPort(service,
+                        BusinessAgreementWithParticipantCompletionCoordinatorPortType.class);
         BindingProvider bindingProvider = (BindingProvider)port;
 
         configurePort(bindingProvider, action, map);
@@ -188,9 +182,8 @@ public class WSBAClient
         final BusinessAgreementWithParticipantCompletionParticipantService service =
                 getParticipantCompletionParticipantService();
         final BusinessAgreementWithParticipantCompletionParticipantPortType port =
-                PrivilegedServiceHelper.getInstance().getPort(service,
-                        BusinessAgreementWithParticipantCompletionParticipantPortType.class,
-                        new AddressingFeature(true, true));
+                PortCache.getInstance().getPort(service,
+                        BusinessAgreementWithParticipantCompletionParticipantPortType.class);
         BindingProvider bindingProvider = (BindingProvider)port;
 
         configurePort(bindingProvider, action, map);
@@ -204,9 +197,8 @@ public class WSBAClient
         final BusinessAgreementWithCoordinatorCompletionParticipantService service =
                 getCoordinatorCompletionParticipantService();
         final BusinessAgreementWithCoordinatorCompletionParticipantPortType port =
-                PrivilegedServiceHelper.getInstance().getPort(service,
-                        BusinessAgreementWithCoordinatorCompletionParticipantPortType.class,
-                        new AddressingFeature(true, true));
+                PortCache.getInstance().getPort(service,
+                        BusinessAgreementWithCoordinatorCompletionParticipantPortType.class);
         BindingProvider bindingProvider = (BindingProvider)port;
 
         configurePort(bindingProvider, action, map);
@@ -220,9 +212,8 @@ public class WSBAClient
         final BusinessAgreementWithCoordinatorCompletionCoordinatorService service =
                 getCoordinatorCompletionCoordinatorService();
         final BusinessAgreementWithCoordinatorCompletionCoordinatorPortType port =
-                PrivilegedServiceHelper.getInstance().getPort(service,
-                        BusinessAgreementWithCoordinatorCompletionCoordinatorPortType.class,
-                        new AddressingFeature(true, true));
+                PortCache.getInstance().getPort(service,
+                        BusinessAgreementWithCoordinatorCompletionCoordinatorPortType.class);
         BindingProvider bindingProvider = (BindingProvider)port;
 
         configurePort(bindingProvider, action, map);
@@ -4,6 +4,7 @@ import com.arjuna.webservices.SoapFault;
 import com.arjuna.webservices.SoapFaultType;
 import com.arjuna.webservices.logging.WSTLogger;
 import com.arjuna.webservices.util.TransportTimer;
+import com.arjuna.webservices.util.TransportTimerTask;
 import com.arjuna.webservices11.SoapFault11;
 import com.arjuna.webservices11.wsaddr.AddressingHelper;
 import org.jboss.ws.api.addressing.MAP;
@@ -19,7 +20,12 @@ import org.oasis_open.docs.ws_tx.wsat._2006._06.Notification;
 
 import javax.xml.namespace.QName;
 import javax.xml.ws.wsaddressing.W3CEndpointReference;
-import java.util.TimerTask;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
 
 /**
  * The coordinator state engine
@@ -58,7 +64,11 @@ public class CoordinatorEngine implements CoordinatorInboundEvents
     /**
      * The associated timer task or null.
      */
-    private TimerTask timerTask ;
+    private TransportTimerTask timerTask ;
+    /**
+     * The asynchronous callers waiting for the state to change.
+     */
+    private final List<StateWaiter> waiters = new ArrayList<StateWaiter>() ;
 
     /**
      * Construct the initial engine for the coordinator.
@@ -260,6 +270,33 @@ public class CoordinatorEngine implements CoordinatorInboundEvents
      * Aborting -&gt; Aborting (invalid state)
      */
     public State prepare()
+    {
+        startPrepare() ;
+
+        waitForState(State.STATE_PREPARING, TransportTimer.getTransportTimeout()) ;
+
+        return prepareOutcome() ;
+    }
+
+    /**
+     * Handle the prepare event without waiting for the participant to respond.
+     * @return a stage completed with the state after the participant responds or the
+     * transport timeout expires.
+     * @see #prepare()
+     */
+    public CompletionStage<State> prepareAsync()
+    {
+        startPrepare() ;
+
+        return whenStateChanges(State.STATE_PREPARING, new Function<State, State>() {
+            public State apply(final State ignored)
+            {
+                return prepareOutcome() ;
+            }
+        }) ;
+    }
+
+    private void startPrepare()
     {
         final State current ;
         synchronized(this)
@@ -275,9 +312,10 @@ public class CoordinatorEngine implements CoordinatorInboundEvents
         {
             sendPrepare() ;
         }
+    }
 
-        waitForState(State.STATE_PREPARING, TransportTimer.getTransportTimeout()) ;
-
+    private State prepareOutcome()
+    {
         synchronized(this)
         {
             if (state != State.STATE_PREPARING)
@@ -310,6 +348,33 @@ public class CoordinatorEngine implements CoordinatorInboundEvents
      * Aborting -&gt; Aborting (invalid state)
      */
     public State commit()
+    {
+        startCommit() ;
+
+        waitForState(State.STATE_COMMITTING, TransportTimer.getTransportTimeout()) ;
+
+        return commitOutcome() ;
+    }
+
+    /**
+     * Handle the commit event without waiting for the participant to respond.
+     * @return a stage completed with the state after the participant responds or the
+     * transport timeout expires.
+     * @see #commit()
+     */
+    public CompletionStage<State> commitAsync()
+    {
+        startCommit() ;
+
+        return whenStateChanges(State.STATE_COMMITTING, new Function<State, State>() {
+            public State apply(final State ignored)
+            {
+                return commitOutcome() ;
+            }
+        }) ;
+    }
+
+    private void startCommit()
     {
         final State current ;
         synchronized(this)
@@ -325,9 +390,10 @@ public class CoordinatorEngine implements CoordinatorInboundEvents
         {
             sendCommit() ;
         }
+    }
 
-        waitForState(State.STATE_COMMITTING, TransportTimer.getTransportTimeout()) ;
-
+    private State commitOutcome()
+    {
         synchronized(this)
         {
             if (state != State.STATE_COMMITTING)
@@ -368,6 +434,33 @@ public class CoordinatorEngine implements CoordinatorInboundEvents
      * Aborting -&gt; Aborting (do nothing)
      */
     public State rollback()
+    {
+        startRollback() ;
+
+        waitForState(State.STATE_ABORTING, TransportTimer.getTransportTimeout()) ;
+
+        return rollbackOutcome() ;
+    }
+
+    /**
+     * Handle the rollback event without waiting for the participant to respond.
+     * @return a stage completed with the state after the participant responds or the
+     * transport timeout expires.
+     * @see #rollback()
+     */
+    public CompletionStage<State> rollbackAsync()
+    {
+        startRollback() ;
+
+        return whenStateChanges(State.STATE_ABORTING, new Function<State, State>() {
+            public State apply(final State ignored)
+            {
+                return rollbackOutcome() ;
+            }
+        }) ;
+    }
+
+    private void startRollback()
     {
         final State current ;
         synchronized(this)
@@ -389,9 +482,10 @@ public class CoordinatorEngine implements CoordinatorInboundEvents
         {
             forget() ;
         }
+    }
 
-        waitForState(State.STATE_ABORTING, TransportTimer.getTransportTimeout()) ;
-
+    private State rollbackOutcome()
+    {
         synchronized(this)
         {
             if (state != State.STATE_ABORTING)
@@ -419,7 +513,7 @@ public class CoordinatorEngine implements CoordinatorInboundEvents
      * Preparing -&gt; Preparing (resend Prepare)
      * Committing -&gt; Committing (resend Commit)
      */
-    private void commsTimeout(TimerTask caller)
+    private void commsTimeout(TransportTimerTask caller)
     {
         final State current ;
         synchronized(this)
@@ -507,6 +601,18 @@ public class CoordinatorEngine implements CoordinatorInboundEvents
         {
             this.state = state ;
             notifyAll() ;
+
+            final Iterator<StateWaiter> iter = waiters.iterator() ;
+            while (iter.hasNext())
+            {
+                final StateWaiter waiter = iter.next() ;
+                if (waiter.origState != state)
+                {
+                    iter.remove() ;
+                    waiter.timeout.cancel() ;
+                    waiter.future.complete(state) ;
+                }
+            }
         }
     }
 
@@ -538,6 +644,44 @@ public class CoordinatorEngine implements CoordinatorInboundEvents
         }
     }
 
+    /**
+     * Get a stage completed once the state changes from the specified state or the
+     * transport timeout expires, whichever comes first.
+     * @param origState The original state.
+     * @param outcome Works out the outcome once the wait is over. It runs on a transport
+     * timer thread rather than on the thread changing the state, which holds this engine.
+     * @return The outcome.
+     */
+    private CompletionStage<State> whenStateChanges(final State origState, final Function<State, State> outcome)
+    {
+        final StateWaiter waiter = new StateWaiter(origState) ;
+        synchronized(this)
+        {
+            if (state == origState)
+            {
+                waiters.add(waiter) ;
+                TransportTimer.schedule(waiter.timeout, TransportTimer.getTransportTimeout()) ;
+            }
+            else
+            {
+                waiter.future.complete(state) ;
+            }
+        }
+        return waiter.future.thenApplyAsync(outcome, TransportTimer.getExecutor()) ;
+    }
+
+    /**
+     * The transport timeout expired while waiting for the state to change.
+     * @param waiter The waiter which timed out.
+     */
+    private synchronized void stateTimeout(final StateWaiter waiter)
+    {
+        if (waiters.remove(waiter))
+        {
+            waiter.future.complete(state) ;
+        }
+    }
+
     /**
      * Forget the current coordinator.
      */
@@ -567,7 +711,7 @@ public class CoordinatorEngine implements CoordinatorInboundEvents
      */
     private void sendPrepare()
     {
-        TimerTask newTimerTask = createTimerTask();
+        TransportTimerTask newTimerTask = createTimerTask();
         synchronized (this) {
             // cancel any existing timer task
 
@@ -618,7 +762,7 @@ public class CoordinatorEngine implements CoordinatorInboundEvents
      */
     private void sendCommit()
     {
-        TimerTask newTimerTask = createTimerTask();
+        TransportTimerTask newTimerTask = createTimerTask();
         synchronized (this) {
             // cancel any existing timer task
 
@@ -708,9 +852,9 @@ public class CoordinatorEngine implements CoordinatorInboundEvents
      *
      * @return the timer task
      */
-    private TimerTask createTimerTask()
+    private TransportTimerTask createTimerTask()
     {
-        return new TimerTask() {
+        return new TransportTimerTask() {
             public void run() {
                 commsTimeout(this) ;
             }
@@ -722,9 +866,9 @@ public class CoordinatorEngine implements CoordinatorInboundEvents
      * @param timerTask the timer task to be scheduled
      */
 
-    private void scheduleTimer(TimerTask timerTask)
+    private void scheduleTimer(TransportTimerTask timerTask)
     {
-        TransportTimer.getTimer().schedule(timerTask, TransportTimer.getTransportPeriod()) ;
+        TransportTimer.schedule(timerTask, TransportTimer.getTransportPeriod()) ;
     }
 
     /**
@@ -737,4 +881,24 @@ public class CoordinatorEngine implements CoordinatorInboundEvents
 
         return AddressingHelper.createNotificationContext(messageId) ;
     }
+
+    /**
+     * An asynchronous caller waiting for the state to change and the task which will time it out.
+     */
+    private final class StateWaiter
+    {
+        private final State origState ;
+        private final CompletableFuture<State> future = new CompletableFuture<State>() ;
+        private final TransportTimerTask timeout = new TransportTimerTask() {
+            public void run()
+            {
+                stateTimeout(StateWaiter.this) ;
+            }
+        } ;
+
+        private StateWaiter(final State origState)
+        {
+            this.origState = origState ;
+        }
+    }
 }
@@ -18,6 +18,9 @@ import javax.xml.ws.wsaddressing.W3CEndpointReference;
 import javax.xml.transform.stream.StreamSource;
 import java.io.StringWriter;
 import java.io.StringReader;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
 
 public class ParticipantStub implements Participant, PersistableParticipant
 {
@@ -37,6 +40,38 @@ public class ParticipantStub implements Participant, PersistableParticipant
 
     public Vote prepare()
         throws WrongStateException, SystemException
+    {
+        return vote(coordinator.prepare()) ;
+    }
+
+    /**
+     * Send prepare to the participant without waiting for its vote.
+     * @return a stage completed with the vote, or exceptionally with the exception
+     * {@link #prepare()} would have thrown.
+     */
+    public CompletionStage<Vote> prepareAsync()
+    {
+        return coordinator.prepareAsync().thenApply(new Function<State, Vote>() {
+            public Vote apply(final State state)
+            {
+                try
+                {
+                    return vote(state) ;
+                }
+                catch (final SystemException se)
+                {
+                    throw new CompletionException(se) ;
+                }
+                catch (final WrongStateException wse)
+                {
+                    throw new CompletionException(wse) ;
+                }
+            }
+        }) ;
+    }
+
+    private Vote vote(final State state)
+        throws WrongStateException, SystemException
     {
         /*
          * null - aborted or read only
@@ -47,7 +82,6 @@ public class ParticipantStub implements Participant, PersistableParticipant
          * Committing - illegal state
          * Aborting - aborting
          */
-        final State state = coordinator.prepare() ;
         if (state == State.STATE_PREPARED_SUCCESS)
         {
             return new Prepared() ;
@@ -0,0 +1,41 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2006, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. 
+ * See the copyright.txt in the distribution for a full listing 
+ * of individual contributors.
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ * 
+ * (C) 2005-2006,
+ * @author JBoss Inc.
+ */
+
+package com.arjuna.mw.wscf.model.sagas.participants;
+
+/**
+ * A participant which can tell the coordinator whether it needs to be
+ * written to the transaction log. Participants which run in the same JVM as
+ * the coordinator and have nothing to recover can avoid the log write the
+ * coordinator would otherwise perform on close.
+ */
+
+public interface ParticipantWithRecovery extends Participant
+{
+
+    /**
+     * @return true if the participant must be logged so that it can be
+     * recovered after a crash, false otherwise.
+     */
+
+    public boolean requiresRecovery ();
+
+}
@@ -0,0 +1,48 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2006, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. 
+ * See the copyright.txt in the distribution for a full listing 
+ * of individual contributors.
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ * 
+ * (C) 2005-2006,
+ * @author JBoss Inc.
+ */
+
+package com.arjuna.mw.wscf.model.twophase.participants;
+
+import com.arjuna.mw.wscf.model.twophase.vote.Vote;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * A participant which can be asked to prepare without the coordinator
+ * waiting for its vote. The coordinator sends prepare to all such
+ * participants before it collects any of the votes, so remote participants
+ * prepare concurrently rather than one after another.
+ */
+
+public interface AsyncParticipant extends Participant
+{
+
+    /**
+     * Start preparing the participant for top-level.
+     *
+     * @return a stage completed with the vote, or exceptionally with one of
+     * the exceptions {@link #prepare()} may throw. Null if this participant
+     * can only be prepared by calling {@link #prepare()}.
+     */
+
+    public CompletionStage<Vote> prepareAsync ();
+
+}
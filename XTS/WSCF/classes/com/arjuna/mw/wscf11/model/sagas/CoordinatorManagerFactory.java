@@ -40,7 +40,7 @@ import com.arjuna.mw.wscf.exceptions.ProtocolNotRegisteredException;
 import com.arjuna.mw.wscf.protocols.ProtocolManager;
 import com.arjuna.mw.wscf.protocols.ProtocolRegistry;
 
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The factory to return the specific CoordinatorManager implementation.
@@ -91,17 +91,20 @@ public class CoordinatorManagerFactory
     {
         try
         {
-            SagasHLS coordHLS;
+            SagasHLS coordHLS = _implementations.get(protocol);
 
-            synchronized (_implementations)
+            if (coordHLS == null)
             {
-                coordHLS = (SagasHLS) _implementations.get(protocol);
-
-                if (coordHLS == null)
+                synchronized (_implementations)
                 {
-                    coordHLS = (SagasHLS) _protocolManager.getProtocolImplementation(protocol);
-                    
-                    _implementations.put(protocol, coordHLS);
+                    coordHLS = _implementations.get(protocol);
+
+                    if (coordHLS == null)
+                    {
+                        coordHLS = (SagasHLS) _protocolManager.getProtocolImplementation(protocol);
+
+                        _implementations.put(protocol, coordHLS);
+                    }
                 }
             }
 
@@ -119,6 +122,6 @@ public class CoordinatorManagerFactory
     }
 
     private static ProtocolManager _protocolManager = ProtocolRegistry.sharedManager();
-    private static HashMap         _implementations = new HashMap();
+    private static ConcurrentHashMap<String, SagasHLS> _implementations = new ConcurrentHashMap<String, SagasHLS>();
 
 }
@@ -40,6 +40,7 @@ import com.arjuna.ats.arjuna.state.*;
 
 import com.arjuna.mw.wscf.model.sagas.participants.Participant;
 import com.arjuna.mw.wscf.model.sagas.participants.ParticipantWithComplete;
+import com.arjuna.mw.wscf.model.sagas.participants.ParticipantWithRecovery;
 import com.arjuna.mw.wscf.model.sagas.exceptions.CompensateFailedException;
 import com.arjuna.mw.wscf.model.sagas.exceptions.CancelFailedException;
 
@@ -621,9 +622,12 @@ public class ParticipantRecord extends
 		/*
 		 * If the participant has exited without failure, then we don't need to save anything
 		 * about it in the transaction log. If it has not exited or it has exited with failure
-		 * we do need to log it
+		 * we do need to log it. Participants which have nothing to recover never need logging.
 		 */
 
+		if ((_resourceHandle instanceof ParticipantWithRecovery) && !((ParticipantWithRecovery) _resourceHandle).requiresRecovery())
+			return false;
+
 		return (!_exited || _failed);
 	}
 
@@ -38,6 +38,7 @@ import com.arjuna.ats.arjuna.coordinator.*;
 
 import com.arjuna.mw.wscf.model.twophase.participants.*;
 import com.arjuna.mw.wscf.model.twophase.exceptions.*;
+import com.arjuna.mw.wscf.model.twophase.vote.Vote;
 
 import com.arjuna.mw.wscf.common.Qualifier;
 import com.arjuna.mw.wscf.common.CoordinatorId;
@@ -52,6 +53,12 @@ import com.arjuna.mw.wsas.exceptions.ProtocolViolationException;
 
 import com.arjuna.mw.wscf.exceptions.*;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+
 /**
  * This class represents a specific coordination instance. It is essentially an
  * ArjunaCore TwoPhaseCoordinator, which gives us access to two-phase with
@@ -279,6 +286,76 @@ public class ATCoordinator extends TwoPhaseCoordinator
                     wscfLogger.i18NLogger.get_model_twophase_arjunacore_ATCoordinator_3());
 	}
 
+	/**
+	 * Run the synchronizations and then send prepare to the participants, so
+	 * that they are already preparing when phase one collects their votes.
+	 */
+
+	protected boolean beforeCompletion ()
+	{
+		boolean result = runBeforeCompletion();
+
+		if (result)
+			prepareParticipants();
+
+		return result;
+	}
+
+	/**
+	 * Run the synchronizations without preparing any participant.
+	 */
+
+	protected final boolean runBeforeCompletion ()
+	{
+		return super.beforeCompletion();
+	}
+
+	/**
+	 * Send prepare to every participant which can take it without waiting for
+	 * its vote, then wait until all of them have voted. Waiting for every vote
+	 * rather than the first failure means no participant is still preparing
+	 * when phase two starts. Phase one collects the votes in order and prepares
+	 * any other participant itself.
+	 */
+
+	protected void prepareParticipants ()
+	{
+		// a single participant is committed in one phase
+		if ((status() != ActionStatus.RUNNING) || (pendingList == null) || (pendingList.size() < 2))
+			return;
+
+		List<CompletableFuture<Vote>> votes = new ArrayList<CompletableFuture<Vote>>();
+		RecordListIterator iter = new RecordListIterator(pendingList);
+		AbstractRecord absRec;
+
+		while ((absRec = iter.iterate()) != null)
+		{
+			if (absRec instanceof ParticipantRecord)
+			{
+				CompletionStage<Vote> vote = ((ParticipantRecord) absRec).prepareAsync();
+
+				if (vote != null)
+					votes.add(vote.toCompletableFuture());
+			}
+		}
+
+		if (votes.isEmpty())
+			return;
+
+		try
+		{
+			CompletableFuture.allOf(votes.toArray(new CompletableFuture<?>[votes.size()])).get();
+		}
+		catch (ExecutionException ex)
+		{
+			// each participant record reports its own failure during phase one
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
     @Override
     public String type ()
 	{
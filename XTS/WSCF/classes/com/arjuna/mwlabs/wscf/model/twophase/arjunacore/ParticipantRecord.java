@@ -39,6 +39,7 @@ import com.arjuna.ats.arjuna.common.*;
 import com.arjuna.ats.arjuna.state.*;
 
 import com.arjuna.mw.wscf.model.twophase.vote.*;
+import com.arjuna.mw.wscf.model.twophase.participants.AsyncParticipant;
 import com.arjuna.mw.wscf.model.twophase.participants.Participant;
 import com.arjuna.mw.wscf.model.twophase.exceptions.*;
 
@@ -48,6 +49,8 @@ import com.arjuna.mw.wscf.exceptions.*;
 import com.arjuna.webservices.util.ClassLoaderHelper;
 
 import java.io.PrintWriter;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Arjuna abstract record to handle two-phase participants.
@@ -307,6 +310,22 @@ public class ParticipantRecord extends
         }
 	}
 
+	/**
+	 * Send prepare to the participant without waiting for its vote, if the
+	 * participant supports it. topLevelPrepare then collects the vote.
+	 *
+	 * @return a stage completed once the participant has voted, or null if
+	 * the participant will be prepared by topLevelPrepare.
+	 */
+
+	CompletionStage<Vote> prepareAsync ()
+	{
+		if ((_resourceHandle instanceof AsyncParticipant) && !_rolledback && !_readonly)
+			_prepared = ((AsyncParticipant) _resourceHandle).prepareAsync();
+
+		return _prepared;
+	}
+
 	/**
 	 * The record is being driven through top-level prepare.
 	 *
@@ -326,7 +345,7 @@ public class ParticipantRecord extends
 
 				try
 				{
-					Vote res = _resourceHandle.prepare();
+					Vote res = (_prepared != null) ? awaitVote() : _resourceHandle.prepare();
 
 					if (res instanceof VoteConfirm)
 					{
@@ -385,6 +404,36 @@ public class ParticipantRecord extends
         }
 	}
 
+	/**
+	 * Wait for the vote of a participant which was sent prepare by prepareAsync.
+	 * The participant completes the stage by the time its transport times out.
+	 */
+
+	private Vote awaitVote () throws Exception
+	{
+		try
+		{
+			return _prepared.toCompletableFuture().get();
+		}
+		catch (ExecutionException ex)
+		{
+			if (ex.getCause() instanceof Exception)
+				throw (Exception) ex.getCause();
+
+			throw ex;
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+
+			throw ex;
+		}
+		finally
+		{
+			_prepared = null;
+		}
+	}
+
 	/**
 	 * The record is being driven through nested commit and is the only
 	 * resource.
@@ -670,4 +719,6 @@ public class ParticipantRecord extends
 
 	private boolean _readonly = false;
 
+	private CompletionStage<Vote> _prepared;
+
 }
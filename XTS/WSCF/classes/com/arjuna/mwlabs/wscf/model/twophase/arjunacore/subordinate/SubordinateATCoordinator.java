@@ -147,7 +147,7 @@ public class SubordinateATCoordinator extends ATCoordinator
      */
     public boolean prepareVolatile()
     {
-        return super.beforeCompletion();
+        return runBeforeCompletion();
     }
 
     /**
@@ -158,6 +158,8 @@ public class SubordinateATCoordinator extends ATCoordinator
 
 	public int prepare ()
 	{
+        prepareParticipants();
+
         int status = super.prepare(true);
         isReadonly = (status == TwoPhaseOutcome.PREPARE_READONLY);
         return status;
@@ -32,6 +32,7 @@
 package com.arjuna.mwlabs.wst.at.participants;
 
 import com.arjuna.wst.Durable2PCParticipant;
+import com.arjuna.wst11.stub.ParticipantStub;
 
 import com.arjuna.ats.arjuna.state.InputObjectState;
 import com.arjuna.ats.arjuna.state.OutputObjectState;
@@ -47,6 +48,10 @@ import com.arjuna.mw.wsas.exceptions.SystemCommunicationException;
 import com.arjuna.mw.wstx.logging.wstxLogger;
 import com.arjuna.mwlabs.wst.util.PersistableParticipantHelper;
 
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiFunction;
+
 /**
  * @author Mark Little (mark.little@arjuna.com)
  * @version $Id: DurableTwoPhaseCommitParticipant.java,v 1.1.2.2 2004/08/09
@@ -54,7 +59,7 @@ import com.arjuna.mwlabs.wst.util.PersistableParticipantHelper;
  * @since 1.0.
  */
 
-public class DurableTwoPhaseCommitParticipant implements Participant
+public class DurableTwoPhaseCommitParticipant implements AsyncParticipant
 {
     // default ctor for crash recovery
     public DurableTwoPhaseCommitParticipant() {
@@ -79,50 +84,89 @@ public class DurableTwoPhaseCommitParticipant implements Participant
 		try
 		{
 			if (_resource != null)
-			{
-				com.arjuna.wst.Vote vt = _resource.prepare();
+				return vote(_resource.prepare());
+			else
+				return new VoteCancel();
+		}
+		catch (com.arjuna.wst.WrongStateException ex)
+		{
+			throw (WrongStateException) prepareFailure(ex);
+		}
+		catch (com.arjuna.wst.SystemException ex)
+		{
+			throw (SystemException) prepareFailure(ex);
+		}
+	}
 
-				if (vt instanceof com.arjuna.wst.ReadOnly)
-				{
-					_readonly = true;
+    /**
+     * tell a remote participant to prepare without waiting for its vote
+     *
+     * @return the participant's future vote or null if the participant is prepared by calling prepare
+     */
+	public CompletionStage<Vote> prepareAsync ()
+	{
+		if (!(_resource instanceof ParticipantStub))
+			return null;
 
-					return new VoteReadOnly();
-				}
-				else
-				{
-					if (vt instanceof com.arjuna.wst.Prepared)
-						return new VoteConfirm();
-					else
-					{
-						_rolledback = true;
+		return ((ParticipantStub) _resource).prepareAsync().handle(new BiFunction<com.arjuna.wst.Vote, Throwable, Vote>()
+		{
+			public Vote apply (com.arjuna.wst.Vote vt, Throwable ex)
+			{
+				if (ex == null)
+					return vote(vt);
 
-						return new VoteCancel();
-					}
-				}
+				if ((ex instanceof CompletionException) && (ex.getCause() != null))
+					ex = ex.getCause();
+
+				throw new CompletionException(prepareFailure(ex));
 			}
+		});
+	}
+
+	private Vote vote (com.arjuna.wst.Vote vt)
+	{
+		if (vt instanceof com.arjuna.wst.ReadOnly)
+		{
+			_readonly = true;
+
+			return new VoteReadOnly();
+		}
+		else
+		{
+			if (vt instanceof com.arjuna.wst.Prepared)
+				return new VoteConfirm();
 			else
+			{
+				_rolledback = true;
+
 				return new VoteCancel();
+			}
 		}
-		catch (com.arjuna.wst.WrongStateException ex)
+	}
+
+	private Exception prepareFailure (Throwable ex)
+	{
+		if (ex instanceof com.arjuna.wst.WrongStateException)
 		{
 			wstxLogger.i18NLogger.error_wst_at_participants_Durable2PC_prepare(_id, _resource, ex);
 			WrongStateException wse = new WrongStateException(ex.toString());
 			wse.addSuppressed(ex);
-			throw wse;
+			return wse;
 		}
-		catch (com.arjuna.wst.stub.SystemCommunicationException ex) {
+		else if (ex instanceof com.arjuna.wst.stub.SystemCommunicationException)
+		{
 		    wstxLogger.i18NLogger.warn_mwlabs_wst_at_participants_DurableTwoPhaseCommitParticipant_prepare_1(_id, _resource);
 		    SystemCommunicationException sce = new SystemCommunicationException(ex.toString());
 		    sce.addSuppressed(ex);
-		    throw sce;
+		    return sce;
 		}
-		catch (com.arjuna.wst.SystemException ex)
+		else
 		{
 		    wstxLogger.i18NLogger.error_wst_at_participants_Durable2PC_prepare(_id, _resource, ex);
 		    SystemException se = new SystemException(ex.toString());
 		    se.addSuppressed(ex);
-		    throw se;
-        }
+		    return se;
+		}
 	}
 
     /**
@@ -0,0 +1,148 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.arjuna.webservices11.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.xml.ws.BindingProvider;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PortCacheTest {
+
+    private static final String PORT_ID = "test.port.id";
+
+    private static final String ENDPOINT = "http://localhost:8080/ws-t11-coordinator/CoordinatorService {urn:test}id=1";
+
+    private static final String OTHER_ENDPOINT = "http://localhost:8080/ws-t11-coordinator/CoordinatorService {urn:test}id=2";
+
+    public interface TestPortType {
+
+        /**
+         * @return the id of the underlying port the call was made on.
+         */
+        Object operation();
+    }
+
+    /**
+     * Creates ports which know their own id, so that a test can tell which one it was given.
+     */
+    private static class TestPortFactory implements PortCache.PortFactory<TestPortType> {
+
+        private final AtomicInteger created = new AtomicInteger();
+
+        @Override
+        public TestPortType createPort() {
+            final Map<String, Object> requestContext = new HashMap<String, Object>();
+            requestContext.put(PORT_ID, created.incrementAndGet());
+
+            return (TestPortType) Proxy.newProxyInstance(TestPortType.class.getClassLoader(),
+                    new Class<?>[] { TestPortType.class, BindingProvider.class }, new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) {
+                            if (method.getName().equals("getRequestContext")) {
+                                return requestContext;
+                            } else if (method.getName().equals("operation")) {
+                                return requestContext.get(PORT_ID);
+                            }
+                            throw new UnsupportedOperationException(method.getName());
+                        }
+                    });
+        }
+    }
+
+    @Test
+    public void testPortReused() {
+        final PortCache cache = new PortCache();
+        final TestPortFactory factory = new TestPortFactory();
+
+        TestPortType port = cache.getPort(ENDPOINT, TestPortType.class, factory);
+        ((BindingProvider) port).getRequestContext().put("message", "first");
+        Assert.assertEquals(1, port.operation());
+
+        port = cache.getPort(ENDPOINT, TestPortType.class, factory);
+        Assert.assertNull(((BindingProvider) port).getRequestContext().get("message"));
+        Assert.assertEquals(1, port.operation());
+
+        Assert.assertEquals(1, factory.created.get());
+    }
+
+    @Test
+    public void testPortHeldByOneCaller() {
+        final PortCache cache = new PortCache();
+        final TestPortFactory factory = new TestPortFactory();
+
+        final TestPortType first = cache.getPort(ENDPOINT, TestPortType.class, factory);
+        final TestPortType second = cache.getPort(ENDPOINT, TestPortType.class, factory);
+        Assert.assertEquals(1, first.operation());
+        Assert.assertEquals(2, second.operation());
+
+        try {
+            first.operation();
+            Assert.fail("a port can only be used once");
+        } catch (IllegalStateException e) {
+        }
+
+        cache.getPort(ENDPOINT, TestPortType.class, factory).operation();
+        cache.getPort(ENDPOINT, TestPortType.class, factory).operation();
+        Assert.assertEquals(2, factory.created.get());
+    }
+
+    @Test
+    public void testPortsKeptPerEndpoint() {
+        final PortCache cache = new PortCache();
+        final TestPortFactory factory = new TestPortFactory();
+
+        Assert.assertEquals(1, cache.getPort(ENDPOINT, TestPortType.class, factory).operation());
+        Assert.assertEquals(2, cache.getPort(OTHER_ENDPOINT, TestPortType.class, factory).operation());
+        Assert.assertEquals(3, cache.getPort(null, TestPortType.class, factory).operation());
+
+        Assert.assertEquals(1, cache.getPort(new String(ENDPOINT), TestPortType.class, factory).operation());
+        Assert.assertEquals(2, cache.getPort(OTHER_ENDPOINT, TestPortType.class, factory).operation());
+        Assert.assertEquals(3, cache.getPort(null, TestPortType.class, factory).operation());
+        Assert.assertEquals(3, factory.created.get());
+    }
+
+    @Test
+    public void testIdlePortsBounded() {
+        final PortCache cache = new PortCache();
+        final TestPortFactory factory = new TestPortFactory();
+        final TestPortType[] ports = new TestPortType[PortCache.MAX_IDLE_PORTS + 2];
+
+        for (int i = 0; i < ports.length; i++) {
+            ports[i] = cache.getPort(ENDPOINT, TestPortType.class, factory);
+        }
+        for (TestPortType port : ports) {
+            port.operation();
+        }
+        for (int i = 0; i < ports.length; i++) {
+            ports[i] = cache.getPort(ENDPOINT, TestPortType.class, factory);
+        }
+
+        Assert.assertEquals(ports.length + 2, factory.created.get());
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.arjuna.wsc.tests.local;
+
+import com.arjuna.services.framework.task.Task;
+import com.arjuna.services.framework.task.TaskManager;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TaskManagerTest {
+
+    private static final long WAIT_TIME = 10000L;
+
+    private static final long KEEP_ALIVE = 50L;
+
+    private final TaskManager manager = TaskManager.getManager();
+
+    private static class CountingTask implements Task {
+
+        private final CountDownLatch done;
+
+        private final CountDownLatch release;
+
+        private volatile Thread ranOn;
+
+        public CountingTask(CountDownLatch done, CountDownLatch release) {
+            this.done = done;
+            this.release = release;
+        }
+
+        @Override
+        public void executeTask() {
+            ranOn = Thread.currentThread();
+            if (release != null) {
+                try {
+                    release.await(WAIT_TIME, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                }
+            }
+            done.countDown();
+        }
+    }
+
+    @Before
+    public void setUp() {
+        manager.setMinimumWorkerCount(0);
+        manager.setMaximumWorkerCount(4);
+        manager.setQueueCapacity(0);
+        manager.setKeepAlive(KEEP_ALIVE);
+    }
+
+    @After
+    public void tearDown() {
+        manager.shutdown();
+        manager.setMaximumWorkerCount(-1);
+        manager.setQueueCapacity(0);
+        manager.setKeepAlive(-1);
+    }
+
+    private void waitForWorkerCount(int count) throws InterruptedException {
+        final long end = System.currentTimeMillis() + WAIT_TIME;
+        while (manager.getWorkerCount() != count && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(count, manager.getWorkerCount());
+    }
+
+    @Test
+    public void testAllTasksRun() throws InterruptedException {
+        final int producers = 4;
+        final int tasks = 5000;
+        final CountDownLatch done = new CountDownLatch(producers * tasks);
+        final long completed = manager.getCompletedTaskCount();
+        final long rejected = manager.getRejectedTaskCount();
+        final Thread[] threads = new Thread[producers];
+
+        for (int i = 0; i < producers; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < tasks; j++) {
+                        Assert.assertTrue(manager.queueTask(new CountingTask(done, null)));
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join(WAIT_TIME);
+        }
+
+        Assert.assertTrue(done.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(0, manager.getQueueDepth());
+        Assert.assertTrue(manager.getWorkerCount() <= 4);
+        // the completed count is recorded just after each task returns
+        final long end = System.currentTimeMillis() + WAIT_TIME;
+        while (manager.getCompletedTaskCount() - completed + manager.getRejectedTaskCount() - rejected < producers * tasks
+                && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(producers * tasks,
+                manager.getCompletedTaskCount() - completed + manager.getRejectedTaskCount() - rejected);
+    }
+
+    @Test
+    public void testQueueFullRunsInCaller() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(4);
+        final long rejected = manager.getRejectedTaskCount();
+
+        manager.setMaximumWorkerCount(1);
+        manager.setQueueCapacity(2);
+
+        final CountingTask blocking = new CountingTask(done, release);
+        Assert.assertTrue(manager.queueTask(blocking));
+        waitForDepth(0);
+        Assert.assertTrue(manager.queueTask(new CountingTask(done, null)));
+        Assert.assertTrue(manager.queueTask(new CountingTask(done, null)));
+        Assert.assertEquals(2, manager.getQueueDepth());
+
+        final CountingTask overflow = new CountingTask(done, null);
+        Assert.assertTrue(manager.queueTask(overflow));
+        Assert.assertSame(Thread.currentThread(), overflow.ranOn);
+        Assert.assertEquals(rejected + 1, manager.getRejectedTaskCount());
+
+        release.countDown();
+        Assert.assertTrue(done.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        Assert.assertNotSame(Thread.currentThread(), blocking.ranOn);
+    }
+
+    @Test
+    public void testIdleWorkersExit() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(4);
+
+        for (int i = 0; i < 4; i++) {
+            manager.queueTask(new CountingTask(done, release));
+        }
+        waitForWorkerCount(4);
+        release.countDown();
+        Assert.assertTrue(done.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+
+        waitForWorkerCount(0);
+    }
+
+    @Test
+    public void testMinimumWorkersKept() throws InterruptedException {
+        manager.setMinimumWorkerCount(2);
+        waitForWorkerCount(2);
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(4);
+        for (int i = 0; i < 4; i++) {
+            manager.queueTask(new CountingTask(done, release));
+        }
+        waitForWorkerCount(4);
+        release.countDown();
+        Assert.assertTrue(done.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+
+        waitForWorkerCount(2);
+        Thread.sleep(KEEP_ALIVE * 4);
+        Assert.assertEquals(2, manager.getWorkerCount());
+    }
+
+    @Test
+    public void testPoolShrinks() throws InterruptedException {
+        manager.setKeepAlive(WAIT_TIME * 10);
+        manager.setMinimumWorkerCount(4);
+        waitForWorkerCount(4);
+
+        manager.setMinimumWorkerCount(0);
+        manager.setMaximumWorkerCount(1);
+        waitForWorkerCount(1);
+
+        final CountDownLatch done = new CountDownLatch(10);
+        for (int i = 0; i < 10; i++) {
+            manager.queueTask(new CountingTask(done, null));
+        }
+        Assert.assertTrue(done.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(1, manager.getWorkerCount());
+    }
+
+    @Test
+    public void testBurstsAfterIdle() throws InterruptedException {
+        // tasks queued in bursts separated by idle periods must all be picked up
+        for (int burst = 0; burst < 5; burst++) {
+            final CountDownLatch done = new CountDownLatch(100);
+            for (int i = 0; i < 100; i++) {
+                manager.queueTask(new CountingTask(done, null));
+            }
+            Assert.assertTrue(done.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+            Assert.assertEquals(0, manager.getQueueDepth());
+            waitForWorkerCount(0);
+        }
+    }
+
+    private void waitForDepth(int depth) throws InterruptedException {
+        final long end = System.currentTimeMillis() + WAIT_TIME;
+        while (manager.getQueueDepth() != depth && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(depth, manager.getQueueDepth());
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.arjuna.wsc.tests.local;
+
+import com.arjuna.webservices.util.HashedWheelTimer;
+import com.arjuna.webservices.util.TransportTimer;
+import com.arjuna.webservices.util.TransportTimerTask;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TransportTimerTest {
+
+    private static final long TICK = 10L;
+
+    private static final int WHEEL_SIZE = 8;
+
+    private static final long WAIT_TIME = 5000L;
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static class CountingTask extends TransportTimerTask {
+
+        private final CountDownLatch latch;
+
+        private final AtomicInteger runs = new AtomicInteger();
+
+        private volatile long ranAt;
+
+        private volatile Thread ranOn;
+
+        public CountingTask(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @Override
+        public void run() {
+            ranAt = System.nanoTime();
+            ranOn = Thread.currentThread();
+            runs.incrementAndGet();
+            latch.countDown();
+        }
+    }
+
+    private void testDelay(long delay) throws InterruptedException {
+        final HashedWheelTimer timer = new HashedWheelTimer("TransportTimerTest", TICK, WHEEL_SIZE, DIRECT);
+        final CountingTask task = new CountingTask(new CountDownLatch(1));
+        final long start = System.nanoTime();
+
+        timer.schedule(task, delay);
+
+        Assert.assertTrue(task.latch.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(task.ranAt - start) >= delay);
+        Thread.sleep(WHEEL_SIZE * TICK * 2);
+        Assert.assertEquals(1, task.runs.get());
+    }
+
+    @Test
+    public void testDelayWithinOneRound() throws InterruptedException {
+        testDelay(TICK * 3);
+    }
+
+    @Test
+    public void testDelayOverSeveralRounds() throws InterruptedException {
+        testDelay(TICK * WHEEL_SIZE * 3 + TICK / 2);
+    }
+
+    @Test
+    public void testNoDelay() throws InterruptedException {
+        testDelay(0L);
+    }
+
+    @Test
+    public void testCancelled() throws InterruptedException {
+        final HashedWheelTimer timer = new HashedWheelTimer("TransportTimerTest", TICK, WHEEL_SIZE, DIRECT);
+        final CountingTask cancelledBeforePlaced = new CountingTask(new CountDownLatch(1));
+        final CountingTask cancelledOnWheel = new CountingTask(new CountDownLatch(1));
+        final CountingTask marker = new CountingTask(new CountDownLatch(1));
+
+        cancelledBeforePlaced.cancel();
+        timer.schedule(cancelledBeforePlaced, TICK);
+        timer.schedule(cancelledOnWheel, TICK * 5);
+        Thread.sleep(TICK * 2);
+        cancelledOnWheel.cancel();
+        timer.schedule(marker, TICK * 10);
+
+        Assert.assertTrue(marker.latch.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(0, cancelledBeforePlaced.runs.get());
+        Assert.assertEquals(0, cancelledOnWheel.runs.get());
+    }
+
+    @Test
+    public void testManyTasks() throws InterruptedException {
+        final HashedWheelTimer timer = new HashedWheelTimer("TransportTimerTest", TICK, WHEEL_SIZE, DIRECT);
+        final int count = 1000;
+        final CountDownLatch latch = new CountDownLatch(count / 2);
+        final List<CountingTask> tasks = new ArrayList<CountingTask>();
+
+        for (int i = 0; i < count; i++) {
+            final CountingTask task = new CountingTask(latch);
+            tasks.add(task);
+            timer.schedule(task, (i % 50) * TICK);
+            if (i % 2 == 1) {
+                task.cancel();
+            }
+        }
+
+        Assert.assertTrue(latch.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        Thread.sleep(WHEEL_SIZE * TICK * 2);
+        for (int i = 0; i < count; i++) {
+            Assert.assertEquals(i % 2 == 0 ? 1 : 0, tasks.get(i).runs.get());
+        }
+    }
+
+    @Test
+    public void testSlowTaskDoesNotHoldUpTheWheel() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final TransportTimerTask slow = new TransportTimerTask() {
+            @Override
+            public void run() {
+                try {
+                    release.await(WAIT_TIME, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                }
+            }
+        };
+        final CountingTask task = new CountingTask(new CountDownLatch(1));
+
+        try {
+            TransportTimer.schedule(slow, 0L);
+            TransportTimer.schedule(task, 0L);
+
+            Assert.assertTrue(task.latch.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+            Assert.assertTrue(task.ranOn.isDaemon());
+            Assert.assertTrue(task.ranOn.getName().startsWith("TransportTimer-"));
+        } finally {
+            release.countDown();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.arjuna.wscf.tests.local;
+
+import com.arjuna.ats.arjuna.coordinator.ActionStatus;
+import com.arjuna.ats.arjuna.state.InputObjectState;
+import com.arjuna.ats.arjuna.state.OutputObjectState;
+import com.arjuna.mw.wsas.exceptions.SystemException;
+import com.arjuna.mw.wsas.exceptions.WrongStateException;
+import com.arjuna.mw.wscf.exceptions.InvalidParticipantException;
+import com.arjuna.mw.wscf.model.twophase.exceptions.HeuristicCancelException;
+import com.arjuna.mw.wscf.model.twophase.exceptions.HeuristicConfirmException;
+import com.arjuna.mw.wscf.model.twophase.exceptions.HeuristicHazardException;
+import com.arjuna.mw.wscf.model.twophase.exceptions.HeuristicMixedException;
+import com.arjuna.mw.wscf.model.twophase.participants.AsyncParticipant;
+import com.arjuna.mw.wscf.model.twophase.vote.Vote;
+import com.arjuna.mw.wscf.model.twophase.vote.VoteCancel;
+import com.arjuna.mw.wscf.model.twophase.vote.VoteConfirm;
+import com.arjuna.mwlabs.wscf.model.twophase.arjunacore.ATCoordinator;
+import com.arjuna.wscf.tests.TwoPhaseParticipant;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AsyncPrepareTest {
+
+    private static final long DELAY = 500L;
+
+    private static final int PARTICIPANTS = 4;
+
+    private static final ScheduledExecutorService RESPONDER = Executors.newScheduledThreadPool(PARTICIPANTS);
+
+    /**
+     * Counts the participants which have been sent prepare but have not voted yet.
+     */
+    private static class Votes {
+
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        private final AtomicInteger maximumOutstanding = new AtomicInteger();
+
+        private void sent() {
+            final int now = outstanding.incrementAndGet();
+            int maximum;
+            while ((maximum = maximumOutstanding.get()) < now && !maximumOutstanding.compareAndSet(maximum, now)) {
+            }
+        }
+
+        private void received() {
+            outstanding.decrementAndGet();
+        }
+    }
+
+    /**
+     * A remote participant which votes some time after it is sent prepare.
+     */
+    private static class SlowParticipant implements AsyncParticipant {
+
+        private final String id;
+
+        private final Votes votes;
+
+        private final long delay;
+
+        private final Vote vote;
+
+        private volatile boolean confirmed;
+
+        private volatile boolean cancelled;
+
+        private volatile int outstandingInPhaseTwo = -1;
+
+        public SlowParticipant(String id, Votes votes, long delay, Vote vote) {
+            this.id = id;
+            this.votes = votes;
+            this.delay = delay;
+            this.vote = vote;
+        }
+
+        @Override
+        public CompletionStage<Vote> prepareAsync() {
+            final CompletableFuture<Vote> future = new CompletableFuture<Vote>();
+            votes.sent();
+            RESPONDER.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    votes.received();
+                    future.complete(vote);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+            return future;
+        }
+
+        @Override
+        public Vote prepare() throws InvalidParticipantException, WrongStateException, HeuristicHazardException, HeuristicMixedException, SystemException {
+            try {
+                return prepareAsync().toCompletableFuture().get();
+            } catch (Exception e) {
+                throw new SystemException(e.toString());
+            }
+        }
+
+        @Override
+        public void confirm() throws InvalidParticipantException, WrongStateException, HeuristicHazardException, HeuristicMixedException, HeuristicCancelException, SystemException {
+            outstandingInPhaseTwo = votes.outstanding.get();
+            confirmed = true;
+        }
+
+        @Override
+        public void cancel() throws InvalidParticipantException, WrongStateException, HeuristicHazardException, HeuristicMixedException, HeuristicConfirmException, SystemException {
+            outstandingInPhaseTwo = votes.outstanding.get();
+            cancelled = true;
+        }
+
+        @Override
+        public void confirmOnePhase() throws InvalidParticipantException, WrongStateException, HeuristicHazardException, HeuristicMixedException, HeuristicCancelException, SystemException {
+            confirmed = true;
+        }
+
+        @Override
+        public void forget() throws InvalidParticipantException, WrongStateException, SystemException {
+        }
+
+        @Override
+        public String id() throws SystemException {
+            return id;
+        }
+
+        @Override
+        public boolean save_state(OutputObjectState os) {
+            return true;
+        }
+
+        @Override
+        public boolean restore_state(InputObjectState os) {
+            return true;
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        RESPONDER.shutdown();
+    }
+
+    private static List<SlowParticipant> enlist(ATCoordinator coordinator, Votes votes, int count) throws Exception {
+        final List<SlowParticipant> participants = new ArrayList<SlowParticipant>(count);
+        for (int i = 0; i < count; i++) {
+            final SlowParticipant participant = new SlowParticipant("slow-" + i, votes, DELAY, new VoteConfirm());
+            coordinator.enlistParticipant(participant);
+            participants.add(participant);
+        }
+        return participants;
+    }
+
+    @Test
+    public void testSlowParticipantsPrepareConcurrently() throws Exception {
+        final Votes votes = new Votes();
+        final ATCoordinator coordinator = new ATCoordinator();
+        coordinator.start();
+        final List<SlowParticipant> participants = enlist(coordinator, votes, PARTICIPANTS);
+
+        final long start = System.currentTimeMillis();
+        final int outcome = coordinator.end(true);
+        final long elapsed = System.currentTimeMillis() - start;
+
+        Assert.assertEquals(ActionStatus.COMMITTED, outcome);
+        Assert.assertEquals(PARTICIPANTS, votes.maximumOutstanding.get());
+        // one participant's delay rather than the sum of them all
+        Assert.assertTrue("prepare took " + elapsed + "ms", elapsed < PARTICIPANTS * DELAY);
+        for (SlowParticipant participant : participants) {
+            Assert.assertTrue(participant.confirmed);
+            Assert.assertEquals(0, participant.outstandingInPhaseTwo);
+        }
+    }
+
+    @Test
+    public void testPhaseTwoWaitsForEveryVote() throws Exception {
+        final Votes votes = new Votes();
+        final ATCoordinator coordinator = new ATCoordinator();
+        coordinator.start();
+        final SlowParticipant refuses = new SlowParticipant("refuses", votes, 0, new VoteCancel());
+        coordinator.enlistParticipant(refuses);
+        final List<SlowParticipant> participants = enlist(coordinator, votes, PARTICIPANTS - 1);
+
+        final int outcome = coordinator.end(true);
+
+        Assert.assertEquals(ActionStatus.ABORTED, outcome);
+        Assert.assertFalse(refuses.confirmed);
+        for (SlowParticipant participant : participants) {
+            // the participants which voted to confirm are rolled back once they have all voted
+            Assert.assertTrue(participant.cancelled);
+            Assert.assertEquals(0, participant.outstandingInPhaseTwo);
+        }
+    }
+
+    @Test
+    public void testSynchronousParticipantsStillPrepared() throws Exception {
+        final Votes votes = new Votes();
+        final ATCoordinator coordinator = new ATCoordinator();
+        coordinator.start();
+        coordinator.enlistParticipant(new TwoPhaseParticipant("synchronous"));
+        final List<SlowParticipant> participants = enlist(coordinator, votes, 2);
+
+        Assert.assertEquals(ActionStatus.COMMITTED, coordinator.end(true));
+        Assert.assertEquals(2, votes.maximumOutstanding.get());
+        for (SlowParticipant participant : participants) {
+            Assert.assertTrue(participant.confirmed);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.arjuna.wscf.tests.local;
+
+import com.arjuna.ats.arjuna.common.Uid;
+import com.arjuna.ats.arjuna.coordinator.ActionStatus;
+import com.arjuna.ats.arjuna.state.InputObjectState;
+import com.arjuna.ats.arjuna.state.OutputObjectState;
+import com.arjuna.mw.wsas.exceptions.SystemException;
+import com.arjuna.mw.wsas.exceptions.WrongStateException;
+import com.arjuna.mw.wscf.exceptions.InvalidParticipantException;
+import com.arjuna.mw.wscf.model.sagas.exceptions.CompensateFailedException;
+import com.arjuna.mw.wscf.model.sagas.participants.ParticipantWithRecovery;
+import com.arjuna.mwlabs.wscf.model.sagas.arjunacore.BACoordinator;
+import com.arjuna.mwlabs.wscf.model.sagas.arjunacore.ParticipantRecord;
+import com.arjuna.wscf.tests.SagasParticipant;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ParticipantRecordLoggingTest {
+
+    /**
+     * A participant which counts the times the coordinator writes it to the transaction log.
+     */
+    private static class LoggingParticipant implements ParticipantWithRecovery {
+
+        private final String id;
+
+        private final boolean requiresRecovery;
+
+        private final AtomicInteger saved = new AtomicInteger();
+
+        private volatile boolean closed;
+
+        public LoggingParticipant(String id, boolean requiresRecovery) {
+            this.id = id;
+            this.requiresRecovery = requiresRecovery;
+        }
+
+        @Override
+        public boolean requiresRecovery() {
+            return requiresRecovery;
+        }
+
+        @Override
+        public void close() throws InvalidParticipantException, WrongStateException, SystemException {
+            closed = true;
+        }
+
+        @Override
+        public void cancel() throws InvalidParticipantException, WrongStateException, SystemException {
+        }
+
+        @Override
+        public void compensate() throws CompensateFailedException, InvalidParticipantException, WrongStateException, SystemException {
+        }
+
+        @Override
+        public void forget() throws InvalidParticipantException, WrongStateException, SystemException {
+        }
+
+        @Override
+        public String id() throws SystemException {
+            return id;
+        }
+
+        @Override
+        public boolean save_state(OutputObjectState os) {
+            saved.incrementAndGet();
+            return true;
+        }
+
+        @Override
+        public boolean restore_state(InputObjectState os) {
+            return true;
+        }
+    }
+
+    @Test
+    public void testUnloggedParticipantNotSaved() {
+        final ParticipantRecord record = new ParticipantRecord(new LoggingParticipant("unlogged", false), new Uid());
+
+        Assert.assertFalse(record.doSave());
+        record.delist(true);
+        // not even a failed exit needs logging when there is nothing to recover
+        Assert.assertFalse(record.doSave());
+    }
+
+    @Test
+    public void testLoggedParticipantSaved() {
+        final ParticipantRecord record = new ParticipantRecord(new LoggingParticipant("logged", true), new Uid());
+
+        Assert.assertTrue(record.doSave());
+        record.delist(true);
+        Assert.assertTrue(record.doSave());
+    }
+
+    @Test
+    public void testExitedParticipantNotSaved() {
+        final ParticipantRecord logged = new ParticipantRecord(new LoggingParticipant("logged", true), new Uid());
+        final ParticipantRecord other = new ParticipantRecord(new SagasParticipant("other"), new Uid());
+
+        Assert.assertTrue(other.doSave());
+        logged.delist(false);
+        other.delist(false);
+        Assert.assertFalse(logged.doSave());
+        Assert.assertFalse(other.doSave());
+    }
+
+    @Test
+    public void testCloseWithoutLogging() throws Exception {
+        final LoggingParticipant first = new LoggingParticipant("first", false);
+        final LoggingParticipant second = new LoggingParticipant("second", false);
+
+        Assert.assertEquals(ActionStatus.COMMITTED, close(first, second));
+        Assert.assertTrue(first.closed);
+        Assert.assertTrue(second.closed);
+        Assert.assertEquals(0, first.saved.get());
+        Assert.assertEquals(0, second.saved.get());
+    }
+
+    @Test
+    public void testCloseLogsOnlyParticipantsWithRecovery() throws Exception {
+        final LoggingParticipant logged = new LoggingParticipant("logged", true);
+        final LoggingParticipant unlogged = new LoggingParticipant("unlogged", false);
+
+        Assert.assertEquals(ActionStatus.COMMITTED, close(logged, unlogged));
+        Assert.assertTrue(logged.closed);
+        Assert.assertTrue(unlogged.closed);
+        Assert.assertTrue(logged.saved.get() > 0);
+        Assert.assertEquals(0, unlogged.saved.get());
+    }
+
+    private static int close(LoggingParticipant... participants) throws Exception {
+        final BACoordinator coordinator = new BACoordinator();
+        coordinator.start();
+        for (LoggingParticipant participant : participants) {
+            coordinator.enlistParticipant(participant);
+            // participant completion, as the compensations API uses
+            coordinator.participantCompleted(participant.id());
+        }
+        return coordinator.close();
+    }
+}
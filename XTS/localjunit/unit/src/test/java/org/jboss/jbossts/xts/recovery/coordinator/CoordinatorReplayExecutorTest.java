@@ -0,0 +1,172 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossts.xts.recovery.coordinator;
+
+import com.arjuna.ats.arjuna.common.Uid;
+import org.jboss.jbossts.xts.environment.RecoveryEnvironmentBean;
+import org.jboss.jbossts.xts.environment.XTSPropertyManager;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CoordinatorReplayExecutorTest {
+
+    private static final long WAIT_TIME = 10000L;
+
+    private final RecoveryEnvironmentBean recoveryEnvironmentBean = XTSPropertyManager.getRecoveryEnvironmentBean();
+
+    private int coordinatorRecoveryThreads;
+
+    /**
+     * Records which thread replayed each coordinator and how many replays overlapped.
+     */
+    private static class RecordingReplay implements CoordinatorReplayExecutor.Replay {
+
+        private final Map<Uid, Thread> replayedOn = new ConcurrentHashMap<Uid, Thread>();
+
+        private final AtomicInteger running = new AtomicInteger();
+
+        private final AtomicInteger maximumRunning = new AtomicInteger();
+
+        private final CountDownLatch started;
+
+        public RecordingReplay(CountDownLatch started) {
+            this.started = started;
+        }
+
+        @Override
+        public void replay(Uid uid) {
+            final int now = running.incrementAndGet();
+            int maximum;
+            while ((maximum = maximumRunning.get()) < now && !maximumRunning.compareAndSet(maximum, now)) {
+            }
+            replayedOn.put(uid, Thread.currentThread());
+            try {
+                // a replay which waits on its participants holds its thread until the others have started
+                if (started != null) {
+                    started.countDown();
+                    started.await(WAIT_TIME, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+    }
+
+    private static List<Uid> uids(int count) {
+        final List<Uid> uids = new ArrayList<Uid>(count);
+        for (int i = 0; i < count; i++) {
+            uids.add(new Uid());
+        }
+        return uids;
+    }
+
+    @Before
+    public void setUp() {
+        coordinatorRecoveryThreads = recoveryEnvironmentBean.getCoordinatorRecoveryThreads();
+        CoordinatorReplayExecutor.shutdown();
+    }
+
+    @After
+    public void tearDown() {
+        CoordinatorReplayExecutor.shutdown();
+        recoveryEnvironmentBean.setCoordinatorRecoveryThreads(coordinatorRecoveryThreads);
+    }
+
+    @Test
+    public void testReplayedInParallel() {
+        final int threads = 4;
+        final List<Uid> uids = uids(threads * 5);
+        final RecordingReplay replay = new RecordingReplay(new CountDownLatch(threads));
+
+        recoveryEnvironmentBean.setCoordinatorRecoveryThreads(threads);
+        CoordinatorReplayExecutor.replayAll(uids, replay);
+
+        // replayAll only returns once every coordinator has been replayed
+        Assert.assertEquals(uids.size(), replay.replayedOn.size());
+        Assert.assertEquals(0, replay.running.get());
+        Assert.assertEquals(threads, replay.maximumRunning.get());
+        for (Thread thread : replay.replayedOn.values()) {
+            Assert.assertNotSame(Thread.currentThread(), thread);
+            Assert.assertTrue(thread.getName().startsWith("XTSCoordinatorRecovery-"));
+        }
+    }
+
+    @Test
+    public void testReplayedSeriallyWithOneThread() {
+        final List<Uid> uids = uids(10);
+        final RecordingReplay replay = new RecordingReplay(null);
+
+        recoveryEnvironmentBean.setCoordinatorRecoveryThreads(1);
+        CoordinatorReplayExecutor.replayAll(uids, replay);
+
+        Assert.assertEquals(uids.size(), replay.replayedOn.size());
+        Assert.assertEquals(1, replay.maximumRunning.get());
+        for (Thread thread : replay.replayedOn.values()) {
+            Assert.assertSame(Thread.currentThread(), thread);
+        }
+    }
+
+    @Test
+    public void testSingleCoordinatorReplayedInCaller() {
+        final List<Uid> uids = uids(1);
+        final RecordingReplay replay = new RecordingReplay(null);
+
+        recoveryEnvironmentBean.setCoordinatorRecoveryThreads(4);
+        CoordinatorReplayExecutor.replayAll(uids, replay);
+
+        Assert.assertSame(Thread.currentThread(), replay.replayedOn.get(uids.get(0)));
+    }
+
+    @Test
+    public void testPoolReusedAcrossPasses() {
+        final int threads = 2;
+        final RecordingReplay replay = new RecordingReplay(null);
+
+        recoveryEnvironmentBean.setCoordinatorRecoveryThreads(threads);
+        for (int pass = 0; pass < 5; pass++) {
+            final List<Uid> uids = uids(20);
+            CoordinatorReplayExecutor.replayAll(uids, replay);
+            for (Uid uid : uids) {
+                Assert.assertTrue(replay.replayedOn.containsKey(uid));
+            }
+        }
+
+        Assert.assertEquals(100, replay.replayedOn.size());
+        Assert.assertTrue(replay.maximumRunning.get() <= threads);
+        for (Thread thread : replay.replayedOn.values()) {
+            final String name = thread.getName();
+            final int number = Integer.parseInt(name.substring(name.indexOf('-') + 1));
+            Assert.assertTrue(name, number <= threads);
+        }
+    }
+}
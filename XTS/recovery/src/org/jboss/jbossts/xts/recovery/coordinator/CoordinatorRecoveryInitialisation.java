@@ -90,6 +90,8 @@ public class CoordinatorRecoveryInitialisation
         }
 
         recoveryModules.clear();
+
+        CoordinatorReplayExecutor.shutdown();
         
         initialised = false;
     }
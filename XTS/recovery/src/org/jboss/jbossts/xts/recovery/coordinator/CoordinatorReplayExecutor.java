@@ -0,0 +1,126 @@
+package org.jboss.jbossts.xts.recovery.coordinator;
+
+import com.arjuna.ats.arjuna.common.Uid;
+import org.jboss.jbossts.xts.environment.XTSPropertyManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * bounded pool shared by the XTS coordinator recovery modules which replays logged coordinators in parallel.
+ * activating a coordinator and resending its protocol messages is dominated by the time spent waiting for
+ * participants to answer so replaying many coordinators at once shortens recovery after a crash with a large
+ * number of in flight transactions.
+ *
+ * replay messages are not batched per participant endpoint since the endpoints are only known once a coordinator
+ * has been activated. the protocol clients take their JAX-WS ports from the pool shared by all threads, see
+ * {@link com.arjuna.webservices11.util.PortCache}, so replays to the same endpoint reuse idle ports whichever pool
+ * thread they run on and concurrent replays to it each hold a port of their own.
+ */
+public class CoordinatorReplayExecutor
+{
+    /**
+     * callback used to replay a single logged coordinator
+     */
+    public interface Replay
+    {
+        /**
+         * activate and replay the coordinator identified by the supplied uid. implementations must log
+         * rather than throw any failure.
+         *
+         * @param uid the uid of the logged coordinator
+         */
+        public void replay(Uid uid);
+    }
+
+    /**
+     * replay all the supplied coordinators, returning once every replay has completed. replays run in parallel
+     * in the shared pool unless the pool size is configured to be one or fewer or there is only one coordinator
+     * to replay, in which case they are run in the calling thread.
+     *
+     * @param uids the uids of the logged coordinators to replay
+     * @param replay the callback which replays a single coordinator
+     */
+    public static void replayAll(List<Uid> uids, final Replay replay)
+    {
+        final ExecutorService executor = (uids.size() > 1 ? getExecutor() : null);
+
+        if (executor == null) {
+            for (Uid uid : uids) {
+                replay.replay(uid);
+            }
+            return;
+        }
+
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(uids.size());
+
+        for (final Uid uid : uids) {
+            tasks.add(new Callable<Object>() {
+                public Object call()
+                {
+                    replay.replay(uid);
+                    return null;
+                }
+            });
+        }
+
+        try {
+            executor.invokeAll(tasks);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * shut down the shared pool. called when the coordinator recovery modules are removed.
+     */
+    public static synchronized void shutdown()
+    {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    /**
+     * obtain the shared pool, creating it on first use
+     *
+     * @return the shared pool or null if coordinators should be replayed in the calling thread
+     */
+    private static synchronized ExecutorService getExecutor()
+    {
+        if (executor == null) {
+            final int threads = XTSPropertyManager.getRecoveryEnvironmentBean().getCoordinatorRecoveryThreads();
+
+            if (threads <= 1) {
+                return null;
+            }
+
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger();
+
+                        public Thread newThread(Runnable runnable)
+                        {
+                            Thread thread = new Thread(runnable, "XTSCoordinatorRecovery-" + count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            // the pool is only busy while the recovery manager runs its second pass so let idle threads go
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+        }
+
+        return executor;
+    }
+
+    private static ExecutorService executor;
+}
@@ -37,6 +37,10 @@ import com.arjuna.ats.internal.arjuna.common.UidHelper;
 import com.arjuna.mwlabs.wscf.model.sagas.arjunacore.BACoordinator;
 import org.jboss.jbossts.xts.recovery.participant.ba.XTSBARecoveryManagerImple;
 
+import org.jboss.jbossts.xts.recovery.coordinator.CoordinatorReplayExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Vector;
 import java.util.Enumeration;
 
@@ -150,7 +154,7 @@ public class BACoordinatorRecoveryModule implements XTSRecoveryModule
 
     }
 
-    private void doRecoverTransaction( Uid recoverUid )
+    private void doRecoverTransaction( Uid recoverUid, List<Uid> replayUids )
     {
         boolean commitThisTransaction = true ;
 
@@ -173,21 +177,21 @@ public class BACoordinatorRecoveryModule implements XTSRecoveryModule
 
         if ( ! inFlight )
         {
-            try {
-                RecoveryLogger.logger.debug("jjh doing revovery here for " + recoverUid);
-                // TODO jjh
-                RecoveryBACoordinator rcvACCoordinator =
-                        new RecoveryBACoordinator(recoverUid);
-//                RecoverAtomicAction rcvAtomicAction =
-//                        new RecoverAtomicAction( recoverUid, theStatus ) ;
-
-//                rcvAtomicAction.replayPhase2() ;
-                rcvACCoordinator.replayPhase2();
-            }
-            catch ( Exception ex )
-            {
-                RecoveryLogger.i18NLogger.warn_coordinator_ba_BACoordinatorRecoveryModule_2(recoverUid, ex);
-            }
+            // activation and replay happen later, in parallel with other coordinators
+            replayUids.add( recoverUid ) ;
+        }
+    }
+
+    private void doReplayTransaction( Uid recoverUid )
+    {
+        try {
+            RecoveryBACoordinator rcvACCoordinator =
+                    new RecoveryBACoordinator(recoverUid);
+            rcvACCoordinator.replayPhase2();
+        }
+        catch ( Exception ex )
+        {
+            RecoveryLogger.i18NLogger.warn_coordinator_ba_BACoordinatorRecoveryModule_2(recoverUid, ex);
         }
     }
 
@@ -267,6 +271,7 @@ public class BACoordinatorRecoveryModule implements XTSRecoveryModule
     {
         // Process the Vector of transaction Uids
         Enumeration transactionUidEnum = _transactionUidVector.elements() ;
+        List<Uid> replayUids = new ArrayList<Uid>() ;
 
         while ( transactionUidEnum.hasMoreElements() )
         {
@@ -276,7 +281,7 @@ public class BACoordinatorRecoveryModule implements XTSRecoveryModule
             {
                 if ( _recoveryStore.currentState( currentUid, _transactionType ) != StateStatus.OS_UNKNOWN )
                 {
-                    doRecoverTransaction( currentUid ) ;
+                    doRecoverTransaction( currentUid, replayUids ) ;
                 }
             }
             catch ( ObjectStoreException ex )
@@ -285,6 +290,16 @@ public class BACoordinatorRecoveryModule implements XTSRecoveryModule
             }
         }
 
+        // the status lookups above share connections to the transaction status managers so they are
+        // done serially but the coordinators themselves can be replayed in parallel
+
+        CoordinatorReplayExecutor.replayAll(replayUids, new CoordinatorReplayExecutor.Replay() {
+            public void replay(Uid uid)
+            {
+                doReplayTransaction( uid ) ;
+            }
+        });
+
         XTSBARecoveryManager.getRecoveryManager().setCoordinatorRecoveryStarted();
     }
 
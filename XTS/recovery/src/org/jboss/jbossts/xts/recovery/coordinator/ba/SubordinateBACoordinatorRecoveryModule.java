@@ -36,6 +36,10 @@ import com.arjuna.ats.internal.arjuna.common.UidHelper;
 
 import com.arjuna.mwlabs.wscf.model.sagas.arjunacore.subordinate.SubordinateBACoordinator;
 
+import org.jboss.jbossts.xts.recovery.coordinator.CoordinatorReplayExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Vector;
 import java.util.Enumeration;
 
@@ -141,7 +145,7 @@ public class SubordinateBACoordinatorRecoveryModule implements XTSRecoveryModule
 
     }
 
-    private void doRecoverTransaction( Uid recoverUid )
+    private void doRecoverTransaction( Uid recoverUid, List<Uid> replayUids )
     {
         boolean commitThisTransaction = true ;
 
@@ -173,16 +177,21 @@ public class SubordinateBACoordinatorRecoveryModule implements XTSRecoveryModule
 
         if ( ! inFlight )
         {
-            try {
-                RecoveryLogger.logger.debug("jjh doing revovery here for " + recoverUid);
-                RecoverySubordinateBACoordinator rcvSubordinateCoordinator =
-                        new RecoverySubordinateBACoordinator(recoverUid);
-                rcvSubordinateCoordinator.replayPhase2();
-            }
-            catch ( Exception ex )
-            {
-                RecoveryLogger.i18NLogger.warn_coordinator_ba_SubordinateBACoordinatorRecoveryModule_2(recoverUid, ex);
-            }
+            // activation and replay happen later, in parallel with other coordinators
+            replayUids.add( recoverUid ) ;
+        }
+    }
+
+    private void doReplayTransaction( Uid recoverUid )
+    {
+        try {
+            RecoverySubordinateBACoordinator rcvSubordinateCoordinator =
+                    new RecoverySubordinateBACoordinator(recoverUid);
+            rcvSubordinateCoordinator.replayPhase2();
+        }
+        catch ( Exception ex )
+        {
+            RecoveryLogger.i18NLogger.warn_coordinator_ba_SubordinateBACoordinatorRecoveryModule_2(recoverUid, ex);
         }
     }
 
@@ -262,6 +271,7 @@ public class SubordinateBACoordinatorRecoveryModule implements XTSRecoveryModule
     {
         // Process the Vector of transaction Uids
         Enumeration transactionUidEnum = _transactionUidVector.elements() ;
+        List<Uid> replayUids = new ArrayList<Uid>() ;
 
         while ( transactionUidEnum.hasMoreElements() )
         {
@@ -271,7 +281,7 @@ public class SubordinateBACoordinatorRecoveryModule implements XTSRecoveryModule
             {
                 if ( _recoveryStore.currentState( currentUid, _transactionType ) != StateStatus.OS_UNKNOWN )
                 {
-                    doRecoverTransaction( currentUid ) ;
+                    doRecoverTransaction( currentUid, replayUids ) ;
                 }
             }
             catch ( ObjectStoreException ex )
@@ -280,6 +290,16 @@ public class SubordinateBACoordinatorRecoveryModule implements XTSRecoveryModule
             }
         }
 
+        // the status lookups above share connections to the transaction status managers so they are
+        // done serially but the coordinators themselves can be replayed in parallel
+
+        CoordinatorReplayExecutor.replayAll(replayUids, new CoordinatorReplayExecutor.Replay() {
+            public void replay(Uid uid)
+            {
+                doReplayTransaction( uid ) ;
+            }
+        });
+
         XTSBARecoveryManager.getRecoveryManager().setSubordinateCoordinatorRecoveryStarted();
     }
 
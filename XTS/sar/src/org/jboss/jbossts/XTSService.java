@@ -39,7 +39,7 @@ public class XTSService implements XTSServiceMBean {
 
     // TODO expose as bean properties
     private int taskManagerMinWorkerCount = 0;
-    private int taskManagerMaxWorkerCount = 10;
+    private int taskManagerMaxWorkerCount = -1; // the task manager default
 
     public XTSService() {}
 
@@ -110,6 +110,7 @@ public class XTSService implements XTSServiceMBean {
         final TaskManager taskManager = TaskManager.getManager() ;
         taskManager.setMinimumWorkerCount(taskManagerMinWorkerCount) ;
         taskManager.setMaximumWorkerCount(taskManagerMaxWorkerCount) ;
+        taskManager.setQueueCapacity(XTSPropertyManager.getXTSEnvironmentBean().getTaskManagerQueueCapacity()) ;
     }
 
     private List<XTSInitialisation> xtsInitialisations = new ArrayList<XTSInitialisation>();
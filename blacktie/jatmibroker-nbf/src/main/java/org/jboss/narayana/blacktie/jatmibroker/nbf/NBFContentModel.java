@@ -0,0 +1,121 @@
+/* JBoss, Home of Professional Open Source
+ * Copyright 2008, Red Hat, Inc., and others contributors as indicated
+ * by the @authors tag. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General public  License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General public  License for more details.
+ * You should have received a copy of the GNU Lesser General public  License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package org.jboss.narayana.blacktie.jatmibroker.nbf;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The occurrence and order limits of the fields of a buffer type, as declared
+ * by the model group of its schema. They are used to tell whether a field can
+ * be appended to a valid document without making the document invalid, so that
+ * only the new value itself needs checking against the schema.
+ *
+ * Only a flat model group of elements is understood, anything else never
+ * proves an append and the whole document must be validated instead.
+ */
+public class NBFContentModel {
+    public static final int SEQUENCE = 0;
+    public static final int CHOICE = 1;
+    public static final int ALL = 2;
+
+    public static final int UNBOUNDED = -1;
+
+    private int compositor;
+    private int maxOccurs;
+    private List<String> ids = new ArrayList<String>();
+    private List<Integer> minFieldOccurs = new ArrayList<Integer>();
+    private List<Integer> maxFieldOccurs = new ArrayList<Integer>();
+    private boolean understood = true;
+
+    /**
+     * A model group which is not understood.
+     */
+    public NBFContentModel() {
+        understood = false;
+    }
+
+    /**
+     * @param compositor SEQUENCE, CHOICE or ALL
+     * @param maxOccurs How many times the group may repeat, or UNBOUNDED
+     */
+    public NBFContentModel(int compositor, int maxOccurs) {
+        this.compositor = compositor;
+        this.maxOccurs = maxOccurs;
+    }
+
+    /**
+     * Add the next field of the group.
+     */
+    public void addField(String id, int minOccurs, int maxOccurs) {
+        ids.add(id);
+        minFieldOccurs.add(minOccurs);
+        maxFieldOccurs.add(maxOccurs);
+    }
+
+    /**
+     * Mark the group as one which can not be reasoned about, e.g., because it
+     * holds a nested group or a wildcard.
+     */
+    public void setNotUnderstood() {
+        understood = false;
+    }
+
+    /**
+     * Whether appending a field to a document which is valid leaves it valid.
+     *
+     * @param document A document which is valid against the schema
+     * @param id The field to append
+     */
+    public boolean canAppend(NBFDocument document, String id) {
+        int position = ids.indexOf(id);
+        if (!understood || position < 0 || maxFieldOccurs.get(position) == 0) {
+            return false;
+        }
+
+        if (maxOccurs == UNBOUNDED) {
+            // the field can always start another repetition of the group
+            return compositor == CHOICE || minimumOccurs() == 0;
+        } else if (maxOccurs != 1) {
+            return false;
+        }
+
+        if (compositor == CHOICE) {
+            return false;
+        }
+
+        int max = maxFieldOccurs.get(position);
+        if (max != UNBOUNDED && document.count(id) >= max) {
+            return false;
+        }
+
+        if (compositor == SEQUENCE) {
+            // the fields are kept in the order they are added
+            String last = document.getLastId();
+            return last == null || ids.indexOf(last) <= position;
+        }
+        return true;
+    }
+
+    private int minimumOccurs() {
+        int minimum = 0;
+        for (Integer min : minFieldOccurs) {
+            minimum = Math.max(minimum, min);
+        }
+        return minimum;
+    }
+}
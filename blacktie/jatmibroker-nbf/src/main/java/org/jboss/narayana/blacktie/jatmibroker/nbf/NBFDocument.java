@@ -0,0 +1,204 @@
+/* JBoss, Home of Professional Open Source
+ * Copyright 2008, Red Hat, Inc., and others contributors as indicated
+ * by the @authors tag. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General public  License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General public  License for more details.
+ * You should have received a copy of the GNU Lesser General public  License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package org.jboss.narayana.blacktie.jatmibroker.nbf;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The fields of an NBF buffer, kept in document order and indexed by id and
+ * occurrence. A deleted field keeps its occurrence but has no value, as an
+ * empty element does in the XML form.
+ */
+public class NBFDocument {
+    private String name;
+    private List<Field> fields = new ArrayList<Field>();
+    private Map<String, List<Field>> index = new HashMap<String, List<Field>>();
+
+    public NBFDocument(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Append a field, a nested buffer is held as its {@link Content}.
+     */
+    public void add(String id, Object value) {
+        Field field = new Field(id, value);
+        fields.add(field);
+        List<Field> occurrences = index.get(id);
+        if (occurrences == null) {
+            occurrences = new ArrayList<Field>();
+            index.put(id, occurrences);
+        }
+        occurrences.add(field);
+    }
+
+    /**
+     * Remove the last occurrence of a field, undoing an add.
+     */
+    public void removeLast(String id) {
+        List<Field> occurrences = index.get(id);
+        if (occurrences != null && !occurrences.isEmpty()) {
+            fields.remove(occurrences.remove(occurrences.size() - 1));
+        }
+    }
+
+    public boolean contains(String id, int index) {
+        List<Field> occurrences = this.index.get(id);
+        return occurrences != null && index >= 0 && index < occurrences.size();
+    }
+
+    /**
+     * The number of occurrences of a field, including deleted ones.
+     */
+    public int count(String id) {
+        List<Field> occurrences = index.get(id);
+        return occurrences == null ? 0 : occurrences.size();
+    }
+
+    /**
+     * The id of the last field in the document, or null if it is empty.
+     */
+    public String getLastId() {
+        return fields.isEmpty() ? null : fields.get(fields.size() - 1).id;
+    }
+
+    public Object get(String id, int index) {
+        if (!contains(id, index)) {
+            return null;
+        }
+        return this.index.get(id).get(index).value;
+    }
+
+    /**
+     * Replace the value of an existing occurrence, null deletes it.
+     * 
+     * @return the previous value
+     */
+    public Object set(String id, int index, Object value) {
+        Field field = this.index.get(id).get(index);
+        Object previous = field.value;
+        field.value = value;
+        return previous;
+    }
+
+    /**
+     * The XML of the fields, without the enclosing element.
+     */
+    public String getContent() {
+        StringBuilder buffer = new StringBuilder();
+        for (Field field : fields) {
+            field.append(buffer);
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * A document holding just the one field, enough to check its value against
+     * the schema.
+     */
+    public String toXml(String id, Object value) {
+        StringBuilder buffer = new StringBuilder();
+        appendStart(buffer);
+        new Field(id, value).append(buffer);
+        appendEnd(buffer);
+        return buffer.toString();
+    }
+
+    public String toXml() {
+        StringBuilder buffer = new StringBuilder();
+        appendStart(buffer);
+        for (Field field : fields) {
+            field.append(buffer);
+        }
+        appendEnd(buffer);
+        return buffer.toString();
+    }
+
+    private void appendStart(StringBuilder buffer) {
+        buffer.append("<?xml version='1.0'?>");
+        buffer.append("<");
+        buffer.append(name);
+        buffer.append(" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"");
+        buffer.append(" xmlns=\"http://www.jboss.org/blacktie\"");
+        buffer.append(" xsi:schemaLocation=\"http://www.jboss.org/blacktie buffers/");
+        buffer.append(name);
+        buffer.append(".xsd\">");
+    }
+
+    private void appendEnd(StringBuilder buffer) {
+        buffer.append("</");
+        buffer.append(name);
+        buffer.append(">");
+    }
+
+    static void escape(StringBuilder buffer, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (ch == '<') {
+                buffer.append("&lt;");
+            } else if (ch == '>') {
+                buffer.append("&gt;");
+            } else if (ch == '&') {
+                buffer.append("&amp;");
+            } else {
+                buffer.append(ch);
+            }
+        }
+    }
+
+    private static class Field {
+        private String id;
+        private Object value;
+
+        private Field(String id, Object value) {
+            this.id = id;
+            this.value = value;
+        }
+
+        private void append(StringBuilder buffer) {
+            buffer.append("<").append(id).append(">");
+            if (value instanceof Content) {
+                buffer.append(((Content) value).xml);
+            } else if (value != null) {
+                escape(buffer, value.toString());
+            }
+            buffer.append("</").append(id).append(">");
+        }
+    }
+
+    /**
+     * The content of a nested buffer, already in XML form.
+     */
+    public static class Content {
+        private String xml;
+
+        public Content(String xml) {
+            this.xml = xml;
+        }
+
+        public String getXml() {
+            return xml;
+        }
+    }
+}
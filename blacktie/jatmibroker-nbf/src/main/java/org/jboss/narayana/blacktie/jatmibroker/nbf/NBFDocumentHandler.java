@@ -0,0 +1,119 @@
+/* JBoss, Home of Professional Open Source
+ * Copyright 2008, Red Hat, Inc., and others contributors as indicated
+ * by the @authors tag. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General public  License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General public  License for more details.
+ * You should have received a copy of the GNU Lesser General public  License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package org.jboss.narayana.blacktie.jatmibroker.nbf;
+
+import java.util.Map;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+/**
+ * Reads an NBF buffer into an {@link NBFDocument} in one pass, converting each
+ * field to the type the schema gives it. The events are passed on to the
+ * content handler, normally a schema validator, as they are seen so that an
+ * empty element is read as a deleted field and not as its schema default.
+ */
+public class NBFDocumentHandler extends XMLFilterImpl {
+    private static final Logger log = LogManager.getLogger(NBFDocumentHandler.class);
+
+    private Map<String, String> types;
+    private NBFDocument document;
+    private StringBuilder value = new StringBuilder();
+    private String id;
+    private String type;
+    private int depth;
+
+    public NBFDocumentHandler(String name, Map<String, String> types) {
+        this.types = types;
+        this.document = new NBFDocument(name);
+    }
+
+    public NBFDocument getDocument() {
+        return document;
+    }
+
+    public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+        super.startElement(uri, localName, qName, atts);
+        depth++;
+        if (depth == 2) {
+            id = localName;
+            type = types.get(id);
+            value.setLength(0);
+        } else if (depth > 2) {
+            value.append("<").append(localName).append(">");
+        }
+    }
+
+    public void characters(char ch[], int start, int length) throws SAXException {
+        super.characters(ch, start, length);
+        if (depth > 2) {
+            NBFDocument.escape(value, new String(ch, start, length));
+        } else if (depth == 2) {
+            if (type != null && type.endsWith("_type")) {
+                NBFDocument.escape(value, new String(ch, start, length));
+            } else {
+                value.append(ch, start, length);
+            }
+        }
+    }
+
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        super.endElement(uri, localName, qName);
+        if (depth > 2) {
+            value.append("</").append(localName).append(">");
+        } else if (depth == 2) {
+            document.add(id, toValue());
+        }
+        depth--;
+    }
+
+    private Object toValue() throws SAXException {
+        String text = value.toString();
+        if (type == null) {
+            log.debug(id + " is not a field of " + document.getName());
+            return text;
+        } else if (type.endsWith("_type")) {
+            return text.trim().isEmpty() ? null : new NBFDocument.Content(text);
+        } else if (type.equals("string")) {
+            return text.isEmpty() ? null : text;
+        }
+
+        // an empty element is a deleted field
+        text = text.trim();
+        if (text.isEmpty()) {
+            return null;
+        }
+        try {
+            if (type.equals("long")) {
+                return Long.parseLong(text);
+            } else if (type.equals("integer")) {
+                return Integer.parseInt(text);
+            } else if (type.equals("short")) {
+                return Short.parseShort(text);
+            } else if (type.equals("float")) {
+                return Float.parseFloat(text);
+            } else {
+                return text;
+            }
+        } catch (NumberFormatException e) {
+            throw new SAXException(id + " is not a " + type + ": " + text);
+        }
+    }
+}
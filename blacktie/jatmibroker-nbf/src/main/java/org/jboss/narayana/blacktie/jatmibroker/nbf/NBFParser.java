@@ -18,6 +18,10 @@ package org.jboss.narayana.blacktie.jatmibroker.nbf;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.StringReader;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.xml.XMLConstants;
 import javax.xml.parsers.ParserConfigurationException;
@@ -31,30 +35,39 @@ import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 import org.apache.xerces.xs.PSVIProvider;
 import org.jboss.narayana.blacktie.jatmibroker.core.conf.ConfigurationException;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 
 public class NBFParser {
     private NBFHandlers handler;
     private SAXParser saxParser;
     private Schema schema;
+    private Map<String, String> types;
+    private NBFContentModel contentModel;
+    private XMLReader reader;
 
     private static final Logger log = LogManager.getLogger(NBFParser.class);
 
+    /**
+     * Compiled schemas and the field types and limits they declare, by XSD
+     * filename.
+     */
+    private static final ConcurrentMap<String, Schema> schemas = new ConcurrentHashMap<String, Schema>();
+    private static final ConcurrentMap<String, Map<String, String>> fieldTypes = new ConcurrentHashMap<String, Map<String, String>>();
+    private static final ConcurrentMap<String, NBFContentModel> contentModels = new ConcurrentHashMap<String, NBFContentModel>();
+
     public NBFParser(String xsdFilename) throws ConfigurationException {
         try {
             // Obtain a new instance of a SAXParserFactory.
             SAXParserFactory factory = SAXParserFactory.newInstance();
             factory.setNamespaceAware(true);
             factory.setValidating(true);
-            SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
             factory.setFeature("http://apache.org/xml/features/validation/schema", true);
 
-            File file = new File(xsdFilename);
-            if (file.exists()) {
-                schema = schemaFactory.newSchema(file);
-            } else {
-                throw new ConfigurationException("Could not find " + xsdFilename);
-            }
+            schema = getSchema(xsdFilename);
+            types = getFieldTypes(xsdFilename);
+            contentModel = contentModels.get(xsdFilename);
 
             factory.setSchema(schema);
             saxParser = factory.newSAXParser();
@@ -62,6 +75,8 @@ public class NBFParser {
 
             handler = new NBFHandlers(p);
 
+        } catch (ConfigurationException e) {
+            throw e;
         } catch (SAXException e) {
             log.error("Could not create a SAXParser: " + e.getMessage(), e);
             throw new ConfigurationException("Could not create a SAXParser: " + e.getMessage());
@@ -104,4 +119,102 @@ public class NBFParser {
 
         return result;
     }
+
+    private static Schema getSchema(String xsdFilename) throws ConfigurationException, SAXException {
+        Schema schema = schemas.get(xsdFilename);
+        if (schema == null) {
+            File file = new File(xsdFilename);
+            if (!file.exists()) {
+                throw new ConfigurationException("Could not find " + xsdFilename);
+            }
+            SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+            schema = schemaFactory.newSchema(file);
+            Schema existing = schemas.putIfAbsent(xsdFilename, schema);
+            if (existing != null) {
+                schema = existing;
+            }
+        }
+        return schema;
+    }
+
+    private static Map<String, String> getFieldTypes(String xsdFilename) throws ConfigurationException {
+        Map<String, String> types = fieldTypes.get(xsdFilename);
+        if (types == null) {
+            NBFSchemaParser schemaParser = new NBFSchemaParser();
+            if (!schemaParser.parse(xsdFilename)) {
+                throw new ConfigurationException("Could not read the fields of " + xsdFilename);
+            }
+            types = schemaParser.getFileds();
+            contentModels.putIfAbsent(xsdFilename, schemaParser.getContentModel());
+            Map<String, String> existing = fieldTypes.putIfAbsent(xsdFilename, types);
+            if (existing != null) {
+                types = existing;
+            }
+        }
+        return types;
+    }
+
+    /**
+     * The type the schema gives a field of the buffer.
+     * 
+     * @param id The field
+     * @return The type or null if it is not a field of the buffer
+     */
+    public String getType(String id) {
+        return types.get(id);
+    }
+
+    /**
+     * Whether a field can be appended to a valid buffer without the buffer
+     * becoming invalid, as long as its value is valid.
+     * 
+     * @param document A document which is valid against the schema
+     * @param id The field
+     * @return true if the occurrence and order limits of the field allow it
+     */
+    public boolean canAppend(NBFDocument document, String id) {
+        return contentModel.canAppend(document, id);
+    }
+
+    /**
+     * Validate and read the whole buffer in a single pass.
+     * 
+     * @param name The root element
+     * @param buffer The XML
+     * @return The fields of the buffer
+     * @throws ConfigurationException If the buffer is not valid
+     */
+    public NBFDocument parse(String name, byte[] buffer) throws ConfigurationException {
+        try {
+            if (reader == null) {
+                SAXParserFactory factory = SAXParserFactory.newInstance();
+                factory.setNamespaceAware(true);
+                reader = factory.newSAXParser().getXMLReader();
+            }
+            NBFDocumentHandler documentHandler = new NBFDocumentHandler(name, types);
+            documentHandler.setParent(reader);
+            documentHandler.setContentHandler(schema.newValidatorHandler());
+            documentHandler.parse(new InputSource(new ByteArrayInputStream(buffer)));
+            return documentHandler.getDocument();
+        } catch (Throwable e) {
+            log.error("Parser buffer failed with " + e.getMessage(), e);
+            throw new ConfigurationException("Parser buffer failed with " + e.getMessage());
+        }
+    }
+
+    /**
+     * Check a buffer against the schema.
+     * 
+     * @param buffer The XML
+     * @return true if it is valid
+     */
+    public boolean validate(String buffer) {
+        try {
+            schema.newValidator().validate(new StreamSource(new StringReader(buffer)));
+            return true;
+        } catch (Throwable e) {
+            log.debug("Buffer is not valid: " + e.getMessage());
+            return false;
+        }
+    }
 }
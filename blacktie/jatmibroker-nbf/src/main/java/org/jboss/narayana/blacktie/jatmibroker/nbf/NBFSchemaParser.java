@@ -38,6 +38,7 @@ public class NBFSchemaParser {
     private static final Logger log = LogManager.getLogger(NBFSchemaParser.class);
     private String bufferName;
     private Map<String, String> flds;
+    private NBFContentModel contentModel;
 
     public NBFSchemaParser() {
         flds = new HashMap<String, String>();
@@ -51,12 +52,16 @@ public class NBFSchemaParser {
             XSTerm term = particle.getTerm();
             if (term.isModelGroup()) {
                 XSModelGroup xsModelGroup = term.asModelGroup();
+                contentModel = new NBFContentModel(toCompositor(xsModelGroup.getCompositor()), toOccurs(particle.getMaxOccurs()));
                 XSParticle[] particles = xsModelGroup.getChildren();
                 for (XSParticle p : particles) {
                     XSTerm pterm = p.getTerm();
-                    if (pterm.isElementDecl()) {
+                    if (!pterm.isElementDecl()) {
+                        contentModel.setNotUnderstood();
+                    } else {
                         XSElementDecl element = pterm.asElementDecl();
                         String name = element.getName();
+                        contentModel.addField(name, p.getMinOccurs(), toOccurs(p.getMaxOccurs()));
                         log.debug(name);
                         XSType type = element.getType();
 
@@ -77,11 +82,25 @@ public class NBFSchemaParser {
         }
     }
 
+    private int toCompositor(XSModelGroup.Compositor compositor) {
+        if (compositor == XSModelGroup.CHOICE) {
+            return NBFContentModel.CHOICE;
+        } else if (compositor == XSModelGroup.ALL) {
+            return NBFContentModel.ALL;
+        }
+        return NBFContentModel.SEQUENCE;
+    }
+
+    private int toOccurs(int occurs) {
+        return occurs == XSParticle.UNBOUNDED ? NBFContentModel.UNBOUNDED : occurs;
+    }
+
     public boolean parse(String fname) {
         boolean rc = false;
 
         try {
             flds.clear();
+            contentModel = new NBFContentModel();
             XSOMParser parser = new XSOMParser();
             parser.parse(fname);
             XSSchemaSet xsSchema = parser.getResult();
@@ -113,4 +132,11 @@ public class NBFSchemaParser {
     public Map<String, String> getFileds() {
         return flds;
     }
+
+    /**
+     * The occurrence and order limits of the fields of the buffer.
+     */
+    public NBFContentModel getContentModel() {
+        return contentModel;
+    }
 }
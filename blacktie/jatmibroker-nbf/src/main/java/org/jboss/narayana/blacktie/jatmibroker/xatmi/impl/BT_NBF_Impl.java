@@ -18,9 +18,12 @@
 package org.jboss.narayana.blacktie.jatmibroker.xatmi.impl;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
+import org.jboss.narayana.blacktie.jatmibroker.nbf.NBFDocument;
 import org.jboss.narayana.blacktie.jatmibroker.nbf.NBFParser;
 import org.jboss.narayana.blacktie.jatmibroker.xatmi.BT_NBF;
 import org.jboss.narayana.blacktie.jatmibroker.xatmi.ConnectionException;
@@ -32,89 +35,120 @@ public class BT_NBF_Impl extends BufferImpl implements BT_NBF {
      * The default ID
      */
     private static final long serialVersionUID = 1L;
-    private NBFParser parser;
-    private String rootElement;
+    private transient NBFParser parser;
+    private String xsd;
+
+    /**
+     * The fields of the buffer, read from the raw data the first time they are
+     * needed.
+     */
+    private transient NBFDocument document;
+
+    /**
+     * Whether the document has changed since the raw data was written.
+     */
+    private transient boolean dirty;
+
+    /**
+     * Whether the whole document is known to be valid against the schema, in
+     * which case a change that the schema's limits allow only needs its value
+     * checking.
+     */
+    private transient boolean validated;
 
     public BT_NBF_Impl(String subtype) throws org.jboss.narayana.blacktie.jatmibroker.core.conf.ConfigurationException, ConnectionException {
         super("BT_NBF", subtype, false, null);
 
-        rootElement = "</" + subtype + ">";
-        String xsd = "buffers/" + subtype + ".xsd";
+        xsd = "buffers/" + subtype + ".xsd";
         File file = new File(xsd);
         if (!file.exists()) {
             throw new org.jboss.narayana.blacktie.jatmibroker.core.conf.ConfigurationException("can not find " + xsd);
         }
 
-        StringBuffer buffer = new StringBuffer();
-        buffer.append("<?xml version='1.0'?>");
-        buffer.append("<");
-        buffer.append(subtype);
-        buffer.append(" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"");
-        buffer.append(" xmlns=\"http://www.jboss.org/blacktie\"");
-        buffer.append(" xsi:schemaLocation=\"http://www.jboss.org/blacktie buffers/");
-        buffer.append(subtype);
-        buffer.append(".xsd\">");
-        buffer.append("</");
-        buffer.append(subtype);
-        buffer.append(">");
-
-        setRawData(buffer.toString().getBytes());
         parser = new NBFParser(xsd);
-        parser.parse(getRawData());
+        document = new NBFDocument(subtype);
+        super.setRawData(document.toXml().getBytes());
+        validated = parser.validate(document.toXml());
     }
 
-    private String insertString(String buffer, String attr) {
-        int k = buffer.indexOf(rootElement);
-        return buffer.substring(0, k) + attr + buffer.substring(k);
+    private NBFParser getParser() throws org.jboss.narayana.blacktie.jatmibroker.core.conf.ConfigurationException {
+        if (parser == null) {
+            parser = new NBFParser(xsd);
+        }
+        return parser;
+    }
+
+    private NBFDocument getDocument() throws org.jboss.narayana.blacktie.jatmibroker.core.conf.ConfigurationException {
+        if (document == null) {
+            document = getParser().parse(getSubtype(), super.getRawData());
+            dirty = false;
+            validated = true;
+        }
+        return document;
+    }
+
+    private Object toValue(String type, Object attrValue)
+            throws org.jboss.narayana.blacktie.jatmibroker.core.conf.ConfigurationException {
+        if (type.equals("long")) {
+            return (Long) attrValue;
+        } else if (type.equals("string")) {
+            return (String) attrValue;
+        } else if (type.equals("integer")) {
+            return (Integer) attrValue;
+        } else if (type.equals("short")) {
+            return (Short) attrValue;
+        } else if (type.equals("float")) {
+            return (Float) attrValue;
+        } else if (type.endsWith("_type")) {
+            return new NBFDocument.Content(((BT_NBF_Impl) attrValue).getDocument().getContent());
+        } else {
+            log.error("Can not support type " + type);
+            return null;
+        }
+    }
+
+    /**
+     * Check a changed field against the schema. When the document was valid
+     * and the schema's limits allow the change, only the field's value needs
+     * checking, otherwise the whole document is checked.
+     * 
+     * @param allowed whether the limits allow the change to a valid document
+     */
+    private boolean validate(String attrId, Object value, boolean allowed)
+            throws org.jboss.narayana.blacktie.jatmibroker.core.conf.ConfigurationException {
+        if (validated && allowed && getParser().validate(document.toXml(attrId, value))) {
+            return true;
+        } else if (getParser().validate(document.toXml())) {
+            validated = true;
+            return true;
+        }
+        return false;
     }
 
     public boolean btaddattribute(String attrId, Object attrValue) {
         boolean rc = false;
+        String type = null;
         try {
-            parser.setId(attrId);
-            String buffer = new String(getRawData());
-            String attr = "<" + attrId + "></" + attrId + ">";
-
-            String newbuffer = insertString(buffer, attr);
-            rc = parser.parse(newbuffer.getBytes());
-
-            if (rc) {
-                String type = parser.getType();
-                StringBuffer buf = new StringBuffer();
-                if (type.equals("long")) {
-                    buf.append((Long) attrValue);
-                } else if (type.equals("string")) {
-                    buf.append((String) attrValue);
-                } else if (type.equals("integer")) {
-                    buf.append((Integer) attrValue);
-                } else if (type.equals("short")) {
-                    buf.append((Short) attrValue);
-                } else if (type.equals("float")) {
-                    buf.append((Float) attrValue);
-                } else if (type.endsWith("_type")) {
-                    String nbf = new String(((BT_NBF_Impl) attrValue).getRawData());
-                    int k = nbf.indexOf(".xsd\">");
-                    int size = nbf.length();
-                    String test = nbf.substring(k + 6, size - attrId.length() - 3);
-                    buf.append(test);
-                } else {
-                    log.error("Can not support type " + type);
-                    rc = false;
-                }
-
-                if (buf.length() > 0) {
-                    String newattr = "<" + attrId + ">" + buf + "</" + attrId + ">";
-                    String attrbuf = insertString(buffer, newattr);
-
-                    rc = parser.parse(attrbuf.getBytes());
+            type = getParser().getType(attrId);
+            if (type == null) {
+                log.warn("can not find " + attrId + " in " + xsd);
+            } else {
+                Object value = toValue(type, attrValue);
+                if (value != null) {
+                    NBFDocument document = getDocument();
+                    boolean allowed = getParser().canAppend(document, attrId);
+                    document.add(attrId, value);
+                    rc = validate(attrId, value, allowed);
                     if (rc) {
-                        setRawData(attrbuf.getBytes());
+                        dirty = true;
+                    } else {
+                        document.removeLast(attrId);
                     }
                 }
             }
         } catch (ClassCastException e) {
             rc = false;
-            log.warn("type is " + parser.getType() + " but attrValue type is " + attrValue.getClass().getName());
+            log.warn("type is " + type + " but attrValue type is " + attrValue.getClass().getName());
         } catch (Throwable e) {
             log.error("btaddattribute failed with " + e.getMessage());
         }
@@ -125,52 +159,26 @@ public class BT_NBF_Impl extends BufferImpl implements BT_NBF {
         Object toReturn = null;
 
         try {
-            boolean rc = false;
-            parser.setId(attrId);
-            parser.setIndex(index);
-            rc = parser.parse(getRawData());
-
-            if (rc) {
-                String type = parser.getType();
-                String value = parser.getValue();
-
-                log.debug("vlaue is " + value);
-                if (value == null) {
-                    log.warn("can not find " + attrId + " at index " + index);
-                } else {
-                    String tmp = new String(getRawData());
-                    int pos = find_element_string(tmp, attrId, index, false);
-
-                    if (pos == -1) {
-                        log.warn(attrId + " at index " + index + " has been deleted");
-                        return null;
-                    }
+            String type = getParser().getType(attrId);
+            NBFDocument document = getDocument();
+            Object value = document.get(attrId, index);
 
-                    if (type.equals("long")) {
-                        toReturn = Long.parseLong(value);
-                    } else if (type.equals("string")) {
-                        toReturn = value;
-                    } else if (type.equals("integer")) {
-                        toReturn = Integer.parseInt(value);
-                    } else if (type.equals("short")) {
-                        toReturn = Short.parseShort(value);
-                    } else if (type.equals("float")) {
-                        toReturn = Float.parseFloat(value);
-                    } else if (type.endsWith("_type")) {
-                        // log.info(value);
-                        toReturn = new BT_NBF_Impl(attrId);
-                        String nbf = new String(((BT_NBF_Impl) toReturn).getRawData());
-                        int k = nbf.indexOf(".xsd\">") + 6;
-                        int size = nbf.length();
-
-                        String buf = nbf.substring(0, k) + value + nbf.substring(k, size);
-                        // log.info(buf);
-                        ((BT_NBF_Impl) toReturn).setRawData(buf.getBytes());
-
-                    } else {
-                        log.error("Can not support type " + type);
-                    }
-                }
+            if (!document.contains(attrId, index)) {
+                log.warn("can not find " + attrId + " at index " + index);
+            } else if (value == null) {
+                log.warn(attrId + " at index " + index + " has been deleted");
+            } else if (type == null) {
+                log.error("Can not support type " + type);
+            } else if (type.endsWith("_type")) {
+                // the nested buffer reads its fields when it is first used
+                BT_NBF_Impl nested = new BT_NBF_Impl(attrId);
+                String empty = nested.document.toXml();
+                int k = empty.lastIndexOf("</");
+                String content = ((NBFDocument.Content) value).getXml();
+                nested.setRawData((empty.substring(0, k) + content + empty.substring(k)).getBytes());
+                toReturn = nested;
+            } else {
+                toReturn = value;
             }
         } catch (org.jboss.narayana.blacktie.jatmibroker.core.conf.ConfigurationException e) {
             log.error("ConfigurationException: btgetattribute failed with " + e.getMessage());
@@ -185,28 +193,13 @@ public class BT_NBF_Impl extends BufferImpl implements BT_NBF {
         boolean toReturn = false;
 
         try {
-            boolean rc;
-            parser.setId(attrId);
-            parser.setIndex(index);
-            rc = parser.parse(getRawData());
-
-            if (rc) {
-                String value = parser.getValue();
-                if (value == null) {
-                    log.warn("can not find " + attrId + " at index " + index);
-                } else {
-                    String buf = new String(getRawData());
-                    int pos = find_element_string(buf, attrId, index, false);
-
-                    if (pos > 0) {
-                        int size = buf.length();
-                        buf = buf.substring(0, pos + attrId.length() + 2)
-                                + buf.substring(pos + attrId.length() + 2 + value.length(), size);
-                        log.debug(buf);
-                        setRawData(buf.getBytes());
-                        toReturn = true;
-                    }
-                }
+            NBFDocument document = getDocument();
+            if (document.get(attrId, index) == null) {
+                log.warn("can not find " + attrId + " at index " + index);
+            } else {
+                document.set(attrId, index, null);
+                dirty = true;
+                toReturn = true;
             }
         } catch (org.jboss.narayana.blacktie.jatmibroker.core.conf.ConfigurationException e) {
             log.error("btdelattribute failed with " + e.getMessage());
@@ -216,59 +209,25 @@ public class BT_NBF_Impl extends BufferImpl implements BT_NBF {
 
     public boolean btsetattribute(String attrId, int index, Object newValue) {
         boolean rc = false;
+        String type = null;
 
         try {
-            parser.setId(attrId);
-            parser.setIndex(index);
-            rc = parser.parse(getRawData());
+            type = getParser().getType(attrId);
+            NBFDocument document = getDocument();
 
-            String value = parser.getValue();
-            String buf = new String(getRawData());
-
-            int pos = find_element_string(buf, attrId, index, true);
-
-            if (value == null && pos == -1) {
+            if (type == null || !document.contains(attrId, index)) {
                 log.warn("can not find " + attrId + " at index " + index);
-                rc = false;
             } else {
-                String type = parser.getType();
-                StringBuffer tmp = new StringBuffer();
-                if (type.equals("long")) {
-                    tmp.append((Long) newValue);
-                } else if (type.equals("string")) {
-                    tmp.append((String) newValue);
-                } else if (type.equals("integer")) {
-                    tmp.append((Integer) newValue);
-                } else if (type.equals("short")) {
-                    tmp.append((Short) newValue);
-                } else if (type.equals("float")) {
-                    tmp.append((Float) newValue);
-                } else if (type.endsWith("_type")) {
-                    String nbf = new String(((BT_NBF_Impl) newValue).getRawData());
-                    int k = nbf.indexOf(".xsd\">");
-                    int size = nbf.length();
-                    String test = nbf.substring(k + 6, size - attrId.length() - 3);
-                    tmp.append(test);
-                } else {
-                    log.error("Can not support type " + type);
-                    rc = false;
-                }
-
-                if (rc) {
-                    int size = buf.length();
-                    char ch = buf.charAt(pos + attrId.length() + 3);
-                    int length;
-                    if (ch == '/') {
-                        length = 0;
+                Object value = toValue(type, newValue);
+                if (value != null) {
+                    // the fields are unchanged, only the value needs checking
+                    Object previous = document.set(attrId, index, value);
+                    rc = validate(attrId, value, true);
+                    if (rc) {
+                        dirty = true;
                     } else {
-                        length = value.length();
+                        document.set(attrId, index, previous);
                     }
-                    buf = buf.substring(0, pos + attrId.length() + 2) + tmp.toString()
-                            + buf.substring(pos + attrId.length() + 2 + length, size);
-                    // log.info(buf.substring(0, pos + attrId.length() + 2));
-                    // log.info(tmp);
-                    // log.info(buf.substring(pos + attrId.length() + 2 + length, size));
-                    setRawData(buf.getBytes());
                 }
             }
         } catch (org.jboss.narayana.blacktie.jatmibroker.core.conf.ConfigurationException e) {
@@ -276,30 +235,45 @@ public class BT_NBF_Impl extends BufferImpl implements BT_NBF {
             rc = false;
         } catch (ClassCastException e) {
             rc = false;
-            log.warn("type is " + parser.getType() + " but newValue type is " + newValue.getClass().getName());
+            log.warn("type is " + type + " but newValue type is " + newValue.getClass().getName());
         }
 
         return rc;
     }
 
-    private int find_element_string(String buf, String id, int index, boolean isset) {
-        int pos = -1;
-
-        String element = "<" + id + ">";
-        int fromIndex = 0;
-        for (int i = 0; i <= index; i++) {
-            pos = buf.indexOf(element, fromIndex);
-            if (pos > 0) {
-                fromIndex = pos + element.length();
-            }
+    /**
+     * The document is only written back out as XML when the raw data is
+     * needed, normally when the buffer is sent.
+     */
+    protected byte[] getRawData() {
+        if (dirty) {
+            super.setRawData(document.toXml().getBytes());
+            dirty = false;
         }
+        return super.getRawData();
+    }
 
-        char ch = buf.charAt(pos + id.length() + 3);
-        if (isset == false && ch == '/') {
-            pos = -1;
-        }
+    protected void setRawData(byte[] bytes) {
+        super.setRawData(bytes);
+        document = null;
+        dirty = false;
+    }
+
+    public void deserialize(byte[] data) throws ConnectionException {
+        super.deserialize(data);
+        document = null;
+        dirty = false;
+    }
+
+    public void clear() {
+        super.clear();
+        document = null;
+        dirty = false;
+    }
 
-        return pos;
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        getRawData();
+        out.defaultWriteObject();
     }
 
     public int getLen() {
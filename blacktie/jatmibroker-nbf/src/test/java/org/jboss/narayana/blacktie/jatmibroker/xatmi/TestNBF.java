@@ -22,6 +22,7 @@ import junit.framework.TestCase;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 import org.jboss.narayana.blacktie.jatmibroker.core.conf.ConfigurationException;
+import org.jboss.narayana.blacktie.jatmibroker.xatmi.impl.BufferImpl;
 
 public class TestNBF extends TestCase {
     private static final Logger log = LogManager.getLogger(TestNBF.class);
@@ -129,4 +130,46 @@ public class TestNBF extends TestCase {
         assertFalse(buffer.btsetattribute("name", 1, "other"));
         assertFalse(buffer.btsetattribute("unknow", 0, "nothing"));
     }
+
+    public void testReceived() throws ConnectionException, ConfigurationException {
+        log.info("TestNBF::testReceived");
+        BT_NBF buffer = (BT_NBF) connection.tpalloc("BT_NBF", "employee");
+        assertTrue(buffer.btaddattribute("id", new Long(1234)));
+        assertTrue(buffer.btaddattribute("id", new Long(1001)));
+        assertTrue(buffer.btaddattribute("name", "a<&b"));
+        assertTrue(buffer.btdelattribute("id", 0));
+
+        BT_NBF received = (BT_NBF) connection.tpalloc("BT_NBF", "employee");
+        ((BufferImpl) received).deserialize(((BufferImpl) buffer).serialize());
+
+        assertTrue(received.btgetattribute("id", 0) == null);
+        Long id = (Long) received.btgetattribute("id", 1);
+        assertTrue(id.longValue() == 1001);
+        assertTrue("a<&b".equals(received.btgetattribute("name", 0)));
+    }
+
+    public void testLimits() throws ConnectionException, ConfigurationException {
+        log.info("TestNBF::testLimits");
+        BT_NBF buffer = (BT_NBF) connection.tpalloc("BT_NBF", "customer");
+        assertTrue(buffer.btaddattribute("name", "first"));
+
+        // each value is valid on its own but the document is not
+        assertFalse(buffer.btaddattribute("id", new Long(1001)));
+        assertTrue(buffer.btaddattribute("name", "second"));
+        assertFalse(buffer.btaddattribute("name", "third"));
+        assertTrue(buffer.btgetattribute("id", 0) == null);
+        assertTrue(buffer.btgetattribute("name", 2) == null);
+
+        buffer = (BT_NBF) connection.tpalloc("BT_NBF", "customer");
+        assertTrue(buffer.btaddattribute("id", new Long(1001)));
+        assertFalse(buffer.btaddattribute("id", new Long(1002)));
+        assertTrue(buffer.btaddattribute("name", "first"));
+        assertTrue(buffer.btsetattribute("id", 0, new Long(1003)));
+
+        BT_NBF received = (BT_NBF) connection.tpalloc("BT_NBF", "customer");
+        ((BufferImpl) received).deserialize(((BufferImpl) buffer).serialize());
+        Long id = (Long) received.btgetattribute("id", 0);
+        assertTrue(id.longValue() == 1003);
+        assertTrue("first".equals(received.btgetattribute("name", 0)));
+    }
 }
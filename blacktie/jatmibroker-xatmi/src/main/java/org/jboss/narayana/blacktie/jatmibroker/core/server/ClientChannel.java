@@ -0,0 +1,342 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.narayana.blacktie.jatmibroker.core.server;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.jboss.narayana.blacktie.jatmibroker.core.transport.Message;
+
+/**
+ * A non-blocking connection serviced by one of the socket server's I/O threads.
+ * Frames are decoded as they arrive and handed to the listener on the I/O thread,
+ * and writes are queued if the socket can't take them straight away, so nothing
+ * ever blocks on the network.
+ *
+ * Only the read buffer is pooled, being shared by all of the connections on an
+ * I/O thread. Each frame is still assembled in an array of its own, since the
+ * message data decoded from it is handed on to the application.
+ */
+public class ClientChannel {
+    private static final Logger log = LogManager.getLogger(ClientChannel.class);
+
+    public interface Listener {
+        /**
+         * Called on the I/O thread for each complete message.
+         */
+        public void messageReceived(ClientChannel channel, int sid, Message message);
+
+        /**
+         * Called on the I/O thread when the peer has shut down its output.
+         */
+        public void inputClosed(ClientChannel channel);
+    }
+
+    private static final int HEADERS = 9;
+
+    private final SocketChannel channel;
+    private final IoThread ioThread;
+    private volatile Listener listener;
+    private SelectionKey key;
+
+    // read state, only used on the I/O thread
+    private final ByteBuffer size = ByteBuffer.allocate(4);
+    private byte[] frame;
+    private int filled;
+
+    // write state, guarded by pending
+    private final Deque<ByteBuffer> pending = new ArrayDeque<ByteBuffer>();
+    private boolean outputClosed;
+    private boolean outputShutdown;
+    private boolean inputClosed;
+    private boolean closed;
+
+    ClientChannel(SocketChannel channel, IoThread ioThread, Listener listener) {
+        this.channel = channel;
+        this.ioThread = ioThread;
+        this.listener = listener;
+    }
+
+    /**
+     * Nothing is read from the connection until there is a listener, so messages
+     * which arrive before then are not lost.
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+        if (listener != null) {
+            ioThread.addInterest(this, SelectionKey.OP_READ);
+        }
+    }
+
+    public SocketAddress getRemoteSocketAddress() {
+        return channel.socket().getRemoteSocketAddress();
+    }
+
+    public int getLocalPort() {
+        return channel.socket().getLocalPort();
+    }
+
+    /**
+     * Send a complete frame. The frame is written immediately if possible and
+     * otherwise queued until the I/O thread can write it.
+     *
+     * @throws SocketException if the connection has been lost, e.g., closed by
+     *             the peer.
+     * @throws IOException if the output has already been shut down.
+     */
+    public void send(ByteBuffer toSend) throws IOException {
+        IOException failure = null;
+        synchronized (pending) {
+            if (closed) {
+                throw new SocketException("channel " + this + " is closed");
+            }
+            if (outputClosed) {
+                throw new IOException("channel " + this + " is closed for output");
+            }
+            if (pending.isEmpty()) {
+                try {
+                    channel.write(toSend);
+                } catch (IOException e) {
+                    failure = e;
+                }
+                if (failure == null && !toSend.hasRemaining()) {
+                    return;
+                }
+            }
+            if (failure == null) {
+                pending.add(toSend);
+            }
+        }
+        if (failure != null) {
+            // a non-blocking write only fails once the connection has gone
+            close();
+            SocketException lost = new SocketException("send on " + this + " failed with " + failure);
+            lost.initCause(failure);
+            throw lost;
+        }
+        ioThread.addInterest(this, SelectionKey.OP_WRITE);
+    }
+
+    /**
+     * Shut down the output once everything queued has been written.
+     */
+    public void shutdownOutput() throws IOException {
+        boolean close;
+        synchronized (pending) {
+            if (closed || outputClosed) {
+                return;
+            }
+            outputClosed = true;
+            if (!pending.isEmpty()) {
+                return;
+            }
+            channel.shutdownOutput();
+            outputShutdown = true;
+            close = inputClosed;
+        }
+        if (close) {
+            close();
+        }
+    }
+
+    public void shutdownInput() throws IOException {
+        synchronized (pending) {
+            if (!closed) {
+                channel.shutdownInput();
+            }
+        }
+    }
+
+    public void close() {
+        synchronized (pending) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            pending.clear();
+        }
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("close " + this + " failed with " + e);
+        }
+        log.debug("closed " + this);
+    }
+
+    public String toString() {
+        return channel.toString();
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    void setKey(SelectionKey key) {
+        this.key = key;
+    }
+
+    boolean isReading() {
+        return listener != null;
+    }
+
+    /**
+     * Write as much of the queue as the socket will take.
+     *
+     * @return true if the queue is now empty.
+     */
+    boolean flush() throws IOException {
+        boolean close = false;
+        synchronized (pending) {
+            while (!pending.isEmpty()) {
+                ByteBuffer next = pending.peek();
+                channel.write(next);
+                if (next.hasRemaining()) {
+                    return false;
+                }
+                pending.poll();
+            }
+            if (outputClosed && !outputShutdown && !closed) {
+                channel.shutdownOutput();
+                outputShutdown = true;
+                close = inputClosed;
+            }
+        }
+        if (close) {
+            close();
+        }
+        return true;
+    }
+
+    /**
+     * Read whatever is available, dispatching each complete frame.
+     *
+     * @param buffer scratch space owned by the I/O thread
+     * @return false once the peer has shut down its output.
+     */
+    boolean read(ByteBuffer buffer) throws IOException {
+        int n;
+        do {
+            buffer.clear();
+            n = channel.read(buffer);
+            if (n < 0) {
+                endOfInput();
+                return false;
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                if (frame == null) {
+                    while (size.hasRemaining() && buffer.hasRemaining()) {
+                        size.put(buffer.get());
+                    }
+                    if (size.hasRemaining()) {
+                        break;
+                    }
+                    int length = size.getInt(0);
+                    if (length < 0) {
+                        endOfInput();
+                        return false;
+                    }
+                    log.debug("size is " + length);
+                    frame = new byte[length];
+                    filled = 0;
+                }
+                int count = Math.min(buffer.remaining(), frame.length - filled);
+                buffer.get(frame, filled, count);
+                filled += count;
+                if (filled == frame.length) {
+                    byte[] complete = frame;
+                    frame = null;
+                    size.clear();
+                    dispatch(complete);
+                }
+            }
+        } while (n == buffer.capacity());
+        return true;
+    }
+
+    private void endOfInput() {
+        log.debug("client " + this + " close");
+        boolean close;
+        synchronized (pending) {
+            inputClosed = true;
+            close = outputClosed && pending.isEmpty();
+        }
+        Listener toNotify = listener;
+        if (toNotify != null) {
+            toNotify.inputClosed(this);
+        }
+        if (close) {
+            close();
+        }
+    }
+
+    private void dispatch(byte[] buf) {
+        log.debug("receive from " + this + " and size is " + buf.length);
+        String[] s = new String[HEADERS];
+        int start = 0;
+        int sid;
+        Message message = new Message();
+        try {
+            for (int i = 0; i < HEADERS; i++) {
+                int end = start;
+                while (buf[end] != '\n') {
+                    end++;
+                }
+                s[i] = new String(buf, start, end - start);
+                start = end + 1;
+            }
+
+            log.debug("sid is " + s[0]);
+            sid = Integer.parseInt(s[0]);
+            message.cd = Integer.parseInt(s[1]);
+            message.rcode = Integer.parseInt(s[2]);
+            message.len = Integer.parseInt(s[3]);
+            message.flags = Integer.parseInt(s[4]);
+            message.rval = Short.parseShort(s[5]);
+            message.replyTo = s[6].equals("(null)") ? null : s[6];
+            message.type = s[7].equals("(null)") ? null : s[7];
+            message.subtype = s[8].equals("(null)") ? null : s[8];
+            log.debug("cd is " + message.cd + " rcode is " + message.rcode + " len is " + message.len + " flags is "
+                    + message.flags + " rval is " + message.rval + " replyto is " + message.replyTo + " type is "
+                    + message.type + " subtype is " + message.subtype);
+
+            message.data = new byte[message.len];
+            System.arraycopy(buf, buf.length - message.len, message.data, 0, message.len);
+        } catch (RuntimeException e) {
+            log.error("could not decode message from " + this + " with " + e);
+            return;
+        }
+        listener.messageReceived(this, sid, message);
+    }
+}
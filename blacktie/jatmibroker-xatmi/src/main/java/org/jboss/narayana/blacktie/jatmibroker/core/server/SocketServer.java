@@ -22,15 +22,29 @@
 
 package org.jboss.narayana.blacktie.jatmibroker.core.server;
 
-import java.io.DataInputStream;
-import java.io.EOFException;
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketException;
-import java.util.ArrayList;
-import java.util.List;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
 import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
@@ -41,18 +55,26 @@ import org.jboss.narayana.blacktie.jatmibroker.xatmi.Connection;
 
 /**
  * Socket Server for client call back
+ * 
+ * Connections are non-blocking and shared between a small, fixed number of I/O
+ * threads (blacktie.java.socketserver.iothreads) rather than each having a
+ * thread of its own. Messages are queued against the sid they are for until
+ * the receiver for that sid collects them. The response monitor and event
+ * listener of a sid are called back from a worker thread, in the order the
+ * messages arrived, so they can never hold up an I/O thread.
  * @author zhfeng
  *
  */
-public class SocketServer implements Runnable {
+public class SocketServer implements Runnable, ClientChannel.Listener {
     private static final Logger log = LogManager.getLogger(SocketServer.class);
     private int port;
     private String addr;
-    private ServerSocket serverSocket;
-    private boolean shutdown;
-    private List<Thread> threads;
-    private List<Client> clients;
-    private List<ClientContext> contexts;
+    private ServerSocketChannel serverChannel;
+    private volatile boolean shutdown;
+    private IoThread[] ioThreads;
+    private AtomicInteger nextIoThread = new AtomicInteger();
+    private ExecutorService workers;
+    private ConcurrentMap<Integer, ClientContext> contexts = new ConcurrentHashMap<Integer, ClientContext>();
 
     private static SocketServer instance;
     private static int reference;
@@ -62,7 +84,9 @@ public class SocketServer implements Runnable {
         if (instance == null) {
             int port = Integer.parseInt(properties.getProperty("blacktie.java.socketserver.port"));
             String addr = properties.getProperty("blacktie.java.socketserver.host", "localhost");
-            instance = new SocketServer(port, addr);
+            int ioThreads = Integer.parseInt(properties.getProperty("blacktie.java.socketserver.iothreads",
+                    String.valueOf(Math.min(4, Runtime.getRuntime().availableProcessors()))));
+            instance = new SocketServer(port, addr, ioThreads);
             reference = 0;
         }
 
@@ -78,14 +102,28 @@ public class SocketServer implements Runnable {
         }
     }
 
-    private SocketServer(int port, String addr) throws IOException {
+    private SocketServer(int port, String addr, int ioThreadCount) throws IOException {
         this.shutdown = false;
         this.addr = addr;
-        serverSocket = new ServerSocket(port);
-        this.port = serverSocket.getLocalPort();
-        clients = new ArrayList<Client>();
-        threads = new ArrayList<Thread>();
-        contexts = new ArrayList<ClientContext>();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.socket().bind(new InetSocketAddress(port));
+        this.port = serverChannel.socket().getLocalPort();
+
+        ioThreads = new IoThread[Math.max(1, ioThreadCount)];
+        for (int i = 0; i < ioThreads.length; i++) {
+            ioThreads[i] = new IoThread("SocketServer I/O " + i);
+            ioThreads[i].start();
+        }
+
+        workers = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SocketServer worker " + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
 
         serverThread = new Thread(this);
         serverThread.setDaemon(true);
@@ -100,34 +138,28 @@ public class SocketServer implements Runnable {
         return addr;
     }
 
-    public Socket getClientSocket(int sid) {
+    public ClientChannel getClientChannel(int sid) {
         ClientContext context = getContext(sid);
-        if(context != null) return context.getSocket();
+        if(context != null) return context.getChannel();
         else return null;
     }
 
-    public synchronized ClientContext register(int sid, ResponseMonitor responseMonitor, EventListener eventListener) {
-        for(int i = 0; i < contexts.size(); i++) {
-            if(contexts.get(i).getSid() == sid) {
-                return contexts.get(i);
+    public ClientContext register(int sid, ResponseMonitor responseMonitor, EventListener eventListener) {
+        ClientContext context = contexts.get(sid);
+        if (context == null) {
+            context = new ClientContext(sid, responseMonitor, eventListener, workers);
+            ClientContext existing = contexts.putIfAbsent(sid, context);
+            if (existing != null) {
+                return existing;
             }
+            log.debug("register sid " + sid);
         }
-
-        ClientContext context = new ClientContext();
-        context.setSid(sid);
-        context.setResponseMonitor(responseMonitor);
-        context.setEventListener(eventListener);
-        contexts.add(context);
-        log.debug("register sid " + sid);
         return context;
     }
 
-    public synchronized void unregister(int sid) {
-        for(int i = 0; i < contexts.size(); i++) {
-            if(contexts.get(i).getSid() == sid) {
-                contexts.remove(i);
-                log.debug("unregister sid " + sid);
-            }
+    public void unregister(int sid) {
+        if (contexts.remove(sid) != null) {
+            log.debug("unregister sid " + sid);
         }
     }
 
@@ -135,9 +167,7 @@ public class SocketServer implements Runnable {
         ClientContext context = this.getContext(sid);
         Message msg = null;
         if(context != null) {
-            synchronized(context) {
-                msg = context.getMessage(timeout);
-            }
+            msg = context.getMessage(timeout);
         } else {
             log.warn("Could not receive message for sid " + sid);
         }
@@ -145,30 +175,50 @@ public class SocketServer implements Runnable {
     }
 
     public ClientContext getContext(int sid) {
-        for(int i = 0; i < contexts.size(); i++) {
-            if(contexts.get(i).getSid() == sid) {
-                return contexts.get(i);
-            }
+        return contexts.get(sid);
+    }
+
+    /**
+     * Open an outbound connection serviced by the same I/O threads. Nothing is
+     * read from it until it has a listener.
+     */
+    public ClientChannel connect(String host, int port, ClientChannel.Listener listener) throws IOException {
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+        return nextIoThread().register(channel, listener);
+    }
+
+    public void messageReceived(ClientChannel channel, int sid, Message message) {
+        ClientContext context = getContext(sid);
+        if(context != null) {
+            context.deliver(channel, message);
+        } else {
+            log.debug("no receiver for sid " + sid + ", dropping message");
         }
-        return null;
+    }
+
+    public void inputClosed(ClientChannel channel) {
+    }
+
+    private IoThread nextIoThread() {
+        return ioThreads[(nextIoThread.getAndIncrement() & Integer.MAX_VALUE) % ioThreads.length];
     }
 
     private void shutdown() {
         log.debug("shutdowning server");
         try {
             shutdown = true;
-            for(int i = 0; i < threads.size(); i++) {
+            if(serverChannel != null) {
+                serverChannel.close();
+            }
+            serverThread.join();
+            for(int i = 0; i < ioThreads.length; i++) {
                 try {
-                    clients.get(i).close();
-                    threads.get(i).join();
+                    ioThreads[i].shutdown();
                 } catch (InterruptedException e) {
-                    log.error("join client " + i + " failed with " + e);
+                    log.error("join I/O thread " + i + " failed with " + e);
                 }
             }
-            if(serverSocket != null) {
-                serverSocket.close();
-            }
-            serverThread.join();
+            workers.shutdown();
         } catch (IOException e) {
             log.error("close server socket failed with " + e);
         } catch (InterruptedException e) {
@@ -181,20 +231,17 @@ public class SocketServer implements Runnable {
         this.shutdown();
     }
 
-    /* running to accept client connection and handle the message.
+    /* running to accept client connection, handing each one to an I/O thread.
      * 
      */
     public void run() {
         while(!shutdown) {
             try {
-                Socket clientSocket  = serverSocket.accept();
-                log.debug("connection from " + clientSocket);
-                Client client = new Client(this, clientSocket);
-                clients.add(client);
-                Thread thread = new Thread(client);
-                threads.add(thread);                
-                thread.start();
-            } catch(SocketException e) {
+                SocketChannel clientChannel = serverChannel.accept();
+                log.debug("connection from " + clientChannel);
+                nextIoThread().register(clientChannel, this);
+            } catch(ClosedChannelException e) {
+                shutdown = true;
             } catch(IOException e) {
                 log.error("run server failed with " + e);
             }
@@ -202,202 +249,227 @@ public class SocketServer implements Runnable {
     }  
 }
 
-class Client implements Runnable {
-    private static final Logger log = LogManager.getLogger(Client.class);
-    private Socket socket;
-    private int sid;
-    private boolean isClose;
-    private SocketServer server;
+class IoThread extends Thread {
+    private static final Logger log = LogManager.getLogger(IoThread.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private final Selector selector;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    private volatile boolean shutdown;
+
+    public IoThread(String name) throws IOException {
+        super(name);
+        setDaemon(true);
+        selector = Selector.open();
+    }
 
-    public Client(SocketServer server, Socket socket) {
-        this.sid = -1;
-        this.socket = socket;
-        this.isClose = false;
-        this.server = server;
+    public ClientChannel register(final SocketChannel channel, ClientChannel.Listener listener) throws IOException {
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        final ClientChannel client = new ClientChannel(channel, this, listener);
+        execute(new Runnable() {
+            public void run() {
+                try {
+                    int ops = client.isReading() ? SelectionKey.OP_READ : 0;
+                    client.setKey(channel.register(selector, ops, client));
+                } catch (ClosedChannelException e) {
+                    client.close();
+                }
+            }
+        });
+        return client;
     }
 
-    public boolean isClose() {
-        return isClose;
+    public void addInterest(final ClientChannel client, final int ops) {
+        execute(new Runnable() {
+            public void run() {
+                SelectionKey key = client.getChannel().keyFor(selector);
+                if (key != null && key.isValid()) {
+                    key.interestOps(key.interestOps() | ops);
+                }
+            }
+        });
     }
 
-    public int getSid() {
-        return sid;
+    public void shutdown() throws InterruptedException {
+        shutdown = true;
+        selector.wakeup();
+        join();
     }
 
-    public void close() {
-        if(!isClose && socket != null) {
+    public void run() {
+        while (!shutdown) {
             try {
-                socket.close();
+                selector.select();
+
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        log.error("I/O task failed with " + e, e);
+                    }
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
             } catch (IOException e) {
+                log.error("select failed with " + e);
             }
         }
+
+        for (SelectionKey key : selector.keys()) {
+            ((ClientChannel) key.attachment()).close();
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+        }
     }
 
-    public void run() {
+    private void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    private void handle(SelectionKey key) {
+        ClientChannel client = (ClientChannel) key.attachment();
         try {
-            DataInputStream ins = new DataInputStream(socket.getInputStream());
-
-            int size;
-            while((size = ins.readInt()) != -1) {
-                log.debug("size is " + size);
-                Message message = new Message();
-
-                byte[] buf = new byte[size];
-                int readn = 0;
-                int remain = size;
-                while(remain > 0) {
-                    int n;
-                    n = ins.read(buf, readn, remain);
-
-                    if(n != -1) {
-                        remain -= n;
-                        readn += n;
-                    } else {
-                        log.error("expect " + size + " but read " + readn);
-                        break;
-                    }
+            if (key.isValid() && key.isWritable()) {
+                if (client.flush()) {
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
                 }
-
-                if(remain == 0) {
-                    log.debug("receive from " + socket + " and size is " + size + " buffer is " + buf);
-                    String[] s = new String(buf).split("\n");
-
-                    log.debug("sid is " + s[0]);
-                    sid = Integer.parseInt(s[0]);
-
-                    log.debug("cd is " + s[1]);
-                    message.cd = Integer.parseInt(s[1]);
-
-                    log.debug("rcode is " + s[2]);
-                    message.rcode = Integer.parseInt(s[2]);
-
-                    log.debug("len is " + s[3]);
-                    message.len = Integer.parseInt(s[3]);
-
-                    log.debug("flags is " + s[4]);
-                    message.flags = Integer.parseInt(s[4]);
-
-                    log.debug("rval is " + s[5]);
-                    message.rval = Short.parseShort(s[5]);
-
-                    log.debug("replyto is " + s[6]);
-                    message.replyTo = s[6].equals("(null)") ? null : s[6];
-
-                    log.debug("type is " + s[7]);
-                    message.type = s[7].equals("(null)") ? null : s[7];
-
-                    log.debug("subtype is " + s[8]);
-                    message.subtype = s[8].equals("(null)") ? null : s[8];
-
-                    message.data = new byte[message.len];
-                    System.arraycopy(buf, size - message.len, message.data, 0, message.len);
-                    log.debug("data is " + new String(message.data));
-
-                    ClientContext context = server.getContext(sid);
-                    if(context != null) {
-                        synchronized(context) {
-                            EventListener eventListener = context.getEventListener();
-                            if (eventListener != null) {
-                                log.debug("Event listener will be called back");
-                                if (message.rval == EventListener.DISCON_CODE) {
-                                    eventListener.setLastEvent(Connection.TPEV_DISCONIMM, message.rcode);
-                                } else if (message.rcode == Connection.TPESVCERR) {
-                                    eventListener.setLastEvent(Connection.TPEV_SVCERR, message.rcode);
-                                } else if (message.rval == Connection.TPFAIL) {
-                                    eventListener.setLastEvent(Connection.TPEV_SVCFAIL, message.rcode);
-                                }
-                            }
-                            context.getData().add(message);
-                            log.debug("add message to context " + context.getSid());
-                            context.setSocket(socket);
-                            ResponseMonitor responseMonitor = context.getResponseMonitor();
-                            if(responseMonitor != null) {
-                                responseMonitor.responseReceived(sid, false);
-                            }
-                            log.debug("notifying");
-                            context.notify();
-                            log.debug("notified");
-                        }
-                    }
+            }
+            if (key.isValid() && key.isReadable()) {
+                if (!client.read(buffer)) {
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
                 }
             }
-            socket.shutdownInput();   
-            isClose = true;
-        } catch (EOFException e) {
-            log.debug("client " + socket + " close");
-            isClose = true;
-        } catch (SocketException e) {
-            isClose = true;
+        } catch (CancelledKeyException e) {
         } catch (IOException e) {
-            log.error("client " + socket + " run failed with " + e);
-        }       
+            log.debug("client " + client + " failed with " + e);
+            client.close();
+        } catch (RuntimeException e) {
+            // a bad frame or a failing listener must not take down the other
+            // connections on this thread
+            log.error("client " + client + " failed with " + e, e);
+            client.close();
+        }
     }
 }
 
 class ClientContext {
     private static final Logger log = LogManager.getLogger(ClientContext.class);
-    private int sid;
-    private List<Message> data;
-    private Socket socket;
-    private ResponseMonitor responseMonitor;
-    private EventListener eventListener;
-
-    public ClientContext() {
-        this.data = new ArrayList<Message>();
-    }
-    public void setSid(int sid) {
+    private final int sid;
+    private final BlockingQueue<Message> data = new LinkedBlockingQueue<Message>();
+    private volatile ClientChannel channel;
+    private final ResponseMonitor responseMonitor;
+    private final EventListener eventListener;
+    private final ExecutorService workers;
+    private final ConcurrentLinkedQueue<Message> pending = new ConcurrentLinkedQueue<Message>();
+    private final AtomicBoolean dispatching = new AtomicBoolean();
+
+    public ClientContext(int sid, ResponseMonitor responseMonitor, EventListener eventListener, ExecutorService workers) {
         this.sid = sid;
+        this.responseMonitor = responseMonitor;
+        this.eventListener = eventListener;
+        this.workers = workers;
     }
 
     public int getSid() {
         return sid;
     }
 
-    public void setSocket(Socket socket) {
-        this.socket = socket;
+    public ClientChannel getChannel() {
+        return channel;
     }
 
-    public Socket getSocket() {
-        return socket;
-    }
-
-    public List<Message> getData() {
-        return data;
+    public ResponseMonitor getResponseMonitor() {
+        return responseMonitor;
     }
 
-    public void setResponseMonitor(ResponseMonitor responseMonitor) {
-        this.responseMonitor = responseMonitor;        
+    public EventListener getEventListener() {
+        return eventListener;
     }
 
-    public ResponseMonitor getResponseMonitor() {
-        return responseMonitor;
+    /**
+     * Called on an I/O thread. Without callbacks the message is simply queued,
+     * otherwise it is handed to a worker along with any others still waiting
+     * for one.
+     */
+    public void deliver(ClientChannel channel, Message message) {
+        this.channel = channel;
+        if (responseMonitor == null && eventListener == null) {
+            enqueue(message);
+            return;
+        }
+        pending.add(message);
+        if (dispatching.compareAndSet(false, true)) {
+            try {
+                workers.execute(new Runnable() {
+                    public void run() {
+                        dispatch();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // the server is shutting down, so don't lose the message
+                dispatch();
+            }
+        }
     }
 
-    public void setEventListener(EventListener eventListener) {
-        this.eventListener = eventListener;
+    private void dispatch() {
+        do {
+            Message message;
+            while ((message = pending.poll()) != null) {
+                try {
+                    enqueue(message);
+                } catch (RuntimeException e) {
+                    log.error("callback for context " + sid + " failed with " + e, e);
+                }
+            }
+            dispatching.set(false);
+            // a message added after the last poll but before the flag was
+            // cleared would otherwise wait for the next one
+        } while (!pending.isEmpty() && dispatching.compareAndSet(false, true));
     }
 
-    public EventListener getEventListener() {
-        return eventListener;
+    private void enqueue(Message message) {
+        if (eventListener != null) {
+            log.debug("Event listener will be called back");
+            if (message.rval == EventListener.DISCON_CODE) {
+                eventListener.setLastEvent(Connection.TPEV_DISCONIMM, message.rcode);
+            } else if (message.rcode == Connection.TPESVCERR) {
+                eventListener.setLastEvent(Connection.TPEV_SVCERR, message.rcode);
+            } else if (message.rval == Connection.TPFAIL) {
+                eventListener.setLastEvent(Connection.TPEV_SVCFAIL, message.rcode);
+            }
+        }
+        data.add(message);
+        log.debug("add message to context " + sid);
+        if (responseMonitor != null) {
+            responseMonitor.responseReceived(sid, false);
+        }
     }
 
+    /**
+     * @param timeout in milliseconds, where 0 means wait for ever.
+     */
     public Message getMessage(long timeout) {
         log.debug("receive message for context " + sid);
-        if(data.isEmpty()) {
-            synchronized(this) {
-                try {
-                    log.debug("waiting for " + timeout);
-                    wait(timeout);
-                    log.debug("waited");
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
+        try {
+            if (timeout <= 0) {
+                return data.take();
+            } else {
+                return data.poll(timeout, TimeUnit.MILLISECONDS);
             }
-        }
-        if(data.isEmpty()) {
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             return null;
-        } else {
-            return data.remove(0);
         }
     }
 }
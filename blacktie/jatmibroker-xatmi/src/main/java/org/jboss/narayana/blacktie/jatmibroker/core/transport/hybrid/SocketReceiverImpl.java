@@ -22,18 +22,16 @@
 
 package org.jboss.narayana.blacktie.jatmibroker.core.transport.hybrid;
 
-import java.io.DataInputStream;
-import java.io.EOFException;
 import java.io.IOException;
-import java.net.Socket;
-import java.net.SocketException;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 import org.jboss.narayana.blacktie.jatmibroker.core.ResponseMonitor;
+import org.jboss.narayana.blacktie.jatmibroker.core.server.ClientChannel;
 import org.jboss.narayana.blacktie.jatmibroker.core.server.SocketServer;
 import org.jboss.narayana.blacktie.jatmibroker.core.transport.EventListener;
 import org.jboss.narayana.blacktie.jatmibroker.core.transport.JtsTransactionImple;
@@ -48,17 +46,16 @@ import org.jboss.narayana.blacktie.jatmibroker.xatmi.ConnectionException;
  * @author zhfeng
  *
  */
-public class SocketReceiverImpl implements Receiver, Runnable {
+public class SocketReceiverImpl implements Receiver, ClientChannel.Listener {
     private static final Logger log = LogManager.getLogger(SocketReceiverImpl.class);
     private int cd;
     private int timeout = 0;
     private SocketServer server;
-    private Socket socket;
-    private Thread thread;
-    private List<Message> data;
+    private ClientChannel channel;
+    private BlockingQueue<Message> data;
     private ResponseMonitor responseMonitor;
     private EventListener eventListener;
-    private boolean closed;
+    private volatile boolean closed;
     private String replyto;
 
     public SocketReceiverImpl(SocketServer server, Properties properties, int cd,
@@ -77,11 +74,11 @@ public class SocketReceiverImpl implements Receiver, Runnable {
         server.register(cd, responseMonitor, eventListener);
     }
 
-    public SocketReceiverImpl(Socket socket, String replyto, Properties properties) {
-        log.debug("create socket receiver with socket: " + socket.getRemoteSocketAddress() + " " + socket.getLocalPort());
-        this.socket = socket;
+    public SocketReceiverImpl(ClientChannel channel, String replyto, Properties properties) {
+        log.debug("create socket receiver with channel: " + channel.getRemoteSocketAddress() + " " + channel.getLocalPort());
+        this.channel = channel;
         this.replyto = replyto;
-        this.data = new ArrayList<Message>();
+        this.data = new LinkedBlockingQueue<Message>();
         this.server = null;
         this.responseMonitor = null;
         this.eventListener = null;
@@ -90,9 +87,7 @@ public class SocketReceiverImpl implements Receiver, Runnable {
         timeout = Integer.parseInt(properties.getProperty("ReceiveTimeout")) * 1000
                 + Integer.parseInt(properties.getProperty("TimeToLive")) * 1000;
         log.debug("Timeout set as: " + timeout);
-        this.thread = new Thread(this);
-        this.thread.setDaemon(true);
-        this.thread.start();
+        channel.setListener(this);
     }
 
     public int getCd() {
@@ -107,19 +102,15 @@ public class SocketReceiverImpl implements Receiver, Runnable {
         if ((flags & Connection.TPNOBLOCK) != Connection.TPNOBLOCK) {
             if(server != null) {
                 message = server.receiveMessage(cd, determineTimeout(flags));
-            } else if(socket != null) {
-                synchronized (this) {
-                    if ((flags & Connection.TPNOBLOCK) != Connection.TPNOBLOCK) {
-                        if(data.isEmpty()) {
-                            try {
-                                wait(determineTimeout(flags));
-                            } catch (InterruptedException e) {
-                            }
-                        }                  
-                    }
-                    if(!data.isEmpty()) {
-                        message = data.remove(0);
+            } else if(channel != null) {
+                int wait = determineTimeout(flags);
+                try {
+                    if (wait == 0) {
+                        message = data.take();
+                    } else {
+                        message = data.poll(wait, TimeUnit.MILLISECONDS);
                     }
+                } catch (InterruptedException e) {
                 }
             }
         } else {
@@ -184,20 +175,11 @@ public class SocketReceiverImpl implements Receiver, Runnable {
         if(server != null && cd != -1) {
             server.unregister(cd);
         }
-        if(thread != null) {
+        if(channel != null) {
             try {
-                thread.join();
-            } catch (InterruptedException e) {
-                log.warn("receiver close join socket thread failed with " + e);
-            }
-        }
-
-        if(socket != null) {
-            try {
-                socket.shutdownInput();
-            } catch (SocketException e) {
-            } catch (Exception e) {
-                log.warn("receiver shutdownInput failed with " + e);
+                channel.shutdownInput();
+            } catch (IOException e) {
+                log.debug("receiver shutdownInput failed with " + e);
             }
         }
         closed = true;
@@ -211,96 +193,33 @@ public class SocketReceiverImpl implements Receiver, Runnable {
         }
     }
 
-    public void run() {
-        try {
-            DataInputStream ins = new DataInputStream(socket.getInputStream());
-
-            int size;
-            while((size = ins.readInt()) != -1) {
-                Message message = new Message();
-
-                byte[] buf = new byte[size];
-                int readn = 0;
-                int remain = size;
-                while(remain > 0) {
-                    int n;
-                    n = ins.read(buf, readn, remain);
-
-                    if(n != -1) {
-                        remain -= n;
-                        readn += n;
-                    } else {
-                        log.error("expect " + size + " but read " + readn);
-                        break;
-                    }
-                }
-
-                if(remain == 0) {
-                    log.debug("receive from " + socket + " and size is " + size + " buffer is " + buf);
-                    String[] s = new String(buf).split("\n");
-
-                    log.debug("sid is " + s[0]);
-
-                    log.debug("cd is " + s[1]);
-                    message.cd = Integer.parseInt(s[1]);
-
-                    log.debug("rcode is " + s[2]);
-                    message.rcode = Integer.parseInt(s[2]);
-
-                    log.debug("len is " + s[3]);
-                    message.len = Integer.parseInt(s[3]);
-
-                    log.debug("flags is " + s[4]);
-                    message.flags = Integer.parseInt(s[4]);
-
-                    log.debug("rval is " + s[5]);
-                    message.rval = Short.parseShort(s[5]);
-
-                    log.debug("replyto is " + s[6]);
-                    message.replyTo = s[6].equals("(null)") ? null : s[6];
-
-                    log.debug("type is " + s[7]);
-                    message.type = s[7].equals("(null)") ? null : s[7];
-
-                    log.debug("subtype is " + s[8]);
-                    message.subtype = s[8].equals("(null)") ? null : s[8];
-
-                    message.data = new byte[message.len];
-                    System.arraycopy(buf, size - message.len, message.data, 0, message.len);
-                    log.debug("data is " + new String(message.data));
-                    synchronized(this) {
-                        if (eventListener != null) {
-                            log.debug("Event listener will be called back");
-                            if (message.rval == EventListener.DISCON_CODE) {
-                                eventListener.setLastEvent(Connection.TPEV_DISCONIMM, message.rcode);
-                            } else if (message.rcode == Connection.TPESVCERR) {
-                                eventListener.setLastEvent(Connection.TPEV_SVCERR, message.rcode);
-                            } else if (message.rval == Connection.TPFAIL) {
-                                eventListener.setLastEvent(Connection.TPEV_SVCFAIL, message.rcode);
-                            }
-                        }
-                        data.add(message);
-                        if (responseMonitor != null) {
-                            responseMonitor.responseReceived(this.cd, false);
-                        }
-                        notify();
-                    }
-                }
+    public void messageReceived(ClientChannel channel, int sid, Message message) {
+        if (eventListener != null) {
+            log.debug("Event listener will be called back");
+            if (message.rval == EventListener.DISCON_CODE) {
+                eventListener.setLastEvent(Connection.TPEV_DISCONIMM, message.rcode);
+            } else if (message.rcode == Connection.TPESVCERR) {
+                eventListener.setLastEvent(Connection.TPEV_SVCERR, message.rcode);
+            } else if (message.rval == Connection.TPFAIL) {
+                eventListener.setLastEvent(Connection.TPEV_SVCFAIL, message.rcode);
             }
-        } catch (EOFException e) {
-            log.info("receiver " + socket + " close");
-            closed = true;
-        } catch (SocketException e) {
-        } catch (IOException e) {
-            log.error("receiver " + socket + " run failed with " + e);
-        }    
+        }
+        data.add(message);
+        if (responseMonitor != null) {
+            responseMonitor.responseReceived(this.cd, false);
+        }
+    }
+
+    public void inputClosed(ClientChannel channel) {
+        log.info("receiver " + channel + " close");
+        closed = true;
     }
 
     public Object getEndpoint() throws ConnectionException {
-        if(socket != null) {
-            return socket;
+        if(channel != null) {
+            return channel;
         } else if(server != null && cd != -1){
-            return server.getClientSocket(cd);
+            return server.getClientChannel(cd);
         } else return null;
     }
 }
@@ -22,13 +22,14 @@
 
 package org.jboss.narayana.blacktie.jatmibroker.core.transport.hybrid;
 
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.net.Socket;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
 
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
+import org.jboss.narayana.blacktie.jatmibroker.core.server.ClientChannel;
+import org.jboss.narayana.blacktie.jatmibroker.core.server.SocketServer;
 import org.jboss.narayana.blacktie.jatmibroker.core.transport.Sender;
 import org.jboss.narayana.blacktie.jatmibroker.xatmi.Connection;
 import org.jboss.narayana.blacktie.jatmibroker.xatmi.ConnectionException;
@@ -43,18 +44,16 @@ public class SocketSenderImpl implements Sender {
     private int sid;
     private boolean closed;
     private int pad = 0;
-    private Socket socket;
-    private DataOutputStream outs;
+    private ClientChannel channel;
 
-    SocketSenderImpl(String addr) throws ConnectionException {
+    SocketSenderImpl(SocketServer server, String addr) throws ConnectionException {
         log.debug("creating socket sender ");
         this.addr = addr;
         String[] s = addr.split(":");
 
         try{
-            socket = new Socket(s[0], Integer.parseInt(s[1]));
+            channel = server.connect(s[0], Integer.parseInt(s[1]), null);
             sid = Integer.parseInt(s[2]);
-            outs =  new DataOutputStream(socket.getOutputStream());
             this.closed = false;
         } catch(Exception e) {
             throw new ConnectionException(Connection.TPEPROTO, "connect to " + addr + " failed with " + e);
@@ -62,14 +61,12 @@ public class SocketSenderImpl implements Sender {
         log.debug("create socket sender for " + addr);
     }
 
-    public SocketSenderImpl(Socket endpoint, String replyTo) throws ConnectionException {
-        log.debug("create socket sender with receiver endpoint " + endpoint.getRemoteSocketAddress() + " " + endpoint.getLocalPort());
-        this.socket = endpoint;
-        try {
-            this.outs = new DataOutputStream(socket.getOutputStream());
-        } catch (IOException e) {
-            throw new ConnectionException(Connection.TPEPROTO, "get stream from endpoint failed with " + e);
+    public SocketSenderImpl(ClientChannel endpoint, String replyTo) throws ConnectionException {
+        if (endpoint == null) {
+            throw new ConnectionException(Connection.TPEPROTO, "no connection for " + replyTo);
         }
+        log.debug("create socket sender with receiver endpoint " + endpoint.getRemoteSocketAddress() + " " + endpoint.getLocalPort());
+        this.channel = endpoint;
         this.addr = replyTo;
         this.closed = false;
         log.debug("create socket sender for " + replyTo);
@@ -108,32 +105,29 @@ public class SocketSenderImpl implements Sender {
             log.error("Length of buffer must be greater than 0");
             throw new ConnectionException(Connection.TPEINVAL, "Length of buffer must be greater than 0");
         }
-        byte[] toSend = new byte[len + pad];
-        if (data != null) {
-            int min = Math.min(toSend.length, data.length);
-            System.arraycopy(data, 0, toSend, 0, min);
-        }
-        try {
-            StringBuffer buffer = new StringBuffer();
-            buffer.append(sid).append("\n").append(correlationId).append("\n").append(rcode).append("\n").
-            append(toSend.length).append("\n").append(flags).append("\n").
-            append(rval).append("\n").append(toReplyTo).append("\n").
-            append(type).append("\n").append(subtype).append("\n");
+        int bodylen = len + pad;
+        StringBuffer buffer = new StringBuffer();
+        buffer.append(sid).append("\n").append(correlationId).append("\n").append(rcode).append("\n").
+        append(bodylen).append("\n").append(flags).append("\n").
+        append(rval).append("\n").append(toReplyTo).append("\n").
+        append(type).append("\n").append(subtype).append("\n");
+        byte[] header = buffer.toString().getBytes();
 
-            int sendlen = buffer.length() + toSend.length;
-            log.debug("send on " + socket + " len is " + sendlen + " and buffer is " + buffer);
-            //log.debug(buffer);
-            //log.info("toSend[0] is " + toSend[0]);
+        int sendlen = header.length + bodylen;
+        log.debug("send on " + channel + " len is " + sendlen + " and buffer is " + buffer);
 
-            try {
-                outs.writeInt(sendlen);         
-                outs.write(buffer.toString().getBytes(), 0, buffer.length());
-                outs.write(toSend, 0, toSend.length);
-            } catch (SocketException e)  {
-                // The socket might be closed by service side
-                log.warn("socket send with " + e);
-            }
+        // one frame, so it can be queued as a whole if the socket is busy, the
+        // data goes straight in and the frame is already zeroed for any padding
+        ByteBuffer frame = ByteBuffer.allocate(4 + sendlen);
+        frame.putInt(sendlen).put(header).put(data, 0, Math.min(bodylen, data.length));
+        frame.position(4 + sendlen);
+        frame.flip();
 
+        try {
+            channel.send(frame);
+        } catch (SocketException e)  {
+            // The socket might be closed by service side
+            log.warn("socket send with " + e);
         } catch (IOException e) {
             throw new ConnectionException(Connection.TPEPROTO, "send failed with " + e);
         }
@@ -147,9 +141,7 @@ public class SocketSenderImpl implements Sender {
         }
         closed = true;
         try {
-            outs.close();
-            socket.shutdownOutput();
-        } catch (SocketException e) {
+            channel.shutdownOutput();
         } catch (IOException e) {
             throw new ConnectionException(Connection.TPEPROTO, "close socket failed with " + e);
         }
@@ -157,6 +149,6 @@ public class SocketSenderImpl implements Sender {
     }
 
     public Object getEndpoint() {
-        return socket;
+        return channel;
     }
 }
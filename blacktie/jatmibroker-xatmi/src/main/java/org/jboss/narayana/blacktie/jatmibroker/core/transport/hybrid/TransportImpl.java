@@ -17,7 +17,6 @@
  */
 package org.jboss.narayana.blacktie.jatmibroker.core.transport.hybrid;
 
-import java.net.Socket;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -27,6 +26,7 @@ import java.util.Properties;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 import org.jboss.narayana.blacktie.jatmibroker.core.ResponseMonitor;
+import org.jboss.narayana.blacktie.jatmibroker.core.server.ClientChannel;
 import org.jboss.narayana.blacktie.jatmibroker.core.server.SocketServer;
 import org.jboss.narayana.blacktie.jatmibroker.core.transport.EventListener;
 import org.jboss.narayana.blacktie.jatmibroker.core.transport.Receiver;
@@ -132,14 +132,14 @@ public class TransportImpl implements Transport {
                     "Could not create a Corba sender");
         } else {
             log.debug(callback_ior + " is for socket");
-            sender = new SocketSenderImpl(callback_ior);
+            sender = new SocketSenderImpl(socketserver, callback_ior);
         }
         log.debug("Created sender");
         return sender;
     }
     
     public Sender createSender(Receiver receiver) throws ConnectionException {
-        return new SocketSenderImpl((Socket)receiver.getEndpoint(), (String)receiver.getReplyTo());
+        return new SocketSenderImpl((ClientChannel)receiver.getEndpoint(), (String)receiver.getReplyTo());
     }
 
     public Receiver getReceiver(String serviceName, boolean conversational) throws ConnectionException {
@@ -192,6 +192,6 @@ public class TransportImpl implements Transport {
             log.debug("no need to create on empty sender");
             return null;
         } 
-        return new SocketReceiverImpl((Socket)sender.getEndpoint(), (String)sender.getSendTo(), properties);
+        return new SocketReceiverImpl((ClientChannel)sender.getEndpoint(), (String)sender.getSendTo(), properties);
     }
 }
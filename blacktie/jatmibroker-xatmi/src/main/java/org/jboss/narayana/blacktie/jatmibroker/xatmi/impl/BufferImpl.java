@@ -17,15 +17,8 @@
  */
 package org.jboss.narayana.blacktie.jatmibroker.xatmi.impl;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -158,6 +151,31 @@ public abstract class BufferImpl implements Serializable, Buffer {
      */
     private Map<String, Class> format = new HashMap<String, Class>();
 
+    /**
+     * The position of each attribute in the keys.
+     */
+    private Map<String, Integer> positions = new HashMap<String, Integer>();
+
+    /**
+     * The offset of each attribute on the wire.
+     */
+    private int[] offsets;
+
+    /**
+     * The number of bytes the attributes take on the wire.
+     */
+    private int wireLength;
+
+    /**
+     * The data received, attributes are decoded from this as they are used.
+     */
+    private byte[] received;
+
+    /**
+     * Reused to read from the received data.
+     */
+    private transient ByteBuffer receivedView;
+
     protected int len = -1;
 
     /**
@@ -233,6 +251,7 @@ public abstract class BufferImpl implements Serializable, Buffer {
      */
     private void format(String[] keys, Class[] types, int[] lengths, int[] counts) throws ConnectionException {
         structure.clear();
+        positions.clear();
         if (keys.length != types.length || types.length != lengths.length) {
             throw new ConnectionException(ConnectionImpl.TPEINVAL, "Invalid format, each array description should be same length");
         }
@@ -241,14 +260,21 @@ public abstract class BufferImpl implements Serializable, Buffer {
         this.lengths = lengths;
         this.counts = counts;
 
+        this.offsets = new int[keys.length];
+        this.wireLength = 0;
+
         for (int i = 0; i < keys.length; i++) {
             format.put(keys[i], types[i]);
+            positions.put(keys[i], i);
+            offsets[i] = wireLength;
+            wireLength += wireSize(i);
         }
         formatted = true;
     }
 
     /**
-     * Deserialize the buffer.
+     * Deserialize the buffer. The attributes are not decoded here, each one is
+     * read from the received data when it is first asked for.
      * 
      * @param data The data to deserialize.
      * @throws ConnectionException In case the data does not match the format defined.
@@ -260,79 +286,17 @@ public abstract class BufferImpl implements Serializable, Buffer {
                 if (keys == null) {
                     throw new ConnectionException(ConnectionImpl.TPEITYPE, "Message format not provided");
                 }
-                ByteArrayInputStream bais = new ByteArrayInputStream(data);
-                DataInputStream dis = new DataInputStream(bais);
                 for (int i = 0; i < types.length; i++) {
                     if (!supportedTypes.contains(types[i])) {
                         throw new ConnectionException(ConnectionImpl.TPEITYPE, "Cannot read type from buffer " + types[i]);
                     }
-
-                    try {
-                        if (types[i] == int.class) {
-                            structure.put(keys[i], readInt(dis));
-                        } else if (types[i] == short.class) {
-                            structure.put(keys[i], readShort(dis));
-                        } else if (types[i] == long.class) {
-                            structure.put(keys[i], readLong(dis));
-                        } else if (types[i] == byte.class) {
-                            structure.put(keys[i], readByte(dis));
-                        } else if (types[i] == float.class) {
-                            structure.put(keys[i], readFloat(dis));
-                        } else if (types[i] == double.class) {
-                            structure.put(keys[i], readDouble(dis));
-                        } else if (types[i] == int[].class) {
-                            int[] toRead = new int[lengths[i]];
-                            for (int j = 0; j < lengths[i]; j++) {
-                                toRead[j] = readInt(dis);
-                            }
-                            structure.put(keys[i], toRead);
-                        } else if (types[i] == short[].class) {
-                            short[] toRead = new short[lengths[i]];
-                            for (int j = 0; j < lengths[i]; j++) {
-                                toRead[j] = readShort(dis);
-                            }
-                            structure.put(keys[i], toRead);
-                        } else if (types[i] == long[].class) {
-                            long[] toRead = new long[lengths[i]];
-                            for (int j = 0; j < lengths[i]; j++) {
-                                toRead[j] = readLong(dis);
-                            }
-                            structure.put(keys[i], toRead);
-                        } else if (types[i] == byte[].class) {
-                            byte[] toRead = new byte[lengths[i]];
-                            for (int j = 0; j < lengths[i]; j++) {
-                                toRead[j] = readByte(dis);
-                            }
-                            structure.put(keys[i], toRead);
-                        } else if (types[i] == float[].class) {
-                            float[] toRead = new float[lengths[i]];
-                            for (int j = 0; j < lengths[i]; j++) {
-                                toRead[j] = readFloat(dis);
-                            }
-                            structure.put(keys[i], toRead);
-                        } else if (types[i] == double[].class) {
-                            double[] toRead = new double[lengths[i]];
-                            for (int j = 0; j < lengths[i]; j++) {
-                                toRead[j] = readDouble(dis);
-                            }
-                            structure.put(keys[i], toRead);
-                        } else if (types[i] == byte[][].class) {
-                            byte[][] toRead = new byte[counts[i]][lengths[i]];
-                            for (int k = 0; k < counts[i]; k++) {
-                                for (int j = 0; j < lengths[i]; j++) {
-                                    toRead[k][j] = readByte(dis);
-                                }
-                            }
-                            structure.put(keys[i], toRead);
-                        } else {
-                            throw new ConnectionException(ConnectionImpl.TPEITYPE, "Could not deserialize: " + types[i]);
-                        }
-                    } catch (IOException e) {
-                        throw new ConnectionException(ConnectionImpl.TPEITYPE, "Could not parse the value as: " + keys[i]
-                                + " was not a " + types[i] + " and even if it was an array of that type its length was not: "
-                                + lengths[i]);
-                    }
                 }
+                if (data.length < wireLength) {
+                    throw new ConnectionException(ConnectionImpl.TPEITYPE, "Could not parse the buffer, it was " + data.length
+                            + " bytes but the format needs " + wireLength);
+                }
+                received = data;
+                receivedView = null;
             }
         } else {
             this.data = data;
@@ -351,158 +315,19 @@ public abstract class BufferImpl implements Serializable, Buffer {
         currentPos = 0;
         byte[] toReturn = null;
         if (requiresSerialization) {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            DataOutputStream dos = new DataOutputStream(baos);
+            // the wire size is fixed, so write straight into an array of that size
+            toReturn = new byte[wireLength];
+            ByteBuffer buffer = ByteBuffer.wrap(toReturn);
             for (int i = 0; i < types.length; i++) {
-
-                try {
-                    if (types[i] == int.class) {
-                        Integer toWrite = (Integer) structure.get(keys[i]);
-                        if (toWrite != null) {
-                            writeInt(dos, toWrite);
-                        } else {
-                            writeInt(dos, 0);
-                        }
-                    } else if (types[i] == short.class) {
-                        Short toWrite = (Short) structure.get(keys[i]);
-                        if (toWrite != null) {
-                            writeShort(dos, toWrite);
-                        } else {
-                            writeShort(dos, (short) 0);
-                        }
-                    } else if (types[i] == long.class) {
-                        Long toWrite = (Long) structure.get(keys[i]);
-                        if (toWrite != null) {
-                            writeLong(dos, toWrite);
-                        } else {
-                            writeLong(dos, 0);
-                        }
-                    } else if (types[i] == byte.class) {
-                        Byte toWrite = (Byte) structure.get(keys[i]);
-                        if (toWrite != null) {
-                            writeByte(dos, toWrite);
-                        } else {
-                            // writeByte(dos, '\0');
-                            writeByte(dos, (byte) 0);
-                        }
-                    } else if (types[i] == float.class) {
-                        Float toWrite = (Float) structure.get(keys[i]);
-                        if (toWrite != null) {
-                            writeFloat(dos, toWrite);
-                        } else {
-                            writeFloat(dos, 0);
-                        }
-                    } else if (types[i] == double.class) {
-                        Double toWrite = (Double) structure.get(keys[i]);
-                        if (toWrite != null) {
-                            writeDouble(dos, toWrite);
-                        } else {
-                            writeDouble(dos, 0);
-                        }
-                    } else if (types[i] == int[].class) {
-                        int[] toWrite = (int[]) structure.get(keys[i]);
-                        int max = 0;
-                        if (toWrite != null) {
-                            max = Math.min(lengths[i], toWrite.length);
-                            for (int j = 0; j < lengths[i]; j++) {
-                                writeInt(dos, toWrite[j]);
-                            }
-                        }
-                        for (int j = max; j < lengths[i]; j++) {
-                            writeInt(dos, 0);
-                        }
-                    } else if (types[i] == short[].class) {
-                        short[] toWrite = (short[]) structure.get(keys[i]);
-                        int max = 0;
-                        if (toWrite != null) {
-                            max = Math.min(lengths[i], toWrite.length);
-                            for (int j = 0; j < lengths[i]; j++) {
-                                writeShort(dos, toWrite[j]);
-                            }
-                        }
-                        for (int j = max; j < lengths[i]; j++) {
-                            writeShort(dos, (short) 0);
-                        }
-                    } else if (types[i] == long[].class) {
-                        long[] toWrite = (long[]) structure.get(keys[i]);
-                        int max = 0;
-                        if (toWrite != null) {
-                            max = Math.min(lengths[i], toWrite.length);
-                            for (int j = 0; j < lengths[i]; j++) {
-                                writeLong(dos, toWrite[j]);
-                            }
-                        }
-                        for (int j = max; j < lengths[i]; j++) {
-                            writeLong(dos, 0);
-                        }
-                    } else if (types[i] == byte[].class) {
-                        byte[] toWrite = (byte[]) structure.get(keys[i]);
-                        int max = 0;
-                        if (toWrite != null) {
-                            max = Math.min(lengths[i], toWrite.length);
-                            for (int j = 0; j < max; j++) {
-                                writeByte(dos, toWrite[j]);
-                            }
-                        }
-                        for (int j = max; j < lengths[i]; j++) {
-                            // writeByte(dos, '\0');
-                            writeByte(dos, (byte) 0);
-                        }
-                    } else if (types[i] == float[].class) {
-                        float[] toWrite = (float[]) structure.get(keys[i]);
-                        int max = 0;
-                        if (toWrite != null) {
-                            max = Math.min(lengths[i], toWrite.length);
-                            for (int j = 0; j < lengths[i]; j++) {
-                                writeFloat(dos, toWrite[j]);
-                            }
-                        }
-                        for (int j = max; j < lengths[i]; j++) {
-                            writeFloat(dos, 0);
-                        }
-                    } else if (types[i] == double[].class) {
-                        double[] toWrite = (double[]) structure.get(keys[i]);
-                        int max = 0;
-                        if (toWrite != null) {
-                            max = Math.min(lengths[i], toWrite.length);
-                            for (int j = 0; j < lengths[i]; j++) {
-                                writeDouble(dos, toWrite[j]);
-                            }
-                        }
-                        for (int j = max; j < lengths[i]; j++) {
-                            writeDouble(dos, 0);
-                        }
-                    } else if (types[i] == byte[][].class) {
-                        byte[][] toWrite = (byte[][]) structure.get(keys[i]);
-                        if (toWrite != null) {
-                            for (int k = 0; k < counts[i]; k++) {
-                                for (int j = 0; j < lengths[i]; j++) {
-                                    writeByte(dos, toWrite[k][j]);
-                                }
-                            }
-                        } else {
-                            for (int j = 0; j < counts[i] * lengths[i]; j++) {
-                                writeByte(dos, (byte) 0);
-                            }
-                        }
-                    } else {
-                        if (TransactionImpl.current() != null) {
-                            try {
-                                TransactionImpl.current().rollback_only();
-                            } catch (TransactionException e) {
-                                throw new ConnectionException(ConnectionImpl.TPESYSTEM,
-                                        "Could not mark transaction for rollback only");
-                            }
-                        }
-                        throw new ConnectionException(ConnectionImpl.TPEOTYPE, "Could not serialize: " + types[i]);
-                    }
-                } catch (IOException e) {
-                    throw new ConnectionException(ConnectionImpl.TPEOTYPE, "Could not parse the value as: " + keys[i]
-                            + " was not a " + types[i] + " and even if it was an array of that type its length was not: "
-                            + lengths[i]);
+                if (received != null && !structure.containsKey(keys[i])) {
+                    // never decoded so can't have changed, copy it across as it is
+                    System.arraycopy(received, offsets[i], toReturn, offsets[i], wireSize(i));
+                    continue;
                 }
+                buffer.position(offsets[i]);
+                encode(buffer, i, structure.get(keys[i]));
             }
-            toReturn = baos.toByteArray();
+            currentPos = wireLength;
         } else {
             toReturn = getRawData();
         }
@@ -513,152 +338,199 @@ public abstract class BufferImpl implements Serializable, Buffer {
     }
 
     /**
-     * Write a byte during serialization/
+     * Write an attribute at the current position of the buffer. Anything not
+     * set is left as zero.
      * 
-     * @param dos The output stream to write to.
-     * @param b The byte to write.
-     * @throws IOException In case the output stream fails.
-     */
-    private void writeByte(DataOutputStream dos, byte b) throws IOException {
-        dos.writeByte(b);
-
-        currentPos += 1;
+     * @param buffer The buffer to write to
+     * @param i The attribute to write
+     * @param value The value, may be null
+     * @throws ConnectionException In case the type cannot be serialized
+     */
+    private void encode(ByteBuffer buffer, int i, Object value) throws ConnectionException {
+        try {
+            if (types[i] == int.class) {
+                buffer.putInt(value != null ? (Integer) value : 0);
+            } else if (types[i] == short.class) {
+                buffer.putShort(value != null ? (Short) value : (short) 0);
+            } else if (types[i] == long.class) {
+                putLong(buffer, value != null ? (Long) value : 0);
+            } else if (types[i] == byte.class) {
+                buffer.put(value != null ? (Byte) value : (byte) 0);
+            } else if (types[i] == float.class) {
+                buffer.putFloat(value != null ? (Float) value : 0);
+            } else if (types[i] == double.class) {
+                buffer.putDouble(value != null ? (Double) value : 0);
+            } else if (types[i] == int[].class) {
+                int[] toWrite = (int[]) value;
+                for (int j = 0; toWrite != null && j < Math.min(lengths[i], toWrite.length); j++) {
+                    buffer.putInt(toWrite[j]);
+                }
+            } else if (types[i] == short[].class) {
+                short[] toWrite = (short[]) value;
+                for (int j = 0; toWrite != null && j < Math.min(lengths[i], toWrite.length); j++) {
+                    buffer.putShort(toWrite[j]);
+                }
+            } else if (types[i] == long[].class) {
+                long[] toWrite = (long[]) value;
+                for (int j = 0; toWrite != null && j < Math.min(lengths[i], toWrite.length); j++) {
+                    putLong(buffer, toWrite[j]);
+                }
+            } else if (types[i] == byte[].class) {
+                byte[] toWrite = (byte[]) value;
+                if (toWrite != null) {
+                    buffer.put(toWrite, 0, Math.min(lengths[i], toWrite.length));
+                }
+            } else if (types[i] == float[].class) {
+                float[] toWrite = (float[]) value;
+                for (int j = 0; toWrite != null && j < Math.min(lengths[i], toWrite.length); j++) {
+                    buffer.putFloat(toWrite[j]);
+                }
+            } else if (types[i] == double[].class) {
+                double[] toWrite = (double[]) value;
+                for (int j = 0; toWrite != null && j < Math.min(lengths[i], toWrite.length); j++) {
+                    buffer.putDouble(toWrite[j]);
+                }
+            } else if (types[i] == byte[][].class) {
+                byte[][] toWrite = (byte[][]) value;
+                for (int k = 0; toWrite != null && k < Math.min(counts[i], toWrite.length); k++) {
+                    buffer.position(offsets[i] + k * lengths[i]);
+                    if (toWrite[k] != null) {
+                        buffer.put(toWrite[k], 0, Math.min(lengths[i], toWrite[k].length));
+                    }
+                }
+            } else {
+                if (TransactionImpl.current() != null) {
+                    try {
+                        TransactionImpl.current().rollback_only();
+                    } catch (TransactionException e) {
+                        throw new ConnectionException(ConnectionImpl.TPESYSTEM,
+                                "Could not mark transaction for rollback only");
+                    }
+                }
+                throw new ConnectionException(ConnectionImpl.TPEOTYPE, "Could not serialize: " + types[i]);
+            }
+        } catch (ClassCastException e) {
+            throw new ConnectionException(ConnectionImpl.TPEOTYPE, "Could not parse the value as: " + keys[i]
+                    + " was not a " + types[i] + " and even if it was an array of that type its length was not: "
+                    + lengths[i]);
+        }
     }
 
     /**
-     * Read a byte during deserialization.
+     * Read an attribute from the received data.
      * 
-     * @param dis The input stream to read from
-     * @return The byte
-     * @throws IOException In case the stream cannot be read.
-     */
-    private byte readByte(DataInputStream dis) throws IOException {
-        currentPos += 1;
-
-        byte x = dis.readByte();
-        ByteBuffer bbuf = ByteBuffer.allocate(BYTE_SIZE);
-        //bbuf.order(ByteOrder.LITTLE_ENDIAN);
-        bbuf.put(x);
-        //bbuf.order(ByteOrder.BIG_ENDIAN);
-        return bbuf.get(0);
+     * @param i The attribute to read
+     * @return The value
+     * @throws ConnectionException In case the type cannot be deserialized
+     */
+    private Object decode(int i) throws ConnectionException {
+        if (receivedView == null) {
+            receivedView = ByteBuffer.wrap(received);
+        }
+        ByteBuffer buffer = receivedView;
+        buffer.position(offsets[i]);
+
+        if (types[i] == int.class) {
+            return buffer.getInt();
+        } else if (types[i] == short.class) {
+            return buffer.getShort();
+        } else if (types[i] == long.class) {
+            return getLong(buffer);
+        } else if (types[i] == byte.class) {
+            return buffer.get();
+        } else if (types[i] == float.class) {
+            return buffer.getFloat();
+        } else if (types[i] == double.class) {
+            return buffer.getDouble();
+        } else if (types[i] == int[].class) {
+            int[] toRead = new int[lengths[i]];
+            buffer.asIntBuffer().get(toRead);
+            return toRead;
+        } else if (types[i] == short[].class) {
+            short[] toRead = new short[lengths[i]];
+            buffer.asShortBuffer().get(toRead);
+            return toRead;
+        } else if (types[i] == long[].class) {
+            long[] toRead = new long[lengths[i]];
+            for (int j = 0; j < lengths[i]; j++) {
+                toRead[j] = getLong(buffer);
+            }
+            return toRead;
+        } else if (types[i] == byte[].class) {
+            byte[] toRead = new byte[lengths[i]];
+            buffer.get(toRead);
+            return toRead;
+        } else if (types[i] == float[].class) {
+            float[] toRead = new float[lengths[i]];
+            buffer.asFloatBuffer().get(toRead);
+            return toRead;
+        } else if (types[i] == double[].class) {
+            double[] toRead = new double[lengths[i]];
+            buffer.asDoubleBuffer().get(toRead);
+            return toRead;
+        } else if (types[i] == byte[][].class) {
+            byte[][] toRead = new byte[counts[i]][lengths[i]];
+            for (int k = 0; k < counts[i]; k++) {
+                buffer.get(toRead[k]);
+            }
+            return toRead;
+        } else {
+            throw new ConnectionException(ConnectionImpl.TPEITYPE, "Could not deserialize: " + types[i]);
+        }
     }
 
-    private void writeLong(DataOutputStream dos, long x) throws IOException {
-        ByteBuffer bbuf = ByteBuffer.allocate(LONG_SIZE);
-        //bbuf.order(ByteOrder.LITTLE_ENDIAN);
-        bbuf.putLong(x);
-        //bbuf.order(ByteOrder.LITTLE_ENDIAN);
-        //long toWrite = bbuf.getLong(0);    
-        //bbuf.order(ByteOrder.BIG_ENDIAN);
-        
-        byte[] data = new byte[8];
-        Arrays.fill(data, (byte)0);
-        System.arraycopy(bbuf.array(), 4, data, 0, 4);
-        
-        //dos.write(bbuf.array(), 4, 4);
-        dos.write(data);
-        currentPos += LONG_SIZE;
+    /**
+     * Only the low 32 bits of a long go on the wire, followed by four bytes of
+     * padding.
+     */
+    private static void putLong(ByteBuffer buffer, long x) {
+        buffer.putInt((int) x);
+        buffer.putInt(0);
     }
 
-    private long readLong(DataInputStream dis) throws IOException {
-        currentPos += LONG_SIZE;
-        //long x = dis.readLong();
-         
-        ByteBuffer bbuf = ByteBuffer.allocate(LONG_SIZE);
-        //bbuf.order(ByteOrder.LITTLE_ENDIAN);
-        byte[] data = new byte[8];
-        Arrays.fill(data, (byte)0);
-        
-        dis.read(data, 4, 4);
-        //bbuf.order(ByteOrder.BIG_ENDIAN);
-        bbuf.put(data);
-        long x = bbuf.getLong(0);
-        //read the next 4 bytes
-        dis.read(data, 0, 4);
+    private static long getLong(ByteBuffer buffer) {
+        long x = buffer.getInt() & 0xFFFFFFFFL;
+        buffer.getInt();
         return x;
     }
 
-    private void writeInt(DataOutputStream dos, int x) throws IOException {
-        ByteBuffer bbuf = ByteBuffer.allocate(INT_SIZE);
-        //bbuf.order(ByteOrder.BIG_ENDIAN);
-        bbuf.putInt(x);
-        //bbuf.order(ByteOrder.LITTLE_ENDIAN);
-        int toWrite = bbuf.getInt(0);
-        dos.writeInt(toWrite);
-        currentPos += INT_SIZE;
-    }
-
-    private int readInt(DataInputStream dis) throws IOException {
-        currentPos += INT_SIZE;
-        int x = dis.readInt();
-        ByteBuffer bbuf = ByteBuffer.allocate(INT_SIZE);
-        //bbuf.order(ByteOrder.LITTLE_ENDIAN);
-        bbuf.putInt(x);
-        //bbuf.order(ByteOrder.BIG_ENDIAN);
-        return bbuf.getInt(0);
-    }
-
-    private void writeShort(DataOutputStream dos, short x) throws IOException {
-        ByteBuffer bbuf = ByteBuffer.allocate(SHORT_SIZE);
-        //bbuf.order(ByteOrder.BIG_ENDIAN);
-        bbuf.putShort(x);
-        //bbuf.order(ByteOrder.LITTLE_ENDIAN);
-        short toWrite = bbuf.getShort(0);
-        dos.writeShort(toWrite);
-
-        currentPos += SHORT_SIZE;
-    }
-
-    private short readShort(DataInputStream dis) throws IOException {
-        currentPos += SHORT_SIZE;
-        short x = dis.readShort();
-        ByteBuffer bbuf = ByteBuffer.allocate(SHORT_SIZE);
-        //bbuf.order(ByteOrder.LITTLE_ENDIAN);
-        bbuf.putShort(x);
-        //bbuf.order(ByteOrder.BIG_ENDIAN);
-        return bbuf.getShort(0);
-    }
-
-    private void writeFloat(DataOutputStream dos, float x) throws IOException {
-        ByteBuffer bbuf = ByteBuffer.allocate(FLOAT_SIZE);
-        //bbuf.order(ByteOrder.BIG_ENDIAN);
-        bbuf.putFloat(x);
-        //bbuf.order(ByteOrder.LITTLE_ENDIAN);
-        float toWrite = bbuf.getFloat(0);
-        dos.writeFloat(toWrite);
-
-        currentPos += FLOAT_SIZE;
-    }
-
-    private float readFloat(DataInputStream dis) throws IOException {
-        currentPos += FLOAT_SIZE;
-        float x = dis.readFloat();
-        ByteBuffer bbuf = ByteBuffer.allocate(FLOAT_SIZE);
-        //bbuf.order(ByteOrder.LITTLE_ENDIAN);
-        bbuf.putFloat(x);
-        //bbuf.order(ByteOrder.BIG_ENDIAN);
-        return bbuf.getFloat(0);
-    }
-
-    private void writeDouble(DataOutputStream dos, double x) throws IOException {
-        ByteBuffer bbuf = ByteBuffer.allocate(DOUBLE_SIZE);
-        //bbuf.order(ByteOrder.BIG_ENDIAN);
-        bbuf.putDouble(x);
-        //bbuf.order(ByteOrder.LITTLE_ENDIAN);
-        double toWrite = bbuf.getDouble(0);
-        dos.writeDouble(toWrite);
-
-        currentPos += DOUBLE_SIZE;
-    }
-
-    private double readDouble(DataInputStream dis) throws IOException {
-        currentPos += DOUBLE_SIZE;
-        double x = dis.readDouble();
-        ByteBuffer bbuf = ByteBuffer.allocate(DOUBLE_SIZE);
-        //bbuf.order(ByteOrder.LITTLE_ENDIAN);
-        bbuf.putDouble(x);
-        //bbuf.order(ByteOrder.BIG_ENDIAN);
-        return bbuf.getDouble(0);
+    /**
+     * The number of bytes an attribute takes on the wire.
+     * 
+     * @param i The attribute
+     * @return The size
+     */
+    private int wireSize(int i) {
+        Class type = types[i];
+        if (type == byte.class) {
+            return BYTE_SIZE;
+        } else if (type == short.class) {
+            return SHORT_SIZE;
+        } else if (type == int.class) {
+            return INT_SIZE;
+        } else if (type == long.class) {
+            return LONG_SIZE;
+        } else if (type == float.class) {
+            return FLOAT_SIZE;
+        } else if (type == double.class) {
+            return DOUBLE_SIZE;
+        } else if (type == byte[].class) {
+            return BYTE_SIZE * lengths[i];
+        } else if (type == short[].class) {
+            return SHORT_SIZE * lengths[i];
+        } else if (type == int[].class) {
+            return INT_SIZE * lengths[i];
+        } else if (type == long[].class) {
+            return LONG_SIZE * lengths[i];
+        } else if (type == float[].class) {
+            return FLOAT_SIZE * lengths[i];
+        } else if (type == double[].class) {
+            return DOUBLE_SIZE * lengths[i];
+        } else if (type == byte[][].class) {
+            return BYTE_SIZE * lengths[i] * counts[i];
+        } else {
+            return 0;
+        }
     }
 
     /**
@@ -685,6 +557,8 @@ public abstract class BufferImpl implements Serializable, Buffer {
     public void clear() {
         structure.clear();
         data = null;
+        received = null;
+        receivedView = null;
     }
 
     /**
@@ -699,18 +573,16 @@ public abstract class BufferImpl implements Serializable, Buffer {
         if (!formatted) {
             throw new ConnectionException(ConnectionImpl.TPEPROTO, "Message not formatted");
         }
-        int position = -1;
-        for (int i = 0; i < keys.length; i++) {
-            if (keys[i].equals(key)) {
-                position = i;
-            }
-        }
-        if (position == -1) {
+        Integer position = positions.get(key);
+        if (position == null) {
             throw new ConnectionException(ConnectionImpl.TPEITYPE, "Key is not part of the structure: " + key);
         } else if (types[position] != type) {
             throw new ConnectionException(ConnectionImpl.TPEITYPE, "Key is not request type, it is a: " + types[position]);
 
         }
+        if (received != null && !structure.containsKey(key)) {
+            structure.put(key, decode(position));
+        }
         return structure.get(key);
     }
 
@@ -726,13 +598,8 @@ public abstract class BufferImpl implements Serializable, Buffer {
         if (!formatted) {
             throw new ConnectionException(ConnectionImpl.TPEPROTO, "Message not formatted");
         }
-        int position = -1;
-        for (int i = 0; i < keys.length; i++) {
-            if (keys[i].equals(key)) {
-                position = i;
-            }
-        }
-        if (position == -1) {
+        Integer position = positions.get(key);
+        if (position == null) {
             throw new ConnectionException(ConnectionImpl.TPEITYPE, "Key is not part of the structure: " + key);
         } else if (types[position] != type) {
             throw new ConnectionException(ConnectionImpl.TPEITYPE, "Key is not request type, it is a: " + types[position]);
@@ -27,10 +27,18 @@ import static org.junit.Assert.*;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
+import org.jboss.narayana.blacktie.jatmibroker.core.ResponseMonitor;
 import org.jboss.narayana.blacktie.jatmibroker.core.transport.Message;
 import org.junit.After;
 import org.junit.Before;
@@ -100,6 +108,168 @@ public class TestSocketServer {
         server.unregister(1);
     }
 
+    /**
+     * Many connections are served by the few I/O threads.
+     */
+    @Test
+    public void testManyConnections() throws Exception {
+        int count = 50;
+        Socket[] sockets = new Socket[count];
+        for (int i = 0; i < count; i++) {
+            server.register(100 + i, null, null);
+            sockets[i] = new Socket("localhost", port);
+        }
+        for (int i = 0; i < count; i++) {
+            byte[] toSend = String.valueOf(i).getBytes();
+            send(new DataOutputStream(sockets[i].getOutputStream()), 100 + i, i, 0, toSend, 0, 0, "(null)", "X_OCTET", "(null)");
+        }
+        for (int i = 0; i < count; i++) {
+            Message msg = server.receiveMessage(100 + i, 5000);
+            assertNotNull(msg);
+            assertEquals(i, msg.cd);
+            assertEquals(String.valueOf(i), new String(msg.data));
+            assertNotNull(server.getClientChannel(100 + i));
+            sockets[i].close();
+            server.unregister(100 + i);
+        }
+    }
+
+    /**
+     * Frames may be split across reads, or be bigger than the read buffer.
+     */
+    @Test
+    public void testPartialAndLargeFrames() throws Exception {
+        server.register(2, null, null);
+        Socket socket = new Socket("localhost", port);
+        socket.setTcpNoDelay(true);
+
+        byte[] small = "split".getBytes();
+        byte[] frame = frame(2, 7, small, "X_OCTET");
+        for (int i = 0; i < frame.length; i++) {
+            socket.getOutputStream().write(frame[i]);
+            socket.getOutputStream().flush();
+        }
+
+        byte[] large = new byte[200 * 1024];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = (byte) i;
+        }
+        socket.getOutputStream().write(frame(2, 8, large, "X_OCTET"));
+
+        Message msg = server.receiveMessage(2, 5000);
+        assertNotNull(msg);
+        assertEquals(7, msg.cd);
+        assertEquals("split", new String(msg.data));
+
+        msg = server.receiveMessage(2, 5000);
+        assertNotNull(msg);
+        assertEquals(8, msg.cd);
+        assertArrayEquals(large, msg.data);
+
+        socket.close();
+        server.unregister(2);
+    }
+
+    /**
+     * A failing callback is logged, the message is still queued and the
+     * connection stays open.
+     */
+    @Test
+    public void testFailingCallback() throws Exception {
+        server.register(3, new ResponseMonitor() {
+            public void responseReceived(int sessionId, boolean remove) {
+                throw new IllegalStateException("failed for " + sessionId);
+            }
+        }, null);
+
+        Socket socket = new Socket("localhost", port);
+        DataOutputStream outs = new DataOutputStream(socket.getOutputStream());
+        byte[] toSend = "data".getBytes();
+
+        send(outs, 3, 0, 0, toSend, 0, 0, "(null)", "X_OCTET", "(null)");
+        send(outs, 3, 1, 0, toSend, 0, 0, "(null)", "X_OCTET", "(null)");
+        Message msg = server.receiveMessage(3, 5000);
+        assertNotNull(msg);
+        assertEquals(0, msg.cd);
+        msg = server.receiveMessage(3, 5000);
+        assertNotNull(msg);
+        assertEquals(1, msg.cd);
+
+        socket.close();
+        server.unregister(3);
+    }
+
+    /**
+     * Callbacks run on a worker in the order the messages arrived, so a slow
+     * one does not hold up the other sids served by the same I/O thread.
+     */
+    @Test
+    public void testCallbacksOffIoThread() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger callbacks = new AtomicInteger();
+        final List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+        server.register(5, new ResponseMonitor() {
+            public void responseReceived(int sessionId, boolean remove) {
+                threads.add(Thread.currentThread().getName());
+                callbacks.incrementAndGet();
+                blocked.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, null);
+        server.register(6, null, null);
+
+        Socket socket = new Socket("localhost", port);
+        DataOutputStream outs = new DataOutputStream(socket.getOutputStream());
+        byte[] toSend = "data".getBytes();
+        for (int i = 0; i < 3; i++) {
+            send(outs, 5, i, 0, toSend, 0, 0, "(null)", "X_OCTET", "(null)");
+        }
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        // the same connection, so the same I/O thread, while the callback blocks
+        send(outs, 6, 9, 0, toSend, 0, 0, "(null)", "X_OCTET", "(null)");
+        Message msg = server.receiveMessage(6, 5000);
+        assertNotNull(msg);
+        assertEquals(9, msg.cd);
+
+        release.countDown();
+        for (int i = 0; i < 3; i++) {
+            msg = server.receiveMessage(5, 5000);
+            assertNotNull(msg);
+            assertEquals(i, msg.cd);
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (callbacks.get() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(3, callbacks.get());
+        for (String thread : threads) {
+            assertFalse(thread, thread.startsWith("SocketServer I/O"));
+        }
+
+        socket.close();
+        server.unregister(5);
+        server.unregister(6);
+    }
+
+    private byte[] frame(int sid, int correlationId, byte[] toSend, String type) {
+        StringBuffer buffer = new StringBuffer();
+        buffer.append(sid).append("\n").append(correlationId).append("\n").append(0).append("\n").
+        append(toSend.length).append("\n").append(0).append("\n").
+        append(0).append("\n").append("(null)").append("\n").
+        append(type).append("\n").append("(null)").append("\n");
+        byte[] header = buffer.toString().getBytes();
+
+        ByteBuffer frame = ByteBuffer.allocate(4 + header.length + toSend.length);
+        frame.putInt(header.length + toSend.length).put(header).put(toSend);
+        return frame.array();
+    }
+
     private void send(DataOutputStream outs, int sid, int correlationId, int rcode, byte[] toSend, int flags, int rval, String toReplyTo, String type, String subtype) throws IOException {
         StringBuffer buffer = new StringBuffer();
         buffer.append(sid).append("\n").append(correlationId).append("\n").append(rcode).append("\n").
@@ -0,0 +1,97 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.narayana.blacktie.jatmibroker.core.transport.hybrid;
+
+import static org.junit.Assert.*;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Properties;
+
+import org.jboss.narayana.blacktie.jatmibroker.core.server.ClientChannel;
+import org.jboss.narayana.blacktie.jatmibroker.core.server.SocketServer;
+import org.jboss.narayana.blacktie.jatmibroker.xatmi.Connection;
+import org.jboss.narayana.blacktie.jatmibroker.xatmi.ConnectionException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestSocketSenderImpl {
+    private SocketServer server;
+    private ServerSocket peer;
+
+    @Before
+    public void setUp() throws Exception {
+        Properties prop = new Properties();
+        prop.setProperty("blacktie.java.socketserver.port", "0");
+        server = SocketServer.getInstance(prop);
+        peer = new ServerSocket(0);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        peer.close();
+        SocketServer.discardInstance();
+    }
+
+    /**
+     * The service side may close the connection at any time, which is not an
+     * error for the sender.
+     */
+    @Test
+    public void testSendAfterPeerClosed() throws Exception {
+        ClientChannel channel = server.connect("localhost", peer.getLocalPort(), null);
+        Socket accepted = peer.accept();
+        SocketSenderImpl sender = new SocketSenderImpl(channel, "localhost:" + peer.getLocalPort() + ":1");
+
+        sender.send(null, (short) 0, 0, "before".getBytes(), 6, 0, 0, 0, "X_OCTET", null);
+        accepted.close();
+
+        for (int i = 0; i < 10; i++) {
+            sender.send(null, (short) 0, 0, "after".getBytes(), 5, 0, 0, 0, "X_OCTET", null);
+            Thread.sleep(50);
+        }
+    }
+
+    /**
+     * Sending once the output has been shut down is a protocol error.
+     */
+    @Test
+    public void testSendAfterShutdown() throws Exception {
+        ClientChannel channel = server.connect("localhost", peer.getLocalPort(), null);
+        Socket accepted = peer.accept();
+        SocketSenderImpl sender = new SocketSenderImpl(channel, "localhost:" + peer.getLocalPort() + ":1");
+
+        channel.shutdownOutput();
+
+        try {
+            sender.send(null, (short) 0, 0, "data".getBytes(), 4, 0, 0, 0, "X_OCTET", null);
+            fail("send should have failed");
+        } catch (ConnectionException e) {
+            assertEquals(Connection.TPEPROTO, e.getTperrno());
+        }
+
+        accepted.close();
+        channel.close();
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2018, Red Hat, Inc., and others contributors as indicated
+ * by the @authors tag. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+package org.jboss.narayana.blacktie.jatmibroker.xatmi.impl;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.jboss.narayana.blacktie.jatmibroker.core.conf.ConfigurationException;
+import org.jboss.narayana.blacktie.jatmibroker.xatmi.ConnectionException;
+
+/**
+ * Round trips the all_types buffer from btconfig.xml through serialize and deserialize.
+ */
+public class TestBufferSerialization extends TestCase {
+    private static final Logger log = LogManager.getLogger(TestBufferSerialization.class);
+
+    /**
+     * The wire offsets of the attributes of the all_types buffer.
+     */
+    private static final int CHAR = 0;
+    private static final int SHORT = CHAR + 1;
+    private static final int INT = SHORT + 2;
+    private static final int LONG = INT + 4;
+    private static final int FLOAT = LONG + 8;
+    private static final int DOUBLE = FLOAT + 4;
+    private static final int CHARS = DOUBLE + 8;
+    private static final int SHORTS = CHARS + 5;
+    private static final int INTS = SHORTS + 3 * 2;
+    private static final int LONGS = INTS + 3 * 4;
+    private static final int FLOATS = LONGS + 3 * 8;
+    private static final int DOUBLES = FLOATS + 2 * 4;
+    private static final int STRINGS = DOUBLES + 2 * 8;
+    private static final int WIRE_SIZE = STRINGS + 3 * 4;
+
+    private X_C_TYPE_Impl populated() throws ConnectionException, ConfigurationException {
+        X_C_TYPE_Impl buffer = new X_C_TYPE_Impl("all_types");
+        buffer.setByte("char", (byte) 'x');
+        buffer.setShort("short", (short) -2);
+        buffer.setInt("int", 0x01020304);
+        buffer.setLong("long", 0xFFFFFFFEL);
+        buffer.setFloat("float", 1.5f);
+        buffer.setDouble("double", -2.25);
+        buffer.setByteArray("chars", "abcde".getBytes());
+        buffer.setShortArray("shorts", new short[] { 1, -1, Short.MAX_VALUE });
+        buffer.setIntArray("ints", new int[] { 7, Integer.MIN_VALUE, 9 });
+        buffer.setLongArray("longs", new long[] { 0, 1, 0xFFFFFFFFL });
+        buffer.setFloatArray("floats", new float[] { 0.5f, -0.25f });
+        buffer.setDoubleArray("doubles", new double[] { 1e10, -1e-10 });
+        buffer.setByteArrayArray("strings", new byte[][] { "one".getBytes(), "two".getBytes(), "six!".getBytes() });
+        return buffer;
+    }
+
+    private X_C_TYPE_Impl received(byte[] data) throws ConnectionException, ConfigurationException {
+        X_C_TYPE_Impl buffer = new X_C_TYPE_Impl("all_types");
+        buffer.deserialize(data);
+        return buffer;
+    }
+
+    public void test_round_trip_every_type() throws ConnectionException, ConfigurationException {
+        log.info("test_round_trip_every_type");
+        byte[] data = populated().serialize();
+        assertEquals(WIRE_SIZE, data.length);
+
+        X_C_TYPE_Impl buffer = received(data);
+        assertEquals((byte) 'x', buffer.getByte("char"));
+        assertEquals((short) -2, buffer.getShort("short"));
+        assertEquals(0x01020304, buffer.getInt("int"));
+        assertEquals(0xFFFFFFFEL, buffer.getLong("long"));
+        assertEquals(1.5f, buffer.getFloat("float"));
+        assertEquals(-2.25, buffer.getDouble("double"));
+        assertTrue(Arrays.equals("abcde".getBytes(), buffer.getByteArray("chars")));
+        assertTrue(Arrays.equals(new short[] { 1, -1, Short.MAX_VALUE }, buffer.getShortArray("shorts")));
+        assertTrue(Arrays.equals(new int[] { 7, Integer.MIN_VALUE, 9 }, buffer.getIntArray("ints")));
+        assertTrue(Arrays.equals(new long[] { 0, 1, 0xFFFFFFFFL }, buffer.getLongArray("longs")));
+        assertTrue(Arrays.equals(new float[] { 0.5f, -0.25f }, buffer.getFloatArray("floats")));
+        assertTrue(Arrays.equals(new double[] { 1e10, -1e-10 }, buffer.getDoubleArray("doubles")));
+        byte[][] strings = buffer.getByteArrayArray("strings");
+        assertEquals(3, strings.length);
+        assertTrue(Arrays.equals("one\0".getBytes(), strings[0]));
+        assertTrue(Arrays.equals("two\0".getBytes(), strings[1]));
+        assertTrue(Arrays.equals("six!".getBytes(), strings[2]));
+
+        // decoding every attribute and serializing again gives back the same bytes
+        assertTrue(Arrays.equals(data, buffer.serialize()));
+    }
+
+    public void test_wire_layout() throws ConnectionException, ConfigurationException {
+        log.info("test_wire_layout");
+        ByteBuffer data = ByteBuffer.wrap(populated().serialize());
+
+        // big-endian, each attribute straight after the previous one
+        assertEquals((byte) 'x', data.get(CHAR));
+        assertEquals((short) -2, data.getShort(SHORT));
+        assertEquals(0x01020304, data.getInt(INT));
+        assertEquals(1.5f, data.getFloat(FLOAT));
+        assertEquals(-2.25, data.getDouble(DOUBLE));
+        assertEquals(Short.MAX_VALUE, data.getShort(SHORTS + 2 * 2));
+        assertEquals(9, data.getInt(INTS + 2 * 4));
+        assertEquals(-0.25f, data.getFloat(FLOATS + 4));
+        assertEquals(-1e-10, data.getDouble(DOUBLES + 8));
+        assertEquals((byte) 't', data.get(STRINGS + 4));
+
+        // a long is its low 32 bits followed by four bytes of padding
+        assertEquals(0xFFFFFFFE, data.getInt(LONG));
+        assertEquals(0, data.getInt(LONG + 4));
+        assertEquals(0xFFFFFFFF, data.getInt(LONGS + 2 * 8));
+        assertEquals(0, data.getInt(LONGS + 2 * 8 + 4));
+    }
+
+    public void test_short_arrays_are_padded() throws ConnectionException, ConfigurationException {
+        log.info("test_short_arrays_are_padded");
+        X_C_TYPE_Impl buffer = new X_C_TYPE_Impl("all_types");
+        buffer.setByteArray("chars", "ab".getBytes());
+        buffer.setIntArray("ints", new int[] { 5 });
+        buffer.setLongArray("longs", new long[] { 6 });
+        buffer.setDoubleArray("doubles", new double[] { 0.5 });
+        buffer.setByteArrayArray("strings", new byte[][] { "a".getBytes(), null });
+        byte[] data = buffer.serialize();
+        assertEquals(WIRE_SIZE, data.length);
+
+        X_C_TYPE_Impl read = received(data);
+        assertTrue(Arrays.equals("ab\0\0\0".getBytes(), read.getByteArray("chars")));
+        assertTrue(Arrays.equals(new int[] { 5, 0, 0 }, read.getIntArray("ints")));
+        assertTrue(Arrays.equals(new long[] { 6, 0, 0 }, read.getLongArray("longs")));
+        assertTrue(Arrays.equals(new double[] { 0.5, 0 }, read.getDoubleArray("doubles")));
+        byte[][] strings = read.getByteArrayArray("strings");
+        assertTrue(Arrays.equals("a\0\0\0".getBytes(), strings[0]));
+        assertTrue(Arrays.equals(new byte[4], strings[1]));
+        assertTrue(Arrays.equals(new byte[4], strings[2]));
+
+        // anything never set goes on the wire as zero
+        assertEquals(0, read.getShort("short"));
+        assertEquals(0, read.getLong("long"));
+        assertTrue(Arrays.equals(new float[2], read.getFloatArray("floats")));
+    }
+
+    public void test_long_arrays_are_truncated() throws ConnectionException, ConfigurationException {
+        log.info("test_long_arrays_are_truncated");
+        X_C_TYPE_Impl buffer = new X_C_TYPE_Impl("all_types");
+        buffer.setByteArray("chars", "abcdefgh".getBytes());
+        buffer.setShortArray("shorts", new short[] { 1, 2, 3, 4 });
+        byte[] data = buffer.serialize();
+        assertEquals(WIRE_SIZE, data.length);
+
+        X_C_TYPE_Impl read = received(data);
+        assertTrue(Arrays.equals("abcde".getBytes(), read.getByteArray("chars")));
+        assertTrue(Arrays.equals(new short[] { 1, 2, 3 }, read.getShortArray("shorts")));
+        assertEquals(0, read.getInt("int"));
+    }
+
+    public void test_partial_decode_then_serialize() throws ConnectionException, ConfigurationException {
+        log.info("test_partial_decode_then_serialize");
+        byte[] data = populated().serialize();
+        byte[] original = data.clone();
+
+        X_C_TYPE_Impl buffer = received(data);
+        assertEquals(0x01020304, buffer.getInt("int"));
+        buffer.setShort("short", (short) 12);
+        buffer.setLongArray("longs", new long[] { 3 });
+        byte[] reserialized = buffer.serialize();
+        assertEquals(WIRE_SIZE, reserialized.length);
+        // the received data is left as it was
+        assertTrue(Arrays.equals(original, data));
+
+        // only the attributes which were set have changed
+        ByteBuffer expected = ByteBuffer.wrap(original.clone());
+        expected.putShort(SHORT, (short) 12);
+        expected.position(LONGS);
+        expected.putInt(3).putInt(0).putLong(0).putLong(0);
+        assertTrue(Arrays.equals(expected.array(), reserialized));
+
+        X_C_TYPE_Impl read = received(reserialized);
+        assertEquals((short) 12, read.getShort("short"));
+        assertTrue(Arrays.equals(new long[] { 3, 0, 0 }, read.getLongArray("longs")));
+        assertEquals(0xFFFFFFFEL, read.getLong("long"));
+        assertTrue(Arrays.equals("six!".getBytes(), read.getByteArrayArray("strings")[2]));
+    }
+
+    public void test_clear_after_deserialize() throws ConnectionException, ConfigurationException {
+        log.info("test_clear_after_deserialize");
+        X_C_TYPE_Impl buffer = received(populated().serialize());
+        buffer.clear();
+        assertTrue(Arrays.equals(new byte[WIRE_SIZE], buffer.serialize()));
+    }
+
+    public void test_deserialize_too_short() throws ConnectionException, ConfigurationException {
+        log.info("test_deserialize_too_short");
+        X_C_TYPE_Impl buffer = new X_C_TYPE_Impl("all_types");
+        try {
+            buffer.deserialize(new byte[WIRE_SIZE - 1]);
+            fail("Should not have been able to parse the data");
+        } catch (ConnectionException e) {
+            assertEquals(ConnectionImpl.TPEITYPE, e.getTperrno());
+        }
+    }
+}
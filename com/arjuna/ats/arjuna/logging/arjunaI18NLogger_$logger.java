@@ -2579,4 +2579,36 @@ public class arjunaI18NLogger_$logger implements arjunaI18NLogger,Serializable {
     public final String init_StoreManager_instantiate_class_failure(final String name, final String type) {
         return java.text.MessageFormat.format(init_StoreManager_instantiate_class_failure$str(), name, type);
     }
+    @Override
+    public final void warn_objectstore_ShardedStore_1(final String arg0) {
+        log.logv(FQCN, org.jboss.logging.Logger.Level.WARN, null, warn_objectstore_ShardedStore_1$str(), arg0);
+    }
+    private static final String warn_objectstore_ShardedStore_1 = "ARJUNA012392: invalid number of sharded directories: {0}. Will use default.";
+    protected String warn_objectstore_ShardedStore_1$str() {
+        return warn_objectstore_ShardedStore_1;
+    }
+    private static final String get_objectstore_ShardedStore_2 = "ARJUNA012393: ShardedStore could not create shard directory {0}";
+    protected String get_objectstore_ShardedStore_2$str() {
+        return get_objectstore_ShardedStore_2;
+    }
+    @Override
+    public final String get_objectstore_ShardedStore_2(final String arg0) {
+        return java.text.MessageFormat.format(get_objectstore_ShardedStore_2$str(), arg0);
+    }
+    private static final String get_objectstore_ShardedStore_3 = "ARJUNA012394: ShardedStore.allObjUids - could not pack Uid.";
+    protected String get_objectstore_ShardedStore_3$str() {
+        return get_objectstore_ShardedStore_3;
+    }
+    @Override
+    public final String get_objectstore_ShardedStore_3() {
+        return get_objectstore_ShardedStore_3$str();
+    }
+    private static final String get_objectstore_ShardedStore_4 = "ARJUNA012395: ShardedStore.allTypes - could not pack type name.";
+    protected String get_objectstore_ShardedStore_4$str() {
+        return get_objectstore_ShardedStore_4;
+    }
+    @Override
+    public final String get_objectstore_ShardedStore_4() {
+        return get_objectstore_ShardedStore_4$str();
+    }
 }
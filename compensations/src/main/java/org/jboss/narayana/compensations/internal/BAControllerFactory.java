@@ -9,6 +9,13 @@ import org.jboss.narayana.compensations.internal.remote.RemoteBAController;
  */
 public class BAControllerFactory {
 
+    private static final BAController LOCAL_BA_CONTROLLER = new LocalBAController();
+
+    /**
+     * The protocol manager synchronises every initialise call, so only go there until it has been done once.
+     */
+    private static volatile boolean localProtocolsInitialised;
+
     public static BAController getInstance() {
 
         BAController remoteBAController = getRemoteInstance();
@@ -29,8 +36,11 @@ public class BAControllerFactory {
 
     public static BAController getLocalInstance() {
 
-        ProtocolRegistry.sharedManager().initialise();
-        return new LocalBAController();
+        if (!localProtocolsInitialised) {
+            ProtocolRegistry.sharedManager().initialise();
+            localProtocolsInitialised = true;
+        }
+        return LOCAL_BA_CONTROLLER;
     }
 
     public static boolean isLocalTransactionRunning() {
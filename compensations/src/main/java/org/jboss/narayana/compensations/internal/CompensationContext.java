@@ -32,12 +32,17 @@ import javax.enterprise.context.spi.Contextual;
 import javax.enterprise.context.spi.CreationalContext;
 import javax.enterprise.inject.spi.PassivationCapable;
 import java.lang.annotation.Annotation;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class CompensationContext implements Context {
 
-    private static final Map<Object, Map<String, Object>> beanStorePerTransaction = new HashMap<Object, Map<String, Object>>();
+    /**
+     * Bean instances per transaction. Entries are evicted by {@link #transactionEnded(Object)} when the transaction ends,
+     * or by {@link #close(Object)} once the last participant of the transaction has completed if that is later.
+     */
+    private static final ConcurrentMap<Object, Map<String, Object>> beanStorePerTransaction = new ConcurrentHashMap<>();
 
     private static ThreadLocal<Object> txContextToExtend = new ThreadLocal<Object>();
 
@@ -57,14 +62,19 @@ public class CompensationContext implements Context {
         }
 
         PassivationCapable bean = (PassivationCapable) contextual;
-        Map beans = getBeansForThisTransaction();
+        Map<String, Object> beans = getBeansForThisTransaction();
         Object resource = beans.get(bean.getId());
 
         if (resource != null) {
             return (T) resource;
         } else if (creationalContext != null) {
+            // Create outside of the map, the bean may itself depend on other compensation scoped beans
             T t = contextual.create(creationalContext);
-            beans.put(bean.getId(), t);
+            Object existing = beans.putIfAbsent(bean.getId(), t);
+            if (existing != null) {
+                contextual.destroy(t, creationalContext);
+                return (T) existing;
+            }
             return t;
         } else {
             return null;
@@ -76,23 +86,25 @@ public class CompensationContext implements Context {
         return get(contextual, null);
     }
 
-    private Map getBeansForThisTransaction() {
+    private Map<String, Object> getBeansForThisTransaction() {
 
-        try {
+        Object currentTX = txContextToExtend.get();
 
-            Object currentTX = txContextToExtend.get();
-            if (currentTX == null) {
+        if (currentTX == null) {
+            try {
                 currentTX = BAControllerFactory.getInstance().getCurrentTransaction();
+            } catch (Exception e) {
+                throw new CompensationTransactionRuntimeException("Error looking up Transaction", e);
             }
 
-            if (beanStorePerTransaction.get(currentTX) == null) {
-                beanStorePerTransaction.put(currentTX, new HashMap<String, Object>());
+            // The transaction ended after isActive() was checked. Beans are no longer shared under a null transaction,
+            // which the old HashMap store allowed.
+            if (currentTX == null) {
+                throw new ContextNotActiveException();
             }
-            return beanStorePerTransaction.get(currentTX);
-
-        } catch (Exception e) {
-            throw new CompensationTransactionRuntimeException("Error looking up Transaction", e);
         }
+
+        return beanStorePerTransaction.computeIfAbsent(currentTX, tx -> new ConcurrentHashMap<>());
     }
 
     public boolean isActive() {
@@ -114,6 +126,20 @@ public class CompensationContext implements Context {
         txContextToExtend.set(currentTX);
     }
 
+    /**
+     * Garbage collect the beans of a transaction which has ended, unless any of its participants have still to complete.
+     * The handlers of those participants may use the beans, so the last of them to complete calls {@link #close(Object)}
+     * instead.
+     *
+     * @param currentTX the Transaction Context of the transaction which has ended.
+     */
+    public static void transactionEnded(Object currentTX) {
+
+        if (currentTX != null && !ParticipantImpl.hasParticipants(currentTX)) {
+            beanStorePerTransaction.remove(currentTX);
+        }
+    }
+
     /**
      * Garbage collect the beans. Call when the context is closed and can't be used again.
      *
@@ -31,16 +31,16 @@ import org.jboss.narayana.compensations.api.CompensationHandler;
 import org.jboss.narayana.compensations.api.ConfirmationHandler;
 import org.jboss.narayana.compensations.api.TransactionLoggedHandler;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * @author paul.robinson@redhat.com 22/03/2013
  */
 public class ParticipantImpl implements BusinessAgreementWithParticipantCompletionParticipant, ConfirmCompletedParticipant {
 
-    private static final Map<Object, AtomicInteger> PARTICIPANT_COUNTERS = new HashMap<>();
+    private static final ConcurrentMap<Object, Integer> PARTICIPANT_COUNTERS = new ConcurrentHashMap<>();
 
     private CompensationHandler compensationHandler;
 
@@ -138,20 +138,21 @@ public class ParticipantImpl implements BusinessAgreementWithParticipantCompleti
 
     }
 
+    /**
+     * @param currentTX the Transaction Context of a transaction.
+     * @return true if any of the Compensations participants in the transaction have still to complete.
+     */
+    static boolean hasParticipants(Object currentTX) {
+
+        return PARTICIPANT_COUNTERS.containsKey(currentTX);
+    }
+
     /**
      * Increments the counter of the Compensations participants in the transaction.
      */
     private void incrementParticipantsCounter() {
 
-        synchronized (PARTICIPANT_COUNTERS) {
-            final AtomicInteger counter = PARTICIPANT_COUNTERS.get(currentTX);
-
-            if (counter == null) {
-                PARTICIPANT_COUNTERS.put(currentTX, new AtomicInteger(1));
-            } else {
-                counter.incrementAndGet();
-            }
-        }
+        PARTICIPANT_COUNTERS.merge(currentTX, 1, Integer::sum);
     }
 
     /**
@@ -160,16 +161,18 @@ public class ParticipantImpl implements BusinessAgreementWithParticipantCompleti
      */
     private void decrementParticipantsCounter() {
 
-        synchronized (PARTICIPANT_COUNTERS) {
-            final AtomicInteger counter = PARTICIPANT_COUNTERS.get(currentTX);
+        final AtomicBoolean last = new AtomicBoolean();
 
-            if (counter == null || counter.decrementAndGet() > 0) {
-                return;
+        PARTICIPANT_COUNTERS.computeIfPresent(currentTX, (tx, counter) -> {
+            if (counter > 1) {
+                return counter - 1;
             }
+            last.set(true);
+            return null;
+        });
 
-            PARTICIPANT_COUNTERS.remove(currentTX);
+        if (last.get()) {
+            CompensationContext.close(currentTX);
         }
-
-        CompensationContext.close(currentTX);
     }
 }
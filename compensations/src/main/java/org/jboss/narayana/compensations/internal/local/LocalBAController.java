@@ -11,6 +11,7 @@ import org.jboss.narayana.compensations.api.TransactionCompensatedException;
 import org.jboss.narayana.compensations.api.TransactionLoggedHandler;
 import org.jboss.narayana.compensations.internal.BAController;
 import org.jboss.narayana.compensations.internal.BeanManagerUtil;
+import org.jboss.narayana.compensations.internal.CompensationContext;
 import org.jboss.narayana.compensations.internal.CompensationManagerImpl;
 import org.jboss.narayana.compensations.internal.CompensationManagerState;
 import org.jboss.narayana.compensations.internal.ParticipantManager;
@@ -32,15 +33,27 @@ public class LocalBAController implements BAController {
     @Override
     public void closeBusinessActivity() throws Exception {
 
-        CoordinatorManagerFactory.coordinatorManager().close();
+        final Object currentTX = getCurrentTransaction();
+
+        try {
+            CoordinatorManagerFactory.coordinatorManager().close();
+        } catch (CoordinatorCancelledException e) {
+            // The activity was cancelled instead, so it has still ended
+            CompensationContext.transactionEnded(currentTX);
+            throw e;
+        }
         CompensationManagerImpl.suspend();
+        CompensationContext.transactionEnded(currentTX);
     }
 
     @Override
     public void cancelBusinessActivity() throws Exception {
 
+        final Object currentTX = getCurrentTransaction();
+
         CoordinatorManagerFactory.coordinatorManager().cancel();
         CompensationManagerImpl.suspend();
+        CompensationContext.transactionEnded(currentTX);
     }
 
     @Override
@@ -28,7 +28,7 @@ import com.arjuna.mw.wsas.exceptions.SystemException;
 import com.arjuna.mw.wsas.exceptions.WrongStateException;
 import com.arjuna.mw.wscf.exceptions.InvalidParticipantException;
 import com.arjuna.mw.wscf.model.sagas.exceptions.CompensateFailedException;
-import com.arjuna.mw.wscf.model.sagas.participants.Participant;
+import com.arjuna.mw.wscf.model.sagas.participants.ParticipantWithRecovery;
 import com.arjuna.wst.FaultedException;
 import org.jboss.narayana.compensations.api.CompensationHandler;
 import org.jboss.narayana.compensations.api.ConfirmationHandler;
@@ -39,17 +39,20 @@ import org.jboss.narayana.compensations.internal.ParticipantImpl;
 /**
  * @author paul.robinson@redhat.com 22/03/2013
  */
-public class LocalParticipant implements BAParticipant, Participant {
+public class LocalParticipant implements BAParticipant, ParticipantWithRecovery {
 
     private ParticipantImpl participant;
 
     private String participantId;
 
+    private boolean requiresRecovery;
+
     public LocalParticipant(CompensationHandler compensationHandler, ConfirmationHandler confirmationHandler,
             TransactionLoggedHandler transactionLoggedHandler, Object currentTX, String participantId) {
 
         participant = new ParticipantImpl(compensationHandler, confirmationHandler, transactionLoggedHandler, currentTX);
         this.participantId = participantId;
+        requiresRecovery = transactionLoggedHandler != null;
     }
 
     @Override
@@ -109,6 +112,16 @@ public class LocalParticipant implements BAParticipant, Participant {
         return participantId;
     }
 
+    /**
+     * Handlers run in the coordinator's JVM, so the coordinator only needs to log this participant when the application
+     * asked to be told that the transaction was logged.
+     */
+    @Override
+    public boolean requiresRecovery() {
+
+        return requiresRecovery;
+    }
+
     @Override
     public boolean save_state(OutputObjectState os) {
 
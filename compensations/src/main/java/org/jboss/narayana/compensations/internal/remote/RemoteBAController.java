@@ -15,6 +15,7 @@ import org.jboss.narayana.compensations.api.TransactionCompensatedException;
 import org.jboss.narayana.compensations.api.TransactionLoggedHandler;
 import org.jboss.narayana.compensations.internal.BAController;
 import org.jboss.narayana.compensations.internal.BeanManagerUtil;
+import org.jboss.narayana.compensations.internal.CompensationContext;
 import org.jboss.narayana.compensations.internal.CompensationManagerImpl;
 import org.jboss.narayana.compensations.internal.CompensationManagerState;
 import org.jboss.narayana.compensations.internal.ParticipantManager;
@@ -36,15 +37,27 @@ public class RemoteBAController implements BAController {
     @Override
     public void closeBusinessActivity() throws WrongStateException, UnknownTransactionException, TransactionRolledBackException, SystemException {
 
-        UserBusinessActivityFactory.userBusinessActivity().close();
+        final Object currentTX = BusinessActivityManagerFactory.businessActivityManager().currentTransaction();
+
+        try {
+            UserBusinessActivityFactory.userBusinessActivity().close();
+        } catch (TransactionRolledBackException e) {
+            // The activity was cancelled instead, so it has still ended
+            CompensationContext.transactionEnded(currentTX);
+            throw e;
+        }
         CompensationManagerImpl.suspend();
+        CompensationContext.transactionEnded(currentTX);
     }
 
     @Override
     public void cancelBusinessActivity() throws WrongStateException, UnknownTransactionException, SystemException {
 
+        final Object currentTX = BusinessActivityManagerFactory.businessActivityManager().currentTransaction();
+
         UserBusinessActivityFactory.userBusinessActivity().cancel();
         CompensationManagerImpl.suspend();
+        CompensationContext.transactionEnded(currentTX);
     }
 
     @Override
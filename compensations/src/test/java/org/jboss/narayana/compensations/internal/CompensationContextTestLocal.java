@@ -0,0 +1,167 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.narayana.compensations.internal;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.enterprise.context.spi.Contextual;
+import javax.enterprise.context.spi.CreationalContext;
+import javax.enterprise.inject.spi.PassivationCapable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks the bean store of the compensation scope without a running business activity. The transaction is supplied
+ * through {@link CompensationContext#setTxContextToExtend(Object)}, as it is for participant handlers.
+ */
+public class CompensationContextTestLocal {
+
+    private final CompensationContext context = new CompensationContext();
+
+    private final Object transaction = new Object();
+
+    @After
+    public void tearDown() {
+
+        CompensationContext.close(transaction);
+    }
+
+    @Test
+    public void testConcurrentFirstAccessSharesOneBean() throws Exception {
+
+        final int threads = 8;
+        final CountingBean bean = new CountingBean();
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final List<Future<Object>> results = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    CompensationContext.setTxContextToExtend(transaction);
+                    start.await();
+                    try {
+                        return context.get(bean, new NoopCreationalContext());
+                    } finally {
+                        CompensationContext.setTxContextToExtend(null);
+                    }
+                }));
+            }
+            start.countDown();
+
+            final Object first = results.get(0).get(10, TimeUnit.SECONDS);
+            for (Future<Object> result : results) {
+                Assert.assertSame(first, result.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // Every instance which lost the race to be published was destroyed again
+        Assert.assertEquals(1, bean.created.get() - bean.destroyed.get());
+    }
+
+    @Test
+    public void testBeansEvictedWhenTransactionEnds() {
+
+        final CountingBean bean = new CountingBean();
+
+        CompensationContext.setTxContextToExtend(transaction);
+        final Object first = context.get(bean, new NoopCreationalContext());
+        Assert.assertSame(first, context.get(bean));
+
+        CompensationContext.transactionEnded(transaction);
+
+        CompensationContext.setTxContextToExtend(transaction);
+        Assert.assertNull(context.get(bean));
+        Assert.assertNotSame(first, context.get(bean, new NoopCreationalContext()));
+    }
+
+    @Test
+    public void testBeansKeptForParticipantsStillToComplete() throws Exception {
+
+        final CountingBean bean = new CountingBean();
+
+        CompensationContext.setTxContextToExtend(transaction);
+        final Object first = context.get(bean, new NoopCreationalContext());
+        final ParticipantImpl participant = new ParticipantImpl(null, null, null, transaction);
+
+        // The participant's handlers may still use the bean after the transaction has ended
+        CompensationContext.transactionEnded(transaction);
+
+        CompensationContext.setTxContextToExtend(transaction);
+        Assert.assertSame(first, context.get(bean));
+
+        participant.close();
+
+        CompensationContext.setTxContextToExtend(transaction);
+        Assert.assertNull(context.get(bean));
+    }
+
+    private static class CountingBean implements Contextual<Object>, PassivationCapable {
+
+        private final AtomicInteger created = new AtomicInteger();
+
+        private final AtomicInteger destroyed = new AtomicInteger();
+
+        @Override
+        public Object create(CreationalContext<Object> creationalContext) {
+
+            created.incrementAndGet();
+            return new Object();
+        }
+
+        @Override
+        public void destroy(Object instance, CreationalContext<Object> creationalContext) {
+
+            destroyed.incrementAndGet();
+        }
+
+        @Override
+        public String getId() {
+
+            return "counting-bean";
+        }
+    }
+
+    private static class NoopCreationalContext implements CreationalContext<Object> {
+
+        @Override
+        public void push(Object incompleteInstance) {
+
+        }
+
+        @Override
+        public void release() {
+
+        }
+    }
+}
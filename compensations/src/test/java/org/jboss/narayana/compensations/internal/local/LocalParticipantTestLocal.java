@@ -0,0 +1,68 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.narayana.compensations.internal.local;
+
+import com.arjuna.ats.arjuna.common.Uid;
+import com.arjuna.mwlabs.wscf.model.sagas.arjunacore.ParticipantRecord;
+import org.jboss.narayana.compensations.api.TransactionLoggedHandler;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Checks which local participants the saga coordinator writes to its log.
+ */
+public class LocalParticipantTestLocal {
+
+    @Test
+    public void testUnloggedParticipantNotSaved() throws Exception {
+
+        final LocalParticipant participant = new LocalParticipant(null, null, null, new Object(), "unlogged");
+
+        try {
+            Assert.assertFalse(participant.requiresRecovery());
+            Assert.assertFalse(new ParticipantRecord(participant, new Uid()).doSave());
+        } finally {
+            participant.close();
+        }
+    }
+
+    @Test
+    public void testTxLoggedParticipantSaved() throws Exception {
+
+        final AtomicBoolean logged = new AtomicBoolean();
+        final TransactionLoggedHandler handler = success -> logged.set(success);
+        final LocalParticipant participant = new LocalParticipant(null, null, handler, new Object(), "logged");
+
+        try {
+            Assert.assertTrue(participant.requiresRecovery());
+            Assert.assertTrue(new ParticipantRecord(participant, new Uid()).doSave());
+
+            participant.confirmCompleted(true);
+            Assert.assertTrue(logged.get());
+        } finally {
+            participant.close();
+        }
+    }
+}
@@ -23,6 +23,9 @@ package org.jboss.jbossts.star.resource;
 import java.net.HttpURLConnection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.jboss.jbossts.star.provider.HttpResponseException;
 import org.jboss.jbossts.star.util.*;
@@ -31,6 +34,7 @@ import org.jboss.logging.Logger;
 import com.arjuna.ats.arjuna.common.Uid;
 import com.arjuna.ats.arjuna.coordinator.AbstractRecord;
 import com.arjuna.ats.arjuna.coordinator.RecordType;
+import com.arjuna.ats.arjuna.coordinator.TwoPhaseCommitThreadPool;
 import com.arjuna.ats.arjuna.coordinator.TwoPhaseOutcome;
 import com.arjuna.ats.arjuna.state.InputObjectState;
 import com.arjuna.ats.arjuna.state.OutputObjectState;
@@ -62,6 +66,9 @@ public class RESTRecord extends AbstractRecord implements Comparable
     private String recoveryURI;
     private long age = System.currentTimeMillis();
 
+    // the outcome of a prepare or commit request that was sent ahead of the coordinator asking for it
+    private volatile Future<Integer> inflight;
+
     public RESTRecord() {
         status = TxStatus.TransactionStatusUnknown;
     }
@@ -131,6 +138,10 @@ public class RESTRecord extends AbstractRecord implements Comparable
         return age;
     }
 
+    private TxSupport newTxSupport() {
+        return new TxSupport(TxSupport.PARTICIPANT_READ_TIMEOUT);
+    }
+
     public void setValue(Object o)
     {
     }
@@ -201,7 +212,7 @@ public class RESTRecord extends AbstractRecord implements Comparable
             log.tracef("forgetting heuristic for %s", participantURI);
 
         try {
-            new TxSupport().httpRequest(new int[] {HttpURLConnection.HTTP_OK, HttpURLConnection.HTTP_NO_CONTENT},
+            newTxSupport().httpRequest(new int[] {HttpURLConnection.HTTP_OK, HttpURLConnection.HTTP_NO_CONTENT},
                     this.participantURI, "DELETE", null);
             status = TxStatus.TransactionStatusUnknown;
         } catch (HttpResponseException e) {
@@ -211,7 +222,76 @@ public class RESTRecord extends AbstractRecord implements Comparable
         return super.forgetHeuristic();
     }
 
+    /**
+     * Send the prepare request to the participant without waiting for the reply. The outcome
+     * is collected when the coordinator calls {@link #topLevelPrepare()}.
+     */
+    void prepareAsync()
+    {
+        if (inflight == null) {
+            inflight = TwoPhaseCommitThreadPool.submitJob(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return prepare();
+                }
+            });
+        }
+    }
+
+    /**
+     * Send the commit request to the participant without waiting for the reply. The outcome
+     * is collected when the coordinator calls {@link #topLevelCommit()}.
+     */
+    void commitAsync()
+    {
+        if (inflight == null) {
+            inflight = TwoPhaseCommitThreadPool.submitJob(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return commit();
+                }
+            });
+        }
+    }
+
+    /**
+     * Wait for any request that was sent asynchronously. The request has already reached the
+     * participant so it must not be sent again if we cannot tell how it ended.
+     * @param failure the outcome to report if the request failed or we were interrupted waiting for it
+     * @return the outcome of the request or null if there wasn't one
+     */
+    private Integer awaitInflight(int failure)
+    {
+        Future<Integer> request = inflight;
+
+        if (request == null)
+            return null;
+
+        inflight = null;
+
+        try {
+            return request.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            if (log.isDebugEnabled())
+                log.debugf("interrupted waiting for asynchronous request to participant %s", participantURI);
+        } catch (ExecutionException e) {
+            if (log.isDebugEnabled())
+                log.debugf(e.getCause(), "asynchronous request to participant %s failed", participantURI);
+        }
+
+        return failure;
+    }
+
     public int topLevelPrepare()
+    {
+        Integer outcome = awaitInflight(TwoPhaseOutcome.PREPARE_NOTOK);
+
+        return outcome != null ? outcome : prepare();
+    }
+
+    private int prepare()
     {
         if (log.isTraceEnabled())
             log.tracef("prepare %s", prepareURI);
@@ -227,7 +307,7 @@ public class RESTRecord extends AbstractRecord implements Comparable
 
         try
         {
-            String body = new TxSupport().httpRequest(new int[] {HttpURLConnection.HTTP_OK}, this.prepareURI, "PUT",
+            String body = newTxSupport().httpRequest(new int[] {HttpURLConnection.HTTP_OK}, this.prepareURI, "PUT",
                     TxMediaType.TX_STATUS_MEDIA_TYPE, TxSupport.toStatusContent(TxStatus.TransactionPrepared.name()));
 
             if (body.isEmpty()) {
@@ -257,6 +337,9 @@ public class RESTRecord extends AbstractRecord implements Comparable
 
     public int topLevelAbort()
     {
+        // make sure that a prepare request that is still running cannot overtake the rollback
+        awaitInflight(TwoPhaseOutcome.PREPARE_NOTOK);
+
         if (log.isTraceEnabled())
             log.debugf("trace %s", rollbackURI);
 
@@ -267,7 +350,7 @@ public class RESTRecord extends AbstractRecord implements Comparable
             return TwoPhaseOutcome.FINISH_ERROR;
 
         try {
-            String body = new TxSupport().httpRequest(new int[] {HttpURLConnection.HTTP_OK}, this.rollbackURI, "PUT",
+            String body = newTxSupport().httpRequest(new int[] {HttpURLConnection.HTTP_OK}, this.rollbackURI, "PUT",
                     TxMediaType.TX_STATUS_MEDIA_TYPE, TxSupport.toStatusContent(TxStatus.TransactionRolledBack.name()));
 
             if (body.isEmpty()) {
@@ -285,6 +368,14 @@ public class RESTRecord extends AbstractRecord implements Comparable
     }
 
     public int topLevelCommit()
+    {
+        // the participant may or may not have committed if we cannot find out how the request ended
+        Integer outcome = awaitInflight(TwoPhaseOutcome.HEURISTIC_HAZARD);
+
+        return outcome != null ? outcome : commit();
+    }
+
+    private int commit()
     {
         if (log.isTraceEnabled())
             log.tracef("commit %s", commitURI);
@@ -311,12 +402,26 @@ public class RESTRecord extends AbstractRecord implements Comparable
      */
     public int topLevelOnePhaseCommit()
     {
-        return doCommit(TxStatus.TransactionCommittedOnePhase);
+        Integer outcome = awaitInflight(TwoPhaseOutcome.PREPARE_NOTOK);
+
+        if (outcome == null)
+            return doCommit(TxStatus.TransactionCommittedOnePhase);
+
+        // the participant was already asked to prepare so complete the second phase on its behalf
+        switch (outcome) {
+            case TwoPhaseOutcome.PREPARE_OK:
+                return doCommit(TxStatus.TransactionCommitted);
+            case TwoPhaseOutcome.PREPARE_READONLY:
+                return TwoPhaseOutcome.FINISH_OK;
+            default:
+                topLevelAbort();
+                return TwoPhaseOutcome.FINISH_ERROR;
+        }
     }
 
     private int doCommit(TxStatus nextState)
     {
-        TxSupport txs = new TxSupport();
+        TxSupport txs = newTxSupport();
 
         check_halt(Fault.commit_halt);
         check_suspend(Fault.commit_suspend);
@@ -334,7 +439,7 @@ public class RESTRecord extends AbstractRecord implements Comparable
                 log.tracef("committing %s", commitUri);
 
             if (!TxStatus.TransactionReadOnly.equals(status)) {
-                txs = new TxSupport();
+                txs = newTxSupport();
                 String body = txs.httpRequest(new int[] {HttpURLConnection.HTTP_OK}, commitUri, "PUT",
                         TxMediaType.TX_STATUS_MEDIA_TYPE, TxSupport.toStatusContent(nextState.name()));
 
@@ -399,7 +504,7 @@ public class RESTRecord extends AbstractRecord implements Comparable
 
                 try
                 {
-                    TxSupport.getStatus(new TxSupport().httpRequest(new int[] {HttpURLConnection.HTTP_OK},
+                    TxSupport.getStatus(newTxSupport().httpRequest(new int[] {HttpURLConnection.HTTP_OK},
                             uri, "PUT", TxMediaType.TX_STATUS_MEDIA_TYPE,
                             TxSupport.toStatusContent(nextState.name())));
                     if (log.isDebugEnabled())
@@ -445,7 +550,7 @@ public class RESTRecord extends AbstractRecord implements Comparable
             // by probing the recovery URI:
             Map<String, String> links = new HashMap<String, String>();
 
-            new TxSupport().httpRequest(new int[] {HttpURLConnection.HTTP_OK}, recoveryURI, "GET",
+            newTxSupport().httpRequest(new int[] {HttpURLConnection.HTTP_OK}, recoveryURI, "GET",
                     TxMediaType.PLAIN_MEDIA_TYPE, null, links);
 
             String terminateURI = links.get(TxLinkNames.PARTICIPANT_TERMINATOR);
@@ -650,6 +755,6 @@ public class RESTRecord extends AbstractRecord implements Comparable
 
     public String httpRequest(int[] expect, String url, String method, String mediaType, String content,
                               Map<String, String> linkHeaders, Map<String, String> reqHeaders) {
-        return new TxSupport().httpRequest(expect, url, method, mediaType, content, linkHeaders, reqHeaders);
+        return newTxSupport().httpRequest(expect, url, method, mediaType, content, linkHeaders, reqHeaders);
     }
 }
@@ -38,7 +38,9 @@ import org.jboss.jbossts.star.util.TxStatus;
 import com.arjuna.ats.arjuna.AtomicAction;
 import com.arjuna.ats.arjuna.coordinator.AbstractRecord;
 import com.arjuna.ats.arjuna.coordinator.AddOutcome;
+import com.arjuna.ats.arjuna.coordinator.RecordList;
 import com.arjuna.ats.arjuna.coordinator.RecordListIterator;
+import com.arjuna.ats.arjuna.coordinator.TwoPhaseOutcome;
 import org.jboss.jbossts.star.util.TxSupport;
 import org.jboss.jbossts.star.util.media.txstatusext.CoordinatorElement;
 import org.jboss.jbossts.star.util.media.txstatusext.TransactionStatusElement;
@@ -50,6 +52,13 @@ public class Transaction extends AtomicAction
 {
     protected final static Logger log = Logger.getLogger(Transaction.class);
 
+    /**
+     * If true then prepare and commit requests are sent to all participants concurrently instead of
+     * waiting for each participant to reply before contacting the next one
+     */
+    public static final boolean ASYNC_PARTICIPANTS =
+            Boolean.parseBoolean(System.getProperty("rest.tx.participant.async", "false"));
+
     private long age = System.currentTimeMillis();
     private Coordinator coordinator = null;
     private String initiator;
@@ -272,6 +281,54 @@ public class Transaction extends AtomicAction
         volatileParticipants.add(vparticipantURI);
     }
 
+    @Override
+    protected int doPrepare(boolean reportHeuristics, AbstractRecord record) {
+        if (ASYNC_PARTICIPANTS && record instanceof RESTRecord) {
+            /*
+             * Send prepare to every remaining participant now. The base class still processes the
+             * records one at a time but by then most of the replies will already have arrived.
+             */
+            ((RESTRecord) record).prepareAsync();
+            sendAhead(pendingList, true);
+        }
+
+        return super.doPrepare(reportHeuristics, record);
+    }
+
+    @Override
+    protected int doCommit(boolean reportHeuristics, AbstractRecord record) {
+        int outcome = super.doCommit(reportHeuristics, record);
+
+        /*
+         * The first participant to commit decides the outcome (a heuristic rollback at this point
+         * would cause the rest of the participants to be rolled back) so only the remaining
+         * participants are committed concurrently.
+         */
+        if (ASYNC_PARTICIPANTS && record instanceof RESTRecord
+                && (outcome == TwoPhaseOutcome.FINISH_OK || outcome == TwoPhaseOutcome.HEURISTIC_COMMIT))
+            sendAhead(preparedList, false);
+
+        return outcome;
+    }
+
+    private void sendAhead(RecordList records, boolean prepare) {
+        if (records == null)
+            return;
+
+        AbstractRecord r = records.peekFront();
+
+        while (r != null) {
+            if (r instanceof RESTRecord) {
+                if (prepare)
+                    ((RESTRecord) r).prepareAsync();
+                else
+                    ((RESTRecord) r).commitAsync();
+            }
+
+            r = records.peekNext(r);
+        }
+    }
+
     private Collection<String> enlistmentIds;
     @Override
     protected boolean beforeCompletion() {
@@ -21,7 +21,6 @@
 package org.jboss.jbossts.star.service;
 
 import java.util.*;
-import java.util.Map.Entry;
 
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -63,9 +62,7 @@ public class Coordinator
     private final static String REST_TXN_TYPE = new AtomicAction().type();
 
     private static Map<String, Transaction> transactions = new ConcurrentHashMap<String, Transaction>();
-    // each participant may only be enlisted in one transaction - map each registration id to a map of
-    // link name to link uri
-    private static Map<String, HashMap<String, String>> participants = new ConcurrentHashMap<String, HashMap<String, String>>();
+    private static EnlistmentTable participants = new EnlistmentTable(transactions);
 
     private static Map<String, RecoveringTransaction> recoveringTransactions = getRecoveringTransactions(transactions);
 
@@ -241,10 +238,14 @@ public class Coordinator
         txn.getParticipants(enlistmentIds);
 
         for (String enlistmentId : enlistmentIds) {
-            Map<String, String> participantInfo = participants.get(enlistmentId);
-            String terminatorURI = participantInfo.get(TxLinkNames.PARTICIPANT_TERMINATOR);
-            String participantURI = participantInfo.get(TxLinkNames.PARTICIPANT_RESOURCE);
-            String recoveryURI = participantInfo.get(TxLinkNames.PARTICIPANT_RECOVERY);
+            Enlistment participantInfo = participants.get(enlistmentId);
+
+            if (participantInfo == null)
+                continue;
+
+            String terminatorURI = participantInfo.getTerminatorURI();
+            String participantURI = participantInfo.getParticipantURI();
+            String recoveryURI = participantInfo.getRecoveryURI();
             TwoPhaseAwareParticipantElement participantElement = new TwoPhaseAwareParticipantElement();
 
             participantElement.setTerminatorURI(terminatorURI);
@@ -476,24 +477,14 @@ public class Coordinator
         else if (status == ActionStatus.ABORTED)
             aborted.incrementAndGet();
 
-        if(enlistmentIds == null) {
-            // Cleanup synchronization could not pass in the participants (tx timed out)
-            // locate the enlistment ids
-            Iterator<Entry<String, HashMap<String, String>>> j = participants.entrySet().iterator();
-            while (j.hasNext()) {
-                Map.Entry<java.lang.String, HashMap<String, String>> entry = j.next();
-                HashMap<String, String> linkHolder = entry.getValue();
-                String participantTxId = linkHolder.get(TxLinkNames.TRANSACTION);
-                if (txId.equals(participantTxId)) {
-                    j.remove();
-                }
-            }
-        }
-        else {
-            for (String enlistmentId : enlistmentIds) {
-                participants.remove(enlistmentId);
-            }
-        }
+        // if the cleanup synchronization could not pass in the participants (tx timed out) the table's index is used
+        participants.remove(txId, enlistmentIds);
+    }
+
+    private static void addEnlistment(String enlistmentId, Enlistment enlistment) {
+        // the transaction finished while the participant was being enlisted
+        if (!participants.add(enlistmentId, enlistment))
+            throw new ResourceNotFoundException("Transaction id not found");
     }
 
     /**
@@ -569,10 +560,7 @@ public class Coordinator
         if (coordinatorId == null) // the request was rejected (2PC processing must have started)
             return Response.status(HttpURLConnection.HTTP_FORBIDDEN).entity("2PC has started").build();
 
-        links.put(TxLinkNames.PARTICIPANT_RECOVERY, tx.getRecoveryUrl());
-        links.put(TxLinkNames.TRANSACTION, txId);
-
-        participants.put(coordinatorId, new HashMap<String, String>(links));
+        addEnlistment(coordinatorId, new Enlistment(txId, tx.getRecoveryUrl(), links));
 
         log.debug("enlisted participant: content=" + content + " in tx " + txId + " Coordinator url base: " + recoveryUrlBase);
 
@@ -623,12 +611,12 @@ public class Coordinator
     public Response lookupParticipant(@PathParam("TxId")String txId, @PathParam("RecCoordId")String enlistmentId)
     {
         log.tracef("coordinator: lookup: transaction-coordinator: %s/%s", txId, enlistmentId);
-        HashMap<String, String> p = participants.get(enlistmentId);
+        Enlistment p = participants.get(enlistmentId);
 
         if (p == null)
             return Response.status(HttpURLConnection.HTTP_NOT_FOUND).build();
 
-        String linkHeader = new TxSupport().makeTwoPhaseParticipantLinkHeader(p);
+        String linkHeader = new TxSupport().makeTwoPhaseParticipantLinkHeader(p.toLinks());
 
         if (linkHeader == null)
             return Response.status(HttpURLConnection.HTTP_NOT_FOUND).build();
@@ -664,10 +652,7 @@ public class Coordinator
         // check whether the transaction or log still exists
         Transaction tx = getTransaction(txId); // throws not found exception if the txn has finished
 
-        links.put(TxLinkNames.TRANSACTION, txId);
-        links.put(TxLinkNames.PARTICIPANT_RECOVERY, tx.getRecoveryUrl());
-
-        participants.put(enlistmentId, new HashMap<String, String>(links));
+        addEnlistment(enlistmentId, new Enlistment(txId, tx.getRecoveryUrl(), links));
 
         return Response.status(HttpURLConnection.HTTP_OK).build();
     }
@@ -691,13 +676,13 @@ public class Coordinator
     public Response deleteParticipant(@PathParam("RecCoordId")String enlistmentId)
     {
         log.tracef("coordinator: participant leaving via Delete: recovery-coordinator/%s", enlistmentId);
-        HashMap<String, String> p = participants.get(enlistmentId);
+        Enlistment p = participants.get(enlistmentId);
         Transaction txn;
 
-        if (p == null || (txn = transactions.get(p.get(TxLinkNames.TRANSACTION))) == null)
+        if (p == null || (txn = transactions.get(p.getTxId())) == null)
             return Response.status(HttpURLConnection.HTTP_NOT_FOUND).build();
 
-        if (txn.forgetParticipant(p.get(TxLinkNames.PARTICIPANT_RESOURCE)))
+        if (txn.forgetParticipant(p.getParticipantURI()))
             return Response.status(HttpURLConnection.HTTP_OK).build();
         
         return Response.status(HttpURLConnection.HTTP_CONFLICT).build();
@@ -756,6 +741,7 @@ public class Coordinator
         for (String txId : txns.keySet()) {
             recoveringTransactions.remove(txId);
             transactions.remove(txId);
+            participants.remove(txId, null);
         }
     }
 
@@ -766,25 +752,22 @@ public class Coordinator
             String key =  uid.fileStringForm();
             RecoveringTransaction txn = new RecoveringTransaction(uid);
 
+            // the transaction must be known before its participants can be enlisted
+            recoveringTransactions.put(key, txn);
+            transactions.put(key, txn);
+
             try {
                 // the recoverable transaction contains the recovery urls of each of its participants
                 // so it needs activate in order to make it available to anyone that wants to obtain it:
                 if (txn.activate()) {
                     for (RESTRecord r : txn.getParticipants(new ArrayList<RESTRecord>())) {
-                        Map<String, String> links = new HashMap<String, String>();
-
-                        links.put(TxLinkNames.PARTICIPANT_RECOVERY, r.getRecoveryURI());
-                        links.put(TxLinkNames.TRANSACTION, r.getTxId());
-
-                        participants.put(r.getCoordinatorURI(), new HashMap<>(links));
+                        addEnlistment(r.getCoordinatorURI(),
+                                new Enlistment(r.getTxId(), r.getRecoveryURI(), Collections.<String, String>emptyMap()));
                     }
                 }
             } catch (Throwable e) {
                 log.warnf("Could not reactivate pending transaction %s (reason: %s)", txn.get_uid(), e.getMessage());
             }
-
-            recoveringTransactions.put(key, txn);
-            transactions.put(key, txn);
         }
 
         return recoveringTransactions;
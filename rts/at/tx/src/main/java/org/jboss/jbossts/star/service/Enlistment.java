@@ -0,0 +1,103 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ *
+ * (C) 2010
+ * @author JBoss Inc.
+ */
+package org.jboss.jbossts.star.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jboss.jbossts.star.util.TxLinkNames;
+
+/**
+ * The links that the coordinator remembers for an enlisted participant
+ */
+final class Enlistment
+{
+    private final String txId;
+    private final String recoveryURI;
+    private final String participantURI;
+    private final String terminatorURI;
+    private final String commitURI;
+    private final String prepareURI;
+    private final String rollbackURI;
+    private final String commitOnePhaseURI;
+
+    /**
+     * @param txId the id of the transaction that the participant is enlisted in
+     * @param recoveryURI the recovery coordinator URI for the participant
+     * @param links the participant links (as decoded from the enlistment Link header)
+     */
+    Enlistment(String txId, String recoveryURI, Map<String, String> links)
+    {
+        this.txId = txId;
+        this.recoveryURI = recoveryURI;
+        this.participantURI = links.get(TxLinkNames.PARTICIPANT_RESOURCE);
+        this.terminatorURI = links.get(TxLinkNames.PARTICIPANT_TERMINATOR);
+        this.commitURI = links.get(TxLinkNames.PARTICIPANT_COMMIT);
+        this.prepareURI = links.get(TxLinkNames.PARTICIPANT_PREPARE);
+        this.rollbackURI = links.get(TxLinkNames.PARTICIPANT_ROLLBACK);
+        this.commitOnePhaseURI = links.get(TxLinkNames.PARTICIPANT_COMMIT_ONE_PHASE);
+    }
+
+    String getTxId()
+    {
+        return txId;
+    }
+
+    String getRecoveryURI()
+    {
+        return recoveryURI;
+    }
+
+    String getParticipantURI()
+    {
+        return participantURI;
+    }
+
+    String getTerminatorURI()
+    {
+        return terminatorURI;
+    }
+
+    /**
+     * @return the participant links keyed by link name (only links that are present are included)
+     */
+    HashMap<String, String> toLinks()
+    {
+        HashMap<String, String> links = new HashMap<String, String>();
+
+        put(links, TxLinkNames.TRANSACTION, txId);
+        put(links, TxLinkNames.PARTICIPANT_RECOVERY, recoveryURI);
+        put(links, TxLinkNames.PARTICIPANT_RESOURCE, participantURI);
+        put(links, TxLinkNames.PARTICIPANT_TERMINATOR, terminatorURI);
+        put(links, TxLinkNames.PARTICIPANT_COMMIT, commitURI);
+        put(links, TxLinkNames.PARTICIPANT_PREPARE, prepareURI);
+        put(links, TxLinkNames.PARTICIPANT_ROLLBACK, rollbackURI);
+        put(links, TxLinkNames.PARTICIPANT_COMMIT_ONE_PHASE, commitOnePhaseURI);
+
+        return links;
+    }
+
+    private static void put(Map<String, String> links, String name, String value)
+    {
+        if (value != null)
+            links.put(name, value);
+    }
+}
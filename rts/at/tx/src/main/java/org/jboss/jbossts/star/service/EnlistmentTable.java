@@ -0,0 +1,142 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ *
+ * (C) 2010
+ * @author JBoss Inc.
+ */
+package org.jboss.jbossts.star.service;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+/**
+ * The participants enlisted with the coordinator keyed by registration id, together with an index
+ * of the registration ids belonging to each transaction so that a transaction can be cleaned up
+ * without scanning every participant
+ */
+final class EnlistmentTable
+{
+    // each participant may only be enlisted in one transaction - map each registration id to its links
+    private final Map<String, Enlistment> participants = new ConcurrentHashMap<String, Enlistment>();
+    private final ConcurrentHashMap<String, Set<String>> enlistmentsByTx = new ConcurrentHashMap<String, Set<String>>();
+    private final Map<String, ?> transactions;
+
+    /**
+     * @param transactions the running transactions keyed by id. A transaction must be removed from
+     * this map before its enlistments are removed from the table.
+     */
+    EnlistmentTable(Map<String, ?> transactions)
+    {
+        this.transactions = transactions;
+    }
+
+    Enlistment get(String enlistmentId)
+    {
+        return participants.get(enlistmentId);
+    }
+
+    /**
+     * Record a participant enlistment
+     * @param enlistmentId the registration id of the participant
+     * @param enlistment the participant links
+     * @return false if the transaction has already finished, in which case nothing is recorded
+     */
+    boolean add(final String enlistmentId, final Enlistment enlistment)
+    {
+        final Enlistment[] prev = new Enlistment[1];
+
+        /*
+         * The index entry for the transaction is only created while the transaction is still running.
+         * Since remove takes the transaction out of the running map before it removes the index
+         * entry, an enlistment that races with the end of the transaction is either removed along
+         * with the rest or refused here.
+         */
+        Set<String> ids = enlistmentsByTx.compute(enlistment.getTxId(), new BiFunction<String, Set<String>, Set<String>>() {
+            @Override
+            public Set<String> apply(String txId, Set<String> ids) {
+                if (ids == null) {
+                    if (!transactions.containsKey(txId))
+                        return null;
+
+                    ids = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+                }
+
+                ids.add(enlistmentId);
+                prev[0] = participants.put(enlistmentId, enlistment);
+
+                return ids;
+            }
+        });
+
+        if (ids == null)
+            return false;
+
+        // the registration was moved from another transaction
+        if (prev[0] != null && !prev[0].getTxId().equals(enlistment.getTxId())) {
+            enlistmentsByTx.computeIfPresent(prev[0].getTxId(), new BiFunction<String, Set<String>, Set<String>>() {
+                @Override
+                public Set<String> apply(String txId, Set<String> ids) {
+                    ids.remove(enlistmentId);
+
+                    return ids;
+                }
+            });
+        }
+
+        return true;
+    }
+
+    /**
+     * Remove the participants of a transaction that has finished
+     * @param txId the id of the transaction
+     * @param enlistmentIds the registration ids known to the transaction or null if they are not known
+     */
+    void remove(String txId, Collection<String> enlistmentIds)
+    {
+        // the index also holds any enlistment that was recorded after the transaction stopped accepting them
+        Set<String> txEnlistments = enlistmentsByTx.remove(txId);
+
+        removeParticipants(txId, enlistmentIds);
+        removeParticipants(txId, txEnlistments);
+    }
+
+    /**
+     * @param txId the id of a transaction
+     * @return true if any participants of the transaction are still recorded
+     */
+    boolean hasEnlistments(String txId)
+    {
+        return enlistmentsByTx.containsKey(txId);
+    }
+
+    private void removeParticipants(String txId, Collection<String> enlistmentIds)
+    {
+        if (enlistmentIds != null) {
+            for (String enlistmentId : enlistmentIds) {
+                Enlistment enlistment = participants.get(enlistmentId);
+
+                // the registration may have been reused by a later transaction
+                if (enlistment != null && txId.equals(enlistment.getTxId()))
+                    participants.remove(enlistmentId, enlistment);
+            }
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossts.star.resource;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.jbossts.star.util.TxSupport;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.arjuna.ats.arjuna.coordinator.TwoPhaseOutcome;
+
+/**
+ * Checks that a prepare or commit request that was sent ahead of the coordinator is never sent twice.
+ */
+public class RESTRecordTest {
+
+    private Participant participant;
+
+    /**
+     * A participant endpoint that counts the requests it receives and either answers them
+     * or leaves them hanging.
+     */
+    private static class Participant implements Runnable {
+        private final ServerSocket server;
+        private final List<Socket> connections = new CopyOnWriteArrayList<Socket>();
+        private final AtomicInteger requests = new AtomicInteger();
+        private final Semaphore received = new Semaphore(0);
+        private volatile boolean answer = true;
+
+        Participant() throws IOException {
+            server = new ServerSocket(0);
+            Thread thread = new Thread(this, "RESTRecordTest participant");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        String getURI() {
+            return "http://localhost:" + server.getLocalPort() + "/participant";
+        }
+
+        public void run() {
+            try {
+                while (true) {
+                    Socket socket = server.accept();
+
+                    connections.add(socket);
+                    readRequest(socket);
+                    requests.incrementAndGet();
+                    received.release();
+
+                    if (answer) {
+                        OutputStream os = socket.getOutputStream();
+
+                        os.write("HTTP/1.1 200 OK\r\nContent-Length: 0\r\nConnection: close\r\n\r\n".getBytes());
+                        os.flush();
+                        socket.close();
+                    }
+                }
+            } catch (IOException e) {
+                // the server was closed
+            }
+        }
+
+        private void readRequest(Socket socket) throws IOException {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            int length = 0;
+            String line;
+
+            while ((line = in.readLine()) != null && !line.isEmpty()) {
+                if (line.toLowerCase().startsWith("content-length:"))
+                    length = Integer.parseInt(line.substring(line.indexOf(':') + 1).trim());
+            }
+
+            for (int i = 0; i < length; i++)
+                in.read();
+        }
+
+        void awaitRequest() throws InterruptedException {
+            Assert.assertTrue("participant did not receive the request", received.tryAcquire(10, TimeUnit.SECONDS));
+        }
+
+        void close() throws IOException {
+            server.close();
+
+            for (Socket socket : connections)
+                socket.close();
+        }
+    }
+
+    @Before
+    public void before() throws IOException {
+        participant = new Participant();
+    }
+
+    @After
+    public void after() throws IOException {
+        Thread.interrupted();
+        participant.close();
+    }
+
+    private RESTRecord newRecord() {
+        return new RESTRecord("tx", "http://localhost/coordinator", participant.getURI(), participant.getURI());
+    }
+
+    @Test
+    public void testAsyncPrepareOutcomeUsed() throws Exception {
+        RESTRecord record = newRecord();
+
+        record.prepareAsync();
+
+        Assert.assertEquals(TwoPhaseOutcome.PREPARE_OK, record.topLevelPrepare());
+        Assert.assertEquals(1, participant.requests.get());
+    }
+
+    @Test
+    public void testInterruptedPrepareNotResent() throws Exception {
+        RESTRecord record = newRecord();
+
+        participant.answer = false;
+        record.prepareAsync();
+        participant.awaitRequest();
+
+        Thread.currentThread().interrupt();
+
+        Assert.assertEquals(TwoPhaseOutcome.PREPARE_NOTOK, record.topLevelPrepare());
+        Assert.assertTrue(Thread.interrupted());
+        Assert.assertEquals(1, participant.requests.get());
+    }
+
+    @Test
+    public void testInterruptedCommitIsHazard() throws Exception {
+        RESTRecord record = newRecord();
+
+        Assert.assertEquals(TwoPhaseOutcome.PREPARE_OK, record.topLevelPrepare());
+        participant.awaitRequest();
+
+        participant.answer = false;
+        record.commitAsync();
+        participant.awaitRequest();
+
+        Thread.currentThread().interrupt();
+
+        Assert.assertEquals(TwoPhaseOutcome.HEURISTIC_HAZARD, record.topLevelCommit());
+        Assert.assertTrue(Thread.interrupted());
+        Assert.assertEquals(2, participant.requests.get());
+    }
+
+    @Test
+    public void testInterruptedOnePhaseCommitRollsBack() throws Exception {
+        RESTRecord record = newRecord();
+
+        participant.answer = false;
+        record.prepareAsync();
+        participant.awaitRequest();
+
+        Thread.currentThread().interrupt();
+        participant.answer = true;
+
+        // the prepare is not sent again, the participant is told to roll back instead
+        Assert.assertEquals(TwoPhaseOutcome.FINISH_ERROR, record.topLevelOnePhaseCommit());
+        Assert.assertTrue(Thread.interrupted());
+        participant.awaitRequest();
+        Assert.assertEquals(2, participant.requests.get());
+    }
+
+    @Test
+    public void testKeepAliveOffByDefault() {
+        Assert.assertFalse(TxSupport.KEEP_ALIVE);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossts.star.service;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class EnlistmentTableTest {
+
+    private final Map<String, Object> transactions = new ConcurrentHashMap<String, Object>();
+    private final EnlistmentTable table = new EnlistmentTable(transactions);
+
+    private static Enlistment enlistment(String txId) {
+        return new Enlistment(txId, "http://localhost/recovery", Collections.<String, String>emptyMap());
+    }
+
+    private void endTransaction(String txId) {
+        transactions.remove(txId);
+        table.remove(txId, Collections.<String>emptyList());
+    }
+
+    @Test
+    public void testRefusedAfterTransactionEnds() {
+        transactions.put("tx", "tx");
+
+        Assert.assertTrue(table.add("p1", enlistment("tx")));
+        Assert.assertNotNull(table.get("p1"));
+
+        endTransaction("tx");
+
+        Assert.assertNull(table.get("p1"));
+        Assert.assertFalse(table.add("p2", enlistment("tx")));
+        Assert.assertNull(table.get("p2"));
+        Assert.assertFalse(table.hasEnlistments("tx"));
+    }
+
+    @Test
+    public void testRemoveIncludesEnlistmentsUnknownToTransaction() {
+        transactions.put("tx", "tx");
+
+        table.add("p1", enlistment("tx"));
+        table.add("p2", enlistment("tx"));
+
+        transactions.remove("tx");
+        table.remove("tx", Collections.singletonList("p1"));
+
+        Assert.assertNull(table.get("p1"));
+        Assert.assertNull(table.get("p2"));
+    }
+
+    @Test
+    public void testMovedRegistrationKept() {
+        transactions.put("tx1", "tx1");
+        transactions.put("tx2", "tx2");
+
+        table.add("p1", enlistment("tx1"));
+        table.add("p1", enlistment("tx2"));
+
+        endTransaction("tx1");
+
+        Assert.assertEquals("tx2", table.get("p1").getTxId());
+
+        endTransaction("tx2");
+
+        Assert.assertNull(table.get("p1"));
+    }
+
+    @Test
+    public void testEnlistRacingWithEnd() throws InterruptedException {
+        final int enlisters = 4;
+
+        for (int i = 0; i < 200; i++) {
+            final String txId = "tx" + i;
+            final CountDownLatch start = new CountDownLatch(1);
+            Thread[] threads = new Thread[enlisters + 1];
+
+            transactions.put(txId, txId);
+
+            for (int j = 0; j < enlisters; j++) {
+                final String enlistmentId = txId + "-p" + j;
+
+                threads[j] = new Thread() {
+                    public void run() {
+                        await(start);
+                        table.add(enlistmentId, enlistment(txId));
+                    }
+                };
+            }
+
+            threads[enlisters] = new Thread() {
+                public void run() {
+                    await(start);
+                    endTransaction(txId);
+                }
+            };
+
+            for (Thread thread : threads)
+                thread.start();
+
+            start.countDown();
+
+            for (Thread thread : threads)
+                thread.join();
+
+            // whichever order they ran in nothing is left behind once the transaction has ended
+            for (int j = 0; j < enlisters; j++)
+                Assert.assertNull(table.get(txId + "-p" + j));
+
+            Assert.assertFalse(table.hasEnlistments(txId));
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -74,6 +74,21 @@ public class TxSupport
     public static final String TX_SEGMENT = "transaction-manager/";
 
     public static final int DEFAULT_READ_TIMEOUT = 20000;
+    /**
+     * read timeout (in milliseconds) used when the coordinator talks to participants
+     */
+    public static final int PARTICIPANT_READ_TIMEOUT =
+            Integer.getInteger("rest.tx.participant.timeout", DEFAULT_READ_TIMEOUT);
+    /**
+     * connect timeout (in milliseconds), zero means wait forever
+     */
+    public static final int CONNECT_TIMEOUT = Integer.getInteger("rest.tx.connect.timeout", 0);
+    /**
+     * whether to keep connections open after a request so that later requests to the same host
+     * can reuse them (the JVM keep-alive cache is sized via the http.maxConnections property).
+     * Off by default so that, as before, every request closes its connection.
+     */
+    public static final boolean KEEP_ALIVE = Boolean.getBoolean("rest.tx.http.keepalive");
 
     private static int PORT = 8080;
     private static String BIND_ADDRESS = System.getProperty("jboss.bind.address", "localhost");
@@ -474,7 +489,6 @@ public class TxSupport
 
         try {
             connection = openConnection(null, url, method, mediaType, content, reqHeaders);
-            connection.setReadTimeout(readTimeout);
             status = connection.getResponseCode();
             contentType = connection.getContentType();
 
@@ -482,6 +496,7 @@ public class TxSupport
                 body = (status != -1 ? getContent(connection) : "");
             } catch (IOException e) {
                 body = "";
+                drainErrorStream(connection);
             }
 
             if (linkHeaders != null) {
@@ -511,13 +526,41 @@ public class TxSupport
         } catch (IOException e) {
             if (log.isTraceEnabled())
                 log.tracef("httpRequest: io error: %s%n", e.getMessage());
+            if (connection != null) {
+                connection.disconnect();
+                connection = null;
+            }
             throw new HttpResponseException(e, "", expect, HttpURLConnection.HTTP_UNAVAILABLE);
         } finally {
-            if (connection != null)
+            // the response has been fully consumed so unless keep-alive is disabled leave the socket in the pool
+            if (connection != null && !KEEP_ALIVE)
                 connection.disconnect();
         }
     }
 
+    /*
+     * An error response must be read to the end before the underlying connection can be reused
+     */
+    private void drainErrorStream(HttpURLConnection connection) {
+        InputStream es = connection.getErrorStream();
+
+        if (es != null) {
+            byte[] buffer = new byte[1024];
+
+            try {
+                while (es.read(buffer) > 0)
+                    ;
+            } catch (IOException e) {
+                // the connection will not be reused
+            } finally {
+                try {
+                    es.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+
     private static Map<String, String> extractLinkHeaders(String header, Map<String, String> links) {
         if (header != null) {
             for (String linkHeader : header.split(",")) {
@@ -559,6 +602,8 @@ public class TxSupport
         connection = creator.open(new URL(url));
 
         connection.setRequestMethod(method);
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(readTimeout);
 
         if (contentType != null) {
             if ("GET".equals(method))
@@ -582,10 +627,15 @@ public class TxSupport
         if (content != null) {
             connection.setDoOutput(true);
 
+            byte[] bytes = content.getBytes();
             OutputStream os = null;
+
+            // a fixed length body avoids chunked encoding and lets the connection be reused
+            connection.setFixedLengthStreamingMode(bytes.length);
+
             try {
                 os = connection.getOutputStream();
-                os.write(content.getBytes());
+                os.write(bytes);
                 os.flush();
             } finally {
                 if (os != null) {
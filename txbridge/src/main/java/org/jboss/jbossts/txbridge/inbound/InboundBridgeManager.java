@@ -24,6 +24,7 @@
 package org.jboss.jbossts.txbridge.inbound;
 
 import com.arjuna.ats.jta.xa.XATxConverter;
+import com.arjuna.ats.jta.xa.XidImple;
 import com.arjuna.ats.arjuna.common.Uid;
 import com.arjuna.mw.wst11.UserTransactionFactory;
 
@@ -37,11 +38,10 @@ import com.arjuna.wsc.AlreadyRegisteredException;
 import javax.transaction.xa.Xid;
 import javax.transaction.xa.XAException;
 
-import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 
+import org.jboss.jbossts.txbridge.utils.MappingTable;
 import org.jboss.jbossts.txbridge.utils.txbridgeLogger;
 
 /**
@@ -56,9 +56,10 @@ import org.jboss.jbossts.txbridge.utils.txbridgeLogger;
 public class InboundBridgeManager
 {
     // maps WS-AT Tx Id to InboundBridge instance.
-    private static final ConcurrentMap<String, InboundBridge> inboundBridgeMappings = new ConcurrentHashMap<String, org.jboss.jbossts.txbridge.inbound.InboundBridge>();
+    private static final MappingTable<String, InboundBridge, Exception> inboundBridgeMappings = new MappingTable<String, InboundBridge, Exception>();
 
-    private static final Set<Xid> liveXids = new HashSet<>();
+    // Xids of the live mappings, normalised with toIndexedXid.
+    private static final Set<Xid> liveXids = ConcurrentHashMap.newKeySet();
 
     /**
      * Return an InboundBridge instance that maps the current Thread's WS transaction context
@@ -80,11 +81,15 @@ public class InboundBridgeManager
         String externalTxId = wsUserTransaction.toString();
         int wsTxnTimeout = wsUserTransaction.getTimeout();
 
-        if(!inboundBridgeMappings.containsKey(externalTxId)) {
-            createMapping(externalTxId, wsTxnTimeout);
+        try {
+            return inboundBridgeMappings.getOrCreate(externalTxId, txId -> createMapping(txId, wsTxnTimeout));
+        } catch(XAException | WrongStateException | UnknownTransactionException | com.arjuna.wst.SystemException
+                | javax.transaction.SystemException | AlreadyRegisteredException | RuntimeException e) {
+            throw e;
+        } catch(Exception e) {
+            // createMapping throws nothing else
+            throw new IllegalStateException(e);
         }
-
-        return inboundBridgeMappings.get(externalTxId);
     }
 
     /**
@@ -107,41 +112,51 @@ public class InboundBridgeManager
      *
      * @param externalTxId The WS-AT tx identifier.
      */
-    public static synchronized void removeMapping(String externalTxId)
+    public static void removeMapping(String externalTxId)
     {
         txbridgeLogger.logger.trace("InboundBridgeManager.removeMapping(externalTxId="+externalTxId+")");
 
         if(externalTxId != null) {
             InboundBridge inboundBridge = inboundBridgeMappings.remove(externalTxId);
             if(inboundBridge != null) {
-                liveXids.remove(inboundBridge.getXid());
+                liveXids.remove(toIndexedXid(inboundBridge.getXid()));
             }
         }
     }
 
-    public static synchronized boolean isLive(Xid xid) {
-        return liveXids.contains(xid);
+    public static boolean isLive(Xid xid) {
+        return liveXids.contains(toIndexedXid(xid));
+    }
+
+    /**
+     * Normalise an Xid for use as a hash key. Xids handed to us by resource managers during recovery
+     * need not be XidImple instances, which would break equality against our own.
+     *
+     * @param xid the Xid to normalise.
+     * @return an XidImple equal to the given Xid.
+     */
+    static Xid toIndexedXid(Xid xid)
+    {
+        return (xid instanceof XidImple) ? xid : new XidImple(xid);
     }
 
     /**
      * Create the JTA transaction mapping and support objects for a given WS transaction context.
+     * Called at most once per WS transaction at a time, outside the mapping table.
      *
      * @param externalTxId The WS-AT tx identifier.
+     * @return the new InboundBridge.
      * @throws WrongStateException
      * @throws UnknownTransactionException
      * @throws com.arjuna.wst.SystemException
      * @throws AlreadyRegisteredException
      */
-    private static synchronized void createMapping(String externalTxId, int timeout)
+    private static InboundBridge createMapping(String externalTxId, int timeout)
             throws XAException, WrongStateException, UnknownTransactionException,
             com.arjuna.wst.SystemException, javax.transaction.SystemException, AlreadyRegisteredException
     {
         txbridgeLogger.logger.trace("InboundBridgeManager.createMapping(externalTxId="+externalTxId+")");
 
-        if(inboundBridgeMappings.containsKey(externalTxId)) {
-            return;
-        }
-
         TransactionManager transactionManager = TransactionManagerFactory.transactionManager();
 
         // Xid for driving the subordinate,
@@ -158,7 +173,7 @@ public class InboundBridgeManager
         transactionManager.enlistForVolatileTwoPhase(bridgeVolatileParticipant, new Uid().toString());
 
         InboundBridge inboundBridge = new InboundBridge(xid, timeout);
-        inboundBridgeMappings.put(externalTxId, inboundBridge);
-        liveXids.add(inboundBridge.getXid());
+        liveXids.add(toIndexedXid(inboundBridge.getXid()));
+        return inboundBridge;
     }
 }
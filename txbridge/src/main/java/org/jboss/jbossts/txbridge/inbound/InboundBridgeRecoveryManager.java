@@ -40,6 +40,8 @@ import javax.transaction.xa.XAResource;
 import javax.transaction.xa.Xid;
 import java.io.ObjectInputStream;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Integrates with JBossAS MC lifecycle and JBossTS recovery manager to provide
@@ -53,8 +55,9 @@ public class InboundBridgeRecoveryManager implements XTSATRecoveryModule, Recove
     private final RecoveryManager acRecoveryManager = RecoveryManager.manager();
     private final XATerminator xaTerminator = SubordinationManager.getXATerminator();
 
-    private final List<BridgeDurableParticipant> participantsAwaitingRecovery =
-            Collections.synchronizedList(new LinkedList<BridgeDurableParticipant>());
+    // recovered participants, indexed by their Xid as normalised by InboundBridgeManager.toIndexedXid
+    private final ConcurrentMap<Xid, BridgeDurableParticipant> participantsAwaitingRecovery =
+            new ConcurrentHashMap<Xid, BridgeDurableParticipant>();
     private volatile boolean orphanedXAResourcesAreIdentifiable = false;
 
     /**
@@ -134,7 +137,7 @@ public class InboundBridgeRecoveryManager implements XTSATRecoveryModule, Recove
         {
             Object participant = objectInputStream.readObject();
             BridgeDurableParticipant bridgeDurableParticipant = (BridgeDurableParticipant)participant;
-            participantsAwaitingRecovery.add(bridgeDurableParticipant);
+            participantsAwaitingRecovery.put(InboundBridgeManager.toIndexedXid(bridgeDurableParticipant.getXid()), bridgeDurableParticipant);
             return bridgeDurableParticipant;
         }
         else
@@ -252,13 +255,11 @@ public class InboundBridgeRecoveryManager implements XTSATRecoveryModule, Recove
     {
         txbridgeLogger.logger.trace("InboundBridgeRecoveryManager.cleanupRecoveredParticipants()");
 
-        synchronized(participantsAwaitingRecovery) {
-            Iterator<org.jboss.jbossts.txbridge.inbound.BridgeDurableParticipant> iter = participantsAwaitingRecovery.iterator();
-            while(iter.hasNext()) {
-                BridgeDurableParticipant participant = iter.next();
-                if(!participant.isAwaitingRecovery()) {
-                    iter.remove();
-                }
+        Iterator<org.jboss.jbossts.txbridge.inbound.BridgeDurableParticipant> iter = participantsAwaitingRecovery.values().iterator();
+        while(iter.hasNext()) {
+            BridgeDurableParticipant participant = iter.next();
+            if(!participant.isAwaitingRecovery()) {
+                iter.remove();
             }
         }
     }
@@ -293,13 +294,9 @@ public class InboundBridgeRecoveryManager implements XTSATRecoveryModule, Recove
         }
 
         // check if it's owned by a recovered tx that may still commit.
-        synchronized(participantsAwaitingRecovery) {
-            for(BridgeDurableParticipant participant : participantsAwaitingRecovery) {
-                if(participant.getXid().equals(xid)) {
-                    txbridgeLogger.logger.trace("InboundBridgeRecoveryManager.checkXid("+xid+") - awaiting recovery. Leave alone.");
-                    return Vote.LEAVE_ALONE;
-                }
-            }
+        if( participantsAwaitingRecovery.containsKey(InboundBridgeManager.toIndexedXid(xid)) ) {
+            txbridgeLogger.logger.trace("InboundBridgeRecoveryManager.checkXid("+xid+") - awaiting recovery. Leave alone.");
+            return Vote.LEAVE_ALONE;
         }
 
         txbridgeLogger.logger.trace("InboundBridgeRecoveryManager.checkXid("+xid+") - passed to rollback.");
@@ -38,10 +38,9 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Provides method call mapping between JTA parent coordinator and WS-AT subordinate transaction.
@@ -53,8 +52,9 @@ public class BridgeXAResource implements XAResource, Serializable
     // Design note: Given the way JBossTS is designed, we could subclass AbstractRecord rather than
     // implementing XAResource, but this design is more standards friendly and thus portable.
 
-    private static final List<BridgeXAResource> xaResourcesAwaitingRecovery =
-            Collections.synchronizedList(new LinkedList<BridgeXAResource>());
+    // recovered instances, indexed by the identifier of their subordinate BridgeWrapper
+    private static final ConcurrentMap<String, BridgeXAResource> xaResourcesAwaitingRecovery =
+            new ConcurrentHashMap<String, BridgeXAResource>();
 
     private transient volatile BridgeWrapper bridgeWrapper;
 
@@ -112,9 +112,7 @@ public class BridgeXAResource implements XAResource, Serializable
 
         // this readObject method executes only when a log is being read at recovery time:
         isAwaitingRecovery = true;
-        synchronized(xaResourcesAwaitingRecovery) {
-            xaResourcesAwaitingRecovery.add(this);
-        }
+        xaResourcesAwaitingRecovery.put(bridgeWrapperId, this);
 
         try
         {
@@ -201,13 +199,11 @@ public class BridgeXAResource implements XAResource, Serializable
     {
         txbridgeLogger.logger.trace("BridgeXAResource.cleanupRecoveredXAResources()");
 
-        synchronized(xaResourcesAwaitingRecovery) {
-            Iterator<BridgeXAResource> iter = xaResourcesAwaitingRecovery.iterator();
-            while(iter.hasNext()) {
-                BridgeXAResource xaResource = iter.next();
-                if(!xaResource.isAwaitingRecovery()) {
-                    iter.remove();
-                }
+        Iterator<BridgeXAResource> iter = xaResourcesAwaitingRecovery.values().iterator();
+        while(iter.hasNext()) {
+            BridgeXAResource xaResource = iter.next();
+            if(!xaResource.isAwaitingRecovery()) {
+                iter.remove();
             }
         }
     }
@@ -220,15 +216,7 @@ public class BridgeXAResource implements XAResource, Serializable
      */
     public static boolean isAwaitingRecovery(String bridgeWrapperId)
     {
-        synchronized(xaResourcesAwaitingRecovery) {
-            for(BridgeXAResource bridgeXAResource : xaResourcesAwaitingRecovery) {
-                if(bridgeXAResource.bridgeWrapperId.equals(bridgeWrapperId)) {
-                    return true;
-                }
-            }
-        }
-
-        return false;
+        return xaResourcesAwaitingRecovery.containsKey(bridgeWrapperId);
     }
 
 
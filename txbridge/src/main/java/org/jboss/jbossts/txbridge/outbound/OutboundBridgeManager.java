@@ -32,11 +32,11 @@ import javax.transaction.RollbackException;
 import javax.transaction.Synchronization;
 import javax.transaction.xa.XAResource;
 
+import org.jboss.jbossts.txbridge.utils.MappingTable;
 import org.jboss.jbossts.txbridge.utils.txbridgeLogger;
 import org.jboss.jbossts.xts.bridge.at.BridgeWrapper;
 
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 /**
  * Maintains the mapping data that relates JTA transactions to WS-AT subordinate transactions and related objects.
@@ -52,7 +52,7 @@ public class OutboundBridgeManager
     public static String BRIDGEWRAPPER_PREFIX = "txbridge_";
 
     // maps JTA Tx Id to OutboundBridge instance.
-    private static final ConcurrentMap<Uid, org.jboss.jbossts.txbridge.outbound.OutboundBridge> outboundBridgeMappings = new ConcurrentHashMap<Uid, org.jboss.jbossts.txbridge.outbound.OutboundBridge>();
+    private static final MappingTable<Uid, org.jboss.jbossts.txbridge.outbound.OutboundBridge, SystemException> outboundBridgeMappings = new MappingTable<Uid, org.jboss.jbossts.txbridge.outbound.OutboundBridge, SystemException>();
 
     /**
      * Return an OutboundBridge instance that maps the current Thread's JTA transaction context
@@ -68,13 +68,8 @@ public class OutboundBridgeManager
         {
             Transaction transaction = (Transaction)TransactionManager.transactionManager().getTransaction();
 
-            Uid externalTxId = transaction.get_uid();
-
-            if(!outboundBridgeMappings.containsKey(externalTxId)) {
-                createMapping(transaction, externalTxId);
-            }
-
-            return outboundBridgeMappings.get(externalTxId);
+            // TODO: allow params to be configurable, or at least pass timeout down.
+            return getOutboundBridge(transaction, () -> BridgeWrapper.create(BRIDGEWRAPPER_PREFIX, 0, false));
 
         }
         catch(SystemException e)
@@ -85,12 +80,31 @@ public class OutboundBridgeManager
         return null;
     }
 
+    /**
+     * Return the OutboundBridge instance for the given JTA transaction, creating the subordinate
+     * WS-AT transaction with the given factory if there is none.
+     *
+     * Every bridged call in the JTA transaction shares the one subordinate WS-AT transaction
+     * and hence the one XA branch, so completion costs one prepare and one commit however many
+     * web services were called.
+     *
+     * @param transaction The JTA transaction.
+     * @param subordinateFactory creates the subordinate WS-AT transaction.
+     * @return the OutboundBridge for the JTA transaction.
+     * @throws SystemException if the subordinate transaction could not be enlisted.
+     */
+    static org.jboss.jbossts.txbridge.outbound.OutboundBridge getOutboundBridge(Transaction transaction, Supplier<BridgeWrapper> subordinateFactory)
+            throws SystemException
+    {
+        return outboundBridgeMappings.getOrCreate(transaction.get_uid(), txId -> createMapping(transaction, txId, subordinateFactory.get()));
+    }
+
     /**
      * Remove the mapping for the given externalTxId. This should be called for gc when the tx is finished.
      *
      * @param externalTxId The JTA transaction identifier.
      */
-    public static synchronized void removeMapping(Uid externalTxId)
+    public static void removeMapping(Uid externalTxId)
     {
         txbridgeLogger.logger.trace("OutboundBridgeManager.removeMapping(externalTxId="+externalTxId+")");
 
@@ -101,21 +115,21 @@ public class OutboundBridgeManager
 
     /**
      * Create a WS-AT transaction mapping and support objects for a given JTA transaction context.
+     * Called at most once per JTA transaction at a time, outside the mapping table.
+     *
+     * If the mapping cannot be created the subordinate transaction is rolled back, either directly
+     * or, once the BridgeXAResource is enlisted, through the JTA transaction.
      *
      * @param externalTxId The JTA transaction identifier.
-     * @throws SystemException
+     * @param bridgeWrapper The subordinate WS-AT transaction.
+     * @return the new OutboundBridge.
+     * @throws SystemException if the mapping could not be created.
      */
-    private static synchronized void createMapping(Transaction transaction, Uid externalTxId) throws SystemException
+    private static org.jboss.jbossts.txbridge.outbound.OutboundBridge createMapping(Transaction transaction, Uid externalTxId, BridgeWrapper bridgeWrapper)
+            throws SystemException
     {
         txbridgeLogger.logger.trace("OutboundBridgeManager.createmapping(externalTxId="+externalTxId+")");
 
-        if(outboundBridgeMappings.containsKey(externalTxId)) {
-            return;
-        }
-
-        // TODO: allow params to be configurable, or at least pass timeout down.
-        BridgeWrapper bridgeWrapper = BridgeWrapper.create(BRIDGEWRAPPER_PREFIX, 0, false);
-
         org.jboss.jbossts.txbridge.outbound.OutboundBridge outboundBridge = new org.jboss.jbossts.txbridge.outbound.OutboundBridge(bridgeWrapper);
         XAResource xaResource = new org.jboss.jbossts.txbridge.outbound.BridgeXAResource(externalTxId, bridgeWrapper);
         Synchronization synchronization = new org.jboss.jbossts.txbridge.outbound.BridgeSynchronization(bridgeWrapper);
@@ -123,14 +137,52 @@ public class OutboundBridgeManager
         try
         {
             transaction.enlistResource(xaResource);
+        }
+        catch(RollbackException e)
+        {
+            txbridgeLogger.i18NLogger.error_obm_unabletoenlist(e);
+            rollback(bridgeWrapper);
+            throw new SystemException(e.toString());
+        }
+        catch(SystemException e)
+        {
+            rollback(bridgeWrapper);
+            throw e;
+        }
+
+        try
+        {
             transaction.registerSynchronization(synchronization);
         }
         catch(RollbackException e)
         {
+            // the JTA transaction will rollback the subordinate through the enlisted BridgeXAResource.
             txbridgeLogger.i18NLogger.error_obm_unabletoenlist(e);
             throw new SystemException(e.toString());
         }
+        catch(SystemException e)
+        {
+            transaction.setRollbackOnly();
+            throw e;
+        }
+
+        return outboundBridge;
+    }
 
-        outboundBridgeMappings.put(externalTxId, outboundBridge);
+    /**
+     * Rollback a subordinate WS-AT transaction which could not be enlisted in its JTA transaction.
+     *
+     * @param bridgeWrapper The subordinate WS-AT transaction.
+     */
+    private static void rollback(BridgeWrapper bridgeWrapper)
+    {
+        try
+        {
+            bridgeWrapper.rollback();
+        }
+        catch(RuntimeException e)
+        {
+            txbridgeLogger.i18NLogger.warn_obm_unabletorollback(bridgeWrapper.getIdentifier(), e);
+        }
     }
 }
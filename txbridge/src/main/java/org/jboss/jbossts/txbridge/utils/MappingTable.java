@@ -0,0 +1,134 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossts.txbridge.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A table of transaction mappings whose creation is expensive, e.g. because it enlists participants
+ * with a remote coordinator. The first caller for a key creates the mapping outside the table, so
+ * callers for other keys are never held up by it, and concurrent callers for the same key wait for
+ * that creation rather than repeating it.
+ *
+ * @param <K> the transaction identifier type.
+ * @param <V> the mapping type.
+ * @param <E> the checked exception thrown when a mapping cannot be created.
+ */
+public class MappingTable<K, V, E extends Exception>
+{
+    /**
+     * Creates the mapping for a transaction.
+     */
+    public interface Factory<K, V, E extends Exception>
+    {
+        V create(K key) throws E;
+    }
+
+    private final ConcurrentMap<K, CompletableFuture<V>> mappings = new ConcurrentHashMap<K, CompletableFuture<V>>();
+
+    /**
+     * Return the mapping for the given key, creating it with the factory if there is none.
+     *
+     * If the mapping cannot be created the key is left unmapped, so a later call may try again,
+     * and the failure is thrown to this caller and to every caller waiting for the mapping.
+     *
+     * @param key the transaction identifier.
+     * @param factory creates the mapping if this caller is the first for the key.
+     * @return the mapping.
+     * @throws E if the mapping could not be created.
+     */
+    public V getOrCreate(K key, Factory<K, V, E> factory) throws E
+    {
+        CompletableFuture<V> mapping = mappings.get(key);
+
+        if(mapping == null) {
+            CompletableFuture<V> created = new CompletableFuture<V>();
+            mapping = mappings.putIfAbsent(key, created);
+
+            if(mapping == null) {
+                try {
+                    V value = factory.create(key);
+                    created.complete(value);
+                    return value;
+                } catch(Throwable t) {
+                    mappings.remove(key, created);
+                    created.completeExceptionally(t);
+                    throw t;
+                }
+            }
+        }
+
+        return await(mapping);
+    }
+
+    /**
+     * Return the mapping for the given key.
+     *
+     * @param key the transaction identifier.
+     * @return the mapping, or null if there is none or it is still being created.
+     */
+    public V get(K key)
+    {
+        return completed(mappings.get(key));
+    }
+
+    /**
+     * Remove the mapping for the given key.
+     *
+     * @param key the transaction identifier.
+     * @return the removed mapping, or null if there was none or it was still being created.
+     */
+    public V remove(K key)
+    {
+        return completed(mappings.remove(key));
+    }
+
+    private V completed(CompletableFuture<V> mapping)
+    {
+        if(mapping == null || !mapping.isDone() || mapping.isCompletedExceptionally()) {
+            return null;
+        }
+
+        return mapping.join();
+    }
+
+    @SuppressWarnings("unchecked")
+    private V await(CompletableFuture<V> mapping) throws E
+    {
+        try {
+            return mapping.join();
+        } catch(CompletionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if(cause instanceof Error) {
+                throw (Error)cause;
+            } else {
+                // only the factories passed to this table complete a mapping exceptionally
+                throw (E)cause;
+            }
+        }
+    }
+}
@@ -120,6 +120,10 @@ public interface txbridgeI18NLogger
     @LogMessage(level = ERROR)
     public void error_bridge_wrapper_prepare_volatile(BridgeWrapper bridgeWrapper);
 
+    @Message(id = 33019, value = "Unable to rollback subordinate transaction id={0} after failing to enlist it", format = MESSAGE_FORMAT)
+    @LogMessage(level = WARN)
+    public void warn_obm_unabletorollback(String arg0, @Cause() Throwable arg1);
+
     /*
         Allocate new messages directly above this notice.
           - id: use the next id number in sequence. Don't reuse ids.
@@ -0,0 +1,221 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossts.txbridge.outbound;
+
+import com.arjuna.ats.arjuna.common.Uid;
+import com.arjuna.ats.jta.transaction.Transaction;
+import org.jboss.jbossts.xts.bridge.at.BridgeWrapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.transaction.RollbackException;
+import javax.transaction.SystemException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+public class OutboundBridgeManagerTests {
+
+    private static final long WAIT_TIME = 10000L;
+
+    /**
+     * Stands in for the JTA transaction, recording the enlistments made in it.
+     */
+    private static class RecordingTransaction implements InvocationHandler {
+
+        private final Uid uid = new Uid();
+
+        private final AtomicInteger enlisted = new AtomicInteger();
+
+        private final AtomicInteger registered = new AtomicInteger();
+
+        private final AtomicInteger rollbackOnly = new AtomicInteger();
+
+        private final CountDownLatch enlisting = new CountDownLatch(1);
+
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        private volatile Exception enlistFailure;
+
+        private volatile Exception registerFailure;
+
+        private final Transaction transaction = (Transaction) Proxy.newProxyInstance(Transaction.class.getClassLoader(),
+                new Class<?>[] { Transaction.class }, this);
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "get_uid":
+                    return uid;
+                case "enlistResource":
+                    enlisted.incrementAndGet();
+                    enlisting.countDown();
+                    release.await(WAIT_TIME, TimeUnit.MILLISECONDS);
+                    if (enlistFailure != null) {
+                        throw enlistFailure;
+                    }
+                    return true;
+                case "registerSynchronization":
+                    registered.incrementAndGet();
+                    if (registerFailure != null) {
+                        throw registerFailure;
+                    }
+                    return null;
+                case "setRollbackOnly":
+                    rollbackOnly.incrementAndGet();
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        }
+    }
+
+    /**
+     * Creates subordinate transactions which are never begun with a coordinator.
+     */
+    private static class CountingSubordinateFactory implements Supplier<BridgeWrapper> {
+
+        private final AtomicInteger created = new AtomicInteger();
+
+        @Override
+        public BridgeWrapper get() {
+            created.incrementAndGet();
+            try {
+                final Constructor<BridgeWrapper> constructor = BridgeWrapper.class.getDeclaredConstructor();
+                constructor.setAccessible(true);
+                return constructor.newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentCallersShareOneEnlistment() throws Exception {
+        final RecordingTransaction tx = new RecordingTransaction();
+        final CountingSubordinateFactory factory = new CountingSubordinateFactory();
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final List<Future<OutboundBridge>> results = new ArrayList<Future<OutboundBridge>>();
+
+        try {
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> OutboundBridgeManager.getOutboundBridge(tx.transaction, factory)));
+            }
+
+            Assert.assertTrue(tx.enlisting.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+            tx.release.countDown();
+
+            final OutboundBridge first = results.get(0).get(WAIT_TIME, TimeUnit.MILLISECONDS);
+            for (Future<OutboundBridge> result : results) {
+                Assert.assertSame(first, result.get(WAIT_TIME, TimeUnit.MILLISECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+            OutboundBridgeManager.removeMapping(tx.uid);
+        }
+
+        Assert.assertEquals(1, factory.created.get());
+        Assert.assertEquals(1, tx.enlisted.get());
+        Assert.assertEquals(1, tx.registered.get());
+    }
+
+    @Test
+    public void testFailedEnlistment() throws Exception {
+        final RecordingTransaction tx = new RecordingTransaction();
+        final CountingSubordinateFactory factory = new CountingSubordinateFactory();
+
+        tx.release.countDown();
+        tx.enlistFailure = new RollbackException("marked rollback only");
+
+        try {
+            OutboundBridgeManager.getOutboundBridge(tx.transaction, factory);
+            Assert.fail("the subordinate transaction should not have been enlisted");
+        } catch (SystemException e) {
+        }
+        Assert.assertEquals(0, tx.registered.get());
+
+        // the failed mapping is not left behind, so the transaction can enlist again
+        tx.enlistFailure = null;
+        try {
+            Assert.assertNotNull(OutboundBridgeManager.getOutboundBridge(tx.transaction, factory));
+        } finally {
+            OutboundBridgeManager.removeMapping(tx.uid);
+        }
+        Assert.assertEquals(2, factory.created.get());
+        Assert.assertEquals(2, tx.enlisted.get());
+    }
+
+    @Test
+    public void testFailedSynchronizationRegistration() throws Exception {
+        final RecordingTransaction tx = new RecordingTransaction();
+        final CountingSubordinateFactory factory = new CountingSubordinateFactory();
+
+        tx.release.countDown();
+        tx.registerFailure = new SystemException("unable to register");
+
+        try {
+            OutboundBridgeManager.getOutboundBridge(tx.transaction, factory);
+            Assert.fail("the synchronization should not have been registered");
+        } catch (SystemException e) {
+        }
+
+        // the enlisted resource rolls back the subordinate once the JTA transaction has been rolled back
+        Assert.assertEquals(1, tx.enlisted.get());
+        Assert.assertEquals(1, tx.rollbackOnly.get());
+
+        tx.registerFailure = null;
+        try {
+            Assert.assertNotNull(OutboundBridgeManager.getOutboundBridge(tx.transaction, factory));
+        } finally {
+            OutboundBridgeManager.removeMapping(tx.uid);
+        }
+        Assert.assertEquals(2, factory.created.get());
+    }
+
+    @Test
+    public void testRemoveMapping() throws Exception {
+        final RecordingTransaction tx = new RecordingTransaction();
+        final CountingSubordinateFactory factory = new CountingSubordinateFactory();
+
+        tx.release.countDown();
+
+        final OutboundBridge first = OutboundBridgeManager.getOutboundBridge(tx.transaction, factory);
+        Assert.assertSame(first, OutboundBridgeManager.getOutboundBridge(tx.transaction, factory));
+
+        OutboundBridgeManager.removeMapping(tx.uid);
+
+        final OutboundBridge second = OutboundBridgeManager.getOutboundBridge(tx.transaction, factory);
+        OutboundBridgeManager.removeMapping(tx.uid);
+        Assert.assertNotSame(first, second);
+        Assert.assertEquals(2, factory.created.get());
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossts.txbridge.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MappingTableTests {
+
+    private static final long WAIT_TIME = 10000L;
+
+    private static class EnlistmentException extends Exception {
+        EnlistmentException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Enlists for the first caller only, holding it until released.
+     */
+    private static class BlockingFactory implements MappingTable.Factory<String, String, EnlistmentException> {
+
+        private final AtomicInteger created = new AtomicInteger();
+
+        private final CountDownLatch enlisting = new CountDownLatch(1);
+
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        private final boolean fail;
+
+        BlockingFactory(boolean fail) {
+            this.fail = fail;
+        }
+
+        @Override
+        public String create(String key) throws EnlistmentException {
+            created.incrementAndGet();
+            enlisting.countDown();
+            try {
+                release.await(WAIT_TIME, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (fail) {
+                throw new EnlistmentException("enlistment of " + key + " failed");
+            }
+            return "mapping-" + key;
+        }
+    }
+
+    private static List<Future<String>> getOrCreate(ExecutorService executor, final MappingTable<String, String, EnlistmentException> table,
+            final String key, final MappingTable.Factory<String, String, EnlistmentException> factory, int callers) {
+        final List<Future<String>> results = new ArrayList<Future<String>>();
+        for (int i = 0; i < callers; i++) {
+            results.add(executor.submit(() -> table.getOrCreate(key, factory)));
+        }
+        return results;
+    }
+
+    @Test
+    public void testConcurrentFirstAccess() throws Exception {
+        final MappingTable<String, String, EnlistmentException> table = new MappingTable<String, String, EnlistmentException>();
+        final BlockingFactory factory = new BlockingFactory(false);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        try {
+            final List<Future<String>> results = getOrCreate(executor, table, "tx", factory, 8);
+
+            Assert.assertTrue(factory.enlisting.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+            // the mapping is not visible until it has been created
+            Assert.assertNull(table.get("tx"));
+            // another transaction is not held up by the enlistment in progress
+            Assert.assertEquals("mapping-other", table.getOrCreate("other", key -> "mapping-" + key));
+
+            factory.release.countDown();
+
+            for (Future<String> result : results) {
+                Assert.assertEquals("mapping-tx", result.get(WAIT_TIME, TimeUnit.MILLISECONDS));
+            }
+            Assert.assertEquals(1, factory.created.get());
+            Assert.assertEquals("mapping-tx", table.get("tx"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailedEnlistment() throws Exception {
+        final MappingTable<String, String, EnlistmentException> table = new MappingTable<String, String, EnlistmentException>();
+        final BlockingFactory factory = new BlockingFactory(true);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            final List<Future<String>> results = getOrCreate(executor, table, "tx", factory, 4);
+
+            Assert.assertTrue(factory.enlisting.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+            factory.release.countDown();
+
+            // the caller which enlisted and every caller waiting for it see the failure
+            for (Future<String> result : results) {
+                try {
+                    result.get(WAIT_TIME, TimeUnit.MILLISECONDS);
+                    Assert.fail("the mapping should not have been created");
+                } catch (ExecutionException e) {
+                    Assert.assertTrue(e.getCause() instanceof EnlistmentException);
+                }
+            }
+            Assert.assertEquals(1, factory.created.get());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // the failed mapping is not left behind, so the transaction can enlist again
+        Assert.assertNull(table.get("tx"));
+        Assert.assertEquals("mapping-tx", table.getOrCreate("tx", key -> "mapping-" + key));
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+        final MappingTable<String, String, EnlistmentException> table = new MappingTable<String, String, EnlistmentException>();
+        final AtomicInteger created = new AtomicInteger();
+
+        Assert.assertEquals("mapping-1", table.getOrCreate("tx", key -> "mapping-" + created.incrementAndGet()));
+        Assert.assertEquals("mapping-1", table.getOrCreate("tx", key -> "mapping-" + created.incrementAndGet()));
+        Assert.assertEquals("mapping-1", table.remove("tx"));
+        Assert.assertNull(table.remove("tx"));
+        Assert.assertNull(table.get("tx"));
+        Assert.assertEquals("mapping-2", table.getOrCreate("tx", key -> "mapping-" + created.incrementAndGet()));
+    }
+}
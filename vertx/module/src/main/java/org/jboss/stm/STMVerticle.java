@@ -17,6 +17,8 @@ package org.jboss.stm;
  */
 
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Context;
+import io.vertx.core.WorkerExecutor;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 
@@ -25,6 +27,10 @@ import org.jboss.stm.annotations.ReadLock;
 import org.jboss.stm.annotations.State;
 import org.jboss.stm.annotations.WriteLock;
 
+import java.util.concurrent.Executor;
+
+import org.jboss.stm.async.Transaction;
+
 import com.arjuna.ats.arjuna.AtomicAction;
 
 /**
@@ -97,33 +103,39 @@ public class STMVerticle extends AbstractVerticle {
         private int _isState;
     }
 
-    static public int value ()
-    {
-	AtomicAction A = new AtomicAction();
-	int result = -1;
-
-	A.begin();
-
-	transactionalObject.increment();
-
-	result = transactionalObject.value();
-
-	A.commit();
-
-	return result;
-    }
-
     public void start() {
+        /*
+         * Transactions may block (locking, writing state) so they must not run on
+         * the event loop. Hand them to a worker pool and pick up the results back
+         * on this verticle's context.
+         */
+
+        final Context context = vertx.getOrCreateContext();
+        final WorkerExecutor worker = vertx.createSharedWorkerExecutor("stm-transactions");
+        final Executor executor = task -> worker.executeBlocking(future -> {
+            task.run();
+            future.complete();
+        }, false, result -> {});
 
         vertx.eventBus().consumer("ping-address", message -> {
             //Now send some data
             for (int i = 0; i < 10; i++) {
 
-                int value = STMVerticle.value();
+                Transaction.atomically(() -> {
+                    transactionalObject.increment();
+
+                    return transactionalObject.value();
+                }, executor, 10).whenComplete((value, failure) -> context.runOnContext(v -> {
+                    if (failure != null) {
+                        message.fail(1, "transaction failed: "+failure);
 
-                message.reply("pong! "+value);
+                        logger.warn("Could not send back pong", failure);
+                    } else {
+                        message.reply("pong! "+value);
 
-                logger.info("Sent back pong "+value);
+                        logger.info("Sent back pong "+value);
+                    }
+                }));
             }
         });
 